@@ -28,9 +28,12 @@ public class Lirical implements Callable<Integer> {
         }
         long startTime = System.currentTimeMillis();
         CommandLine cline = new CommandLine(new Lirical())
+                .addSubcommand("allele-table", new AlleleTableCommand())
                 .addSubcommand("background", new BackgroundFrequencyCommand())
+                .addSubcommand("background-table", new BackgroundTableCommand())
                 .addSubcommand("download", new DownloadCommand())
                 .addSubcommand("grid", new GridSearchCommand())
+                .addSubcommand("merge-simulations", new MergeSimulationsCommand())
                 .addSubcommand("phenopacket", new PhenopacketCommand())
                 .addSubcommand("simulate", new SimulatePhenotypeOnlyCommand())
                 .addSubcommand("simulate-vcf", new SimulatePhenopacketWithVcfCommand())
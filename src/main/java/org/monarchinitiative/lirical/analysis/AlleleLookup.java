@@ -0,0 +1,175 @@
+package org.monarchinitiative.lirical.analysis;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.h2.mvstore.MVMap;
+import org.monarchinitiative.exomiser.core.model.AlleleProtoAdaptor;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicityData;
+import org.monarchinitiative.exomiser.core.proto.AlleleProto;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * This class provides access to the frequency and pathogenicity data for alleles in the Exomiser database.
+ * Each allele is looked up at most once in the MVStore as long as it stays in a bounded LRU cache of decoded
+ * {@link FrequencyData}/{@link PathogenicityData} objects. Alleles that are not in the Exomiser database are
+ * cached as {@link AlleleData#NOT_FOUND}. Batches of alleles are read from the MVStore in key order, which is the
+ * order of the B-tree, so that neighbouring alleles are found on the same pages.
+ * <p>
+ * Objects of this class can be shared between threads and between the analyses of several VCF files.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class AlleleLookup {
+    /** Default maximum number of alleles kept in the cache. */
+    public static final int DEFAULT_CACHE_SIZE = 100_000;
+    /** Same order as the MVStore keys (chromosome, position, ref, alt). */
+    static final Comparator<AlleleProto.AlleleKey> KEY_ORDER =
+            Comparator.comparingInt(AlleleProto.AlleleKey::getChr)
+                    .thenComparingInt(AlleleProto.AlleleKey::getPosition)
+                    .thenComparing(AlleleProto.AlleleKey::getRef)
+                    .thenComparing(AlleleProto.AlleleKey::getAlt);
+    /** Data from the Exomiser database, either its MVStore map or a {@link SlimAlleleTable}. */
+    private final Function<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> alleleSource;
+    /** Key: an allele; value: the decoded data from the Exomiser database. */
+    private final Cache<AlleleProto.AlleleKey, AlleleData> cache;
+    /** Total number of alleles that were read from the MVStore. */
+    private final AtomicLong storeReads = new AtomicLong();
+    /** Total time spent reading from the MVStore and decoding the results (nanoseconds). */
+    private final AtomicLong storeReadNanos = new AtomicLong();
+
+    public AlleleLookup(MVMap<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> alleleMap) {
+        this(alleleMap, DEFAULT_CACHE_SIZE);
+    }
+
+    /**
+     * @param alleleMap the allele map of the Exomiser database
+     * @param cacheSize maximum number of alleles kept in the cache (0 disables the cache)
+     */
+    public AlleleLookup(MVMap<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> alleleMap, int cacheSize) {
+        this(alleleMap::get, cacheSize);
+    }
+
+    /**
+     * @param alleleTable alleles extracted from the Exomiser database
+     * @param cacheSize maximum number of alleles kept in the cache (0 disables the cache)
+     */
+    public AlleleLookup(SlimAlleleTable alleleTable, int cacheSize) {
+        this(alleleTable::get, cacheSize);
+    }
+
+    private AlleleLookup(Function<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> alleleSource, int cacheSize) {
+        this.alleleSource = alleleSource;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(Math.max(0, cacheSize))
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * @param key an allele
+     * @return the data for the allele, or {@link AlleleData#NOT_FOUND} if the allele is not in the Exomiser database.
+     */
+    public AlleleData get(AlleleProto.AlleleKey key) {
+        AlleleData data = cache.getIfPresent(key);
+        if (data == null) {
+            data = read(key);
+            cache.put(key, data);
+        }
+        return data;
+    }
+
+    /**
+     * Look up a batch of alleles. Alleles that are not cached are read from the MVStore in key order.
+     * @param keys the alleles to look up (duplicates are allowed)
+     * @return map with the data for each of the keys (possibly {@link AlleleData#NOT_FOUND})
+     */
+    public Map<AlleleProto.AlleleKey, AlleleData> getAll(Collection<AlleleProto.AlleleKey> keys) {
+        Map<AlleleProto.AlleleKey, AlleleData> result = new HashMap<>(cache.getAllPresent(keys));
+        List<AlleleProto.AlleleKey> missing = new ArrayList<>();
+        for (AlleleProto.AlleleKey key : keys) {
+            if (!result.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+        missing.sort(KEY_ORDER);
+        for (AlleleProto.AlleleKey key : missing) {
+            if (result.containsKey(key)) {
+                continue; // duplicate key
+            }
+            AlleleData data = read(key);
+            cache.put(key, data);
+            result.put(key, data);
+        }
+        return result;
+    }
+
+    private AlleleData read(AlleleProto.AlleleKey key) {
+        long start = System.nanoTime();
+        AlleleProto.AlleleProperties alleleProp = alleleSource.apply(key);
+        AlleleData data = alleleProp == null ? AlleleData.NOT_FOUND :
+                new AlleleData(AlleleProtoAdaptor.toFrequencyData(alleleProp), AlleleProtoAdaptor.toPathogenicityData(alleleProp));
+        storeReadNanos.addAndGet(System.nanoTime() - start);
+        storeReads.incrementAndGet();
+        return data;
+    }
+
+    /** @return fraction of lookups that were answered from the cache. */
+    public double getHitRate() {
+        return cache.stats().hitRate();
+    }
+
+    /** @return number of alleles that were read from the MVStore. */
+    public long getStoreReads() {
+        return storeReads.get();
+    }
+
+    /** @return mean time in microseconds needed to read and decode one allele from the MVStore. */
+    public double getMeanReadLatencyMicros() {
+        long n = storeReads.get();
+        return n == 0 ? 0.0 : storeReadNanos.get() / (1_000.0 * n);
+    }
+
+    /** @return a one-line summary of the cache statistics for the log. */
+    public String getStatistics() {
+        CacheStats stats = cache.stats();
+        return String.format("Allele lookups: n=%d, cache hit rate=%.1f%%, MVStore reads=%d (mean %.1f us), cached alleles=%d",
+                stats.requestCount(),
+                100.0 * stats.hitRate(),
+                getStoreReads(),
+                getMeanReadLatencyMicros(),
+                cache.size());
+    }
+
+    /**
+     * The decoded frequency and pathogenicity data for one allele.
+     */
+    public static class AlleleData {
+        /** Used for alleles that are not in the Exomiser database. */
+        public static final AlleleData NOT_FOUND = new AlleleData(null, null);
+
+        private final FrequencyData frequencyData;
+        private final PathogenicityData pathogenicityData;
+
+        AlleleData(FrequencyData frequencyData, PathogenicityData pathogenicityData) {
+            this.frequencyData = frequencyData;
+            this.pathogenicityData = pathogenicityData;
+        }
+
+        /** @return false if the allele is not represented in the Exomiser data. */
+        public boolean isFound() {
+            return this != NOT_FOUND;
+        }
+
+        public FrequencyData getFrequencyData() {
+            return frequencyData;
+        }
+
+        public PathogenicityData getPathogenicityData() {
+            return pathogenicityData;
+        }
+    }
+}
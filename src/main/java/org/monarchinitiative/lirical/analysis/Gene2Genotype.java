@@ -66,6 +66,10 @@ public class Gene2Genotype {
     public void addVariant(int chrom, int pos, String ref, String alt,
                            List<TranscriptAnnotation> annotList, String genotypeString, float path, float freq,ClinVarData.ClinSig clinv){
         SimpleVariant simplevar = new SimpleVariant(chrom, pos, ref, alt,  annotList, path,  freq, genotypeString,clinv);
+        addVariant(simplevar);
+    }
+
+    public void addVariant(SimpleVariant simplevar) {
         this.varList.add(simplevar);
         if (simplevar.isInPathogenicBin()) {
             SimpleGenotype sgenotype=simplevar.getGtype();
@@ -0,0 +1,336 @@
+package org.monarchinitiative.lirical.analysis;
+
+import com.google.common.collect.Multimap;
+import org.monarchinitiative.lirical.io.BackgroundFrequencyTable;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * A dense index of the NCBI genes that are used in the genotype analysis. Each gene gets an index between 0 and
+ * {@link #size()}-1, in the order of the NCBI Gene ids, and the gene symbols and background frequencies (lambda
+ * background) are stored in arrays with this index. The associations between diseases and genes are stored in
+ * both directions in compressed sparse row (CSR) format, i.e., the genes of disease {@code d} are
+ * {@code geneOfDisease(d, 0) ... geneOfDisease(d, geneCountOfDisease(d) - 1)}, in the order of the disease-gene
+ * multimap from which the index was built.
+ * <p>
+ * Genes are found by their numeric NCBI Gene id with a binary search, so that a gene id reported by Jannovar
+ * (e.g., {@code 2200}) does not have to be turned into a {@link TermId} first. The index is built once when the
+ * annotation data are loaded and can be shared between threads.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class GeneIndex {
+    private static final Logger logger = LoggerFactory.getLogger(GeneIndex.class);
+    /** Returned by the lookup methods if a gene or disease is not in the index. */
+    public static final int NOT_FOUND = -1;
+    private static final String NCBI_GENE_PREFIX = "NCBIGene";
+
+    /** Sorted NCBI Gene ids, e.g., 2200 for NCBIGene:2200. */
+    private final int[] entrezIds;
+    /** Gene ids such as NCBIGene:2200, by gene index. */
+    private final TermId[] geneIds;
+    /** Gene symbols (null if unknown), by gene index. */
+    private final String[] symbols;
+    /** Background frequency of predicted pathogenic variants (NaN if unknown), by gene index. */
+    private final double[] backgroundLambda;
+    /** Key: gene symbol; value: gene index. */
+    private final Map<String, Integer> symbolToGene;
+    /** Diseases with at least one associated gene, by disease index. */
+    private final TermId[] diseaseIds;
+    /** Key: a disease id such as OMIM:154700; value: disease index. */
+    private final Map<TermId, Integer> diseaseToIndex;
+    /** The genes of disease d are {@code diseaseGenes[diseaseGeneOffsets[d]] ... diseaseGenes[diseaseGeneOffsets[d+1]-1]}. */
+    private final int[] diseaseGeneOffsets;
+    private final int[] diseaseGenes;
+    /** The diseases of gene g are {@code geneDiseases[geneDiseaseOffsets[g]] ... geneDiseases[geneDiseaseOffsets[g+1]-1]}. */
+    private final int[] geneDiseaseOffsets;
+    private final int[] geneDiseases;
+
+    private GeneIndex(int[] entrezIds,
+                      TermId[] geneIds,
+                      String[] symbols,
+                      double[] backgroundLambda,
+                      Map<String, Integer> symbolToGene,
+                      TermId[] diseaseIds,
+                      Map<TermId, Integer> diseaseToIndex,
+                      int[] diseaseGeneOffsets,
+                      int[] diseaseGenes,
+                      int[] geneDiseaseOffsets,
+                      int[] geneDiseases) {
+        this.entrezIds = entrezIds;
+        this.geneIds = geneIds;
+        this.symbols = symbols;
+        this.backgroundLambda = backgroundLambda;
+        this.symbolToGene = symbolToGene;
+        this.diseaseIds = diseaseIds;
+        this.diseaseToIndex = diseaseToIndex;
+        this.diseaseGeneOffsets = diseaseGeneOffsets;
+        this.diseaseGenes = diseaseGenes;
+        this.geneDiseaseOffsets = geneDiseaseOffsets;
+        this.geneDiseases = geneDiseases;
+    }
+
+    /**
+     * Build the index of all genes with a symbol, an associated disease or a background frequency. Gene ids that
+     * are not NCBI Gene ids are skipped.
+     * @param disease2geneMultimap key: a disease id such as OMIM:154700; value: gene ids such as NCBIGene:2200
+     * @param geneId2symbol key: a gene id; value: the gene symbol
+     * @param gene2background key: a gene id; value: the background frequency of predicted pathogenic variants
+     * @return the index
+     */
+    public static GeneIndex of(Multimap<TermId, TermId> disease2geneMultimap,
+                               Map<TermId, String> geneId2symbol,
+                               Map<TermId, Double> gene2background) {
+        Map<Integer, TermId> genes = collectGenes(Arrays.asList(geneId2symbol.keySet(), gene2background.keySet(),
+                disease2geneMultimap.values()));
+        return of(disease2geneMultimap, geneId2symbol, genes, (entrezId, geneId) -> {
+            Double lambda = gene2background.get(geneId);
+            return lambda == null ? Double.NaN : lambda;
+        });
+    }
+
+    /**
+     * Build the index of all genes with a symbol, an associated disease or a background frequency. The background
+     * frequencies are copied from the table into the array of the index without creating a map.
+     * @param disease2geneMultimap key: a disease id such as OMIM:154700; value: gene ids such as NCBIGene:2200
+     * @param geneId2symbol key: a gene id; value: the gene symbol
+     * @param backgroundTable the background frequencies of predicted pathogenic variants
+     * @param population the population whose background frequencies are used
+     * @return the index
+     */
+    public static GeneIndex of(Multimap<TermId, TermId> disease2geneMultimap,
+                               Map<TermId, String> geneId2symbol,
+                               BackgroundFrequencyTable backgroundTable,
+                               BackgroundFrequencyTable.Population population) {
+        Map<Integer, TermId> genes = collectGenes(Arrays.asList(geneId2symbol.keySet(), disease2geneMultimap.values()));
+        for (int i = 0; i < backgroundTable.size(); i++) {
+            int entrezId = backgroundTable.entrezId(i);
+            if (!genes.containsKey(entrezId)) {
+                genes.put(entrezId, TermId.of(NCBI_GENE_PREFIX, String.valueOf(entrezId)));
+            }
+        }
+        return of(disease2geneMultimap, geneId2symbol, genes,
+                (entrezId, geneId) -> backgroundTable.frequency(entrezId, population));
+    }
+
+    /** The background frequency of a gene (NaN if unknown), by numeric NCBI Gene id and gene id. */
+    private interface BackgroundLookup {
+        double lambda(int entrezId, TermId geneId);
+    }
+
+    /** @return key: the numeric NCBI Gene ids of the genes, in ascending order; value: the first gene id with this number. */
+    private static Map<Integer, TermId> collectGenes(List<Collection<TermId>> geneSets) {
+        Map<Integer, TermId> genes = new TreeMap<>();
+        int skipped = 0;
+        for (Collection<TermId> geneSet : geneSets) {
+            for (TermId geneId : geneSet) {
+                int entrezId = entrezId(geneId);
+                if (entrezId == NOT_FOUND) {
+                    skipped++;
+                } else {
+                    genes.putIfAbsent(entrezId, geneId);
+                }
+            }
+        }
+        if (skipped > 0) {
+            logger.warn("Skipped {} gene ids that are not NCBI Gene ids", skipped);
+        }
+        return genes;
+    }
+
+    private static GeneIndex of(Multimap<TermId, TermId> disease2geneMultimap,
+                                Map<TermId, String> geneId2symbol,
+                                Map<Integer, TermId> genes,
+                                BackgroundLookup background) {
+        int n = genes.size();
+        int[] entrezIds = new int[n];
+        TermId[] geneIds = new TermId[n];
+        String[] symbols = new String[n];
+        double[] backgroundLambda = new double[n];
+        int g = 0;
+        for (Map.Entry<Integer, TermId> entry : genes.entrySet()) {
+            entrezIds[g] = entry.getKey();
+            geneIds[g] = entry.getValue();
+            symbols[g] = geneId2symbol.get(entry.getValue());
+            backgroundLambda[g] = background.lambda(entry.getKey(), entry.getValue());
+            g++;
+        }
+        // the same symbol rarely belongs to several genes (e.g., tRNA genes); as before, the last one wins
+        Map<String, Integer> symbolToGene = new HashMap<>();
+        for (Map.Entry<TermId, String> entry : geneId2symbol.entrySet()) {
+            int i = Arrays.binarySearch(entrezIds, entrezId(entry.getKey()));
+            if (i >= 0) {
+                symbolToGene.put(entry.getValue(), i);
+            }
+        }
+        // disease -> genes
+        List<TermId> diseases = new ArrayList<>();
+        Map<TermId, Integer> diseaseToIndex = new HashMap<>();
+        int[] diseaseGeneOffsets = new int[disease2geneMultimap.keySet().size() + 1];
+        int[] diseaseGenes = new int[disease2geneMultimap.size()];
+        int[] diseaseCountOfGene = new int[n];
+        int edges = 0;
+        for (TermId diseaseId : disease2geneMultimap.keySet()) {
+            int d = diseases.size();
+            diseases.add(diseaseId);
+            diseaseToIndex.put(diseaseId, d);
+            diseaseGeneOffsets[d] = edges;
+            for (TermId geneId : disease2geneMultimap.get(diseaseId)) {
+                int i = Arrays.binarySearch(entrezIds, entrezId(geneId));
+                if (i >= 0) {
+                    diseaseGenes[edges++] = i;
+                    diseaseCountOfGene[i]++;
+                }
+            }
+        }
+        diseaseGeneOffsets[diseases.size()] = edges;
+        if (edges < diseaseGenes.length) {
+            diseaseGenes = Arrays.copyOf(diseaseGenes, edges);
+        }
+        // gene -> diseases, in the order of the disease index
+        int[] geneDiseaseOffsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            geneDiseaseOffsets[i + 1] = geneDiseaseOffsets[i] + diseaseCountOfGene[i];
+        }
+        int[] geneDiseases = new int[edges];
+        int[] next = Arrays.copyOf(geneDiseaseOffsets, n);
+        for (int d = 0; d < diseases.size(); d++) {
+            for (int k = diseaseGeneOffsets[d]; k < diseaseGeneOffsets[d + 1]; k++) {
+                geneDiseases[next[diseaseGenes[k]]++] = d;
+            }
+        }
+        logger.info("Indexed {} genes and {} diseases with {} disease-gene associations", n, diseases.size(), edges);
+        return new GeneIndex(entrezIds, geneIds, symbols, backgroundLambda, symbolToGene,
+                diseases.toArray(new TermId[0]), diseaseToIndex,
+                diseaseGeneOffsets, diseaseGenes, geneDiseaseOffsets, geneDiseases);
+    }
+
+    /**
+     * @param geneId a gene id such as NCBIGene:2200
+     * @return the numeric NCBI Gene id, or {@link #NOT_FOUND} if this is not an NCBI Gene id
+     */
+    private static int entrezId(TermId geneId) {
+        return NCBI_GENE_PREFIX.equals(geneId.getPrefix()) ? parseId(geneId.getId()) : NOT_FOUND;
+    }
+
+    /**
+     * @param id a string such as 2200
+     * @return the number, or {@link #NOT_FOUND} if the string is not a non-negative integer
+     */
+    private static int parseId(String id) {
+        int length = id.length();
+        if (length == 0 || length > 9) {
+            return NOT_FOUND;
+        }
+        int value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return NOT_FOUND;
+            }
+            value = 10 * value + (c - '0');
+        }
+        return value;
+    }
+
+    /** @return number of genes in the index. */
+    public int size() {
+        return entrezIds.length;
+    }
+
+    /**
+     * @param entrezId a numeric NCBI Gene id, e.g., 2200
+     * @return index of the gene, or {@link #NOT_FOUND}
+     */
+    public int geneIndex(int entrezId) {
+        int i = Arrays.binarySearch(entrezIds, entrezId);
+        return i >= 0 ? i : NOT_FOUND;
+    }
+
+    /**
+     * @param entrezId an NCBI Gene id without prefix as reported by Jannovar, e.g., "2200"
+     * @return index of the gene, or {@link #NOT_FOUND}
+     */
+    public int geneIndex(String entrezId) {
+        int id = parseId(entrezId);
+        return id == NOT_FOUND ? NOT_FOUND : geneIndex(id);
+    }
+
+    /**
+     * @param geneId a gene id such as NCBIGene:2200
+     * @return index of the gene, or {@link #NOT_FOUND}
+     */
+    public int geneIndex(TermId geneId) {
+        int id = entrezId(geneId);
+        return id == NOT_FOUND ? NOT_FOUND : geneIndex(id);
+    }
+
+    /**
+     * @param symbol a gene symbol such as FBN1
+     * @return index of the gene, or {@link #NOT_FOUND}
+     */
+    public int geneIndexOfSymbol(String symbol) {
+        Integer i = symbolToGene.get(symbol);
+        return i == null ? NOT_FOUND : i;
+    }
+
+    /** @return the gene id, e.g., NCBIGene:2200, of gene g. */
+    public TermId geneId(int g) {
+        return geneIds[g];
+    }
+
+    /** @return the symbol of gene g, or null if it is not known. */
+    public String symbol(int g) {
+        return symbols[g];
+    }
+
+    /** @return true if there is a background frequency for gene g. */
+    public boolean hasBackgroundLambda(int g) {
+        return !Double.isNaN(backgroundLambda[g]);
+    }
+
+    /** @return the background frequency of predicted pathogenic variants in gene g (NaN if it is not known). */
+    public double backgroundLambda(int g) {
+        return backgroundLambda[g];
+    }
+
+    /** @return number of diseases with at least one associated gene. */
+    public int diseaseCount() {
+        return diseaseIds.length;
+    }
+
+    /**
+     * @param diseaseId a disease id such as OMIM:154700
+     * @return index of the disease, or {@link #NOT_FOUND} if no gene is associated with the disease
+     */
+    public int diseaseIndex(TermId diseaseId) {
+        Integer d = diseaseToIndex.get(diseaseId);
+        return d == null ? NOT_FOUND : d;
+    }
+
+    public TermId diseaseId(int d) {
+        return diseaseIds[d];
+    }
+
+    /** @return number of genes associated with disease d. */
+    public int geneCountOfDisease(int d) {
+        return diseaseGeneOffsets[d + 1] - diseaseGeneOffsets[d];
+    }
+
+    /** @return index of the k-th gene associated with disease d. */
+    public int geneOfDisease(int d, int k) {
+        return diseaseGenes[diseaseGeneOffsets[d] + k];
+    }
+
+    /** @return number of diseases associated with gene g. */
+    public int diseaseCountOfGene(int g) {
+        return geneDiseaseOffsets[g + 1] - geneDiseaseOffsets[g];
+    }
+
+    /** @return index of the k-th disease associated with gene g. */
+    public int diseaseOfGene(int g, int k) {
+        return geneDiseases[geneDiseaseOffsets[g] + k];
+    }
+}
@@ -0,0 +1,256 @@
+package org.monarchinitiative.lirical.analysis;
+
+import de.charite.compbio.jannovar.data.JannovarData;
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import de.charite.compbio.jannovar.reference.TranscriptModel;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * An index of the genomic loci of a set of genes (usually, the disease genes). The loci are taken from the
+ * Jannovar transcript data and are extended on both sides by a padding. Overlapping loci are merged, so that
+ * each chromosome is represented by a sorted array of disjoint intervals that can be queried by binary search.
+ * This allows us to reject VCF records that cannot affect any of the genes by their position alone, i.e., before
+ * they are annotated by Jannovar and before the Exomiser data are looked up.
+ * <p>
+ * A transcript is taken to belong to one of the genes if its gene id (an NCBI Gene id in the Exomiser transcript
+ * data) or its gene symbol matches one of the genes. By default, the locus of a transcript is its whole transcribed
+ * region; {@link #exons(JannovarData, Collection, Map, int)} creates an index of the exons only.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class GeneIntervalIndex {
+    private static final Logger logger = LoggerFactory.getLogger(GeneIntervalIndex.class);
+    private static final String NCBI_ENTREZ_GENE_PREFIX = "NCBIGene";
+    /** Used to map the contig names of the VCF file (e.g., chr1 or 1) to Jannovar contig ids. */
+    private final ReferenceDictionary referenceDictionary;
+    /** Key: Jannovar contig id; value: the merged intervals on this contig. */
+    private final Map<Integer, Intervals> intervalsByContig;
+    /** Number of bases added on both sides of each gene. */
+    private final int padding;
+
+    /**
+     * @param jannovarData the Jannovar transcript data
+     * @param geneIds the genes to be indexed, e.g., NCBIGene:2200
+     * @param geneId2SymbolMap key: gene id; value: gene symbol
+     * @param padding number of bases added on both sides of each gene
+     */
+    public GeneIntervalIndex(JannovarData jannovarData,
+                             Collection<TermId> geneIds,
+                             Map<TermId, String> geneId2SymbolMap,
+                             int padding) {
+        this(jannovarData, geneIds, geneId2SymbolMap, padding, false);
+    }
+
+    /**
+     * Create an index of the exons of the genes. With a padding of a few bases, this covers all alleles that
+     * Jannovar annotates as exonic or splice-site variants.
+     * @param jannovarData the Jannovar transcript data
+     * @param geneIds the genes to be indexed, e.g., NCBIGene:2200
+     * @param geneId2SymbolMap key: gene id; value: gene symbol
+     * @param padding number of bases added on both sides of each exon
+     * @return index of the exons of the genes
+     */
+    public static GeneIntervalIndex exons(JannovarData jannovarData,
+                                          Collection<TermId> geneIds,
+                                          Map<TermId, String> geneId2SymbolMap,
+                                          int padding) {
+        return new GeneIntervalIndex(jannovarData, geneIds, geneId2SymbolMap, padding, true);
+    }
+
+    private GeneIntervalIndex(JannovarData jannovarData,
+                              Collection<TermId> geneIds,
+                              Map<TermId, String> geneId2SymbolMap,
+                              int padding,
+                              boolean exonsOnly) {
+        this.referenceDictionary = jannovarData.getRefDict();
+        this.padding = Math.max(0, padding);
+        Set<String> ids = new HashSet<>();
+        Set<String> symbols = new HashSet<>();
+        for (TermId geneId : geneIds) {
+            ids.add(geneId.getId());
+            String symbol = geneId2SymbolMap.get(geneId);
+            if (symbol != null) {
+                symbols.add(symbol);
+            }
+        }
+        Map<Integer, List<int[]>> lociByContig = new HashMap<>();
+        int n_transcripts = 0;
+        for (TranscriptModel tm : jannovarData.getTmByAccession().values()) {
+            String geneId = tm.getGeneID();
+            if (geneId != null && geneId.startsWith(NCBI_ENTREZ_GENE_PREFIX)) {
+                geneId = geneId.substring(NCBI_ENTREZ_GENE_PREFIX.length() + 1);
+            }
+            if (!ids.contains(geneId) && !symbols.contains(tm.getGeneSymbol())) {
+                continue;
+            }
+            List<GenomeInterval> regions = exonsOnly ? tm.getExonRegions() : Collections.singletonList(tm.getTXRegion());
+            for (GenomeInterval r : regions) {
+                // regions of minus-strand transcripts are given in reverse coordinates
+                GenomeInterval region = r.withStrand(Strand.FWD);
+                int begin = Math.max(0, region.getBeginPos() - this.padding);
+                int end = region.getEndPos() + this.padding;
+                lociByContig.computeIfAbsent(region.getChr(), k -> new ArrayList<>()).add(new int[]{begin, end});
+            }
+            n_transcripts++;
+        }
+        this.intervalsByContig = new HashMap<>();
+        int n_intervals = 0;
+        for (Map.Entry<Integer, List<int[]>> entry : lociByContig.entrySet()) {
+            Intervals intervals = Intervals.merge(entry.getValue());
+            intervalsByContig.put(entry.getKey(), intervals);
+            n_intervals += intervals.size();
+        }
+        logger.info("Indexed {} transcripts of {} genes as {} intervals (padding: {} bp).",
+                n_transcripts, geneIds.size(), n_intervals, this.padding);
+    }
+
+    /**
+     * Check whether a variant overlaps any of the (padded) gene loci. The coordinates are those of the VCF file,
+     * i.e., one-based and fully closed.
+     * @param contig name of the contig as in the VCF file, e.g., chr1 or 1
+     * @param start first position of the variant
+     * @param end last position of the variant
+     * @return true if the variant overlaps at least one of the gene loci
+     */
+    public boolean overlaps(String contig, int start, int end) {
+        Integer contigId = referenceDictionary.getContigNameToID().get(contig);
+        if (contigId == null) {
+            return false;
+        }
+        return overlaps(contigId, start, end);
+    }
+
+    /**
+     * Check whether a variant overlaps any of the (padded) gene loci.
+     * @param contigId Jannovar id of the contig (as in the keys of the Exomiser database)
+     * @param start first position of the variant (one-based)
+     * @param end last position of the variant (one-based, fully closed)
+     * @return true if the variant overlaps at least one of the gene loci
+     */
+    public boolean overlaps(int contigId, int start, int end) {
+        Intervals intervals = intervalsByContig.get(contigId);
+        // convert to zero-based, half-open coordinates
+        return intervals != null && intervals.overlaps(start - 1, Math.max(start, end));
+    }
+
+    public int getPadding() {
+        return padding;
+    }
+
+    /**
+     * Get the indexed loci as regions that can be used to query an indexed VCF file. Neighbouring loci that are
+     * separated by less than {@code maxGap} bases are combined into one region, so that the same compressed block
+     * of the VCF file is not decompressed for several queries.
+     * @param maxGap loci separated by fewer bases are combined
+     * @return regions sorted by contig and position
+     */
+    public List<Region> queryRegions(int maxGap) {
+        List<Region> regions = new ArrayList<>();
+        List<Integer> contigIds = new ArrayList<>(intervalsByContig.keySet());
+        Collections.sort(contigIds);
+        for (int contigId : contigIds) {
+            Intervals intervals = intervalsByContig.get(contigId);
+            int begin = intervals.begins[0];
+            int end = intervals.ends[0];
+            for (int i = 1; i < intervals.size(); i++) {
+                if (intervals.begins[i] - end < maxGap) {
+                    end = intervals.ends[i];
+                } else {
+                    regions.add(new Region(contigId, begin, end));
+                    begin = intervals.begins[i];
+                    end = intervals.ends[i];
+                }
+            }
+            regions.add(new Region(contigId, begin, end));
+        }
+        return regions;
+    }
+
+    /**
+     * Names of a contig, e.g., 1 and chr1, that may be used for the contig in a VCF file.
+     * @param contigId Jannovar id of the contig
+     * @return all names of the contig in the Jannovar reference dictionary
+     */
+    public Set<String> contigNames(int contigId) {
+        Set<String> names = new LinkedHashSet<>();
+        for (Map.Entry<String, Integer> entry : referenceDictionary.getContigNameToID().entrySet()) {
+            if (entry.getValue() == contigId) {
+                names.add(entry.getKey());
+            }
+        }
+        return names;
+    }
+
+    /** A region on one contig, in zero-based, half-open coordinates. */
+    public static class Region {
+        private final int contigId;
+        private final int begin;
+        private final int end;
+
+        Region(int contigId, int begin, int end) {
+            this.contigId = contigId;
+            this.begin = begin;
+            this.end = end;
+        }
+
+        public int getContigId() {
+            return contigId;
+        }
+
+        public int getBegin() {
+            return begin;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+    }
+
+    /** Sorted, disjoint intervals (zero-based, half-open) on one contig. */
+    private static class Intervals {
+        private final int[] begins;
+        private final int[] ends;
+
+        private Intervals(int[] begins, int[] ends) {
+            this.begins = begins;
+            this.ends = ends;
+        }
+
+        static Intervals merge(List<int[]> loci) {
+            loci.sort(Comparator.comparingInt((int[] locus) -> locus[0]));
+            int[] begins = new int[loci.size()];
+            int[] ends = new int[loci.size()];
+            int n = 0;
+            for (int[] locus : loci) {
+                if (n > 0 && locus[0] <= ends[n - 1]) {
+                    ends[n - 1] = Math.max(ends[n - 1], locus[1]);
+                } else {
+                    begins[n] = locus[0];
+                    ends[n] = locus[1];
+                    n++;
+                }
+            }
+            return new Intervals(Arrays.copyOf(begins, n), Arrays.copyOf(ends, n));
+        }
+
+        int size() {
+            return begins.length;
+        }
+
+        boolean overlaps(int begin, int end) {
+            // index of the last interval that begins before the end of the query
+            int i = Arrays.binarySearch(begins, end);
+            if (i < 0) {
+                i = -i - 2;
+            } else {
+                i--;
+            }
+            return i >= 0 && ends[i] > begin;
+        }
+    }
+}
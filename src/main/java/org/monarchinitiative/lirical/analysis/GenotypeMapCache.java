@@ -0,0 +1,325 @@
+package org.monarchinitiative.lirical.analysis;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import de.charite.compbio.jannovar.annotation.VariantEffect;
+import org.monarchinitiative.exomiser.core.model.TranscriptAnnotation;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.ClinVarData;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.lirical.vcf.SimpleGenotype;
+import org.monarchinitiative.lirical.vcf.SimpleVariant;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An on-disk cache of the genotype maps created by {@link Vcf2GenotypeMap}. Clinicians often analyze the same
+ * VCF file several times with different HPO terms or thresholds; with the cache, only the first analysis needs to
+ * annotate the VCF file. The entries are keyed by a checksum of the content of the VCF file together with all
+ * settings and data files that influence the genotype map (genome assembly, transcript database, versions of the
+ * Exomiser data, the allele table and the gene files, gene filters). Each entry is a gzipped binary file in the cache directory. If the total size of the entries
+ * exceeds the limit, the least recently used entries are deleted.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class GenotypeMapCache {
+    private static final Logger logger = LoggerFactory.getLogger(GenotypeMapCache.class);
+    /** Must be incremented whenever the binary format changes, older entries are then not used any more. */
+    private static final int FORMAT_VERSION = 2;
+    private static final String SUFFIX = ".g2g.gz";
+    private static final ClinVarData.ClinSig[] CLINSIGS = ClinVarData.ClinSig.values();
+    private static final SimpleGenotype[] GENOTYPES = SimpleGenotype.values();
+    /** Default maximum size of the cache directory (1 GB). */
+    public static final long DEFAULT_MAX_BYTES = 1024L * 1024L * 1024L;
+
+    private final File cacheDirectory;
+    private final long maxBytes;
+
+    /**
+     * @param cacheDirectory directory with the cache entries (created if needed)
+     * @param maxBytes maximum total size of the entries
+     */
+    public GenotypeMapCache(String cacheDirectory, long maxBytes) {
+        this.cacheDirectory = new File(cacheDirectory);
+        this.maxBytes = maxBytes;
+        if (!this.cacheDirectory.exists() && !this.cacheDirectory.mkdirs()) {
+            throw new LiricalRuntimeException("Could not create genotype cache directory " + cacheDirectory);
+        }
+    }
+
+    /**
+     * Calculate the key of a VCF file and the settings used to analyze it. The VCF file is read completely to
+     * calculate its checksum, which is much faster than annotating it.
+     * @param vcfPath path to the VCF file
+     * @param settings all settings that influence the genotype map, e.g., the genome assembly
+     * @return a key for {@link #get(String)} and {@link #put(String, Entry)}
+     */
+    public static String key(String vcfPath, String... settings) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        try {
+            hasher.putBytes(Files.asByteSource(new File(vcfPath)).hash(Hashing.sha256()).asBytes());
+        } catch (IOException e) {
+            throw new LiricalRuntimeException(String.format("Could not calculate checksum of %s (%s)",
+                    vcfPath, e.getMessage()));
+        }
+        hasher.putInt(FORMAT_VERSION);
+        for (String setting : settings) {
+            hasher.putString(String.valueOf(setting), StandardCharsets.UTF_8);
+            hasher.putChar('|');
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Identify a data file that is too large to calculate a checksum for every analysis (e.g., the Exomiser MVStore)
+     * by its name, size and time of last modification. A key that contains the version is thus changed if the file
+     * is updated in place or replaced by another file of the same name.
+     * @param path path to a data file
+     * @return the version of the file, to be passed as a setting to {@link #key(String, String...)}
+     */
+    public static String fileVersion(String path) {
+        File file = new File(path);
+        if (!file.isFile()) {
+            throw new LiricalRuntimeException("Could not find " + path);
+        }
+        return String.format("%s:%d:%d", file.getName(), file.length(), file.lastModified());
+    }
+
+    /**
+     * @param key the key of the VCF file and settings
+     * @return the cached entry, or empty if there is none (or if it could not be read)
+     */
+    public Optional<Entry> get(String key) {
+        File file = new File(cacheDirectory, key + SUFFIX);
+        if (!file.exists()) {
+            return Optional.empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file))))) {
+            Entry entry = read(in);
+            // used for least-recently-used eviction
+            if (!file.setLastModified(System.currentTimeMillis())) {
+                logger.warn("Could not update the time stamp of {}", file);
+            }
+            logger.info("Read genotype map for sample {} from cache {}", entry.getSampleName(), file);
+            return Optional.of(entry);
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Could not read genotype cache entry {} ({}), deleting it", file, e.getMessage());
+            if (!file.delete()) {
+                logger.warn("Could not delete {}", file);
+            }
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Add an entry to the cache. The entry is written to a temporary file that is then renamed, so that concurrent
+     * analyses never see partially written entries. Errors are logged but do not stop the analysis.
+     * @param key the key of the VCF file and settings
+     * @param entry the genotype map and the VCF statistics
+     */
+    public void put(String key, Entry entry) {
+        File file = new File(cacheDirectory, key + SUFFIX);
+        File tmp = new File(cacheDirectory, key + SUFFIX + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(tmp))))) {
+            write(entry, out);
+        } catch (IOException e) {
+            logger.warn("Could not write genotype cache entry {} ({})", file, e.getMessage());
+            return;
+        }
+        try {
+            java.nio.file.Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not move genotype cache entry to {} ({})", file, e.getMessage());
+            return;
+        }
+        logger.info("Wrote genotype map for sample {} to cache {}", entry.getSampleName(), file);
+        evict(file);
+    }
+
+    /**
+     * Delete the least recently used entries until the total size is below {@link #maxBytes}.
+     * @param newEntry the entry that was just written, it is never deleted
+     */
+    private void evict(File newEntry) {
+        File[] files = cacheDirectory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < files.length && total > maxBytes; i++) {
+            if (files[i].equals(newEntry)) {
+                continue;
+            }
+            long length = files[i].length();
+            if (files[i].delete()) {
+                total -= length;
+                logger.info("Evicted genotype cache entry {}", files[i]);
+            }
+        }
+    }
+
+    private static void write(Entry entry, DataOutputStream out) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeUTF(entry.sampleName);
+        out.writeInt(entry.n_good_quality_variants);
+        out.writeInt(entry.n_filtered_variants);
+        out.writeInt(entry.n_off_target_variants);
+        out.writeInt(entry.n_common_variants);
+        out.writeInt(entry.symbolsWithoutGeneIds.size());
+        for (String symbol : entry.symbolsWithoutGeneIds) {
+            out.writeUTF(symbol);
+        }
+        out.writeInt(entry.genotypeMap.size());
+        for (Gene2Genotype g2g : entry.genotypeMap.values()) {
+            out.writeUTF(g2g.getGeneId().getValue());
+            out.writeUTF(g2g.getSymbol());
+            List<SimpleVariant> varList = g2g.getVarList();
+            out.writeInt(varList.size());
+            for (SimpleVariant sv : varList) {
+                out.writeShort(sv.getChromosomeNumber());
+                out.writeInt(sv.getPosition());
+                out.writeUTF(sv.getRef());
+                out.writeUTF(sv.getAlt());
+                out.writeFloat(sv.getPathogenicityScore());
+                out.writeFloat(sv.getFrequency());
+                out.writeByte(sv.getGtype().ordinal());
+                out.writeByte(sv.getClinSig().ordinal());
+                out.writeShort(sv.getAnnotationList().size());
+                for (TranscriptAnnotation ta : sv.getAnnotationList()) {
+                    writeNullable(out, ta.getVariantEffect() == null ? null : ta.getVariantEffect().name());
+                    writeNullable(out, ta.getAccession());
+                    writeNullable(out, ta.getGeneSymbol());
+                    writeNullable(out, ta.getHgvsCdna());
+                    writeNullable(out, ta.getHgvsProtein());
+                }
+            }
+        }
+    }
+
+    private static Entry read(DataInputStream in) throws IOException {
+        int version = in.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version " + version);
+        }
+        String sampleName = in.readUTF();
+        int n_good = in.readInt();
+        int n_filtered = in.readInt();
+        int n_off_target = in.readInt();
+        int n_common = in.readInt();
+        int n_symbols = in.readInt();
+        Set<String> symbolsWithoutGeneIds = new HashSet<>();
+        for (int i = 0; i < n_symbols; i++) {
+            symbolsWithoutGeneIds.add(in.readUTF());
+        }
+        int n_genes = in.readInt();
+        Map<TermId, Gene2Genotype> genotypeMap = new HashMap<>();
+        for (int i = 0; i < n_genes; i++) {
+            TermId geneId = TermId.of(in.readUTF());
+            Gene2Genotype g2g = new Gene2Genotype(geneId, in.readUTF());
+            int n_variants = in.readInt();
+            for (int j = 0; j < n_variants; j++) {
+                int chrom = in.readShort();
+                int pos = in.readInt();
+                String ref = in.readUTF();
+                String alt = in.readUTF();
+                float pathogenicity = in.readFloat();
+                float frequency = in.readFloat();
+                SimpleGenotype genotype = GENOTYPES[in.readByte()];
+                ClinVarData.ClinSig clinSig = CLINSIGS[in.readByte()];
+                int n_annotations = in.readShort();
+                ImmutableList.Builder<TranscriptAnnotation> annotations = ImmutableList.builder();
+                for (int k = 0; k < n_annotations; k++) {
+                    String effect = readNullable(in);
+                    annotations.add(TranscriptAnnotation.builder()
+                            .variantEffect(effect == null ? null : VariantEffect.valueOf(effect))
+                            .accession(readNullable(in))
+                            .geneSymbol(readNullable(in))
+                            .hgvsCdna(readNullable(in))
+                            .hgvsProtein(readNullable(in))
+                            .build());
+                }
+                g2g.addVariant(SimpleVariant.withPathogenicityScore(chrom, pos, ref, alt, annotations.build(),
+                        pathogenicity, frequency, genotype, clinSig));
+            }
+            genotypeMap.put(geneId, g2g);
+        }
+        return new Entry(sampleName, genotypeMap, n_good, n_filtered, n_off_target, n_common, symbolsWithoutGeneIds);
+    }
+
+    private static void writeNullable(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) {
+            out.writeUTF(s);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /** A cached genotype map together with the statistics of the VCF file it was extracted from. */
+    public static class Entry {
+        private final String sampleName;
+        private final Map<TermId, Gene2Genotype> genotypeMap;
+        private final int n_good_quality_variants;
+        private final int n_filtered_variants;
+        private final int n_off_target_variants;
+        private final int n_common_variants;
+        private final Set<String> symbolsWithoutGeneIds;
+
+        public Entry(String sampleName, Map<TermId, Gene2Genotype> genotypeMap, int n_good_quality_variants,
+                     int n_filtered_variants, int n_off_target_variants, int n_common_variants,
+                     Set<String> symbolsWithoutGeneIds) {
+            this.sampleName = sampleName;
+            this.genotypeMap = genotypeMap;
+            this.n_good_quality_variants = n_good_quality_variants;
+            this.n_filtered_variants = n_filtered_variants;
+            this.n_off_target_variants = n_off_target_variants;
+            this.n_common_variants = n_common_variants;
+            this.symbolsWithoutGeneIds = symbolsWithoutGeneIds;
+        }
+
+        public String getSampleName() {
+            return sampleName;
+        }
+
+        public Map<TermId, Gene2Genotype> getGenotypeMap() {
+            return genotypeMap;
+        }
+
+        public int getN_good_quality_variants() {
+            return n_good_quality_variants;
+        }
+
+        public int getN_filtered_variants() {
+            return n_filtered_variants;
+        }
+
+        public int getN_off_target_variants() {
+            return n_off_target_variants;
+        }
+
+        public int getN_common_variants() {
+            return n_common_variants;
+        }
+
+        public Set<String> getSymbolsWithoutGeneIds() {
+            return symbolsWithoutGeneIds;
+        }
+    }
+}
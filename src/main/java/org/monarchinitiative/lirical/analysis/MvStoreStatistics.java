@@ -0,0 +1,108 @@
+package org.monarchinitiative.lirical.analysis;
+
+import org.h2.mvstore.FileStore;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.cache.CacheLongKeyLIRS;
+
+/**
+ * A snapshot of the page cache and file access counters of an {@link MVStore}. The counters of the MVStore are
+ * cumulative, so the statistics of one analysis are obtained by taking a snapshot before and after the analysis
+ * and calling {@link #since(MvStoreStatistics)}. A high number of cache misses and bytes read relative to the number
+ * of allele lookups indicates that an analysis is limited by I/O and that a larger page cache may help.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class MvStoreStatistics {
+    /** Page cache hits. */
+    private final long cacheHits;
+    /** Page cache misses, i.e., pages that had to be read from the file. */
+    private final long cacheMisses;
+    /** Number of read operations on the file (pages or chunk headers). */
+    private final long fileReads;
+    /** Number of bytes read from the file. */
+    private final long bytesRead;
+    /** Memory used by the page cache at the time of the snapshot (MB). */
+    private final int cacheSizeUsedMb;
+    /** Maximum size of the page cache (MB). */
+    private final int cacheSizeMb;
+
+    private MvStoreStatistics(long cacheHits, long cacheMisses, long fileReads, long bytesRead,
+                              int cacheSizeUsedMb, int cacheSizeMb) {
+        this.cacheHits = cacheHits;
+        this.cacheMisses = cacheMisses;
+        this.fileReads = fileReads;
+        this.bytesRead = bytesRead;
+        this.cacheSizeUsedMb = cacheSizeUsedMb;
+        this.cacheSizeMb = cacheSizeMb;
+    }
+
+    /**
+     * @param mvStore an open MVStore
+     * @return the current values of the counters of the store
+     */
+    public static MvStoreStatistics of(MVStore mvStore) {
+        CacheLongKeyLIRS<?> cache = mvStore.getCache();
+        FileStore fileStore = mvStore.getFileStore();
+        return new MvStoreStatistics(cache == null ? 0 : cache.getHits(),
+                cache == null ? 0 : cache.getMisses(),
+                fileStore == null ? 0 : fileStore.getReadCount(),
+                fileStore == null ? 0 : fileStore.getReadBytes(),
+                mvStore.getCacheSizeUsed(),
+                mvStore.getCacheSize());
+    }
+
+    /**
+     * @param before a snapshot of the same store that was taken earlier
+     * @return the cache and file accesses between the two snapshots
+     */
+    public MvStoreStatistics since(MvStoreStatistics before) {
+        return new MvStoreStatistics(cacheHits - before.cacheHits,
+                cacheMisses - before.cacheMisses,
+                fileReads - before.fileReads,
+                bytesRead - before.bytesRead,
+                cacheSizeUsedMb,
+                cacheSizeMb);
+    }
+
+    public long getCacheHits() {
+        return cacheHits;
+    }
+
+    public long getCacheMisses() {
+        return cacheMisses;
+    }
+
+    /** @return fraction of page requests that were answered from the cache (0 if there were none). */
+    public double getCacheHitRate() {
+        long n = cacheHits + cacheMisses;
+        return n == 0 ? 0.0 : (double) cacheHits / n;
+    }
+
+    public long getFileReads() {
+        return fileReads;
+    }
+
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    public int getCacheSizeUsedMb() {
+        return cacheSizeUsedMb;
+    }
+
+    public int getCacheSizeMb() {
+        return cacheSizeMb;
+    }
+
+    /** @return a one-line summary for the log. */
+    @Override
+    public String toString() {
+        return String.format("MVStore: page cache hits=%d, misses=%d (hit rate=%.1f%%), file reads=%d, bytes read=%.1f MB, cache used=%d/%d MB",
+                cacheHits,
+                cacheMisses,
+                100.0 * getCacheHitRate(),
+                fileReads,
+                bytesRead / (1024.0 * 1024.0),
+                cacheSizeUsedMb,
+                cacheSizeMb);
+    }
+}
@@ -0,0 +1,103 @@
+package org.monarchinitiative.lirical.analysis;
+
+import org.monarchinitiative.lirical.vcf.SimpleVariant;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.*;
+
+/**
+ * A read-only genotype map that adds the variants of a (small) genotype map to those of a baseline genotype map
+ * without copying the baseline. This is used by the simulations, which annotate a template VCF file once and then add
+ * the variants of each simulated case. Only the genes that have variants in both maps get a new {@link Gene2Genotype}
+ * object; all other {@link Gene2Genotype} objects are shared with the baseline and the overlay, which therefore must
+ * not be changed while this map is used.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public final class OverlayGenotypeMap extends AbstractMap<TermId, Gene2Genotype> {
+    /** Key: gene id; value: variants of the gene in the baseline (e.g., the template VCF file). */
+    private final Map<TermId, Gene2Genotype> baseline;
+    /** Key: gene id; value: variants of the gene in the baseline and in the overlay. */
+    private final Map<TermId, Gene2Genotype> overlay;
+    /** Number of genes of the overlay that are not in the baseline. */
+    private final int n_new_genes;
+
+    private OverlayGenotypeMap(Map<TermId, Gene2Genotype> baseline, Map<TermId, Gene2Genotype> overlay, int n_new_genes) {
+        this.baseline = baseline;
+        this.overlay = overlay;
+        this.n_new_genes = n_new_genes;
+    }
+
+    /**
+     * @param baseline genotype map of the template (not copied)
+     * @param injected genotype map of the variants that are added to the template
+     * @return a map with the variants of both maps
+     */
+    public static OverlayGenotypeMap of(Map<TermId, Gene2Genotype> baseline, Map<TermId, Gene2Genotype> injected) {
+        Map<TermId, Gene2Genotype> overlay = new HashMap<>();
+        int n_new_genes = 0;
+        for (Map.Entry<TermId, Gene2Genotype> entry : injected.entrySet()) {
+            Gene2Genotype base = baseline.get(entry.getKey());
+            if (base == null) {
+                overlay.put(entry.getKey(), entry.getValue());
+                n_new_genes++;
+                continue;
+            }
+            Gene2Genotype merged = new Gene2Genotype(base.getGeneId(), base.getSymbol());
+            for (SimpleVariant variant : base.getVarList()) {
+                merged.addVariant(variant);
+            }
+            for (SimpleVariant variant : entry.getValue().getVarList()) {
+                merged.addVariant(variant);
+            }
+            overlay.put(entry.getKey(), merged);
+        }
+        return new OverlayGenotypeMap(baseline, overlay, n_new_genes);
+    }
+
+    @Override
+    public Gene2Genotype get(Object key) {
+        Gene2Genotype g2g = overlay.get(key);
+        return g2g != null ? g2g : baseline.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return overlay.containsKey(key) || baseline.containsKey(key);
+    }
+
+    @Override
+    public int size() {
+        return baseline.size() + n_new_genes;
+    }
+
+    /** The genes of the baseline come first (with the variants of the overlay if any), then the new genes. */
+    @Override
+    public Set<Entry<TermId, Gene2Genotype>> entrySet() {
+        return new AbstractSet<Entry<TermId, Gene2Genotype>>() {
+            @Override
+            public Iterator<Entry<TermId, Gene2Genotype>> iterator() {
+                Iterator<TermId> baselineKeys = baseline.keySet().iterator();
+                Iterator<TermId> newKeys = overlay.keySet().stream()
+                        .filter(k -> !baseline.containsKey(k))
+                        .iterator();
+                return new Iterator<Entry<TermId, Gene2Genotype>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return baselineKeys.hasNext() || newKeys.hasNext();
+                    }
+
+                    @Override
+                    public Entry<TermId, Gene2Genotype> next() {
+                        TermId key = baselineKeys.hasNext() ? baselineKeys.next() : newKeys.next();
+                        return new SimpleImmutableEntry<>(key, get(key));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return OverlayGenotypeMap.this.size();
+            }
+        };
+    }
+}
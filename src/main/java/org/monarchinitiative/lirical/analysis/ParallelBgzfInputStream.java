@@ -0,0 +1,241 @@
+package org.monarchinitiative.lirical.analysis;
+
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * An input stream over the uncompressed content of a BGZF file (e.g., a VCF file compressed with bgzip) whose blocks
+ * are decompressed by a pool of threads. A BGZF file is a series of gzip members of at most 64 kb, each of which
+ * records its compressed size in the gzip header. The compressed blocks are therefore read one after the other on
+ * the calling thread, and up to {@code readAhead} of them are inflated concurrently. The uncompressed blocks are
+ * returned in the order of the file, so the stream can be used in place of a {@link java.util.zip.GZIPInputStream}.
+ * <p>
+ * This speeds up reading large whole-genome VCF files, for which a single thread cannot inflate the data as fast as
+ * {@link VcfLineScanner} can scan it.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class ParallelBgzfInputStream extends InputStream {
+    /** Length of the fixed part of the BGZF block header (gzip header with the BC extra subfield). */
+    private static final int BLOCK_HEADER_LENGTH = 18;
+    /** Length of the gzip footer (CRC32 and uncompressed size). */
+    private static final int BLOCK_FOOTER_LENGTH = 8;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final FileChannel channel;
+    private final ExecutorService executor;
+    /** Maximum number of blocks that are read ahead of the block that is currently returned. */
+    private final int readAhead;
+    /** Blocks that are being inflated, in the order of the file. */
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private final ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+    private boolean endOfFile = false;
+    /** The uncompressed block that is currently returned. */
+    private byte[] current = EMPTY;
+    private int position = 0;
+
+    /**
+     * @param path path to a BGZF file
+     * @param threads number of threads used to inflate blocks
+     * @param readAhead maximum number of blocks that are read ahead (at least {@code threads})
+     * @throws IOException if the file cannot be opened
+     */
+    public ParallelBgzfInputStream(Path path, int threads, int readAhead) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        final AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "bgzf-inflater-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.readAhead = Math.max(threads, readAhead);
+    }
+
+    /**
+     * Check whether a file starts with a BGZF block header, i.e., a gzip header with the extra subfield {@code BC}.
+     * @param path path to a file
+     * @return true if the file is in BGZF format
+     */
+    public static boolean isBgzf(Path path) {
+        try (FileChannel fc = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BLOCK_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining() && fc.read(buffer) >= 0) {
+                // keep reading
+            }
+            return !buffer.hasRemaining() && isBlockHeader(buffer);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static boolean isBlockHeader(ByteBuffer buffer) {
+        return (buffer.get(0) & 0xff) == 31 && (buffer.get(1) & 0xff) == 139 && buffer.get(2) == 8
+                && (buffer.get(3) & 4) != 0 && buffer.getShort(10) == 6
+                && buffer.get(12) == 'B' && buffer.get(13) == 'C' && buffer.getShort(14) == 2;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureData()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureData()) {
+            return -1;
+        }
+        int n = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return current.length - position;
+    }
+
+    /**
+     * Make sure that {@link #current} has unread bytes, taking the next uncompressed block if need be.
+     * @return false if the end of the file was reached
+     */
+    private boolean ensureData() throws IOException {
+        while (position == current.length) {
+            fillReadAhead();
+            if (pending.isEmpty()) {
+                return false;
+            }
+            current = await(pending.removeFirst());
+            position = 0;
+        }
+        return true;
+    }
+
+    /** Read compressed blocks and hand them to the inflater threads until {@link #readAhead} blocks are pending. */
+    private void fillReadAhead() throws IOException {
+        while (!endOfFile && pending.size() < readAhead) {
+            byte[] block = readBlock();
+            if (block == null) {
+                endOfFile = true;
+            } else {
+                pending.addLast(executor.submit(() -> inflate(block)));
+            }
+        }
+    }
+
+    /**
+     * @return the next compressed block including its header and footer, or null at the end of the file
+     */
+    private byte[] readBlock() throws IOException {
+        header.clear();
+        if (!readFully(header)) {
+            return null;
+        }
+        if (!isBlockHeader(header)) {
+            throw new IOException("Not a BGZF block at offset " + (channel.position() - BLOCK_HEADER_LENGTH));
+        }
+        int blockSize = (header.getShort(16) & 0xffff) + 1;
+        ByteBuffer block = ByteBuffer.allocate(blockSize);
+        header.flip();
+        block.put(header);
+        if (!readFully(block)) {
+            throw new EOFException("Truncated BGZF block");
+        }
+        return block.array();
+    }
+
+    /**
+     * @return false if the end of the file was reached before any byte was read
+     */
+    private boolean readFully(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (buffer.position() == start) {
+                    return false;
+                }
+                throw new EOFException("Truncated BGZF block");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Inflate one BGZF block and check its CRC32. This is called by the inflater threads.
+     * @param block a compressed block including its header and footer
+     * @return the uncompressed data (empty for the EOF marker block)
+     */
+    private static byte[] inflate(byte[] block) throws IOException {
+        ByteBuffer footer = ByteBuffer.wrap(block, block.length - BLOCK_FOOTER_LENGTH, BLOCK_FOOTER_LENGTH)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        int expectedCrc = footer.getInt();
+        int uncompressedSize = footer.getInt();
+        byte[] data = new byte[uncompressedSize];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(block, BLOCK_HEADER_LENGTH, block.length - BLOCK_HEADER_LENGTH - BLOCK_FOOTER_LENGTH);
+            int n = 0;
+            while (n < uncompressedSize) {
+                int inflated = inflater.inflate(data, n, uncompressedSize - n);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("BGZF block is shorter than its declared size");
+                }
+                n += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt BGZF block: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("CRC mismatch in BGZF block");
+        }
+        return data;
+    }
+
+    private byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LiricalRuntimeException("Interrupted while decompressing BGZF blocks");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        pending.clear();
+        channel.close();
+    }
+}
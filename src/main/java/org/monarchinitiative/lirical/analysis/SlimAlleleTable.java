@@ -0,0 +1,243 @@
+package org.monarchinitiative.lirical.analysis;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+import org.monarchinitiative.exomiser.core.proto.AlleleProto;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A compact, read-only table with the Exomiser data of the alleles that LIRICAL can use, i.e., the alleles in the
+ * exons and splice regions of the disease genes. The table is extracted once from the Exomiser MVStore with
+ * {@link #write(MVMap, GeneIntervalIndex, Path)} and is a small fraction of its size. It is opened by memory-mapping
+ * the file, so that opening is instantaneous and only the pages that are needed are read.
+ * <p>
+ * The file consists of a header, a sorted index with one fixed-size entry per allele (chromosome, position, offset of
+ * the allele in the data section), and a data section with the reference and alternate alleles (each preceded by its
+ * length as an int) and the serialized
+ * {@link AlleleProto.AlleleProperties} (without the rsID). Alleles are found by binary search in the index.
+ * Objects of this class can be shared between threads.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class SlimAlleleTable {
+    private static final Logger logger = LoggerFactory.getLogger(SlimAlleleTable.class);
+    /** "LIRA" in ASCII. */
+    private static final int MAGIC = 0x4C495241;
+    /** Version 2: the lengths of the alleles are ints (shorts in version 1, which truncated long alleles). */
+    private static final int FORMAT_VERSION = 2;
+    /** Magic, version, number of alleles, size of the data section. */
+    private static final int HEADER_LENGTH = 4 + 4 + 4 + 8;
+    /** Chromosome, position, offset in the data section. */
+    private static final int INDEX_ENTRY_LENGTH = 4 + 4 + 8;
+    /** Deletions that start at most this many bases before a region are checked for an overlap with the region. */
+    private static final int MAX_LOOKBACK = 1_000;
+    /** Regions that are closer than this are read with a single cursor. */
+    private static final int MAX_REGION_GAP = 10_000;
+
+    private final int size;
+    private final ByteBuffer index;
+    private final ByteBuffer data;
+
+    private SlimAlleleTable(int size, ByteBuffer index, ByteBuffer data) {
+        this.size = size;
+        this.index = index;
+        this.data = data;
+    }
+
+    /**
+     * Memory-map an allele table.
+     * @param path path to a file written by {@link #write(MVMap, GeneIntervalIndex, Path)}
+     * @return the table
+     */
+    public static SlimAlleleTable open(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_LENGTH);
+            if (header.getInt(0) != MAGIC) {
+                throw new LiricalRuntimeException(path + " is not a LIRICAL allele table");
+            }
+            int version = header.getInt(4);
+            if (version != FORMAT_VERSION) {
+                throw new LiricalRuntimeException(String.format("Unsupported version %d of allele table %s", version, path));
+            }
+            int size = header.getInt(8);
+            long dataLength = header.getLong(12);
+            long indexLength = (long) size * INDEX_ENTRY_LENGTH;
+            if (indexLength > Integer.MAX_VALUE || dataLength > Integer.MAX_VALUE) {
+                throw new LiricalRuntimeException("Allele table is too large to be memory-mapped: " + path);
+            }
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_LENGTH, indexLength);
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_LENGTH + indexLength, dataLength);
+            logger.info("Opened allele table {} with {} alleles", path, size);
+            return new SlimAlleleTable(size, index, data);
+        } catch (IOException e) {
+            throw new LiricalRuntimeException(String.format("Could not open allele table %s (%s)", path, e.getMessage()));
+        }
+    }
+
+    /** @return number of alleles in the table. */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param key an allele
+     * @return the Exomiser data for the allele, or null if the allele is not in the table
+     */
+    public AlleleProto.AlleleProperties get(AlleleProto.AlleleKey key) {
+        int chr = key.getChr();
+        int pos = key.getPosition();
+        // binary search for the first entry with this chromosome and position
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compare(mid, chr, pos) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        byte[] ref = key.getRef().getBytes(StandardCharsets.UTF_8);
+        byte[] alt = key.getAlt().getBytes(StandardCharsets.UTF_8);
+        for (int i = low; i < size && compare(i, chr, pos) == 0; i++) {
+            int offset = (int) index.getLong(i * INDEX_ENTRY_LENGTH + 8);
+            int refLength = data.getInt(offset);
+            if (!matches(offset + 4, refLength, ref)) {
+                continue;
+            }
+            offset += 4 + refLength;
+            int altLength = data.getInt(offset);
+            if (!matches(offset + 4, altLength, alt)) {
+                continue;
+            }
+            offset += 4 + altLength;
+            int propertiesLength = data.getInt(offset);
+            byte[] properties = new byte[propertiesLength];
+            // absolute reads on a duplicate keep the shared buffer thread-safe
+            ByteBuffer view = data.duplicate();
+            view.position(offset + 4);
+            view.get(properties);
+            try {
+                return AlleleProto.AlleleProperties.parseFrom(properties);
+            } catch (InvalidProtocolBufferException e) {
+                throw new LiricalRuntimeException("Corrupt entry in allele table: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private int compare(int i, int chr, int pos) {
+        int entryChr = index.getInt(i * INDEX_ENTRY_LENGTH);
+        if (entryChr != chr) {
+            return Integer.compare(entryChr, chr);
+        }
+        return Integer.compare(index.getInt(i * INDEX_ENTRY_LENGTH + 4), pos);
+    }
+
+    private boolean matches(int offset, int length, byte[] bytes) {
+        if (length != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Extract the alleles that overlap the regions of an index from the Exomiser database. The regions are read in
+     * the order of the MVStore keys, so each page of the MVStore is read at most once.
+     * @param alleleMap the allele map of the Exomiser database
+     * @param regions usually the exons (with splice regions) of the disease genes
+     * @param path the output file
+     * @return number of alleles written
+     */
+    public static int write(MVMap<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> alleleMap,
+                            GeneIntervalIndex regions,
+                            Path path) {
+        Path indexFile = path.resolveSibling(path.getFileName() + ".index.tmp");
+        Path dataFile = path.resolveSibling(path.getFileName() + ".data.tmp");
+        int n = 0;
+        long dataLength = 0;
+        try (DataOutputStream indexOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexFile)));
+             DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dataFile)))) {
+            AlleleProto.AlleleKey previous = null;
+            for (GeneIntervalIndex.Region region : regions.queryRegions(MAX_REGION_GAP)) {
+                AlleleProto.AlleleKey from = AlleleProto.AlleleKey.newBuilder()
+                        .setChr(region.getContigId())
+                        .setPosition(Math.max(1, region.getBegin() + 1 - MAX_LOOKBACK))
+                        .setRef("")
+                        .setAlt("")
+                        .build();
+                Cursor<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> cursor = alleleMap.cursor(from);
+                while (cursor.hasNext()) {
+                    AlleleProto.AlleleKey key = cursor.next();
+                    if (key.getChr() != region.getContigId() || key.getPosition() > region.getEnd()) {
+                        break;
+                    }
+                    // the lookback of a region may reach alleles that were written for the previous region
+                    if (previous != null && AlleleLookup.KEY_ORDER.compare(key, previous) <= 0) {
+                        continue;
+                    }
+                    int end = key.getPosition() + key.getRef().length() - 1;
+                    if (!regions.overlaps(key.getChr(), key.getPosition(), end)) {
+                        continue;
+                    }
+                    byte[] ref = key.getRef().getBytes(StandardCharsets.UTF_8);
+                    byte[] alt = key.getAlt().getBytes(StandardCharsets.UTF_8);
+                    byte[] properties = cursor.getValue().toBuilder().clearRsId().build().toByteArray();
+                    indexOut.writeInt(key.getChr());
+                    indexOut.writeInt(key.getPosition());
+                    indexOut.writeLong(dataLength);
+                    dataOut.writeInt(ref.length);
+                    dataOut.write(ref);
+                    dataOut.writeInt(alt.length);
+                    dataOut.write(alt);
+                    dataOut.writeInt(properties.length);
+                    dataOut.write(properties);
+                    dataLength += 4 + ref.length + 4 + alt.length + 4 + properties.length;
+                    previous = key;
+                    n++;
+                }
+            }
+        } catch (IOException e) {
+            throw new LiricalRuntimeException(String.format("Could not write allele table %s (%s)", path, e.getMessage()));
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp))) {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(FORMAT_VERSION);
+            header.writeInt(n);
+            header.writeLong(dataLength);
+            Files.copy(indexFile, out);
+            Files.copy(dataFile, out);
+        } catch (IOException e) {
+            throw new LiricalRuntimeException(String.format("Could not write allele table %s (%s)", path, e.getMessage()));
+        }
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(indexFile);
+            Files.delete(dataFile);
+        } catch (IOException e) {
+            throw new LiricalRuntimeException(String.format("Could not write allele table %s (%s)", path, e.getMessage()));
+        }
+        logger.info("Wrote {} alleles to {}", n, path);
+        return n;
+    }
+}
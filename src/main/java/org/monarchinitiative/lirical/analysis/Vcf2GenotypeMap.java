@@ -2,6 +2,7 @@ package org.monarchinitiative.lirical.analysis;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Sets;
 
 import de.charite.compbio.jannovar.annotation.VariantEffect;
@@ -14,10 +15,10 @@ import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
 import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFContigHeaderLine;
 import htsjdk.variant.vcf.VCFFileReader;
 import htsjdk.variant.vcf.VCFHeader;
 
-import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 import org.monarchinitiative.exomiser.core.genome.GenomeAssembly;
 import org.monarchinitiative.exomiser.core.genome.JannovarVariantAnnotator;
@@ -28,6 +29,7 @@ import org.monarchinitiative.exomiser.core.model.pathogenicity.ClinVarData;
 import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicityData;
 import org.monarchinitiative.exomiser.core.model.pathogenicity.VariantEffectPathogenicityScore;
 import org.monarchinitiative.exomiser.core.proto.AlleleProto;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
 import org.monarchinitiative.phenol.base.PhenolRuntimeException;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 import org.slf4j.Logger;
@@ -36,6 +38,10 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * This class is responsible for parsing the VCF file and extracting variants and genotypes. Its
@@ -57,6 +63,25 @@ public class Vcf2GenotypeMap {
      * We will assume a frequency of 1:100,000 if no frequency data is available.
      */
     private final float DEFAULT_FREQUENCY = 0.00001F;
+    /**
+     * Number of (non-filtered) VCF records that are annotated together as one unit of work.
+     */
+    private static final int BATCH_SIZE = 1_000;
+    /**
+     * Disease-gene loci that are separated by fewer bases are read with a single query of an indexed VCF file. The
+     * uncompressed BGZF blocks hold at most 64 kb, so neighbouring loci are likely to share blocks.
+     */
+    private static final int MAX_QUERY_GAP = 100_000;
+    /**
+     * Number of threads used to annotate the VCF file. If this is 1, the VCF file is annotated on the calling thread.
+     * The same number of threads is used to decompress bgzipped VCF files that are read completely.
+     */
+    private final int threads;
+    /**
+     * Maximum number of batches that have been read from the VCF file but have not yet been merged into
+     * {@link #gene2genotypeMap}. This limits the number of {@link VariantContext} objects held in memory.
+     */
+    private final int queueCapacity;
     /**
      * Reference to the Jannovar transcript file data for annotating the VCF file.
      */
@@ -85,6 +110,23 @@ public class Vcf2GenotypeMap {
      * Number of variants that were removed because of the quality filter.
      */
     private int n_filtered_variants = 0;
+    /**
+     * Number of non-filtered variants that were skipped because they are not located in or near a disease gene.
+     */
+    private int n_off_target_variants = 0;
+    /**
+     * Number of alternate alleles that were skipped because their population frequency exceeds {@link #maxFrequency}.
+     */
+    private int n_common_variants = 0;
+    /**
+     * If not null, alleles whose maximum population frequency in the Exomiser data exceeds this value (in percent)
+     * are skipped before they are annotated by Jannovar.
+     */
+    private final Double maxFrequency;
+    /**
+     * If not null, only variants that overlap one of the intervals of this index are annotated.
+     */
+    private final GeneIntervalIndex geneIntervalIndex;
     /**
      * There are gene symbols returned by Jannovar for which we cannot find a geneId. This issues seems to be related
      * to the input files used by Jannovar from UCSC ( knownToLocusLink.txt.gz has links between ucsc ids, e.g.,
@@ -93,8 +135,17 @@ public class Vcf2GenotypeMap {
     private final Set<String> symbolsWithoutGeneIds = new HashSet<>();
     /**
      * Key: an EntrezGene gene id; value a {@link Gene2Genotype} obhject with variants/genotypes in this gene.
+     * This is the map of the first sample of the VCF file.
      */
     private Map<TermId, Gene2Genotype> gene2genotypeMap;
+    /**
+     * The samples whose genotypes are extracted (either only the first sample or all samples of the VCF file).
+     */
+    private List<String> selectedSamples;
+    /**
+     * One map with key: an EntrezGene gene id, value: {@link Gene2Genotype} for each of the {@link #selectedSamples}.
+     */
+    private List<Map<TermId, Gene2Genotype>> sampleGenotypeMaps;
     /**
      * Number of samples in the VCF file.
      */
@@ -108,12 +159,20 @@ public class Vcf2GenotypeMap {
      */
     private List<String> samplenames;
 
-    private Map<String, TermId> symbolToIdMap;
+    /**
+     * Index of the genes, used to find the {@link TermId} of the gene ids and symbols reported by Jannovar
+     * without creating new objects for every variant.
+     */
+    private final GeneIndex geneIndex;
 
     /**
-     * A map with data from the Exomiser database.
+     * Access to the frequency and pathogenicity data from the Exomiser database.
      */
-    private final MVMap<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> alleleMap;
+    private final AlleleLookup alleleLookup;
+    /** The Exomiser database (null if the alleles are read from a {@link SlimAlleleTable}). */
+    private final MVStore mvStore;
+    /** Page cache and file accesses of {@link #mvStore} while the VCF file was read. */
+    private MvStoreStatistics mvStoreStatistics = null;
     /**
      * A set of interpretation classes from ClinVar that we will regard as pathogenic.
      */
@@ -124,164 +183,476 @@ public class Vcf2GenotypeMap {
 
 
     public Vcf2GenotypeMap(String vcf, JannovarData jannovar, MVStore mvs, GenomeAssembly ga, Map<TermId, String> geneId2SymbolMap) {
-        this.vcfPath = vcf;
-        this.jannovarData = jannovar;
-        this.alleleMap = MvStoreUtil.openAlleleMVMap(mvs);
+        this(new Builder(vcf, jannovar, mvs, ga, geneId2SymbolMap));
+    }
+
+    private Vcf2GenotypeMap(Builder builder) {
+        this.vcfPath = builder.vcfPath;
+        this.jannovarData = builder.jannovarData;
+        this.mvStore = builder.mvStore;
+        this.alleleLookup = builder.alleleLookup != null ? builder.alleleLookup :
+                new AlleleLookup(MvStoreUtil.openAlleleMVMap(builder.mvStore));
         this.referenceDictionary = jannovarData.getRefDict();
         this.chromosomeMap = jannovarData.getChromosomes();
-        this.genomeAssembly = ga;
-        initSymbolToGenIdMap(geneId2SymbolMap);
+        this.genomeAssembly = builder.genomeAssembly;
+        this.threads = Math.max(1, builder.threads);
+        this.queueCapacity = builder.queueCapacity > 0 ? builder.queueCapacity : 2 * this.threads;
+        this.geneIntervalIndex = builder.geneIntervalIndex;
+        this.maxFrequency = builder.maxFrequency;
+        this.geneIndex = builder.geneIndex != null ? builder.geneIndex :
+                GeneIndex.of(ImmutableMultimap.of(), builder.geneId2SymbolMap, ImmutableMap.of());
     }
 
     /**
-     * As a part of the {@link Vcf2GenotypeMap} we get information about the transcripts
-     * and genes that contain the identified variants. In most cases, the Jannovar-derived
-     * functions return both the gene symbol and the NCBI gene id. This data in turn is derived
-     * from UCSC. In some cases, the data from UCSC is incomplete for some variants, and Jannovar
-     * returns the symbol but not the gene id.
-     * This function inverts the map geneId2SymbolMap. Note that a very small
-     * number of the symbols are duplicate (these are TRNA genes). For now it seems
-     * better just to record this in the log but to choose one of the ids. This is because
-     * if we just have the symbol but not the gene ID, we cannot know the correct geneID to choose anyway.
-     * This seems to affect just one TRNA at present, but we cannot just invert.
+     * Read the VCF file and extract the genotypes of the first sample. If more than one thread was requested,
+     * the VCF records are annotated concurrently (see {@link #annotateConcurrently(Iterator)}), otherwise on the
+     * calling thread. In both cases the records are merged into {@link #gene2genotypeMap} in the order in which they
+     * occur in the VCF file, so that the result does not depend on the number of threads.
+     *
+     * @return map with key=TermId of a Gene, value corresponding {@link Gene2Genotype} object
      */
-    private void initSymbolToGenIdMap(Map<TermId, String> geneId2SymbolMap) {
-        Map<String, TermId> tempmap = new HashMap<>();
-        for (Map.Entry<TermId, String> entry : geneId2SymbolMap.entrySet()) {
-            tempmap.put(entry.getValue(), entry.getKey());
-        }
-        symbolToIdMap = ImmutableMap.copyOf(tempmap);
+    public Map<TermId, Gene2Genotype> vcf2genotypeMap() {
+        readVcf(false);
+        return gene2genotypeMap;
     }
 
     /**
-     * Read the VCF file and extract genotype
-     *
-     * @return map with key=TermId of a Gene, value corresponding {@link Gene2Genotype} object
+     * Read the VCF file and extract the genotypes of all samples in a single pass. Each record is annotated and
+     * looked up in the Exomiser data only once; only the assignment of the genotypes is done for each sample.
+     * @return map with key: sample name; value: map with key=TermId of a Gene, value: {@link Gene2Genotype} object.
+     * The samples are in the order of the VCF file.
      */
-    public Map<TermId, Gene2Genotype> vcf2genotypeMap() {
-        // whether or not to just look at a specific genomic interval
-        final boolean useInterval = false;
-        this.gene2genotypeMap = new HashMap<>();
+    public Map<String, Map<TermId, Gene2Genotype>> vcf2genotypeMaps() {
+        readVcf(true);
+        Map<String, Map<TermId, Gene2Genotype>> sample2genotypeMap = new LinkedHashMap<>();
+        for (int i = 0; i < selectedSamples.size(); i++) {
+            sample2genotypeMap.put(selectedSamples.get(i), sampleGenotypeMaps.get(i));
+        }
+        return sample2genotypeMap;
+    }
+
+    private void readVcf(boolean allSamples) {
+        // whether or not to just look at the genomic intervals of the geneIntervalIndex
+        final boolean useInterval = geneIntervalIndex != null && hasTabixIndex();
         final long startTime = System.nanoTime();
+        final MvStoreStatistics mvStoreBefore = mvStore != null ? MvStoreStatistics.of(mvStore) : null;
 
-        try (VCFFileReader vcfReader = new VCFFileReader(new File(vcfPath), useInterval)) {
-            //final SAMSequenceDictionary seqDict = VCFFileReader.getSequenceDictionary(new File(getOptionalVcfPath));
-            VCFHeader vcfHeader = vcfReader.getFileHeader();
-            this.samplenames = vcfHeader.getSampleNamesInOrder();
-            this.n_samples = samplenames.size();
-            this.samplename = samplenames.get(0);
-            logger.trace("Annotating VCF at " + vcfPath + " for sample " + this.samplename);
-            CloseableIterator<VariantContext> iter = vcfReader.iterator();
-            VariantContextAnnotator variantEffectAnnotator =
-                    new VariantContextAnnotator(this.referenceDictionary, this.chromosomeMap,
-                            new VariantContextAnnotator.Options());
-            // Note that we do not use Genomiser data in this version of LIRICAL
-            // Therefore, just pass in an empty list to satisfy the API
-            List<RegulatoryFeature> emtpylist = ImmutableList.of();
-            ChromosomalRegionIndex<RegulatoryFeature> emptyRegionIndex = ChromosomalRegionIndex.of(emtpylist);
-            JannovarVariantAnnotator jannovarVariantAnnotator = new JannovarVariantAnnotator(genomeAssembly, jannovarData, emptyRegionIndex);
-            while (iter.hasNext()) {
-                VariantContext vc = iter.next();
-                if (vc.isFiltered()) {
-                    // this is a failing VariantContext
-                    n_filtered_variants++;
+        int n_uncalled_variants = 0;
+        int n_reference_blocks = 0;
+        if (useInterval) {
+            try (VCFFileReader vcfReader = new VCFFileReader(new File(vcfPath), true)) {
+                initSamples(vcfReader.getFileHeader(), allSamples);
+                annotate(new RegionIterator(vcfReader, geneIntervalIndex.queryRegions(MAX_QUERY_GAP)));
+            }
+        } else {
+            // The scanner rejects filtered and off-target records before they are decoded by htsjdk, with the same
+            // rules as nextBatch and annotateBatch. Uncalled reference blocks are skipped, other uncalled records are
+            // only counted because annotateBatch still records their genes.
+            try (VcfLineScanner scanner = VcfLineScanner.open(vcfPath, geneIntervalIndex, !allSamples, threads)) {
+                initSamples(scanner.getHeader(), allSamples);
+                annotate(scanner);
+                n_uncalled_variants = scanner.getN_uncalled_records();
+                n_reference_blocks = scanner.getN_reference_blocks();
+                n_filtered_variants += scanner.getN_filtered_records();
+                n_off_target_variants += scanner.getN_off_target_records();
+                n_good_quality_variants += scanner.getN_off_target_records() + scanner.getN_reference_blocks();
+            }
+        }
+
+        final long endTime = System.nanoTime();
+        logger.info(String.format("Finished Annotating VCF (time= %.2f sec, threads=%d, samples=%d).",
+                (endTime - startTime) / 1_000_000_000.0, threads, selectedSamples.size()));
+        logger.info("Extracted {} non-filtered variants and {} variants that were removed because of a quality filter",
+                n_good_quality_variants, n_filtered_variants);
+        if (maxFrequency != null) {
+            logger.info("Skipped {} alleles with a population frequency above {}%", n_common_variants, maxFrequency);
+        }
+        if (n_uncalled_variants > 0) {
+            logger.info("Found {} non-filtered variants with a 0/0 or ./. genotype of sample {} (genes recorded, variants not scored), {} of which are reference blocks",
+                    n_uncalled_variants, samplename, n_reference_blocks);
+        }
+        if (geneIntervalIndex != null) {
+            logger.info("Skipped {} non-filtered variants located more than {} bp away from the selected genes",
+                    n_off_target_variants, geneIntervalIndex.getPadding());
+        }
+        logger.info(alleleLookup.getStatistics());
+        if (mvStore != null) {
+            mvStoreStatistics = MvStoreStatistics.of(mvStore).since(mvStoreBefore);
+            logger.info(mvStoreStatistics.toString());
+        }
+        logger.info("Symbols without gene ids n={}.", symbolsWithoutGeneIds.size());
+        logger.info(String.join(";", symbolsWithoutGeneIds));
+    }
+
+    private void initSamples(VCFHeader vcfHeader, boolean allSamples) {
+        this.samplenames = vcfHeader.getSampleNamesInOrder();
+        this.n_samples = samplenames.size();
+        this.samplename = samplenames.get(0);
+        this.selectedSamples = allSamples ? ImmutableList.copyOf(samplenames) : ImmutableList.of(samplename);
+        this.sampleGenotypeMaps = new ArrayList<>();
+        for (int i = 0; i < selectedSamples.size(); i++) {
+            sampleGenotypeMaps.add(new HashMap<>());
+        }
+        this.gene2genotypeMap = sampleGenotypeMaps.get(0);
+        logger.trace("Annotating VCF at " + vcfPath + " for samples " + String.join(",", selectedSamples));
+    }
+
+    private void annotate(Iterator<VariantContext> iter) {
+        if (threads > 1) {
+            annotateConcurrently(iter);
+        } else {
+            annotateSequentially(iter);
+        }
+    }
+
+    /**
+     * The tabix index of a bgzipped VCF file is expected at the path of the VCF file with the suffix {@code .tbi}.
+     * CSI indices are not supported by the htsjdk version used by LIRICAL; such files are read in full.
+     * @return true if the VCF file has a tabix index and can be queried by region
+     */
+    private boolean hasTabixIndex() {
+        if (new File(vcfPath + ".tbi").exists()) {
+            return true;
+        }
+        if (new File(vcfPath + ".csi").exists()) {
+            logger.warn("CSI index of {} is not supported, reading the whole VCF file.", vcfPath);
+        }
+        return false;
+    }
+
+    /**
+     * Annotate all records of the VCF file on the calling thread.
+     * @param iter iterator over the records of the VCF file
+     */
+    private void annotateSequentially(Iterator<VariantContext> iter) {
+        RecordAnnotator annotator = new RecordAnnotator();
+        List<VariantContext> batch;
+        while (!(batch = nextBatch(iter)).isEmpty()) {
+            mergeBatch(annotateBatch(batch, annotator));
+        }
+    }
+
+    /**
+     * Annotate the records of the VCF file with a pool of {@link #threads} worker threads. The calling thread
+     * reads batches of {@link #BATCH_SIZE} records and hands them to the workers. At most {@link #queueCapacity}
+     * batches can be waiting to be merged; once this limit is reached, the calling thread waits for the oldest batch
+     * and merges it before reading any further. This keeps memory bounded and the merge order deterministic.
+     * Each worker thread uses its own Jannovar annotators, the Exomiser MVStore is only read.
+     * @param iter iterator over the records of the VCF file
+     */
+    private void annotateConcurrently(Iterator<VariantContext> iter) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ThreadLocal<RecordAnnotator> annotators = ThreadLocal.withInitial(RecordAnnotator::new);
+        Deque<Future<AnnotatedBatch>> pending = new ArrayDeque<>();
+        try {
+            List<VariantContext> batch;
+            while (!(batch = nextBatch(iter)).isEmpty()) {
+                final List<VariantContext> records = batch;
+                pending.addLast(executor.submit(() -> annotateBatch(records, annotators.get())));
+                if (pending.size() >= queueCapacity) {
+                    mergeBatch(awaitBatch(pending.removeFirst()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                mergeBatch(awaitBatch(pending.removeFirst()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private AnnotatedBatch awaitBatch(Future<AnnotatedBatch> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LiricalRuntimeException("Interrupted while annotating VCF file " + vcfPath);
+        } catch (ExecutionException e) {
+            logger.error("Could not annotate VCF file {}", vcfPath, e.getCause());
+            throw new LiricalRuntimeException(String.format("Could not annotate VCF file %s (%s)", vcfPath, e.getCause()));
+        }
+    }
+
+    /**
+     * Read up to {@link #BATCH_SIZE} records that passed the quality filter. Failing records are counted and skipped,
+     * as are records that do not overlap the {@link #geneIntervalIndex} (if any).
+     * @param iter iterator over the records of the VCF file
+     * @return list of non-filtered records, empty if the end of the VCF file was reached.
+     */
+    private List<VariantContext> nextBatch(Iterator<VariantContext> iter) {
+        List<VariantContext> batch = new ArrayList<>(BATCH_SIZE);
+        while (batch.size() < BATCH_SIZE && iter.hasNext()) {
+            VariantContext vc = iter.next();
+            if (vc.isFiltered()) {
+                // this is a failing VariantContext
+                n_filtered_variants++;
+            } else {
+                n_good_quality_variants++;
+                if (geneIntervalIndex != null && !geneIntervalIndex.overlaps(vc.getContig(), vc.getStart(), vc.getEnd())) {
+                    n_off_target_variants++;
                     continue;
-                } else {
-                    n_good_quality_variants++;
                 }
-                vc = variantEffectAnnotator.annotateVariantContext(vc);
-                List<Allele> altAlleles = vc.getAlternateAlleles();
-                String contig = vc.getContig();
-                int start = vc.getStart();
-                String ref = vc.getReference().getBaseString();
-                for (int i = 0; i < altAlleles.size(); i++) {
-                    Allele allele = altAlleles.get(i);
-                    String alt = allele.getBaseString();
-                    Map<String, SampleGenotype> sampleGenotypes = createAlleleSampleGenotypes(vc, i);
-                    VariantAnnotation va = jannovarVariantAnnotator.annotate(contig, start, ref, alt);
-                    VariantEffect variantEffect = va.getVariantEffect();
-                    if (!variantEffect.isOffExome()) {
-                        String genIdString = va.getGeneId(); // for now assume this is an Entrez Gene ID
-                        String symbol = va.getGeneSymbol();
-                        TermId geneId;
-                        if (genIdString.isEmpty()) {
-                            if (symbolToIdMap.containsKey(symbol)) {
-                                geneId = symbolToIdMap.get(symbol);
-                            } else {
-                                // this is something where the NCBI gene is is not included in the Jannovar file
-                                // it could be e.g., abParts, or a gene such as DQ582201 (a piRNA)
-                                //System.out.println("ABOUT TO CONU with " + genIdString + ":"+ symbol);
-                                symbolsWithoutGeneIds.add(symbol);
-                                continue;
-                            }
-                        } else {
-                            try {
-                                geneId = TermId.of(NCBI_ENTREZ_GENE_PREFIX, genIdString);
-                            } catch (PhenolRuntimeException pre) {
-                                logger.error("Could not identify gene \"{}\" with symbol \"{}\" for variant {}", genIdString, symbol, va.toString());
-                                // if gene is not included in the Jannovar file then it is not a Mendelian
-                                // disease gene, e.g., abParts.
-                                //System.out.println(genIdString +"!");
-                                //System.out.print(symbol+"!");
-                                if (!symbol.isEmpty()) {
-                                    symbolsWithoutGeneIds.add(symbol);
-                                    System.out.println("Adding " + symbol);
-                                }
-                                // Therefore just skip it
-                                continue;
-                            }
-                        }
+                batch.add(vc);
+            }
+        }
+        return batch;
+    }
 
-                        gene2genotypeMap.putIfAbsent(geneId, new Gene2Genotype(geneId, symbol));
-                        Gene2Genotype gene2Genotype = gene2genotypeMap.get(geneId);
-                        VariantEvaluation veval = buildVariantEvaluation(vc, va, sampleGenotypes);
-                        AlleleProto.AlleleKey alleleKey = AlleleProtoAdaptor.toAlleleKey(veval);
-                        AlleleProto.AlleleProperties alleleProp = alleleMap.get(alleleKey);
-                        int chrom = veval.getChromosome();
-                        int pos = veval.getPosition();
-                        List<TranscriptAnnotation> transcriptAnnotationList = veval.getTranscriptAnnotations();
-                        String genotypeString = veval.getGenotypeString();
-                        // Some VCF files may have been prepared from multi-VCF files. In some cases,
-                        // 0/0 is left in, i.e., HOMOZYGOUS_REF, or ./., i.e., no call possible
-                        // We will just skip these lines
-                        if ((genotypeString.equals("0/0") || genotypeString.equals("./.")))
-                            continue;
-                        float freq;
-                        float pathogenicity;
-                        if (alleleProp == null) {
-                            // this means the variant is not represented in the Exomiser data
-                            // this is not an error, the variant could be very rare or otherwise not seen before
-                            freq = DEFAULT_FREQUENCY;
-                            pathogenicity = VariantEffectPathogenicityScore.getPathogenicityScoreOf(variantEffect);
-                            gene2Genotype.addVariant(chrom, pos, ref, alt, transcriptAnnotationList, genotypeString, pathogenicity, freq, ClinVarData.ClinSig.NOT_PROVIDED);
-                        } else {
-                            FrequencyData frequencyData = AlleleProtoAdaptor.toFrequencyData(alleleProp);
-                            PathogenicityData pathogenicityData = AlleleProtoAdaptor.toPathogenicityData(alleleProp);
-                            freq = frequencyData.getMaxFreq();
-                            pathogenicity = calculatePathogenicity(variantEffect, pathogenicityData);
-                            ClinVarData cVarData = pathogenicityData.getClinVarData();
-                            // Only use ClinVar data if it is backed up by assertions.
-                            if (cVarData.getReviewStatus().startsWith("no_assertion")) {
-                                gene2Genotype.addVariant(chrom, pos, ref, alt, transcriptAnnotationList, genotypeString, pathogenicity, freq, ClinVarData.ClinSig.NOT_PROVIDED);
-                            } else {
-                                gene2Genotype.addVariant(chrom, pos, ref, alt, transcriptAnnotationList, genotypeString, pathogenicity, freq, cVarData.getPrimaryInterpretation());
-                            }
-                        }
+    /**
+     * Add the annotated alleles of one batch to the genotype maps of the {@link #selectedSamples}. This is always
+     * called by the thread that reads the VCF file, batches are merged in the order of the VCF file.
+     * @param batch alleles that were annotated by {@link #annotateBatch(List, RecordAnnotator)}
+     */
+    private void mergeBatch(AnnotatedBatch batch) {
+        symbolsWithoutGeneIds.addAll(batch.symbolsWithoutGeneIds);
+        n_common_variants += batch.n_common_variants;
+        for (AnnotatedAllele aa : batch.alleles) {
+            for (int i = 0; i < selectedSamples.size(); i++) {
+                Map<TermId, Gene2Genotype> genotypeMap = sampleGenotypeMaps.get(i);
+                genotypeMap.putIfAbsent(aa.geneId, new Gene2Genotype(aa.geneId, aa.symbol));
+                String genotypeString = aa.genotypeStrings[i];
+                if (genotypeString != null) {
+                    Gene2Genotype gene2Genotype = genotypeMap.get(aa.geneId);
+                    gene2Genotype.addVariant(aa.chrom, aa.pos, aa.ref, aa.alt, aa.transcriptAnnotations,
+                            genotypeString, aa.pathogenicity, aa.frequency, aa.clinSig);
+                }
+            }
+        }
+    }
 
+    /**
+     * Annotate the alternate alleles of a batch of VCF records with Jannovar and the Exomiser data.
+     * This method does not change the state of this object and can be called from worker threads.
+     * @param records non-filtered VCF records
+     * @param annotator Jannovar annotators that must not be shared with other threads
+     * @return the annotated alleles in VCF order
+     */
+    private AnnotatedBatch annotateBatch(List<VariantContext> records, RecordAnnotator annotator) {
+        AnnotatedBatch annotated = new AnnotatedBatch();
+        List<PendingAllele> pending = new ArrayList<>();
+        List<AlleleProto.AlleleKey> alleleKeys = new ArrayList<>();
+        // key: record; value: genotype strings of the selected samples for each alternate allele
+        List<String[][]> genotypes = new ArrayList<>(records.size());
+        for (VariantContext vc : records) {
+            genotypes.add(genotypeStrings(vc));
+        }
+        List<boolean[]> commonAlleles = maxFrequency == null ? null : commonAlleles(records, genotypes, annotated);
+        for (int r = 0; r < records.size(); r++) {
+            boolean[] common = commonAlleles == null ? null : commonAlleles.get(r);
+            if (common != null && allTrue(common)) {
+                continue;
+            }
+            VariantContext vc = annotator.variantEffectAnnotator.annotateVariantContext(records.get(r));
+            List<Allele> altAlleles = vc.getAlternateAlleles();
+            String contig = vc.getContig();
+            int start = vc.getStart();
+            String ref = vc.getReference().getBaseString();
+            for (int i = 0; i < altAlleles.size(); i++) {
+                if (common != null && common[i]) {
+                    continue;
+                }
+                Allele allele = altAlleles.get(i);
+                String alt = allele.getBaseString();
+                String[] genotypeStrings = genotypes.get(r)[i];
+                boolean called = isCalled(genotypeStrings);
+                if (!called && isSymbolic(allele)) {
+                    // a reference block of a gVCF file, e.g., <NON_REF>, which does not belong to a gene
+                    // (the same rule is applied by the VcfLineScanner before decoding)
+                    continue;
+                }
+                VariantAnnotation va = annotator.jannovarVariantAnnotator.annotate(contig, start, ref, alt);
+                VariantEffect variantEffect = va.getVariantEffect();
+                if (variantEffect.isOffExome()) {
+                    continue;
+                }
+                String genIdString = va.getGeneId(); // for now assume this is an Entrez Gene ID
+                String symbol = va.getGeneSymbol();
+                TermId geneId;
+                // In most cases, Jannovar returns both the gene symbol and the NCBI gene id. This data in turn is
+                // derived from UCSC, which is incomplete for some variants, so that sometimes only the symbol is
+                // returned. A very small number of symbols are duplicate (TRNA genes); we cannot know the correct
+                // gene id for those anyway, and the index chooses one of them.
+                int gene = genIdString.isEmpty() ?
+                        geneIndex.geneIndexOfSymbol(symbol) :
+                        geneIndex.geneIndex(genIdString);
+                if (gene != GeneIndex.NOT_FOUND) {
+                    geneId = geneIndex.geneId(gene);
+                } else if (genIdString.isEmpty()) {
+                    // this is something where the NCBI gene is is not included in the Jannovar file
+                    // it could be e.g., abParts, or a gene such as DQ582201 (a piRNA)
+                    annotated.symbolsWithoutGeneIds.add(symbol);
+                    continue;
+                } else {
+                    try {
+                        geneId = TermId.of(NCBI_ENTREZ_GENE_PREFIX, genIdString);
+                    } catch (PhenolRuntimeException pre) {
+                        logger.error("Could not identify gene \"{}\" with symbol \"{}\" for variant {}", genIdString, symbol, va.toString());
+                        // if gene is not included in the Jannovar file then it is not a Mendelian
+                        // disease gene, e.g., abParts.
+                        if (!symbol.isEmpty()) {
+                            annotated.symbolsWithoutGeneIds.add(symbol);
+                            logger.trace("Adding symbol without gene id {}", symbol);
+                        }
+                        // Therefore just skip it
+                        continue;
                     }
                 }
+                if (!called) {
+                    pending.add(new PendingAllele(geneId, symbol, ref, alt, null, variantEffect, null, genotypeStrings));
+                } else {
+                    // The Jannovar annotation is all we need to look up the allele, there is no need to build an
+                    // Exomiser VariantEvaluation that would keep a reference to the htsjdk VariantContext
+                    AlleleProto.AlleleKey alleleKey = AlleleProtoAdaptor.toAlleleKey(va);
+                    pending.add(new PendingAllele(geneId, symbol, ref, alt, va, variantEffect, alleleKey, genotypeStrings));
+                    alleleKeys.add(alleleKey);
+                }
             }
+        }
+        // Look up all alleles of the batch at once so that the MVStore is read in key order
+        Map<AlleleProto.AlleleKey, AlleleLookup.AlleleData> alleleDataMap = alleleLookup.getAll(alleleKeys);
+        for (PendingAllele pa : pending) {
+            if (pa.variantAnnotation == null) {
+                annotated.alleles.add(AnnotatedAllele.notCalled(pa.geneId, pa.symbol, pa.genotypeStrings));
+            } else {
+                annotated.alleles.add(score(pa, alleleDataMap.get(pa.alleleKey)));
+            }
+        }
+        return annotated;
+    }
 
+    /**
+     * Some VCF files may have been prepared from multi-VCF files. In some cases, 0/0 is left in, i.e.,
+     * HOMOZYGOUS_REF, or ./., i.e., no call possible. We will just skip these lines for the sample (but we still
+     * record the gene).
+     * @param vc a VCF record
+     * @return for each alternate allele, the genotype strings of the {@link #selectedSamples} (null: not called)
+     */
+    private String[][] genotypeStrings(VariantContext vc) {
+        String[][] genotypeStrings = new String[vc.getAlternateAlleles().size()][selectedSamples.size()];
+        for (int i = 0; i < genotypeStrings.length; i++) {
+            Map<String, SampleGenotype> sampleGenotypes = createAlleleSampleGenotypes(vc, i);
+            for (int s = 0; s < selectedSamples.size(); s++) {
+                SampleGenotype sampleGenotype = sampleGenotypes.get(selectedSamples.get(s));
+                String genotypeString = sampleGenotype == null ? "./." : sampleGenotype.toString();
+                if (!(genotypeString.equals("0/0") || genotypeString.equals("./."))) {
+                    genotypeStrings[i][s] = genotypeString;
+                }
+            }
+        }
+        return genotypeStrings;
+    }
 
+    /** @return true if the allele is called in at least one of the selected samples. */
+    private static boolean isCalled(String[] genotypeStrings) {
+        for (String genotypeString : genotypeStrings) {
+            if (genotypeString != null) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        final long endTime = System.nanoTime();
-        logger.info(String.format("Finished Annotating VCF (time= %.2f sec).", (endTime - startTime) / 1_000_000_000.0));
-        logger.info("Extracted {} non-filtered variants and {} variants that were removed because of a quality filter",
-                n_good_quality_variants, n_filtered_variants);
-        logger.info("Symbols without gene ids n={}.", symbolsWithoutGeneIds.size());
-        logger.info(String.join(";", symbolsWithoutGeneIds));
-        return gene2genotypeMap;
+    /**
+     * Find the alternate alleles whose maximum population frequency exceeds {@link #maxFrequency}. The alleles are
+     * looked up with keys that are calculated from the VCF record, i.e., before the transcript annotation. The data
+     * are kept in the cache of the {@link #alleleLookup}, so the alleles that pass are not read twice. Only alleles
+     * that are called in one of the selected samples and are not symbolic are looked up: the Exomiser data have no
+     * symbolic alleles, and the genes of uncalled alleles are recorded as if there were no frequency filter.
+     * @param records non-filtered VCF records
+     * @param genotypes the genotype strings of the records (see {@link #genotypeStrings(VariantContext)})
+     * @param annotated used to count the common alleles
+     * @return for each record, an array with one flag per alternate allele (true: the allele is common)
+     */
+    private List<boolean[]> commonAlleles(List<VariantContext> records, List<String[][]> genotypes, AnnotatedBatch annotated) {
+        List<AlleleProto.AlleleKey[]> recordKeys = new ArrayList<>(records.size());
+        List<AlleleProto.AlleleKey> keys = new ArrayList<>();
+        for (int r = 0; r < records.size(); r++) {
+            VariantContext vc = records.get(r);
+            List<Allele> altAlleles = vc.getAlternateAlleles();
+            AlleleProto.AlleleKey[] altKeys = new AlleleProto.AlleleKey[altAlleles.size()];
+            Integer chr = referenceDictionary.getContigNameToID().get(vc.getContig());
+            for (int i = 0; chr != null && i < altKeys.length; i++) {
+                if (!isCalled(genotypes.get(r)[i]) || isSymbolic(altAlleles.get(i))) {
+                    continue;
+                }
+                // trimmed in the same way as by the JannovarVariantAnnotator
+                AllelePosition allelePosition = AllelePosition.trim(vc.getStart(),
+                        vc.getReference().getBaseString(), altAlleles.get(i).getBaseString());
+                altKeys[i] = AlleleProto.AlleleKey.newBuilder()
+                        .setChr(chr)
+                        .setPosition(allelePosition.getPos())
+                        .setRef(allelePosition.getRef())
+                        .setAlt(allelePosition.getAlt())
+                        .build();
+                keys.add(altKeys[i]);
+            }
+            recordKeys.add(altKeys);
+        }
+        Map<AlleleProto.AlleleKey, AlleleLookup.AlleleData> alleleDataMap = alleleLookup.getAll(keys);
+        List<boolean[]> commonAlleles = new ArrayList<>(records.size());
+        for (AlleleProto.AlleleKey[] altKeys : recordKeys) {
+            boolean[] common = new boolean[altKeys.length];
+            for (int i = 0; i < altKeys.length; i++) {
+                AlleleLookup.AlleleData data = altKeys[i] == null ? null : alleleDataMap.get(altKeys[i]);
+                if (data != null && data.isFound() && data.getFrequencyData().getMaxFreq() > maxFrequency) {
+                    common[i] = true;
+                    annotated.n_common_variants++;
+                }
+            }
+            commonAlleles.add(common);
+        }
+        return commonAlleles;
+    }
+
+    /** @return true for symbolic alleles such as {@code <NON_REF>} or {@code <*>}, spanning deletions and no-calls. */
+    private static boolean isSymbolic(Allele allele) {
+        return allele.isSymbolic() || allele.isNoCall() || allele.getDisplayString().equals("*");
+    }
+
+    private static boolean allTrue(boolean[] flags) {
+        for (boolean flag : flags) {
+            if (!flag) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add the frequency, pathogenicity, and ClinVar data from the Exomiser database to an allele.
+     * @param pa an allele with a called (non-reference) genotype in at least one sample
+     * @param alleleData the data for this allele from the Exomiser database
+     * @return the annotated allele
+     */
+    private AnnotatedAllele score(PendingAllele pa, AlleleLookup.AlleleData alleleData) {
+        VariantAnnotation va = pa.variantAnnotation;
+        int chrom = va.getChromosome();
+        int pos = va.getPosition();
+        List<TranscriptAnnotation> transcriptAnnotationList = va.getTranscriptAnnotations();
+        float freq;
+        float pathogenicity;
+        ClinVarData.ClinSig clinSig;
+        if (!alleleData.isFound()) {
+            // this means the variant is not represented in the Exomiser data
+            // this is not an error, the variant could be very rare or otherwise not seen before
+            freq = DEFAULT_FREQUENCY;
+            pathogenicity = VariantEffectPathogenicityScore.getPathogenicityScoreOf(pa.variantEffect);
+            clinSig = ClinVarData.ClinSig.NOT_PROVIDED;
+        } else {
+            FrequencyData frequencyData = alleleData.getFrequencyData();
+            PathogenicityData pathogenicityData = alleleData.getPathogenicityData();
+            freq = frequencyData.getMaxFreq();
+            pathogenicity = calculatePathogenicity(pa.variantEffect, pathogenicityData);
+            ClinVarData cVarData = pathogenicityData.getClinVarData();
+            // Only use ClinVar data if it is backed up by assertions.
+            if (cVarData.getReviewStatus().startsWith("no_assertion")) {
+                clinSig = ClinVarData.ClinSig.NOT_PROVIDED;
+            } else {
+                clinSig = cVarData.getPrimaryInterpretation();
+            }
+        }
+        return new AnnotatedAllele(pa.geneId, pa.symbol, chrom, pos, pa.ref, pa.alt,
+                transcriptAnnotationList, pa.genotypeStrings, pathogenicity, freq, clinSig);
     }
 
 
@@ -364,6 +735,19 @@ public class Vcf2GenotypeMap {
         return n_filtered_variants;
     }
 
+    public int getN_off_target_variants() {
+        return n_off_target_variants;
+    }
+
+    public int getN_common_variants() {
+        return n_common_variants;
+    }
+
+    /** @return accesses to the Exomiser MVStore while the VCF file was read (null if no MVStore was used). */
+    public MvStoreStatistics getMvStoreStatistics() {
+        return mvStoreStatistics;
+    }
+
     /**
      * This function returns a set of gene symbols for which we could not identify NCBI Gene IDs.
      * In practice, these are "symbols" that are actually accession numbers, i.e., that have not
@@ -399,44 +783,242 @@ public class Vcf2GenotypeMap {
     }
 
 
-    private VariantEvaluation buildVariantEvaluation(VariantContext variantContext,
-                                                     VariantAnnotation variantAnnotation,
-                                                     Map<String, SampleGenotype> sampleMap) {
-
-        GenomeAssembly genomeAssembly = variantAnnotation.getGenomeAssembly();
-        int chr = variantAnnotation.getChromosome();
-        String chromosomeName = variantAnnotation.getChromosomeName();
-        int pos = variantAnnotation.getPosition();
-        String ref = variantAnnotation.getRef();
-        String alt = variantAnnotation.getAlt();
-
-        String geneSymbol = variantAnnotation.getGeneSymbol();
-        String geneId = variantAnnotation.getGeneId();
-        VariantEffect variantEffect = variantAnnotation.getVariantEffect();
-        List<TranscriptAnnotation> annotations = variantAnnotation.getTranscriptAnnotations();
-
-
-        return VariantEvaluation.builder(chr, pos, ref, alt)
-                .genomeAssembly(genomeAssembly)
-                //HTSJDK derived data are used for writing out the
-                //HTML (VariantEffectCounter) VCF/TSV-VARIANT formatted files
-                //can be removed from InheritanceModeAnalyser as Jannovar 0.18+ is not reliant on the VariantContext
-                //need most/all of the info in order to write it all out again.
-                //If we could remove this direct dependency the RAM usage can be halved such that a SPARSE analysis of the POMP sample can be held comfortably in 8GB RAM
-                //To do this we could just store the string value here - it can be re-hydrated later. See TestVcfParser
-                .variantContext(variantContext)
-                //.numIndividuals(variantContext.getNSamples())
-                //quality is the only value from the VCF file directly required for analysis
-                .quality(variantContext.getPhredScaledQual())
-                //jannovar derived data
-                .chromosomeName(chromosomeName)
-                .geneSymbol(geneSymbol)
-                //This used to be an ENTREZ gene identifier, but could now be anything.
-                .geneId(geneId)
-                .variantEffect(variantEffect)
-                .sampleGenotypes(sampleMap)
-                .annotations(annotations)
-                .build();
+    /**
+     * The Jannovar objects needed to annotate VCF records. They are not meant to be shared between threads, and so
+     * each annotation worker has its own instance.
+     */
+    private class RecordAnnotator {
+        private final VariantContextAnnotator variantEffectAnnotator;
+        private final JannovarVariantAnnotator jannovarVariantAnnotator;
+
+        RecordAnnotator() {
+            this.variantEffectAnnotator = new VariantContextAnnotator(referenceDictionary, chromosomeMap,
+                    new VariantContextAnnotator.Options());
+            // Note that we do not use Genomiser data in this version of LIRICAL
+            // Therefore, just pass in an empty list to satisfy the API
+            List<RegulatoryFeature> emtpylist = ImmutableList.of();
+            ChromosomalRegionIndex<RegulatoryFeature> emptyRegionIndex = ChromosomalRegionIndex.of(emtpylist);
+            this.jannovarVariantAnnotator = new JannovarVariantAnnotator(genomeAssembly, jannovarData, emptyRegionIndex);
+        }
+    }
+
+    /**
+     * Iterates over the records of an indexed VCF file that overlap a list of regions. The regions are sorted and
+     * disjoint, and are queried one after the other. A record that overlaps two regions (e.g., a long deletion) is
+     * returned only for the first of them.
+     */
+    private class RegionIterator implements Iterator<VariantContext> {
+        private final VCFFileReader vcfReader;
+        private final Iterator<GeneIntervalIndex.Region> regions;
+        /** Contig names used in the VCF file; if empty, all names of a contig are queried. */
+        private final Set<String> vcfContigs = new HashSet<>();
+        /** Queries for the names of the contig of the current region (usually only one). */
+        private final Deque<String> contigNames = new ArrayDeque<>();
+        private GeneIntervalIndex.Region region = null;
+        private CloseableIterator<VariantContext> current = null;
+        /** Records of the current query that start at or before this position were returned for the previous region. */
+        private int previousEnd = 0;
+        private int previousContigId = -1;
+        private VariantContext next = null;
+
+        RegionIterator(VCFFileReader vcfReader, List<GeneIntervalIndex.Region> regions) {
+            this.vcfReader = vcfReader;
+            this.regions = regions.iterator();
+            for (VCFContigHeaderLine line : vcfReader.getFileHeader().getContigLines()) {
+                vcfContigs.add(line.getID());
+            }
+            logger.info("Querying {} regions of indexed VCF file {}", regions.size(), vcfPath);
+            advance();
+        }
+
+        private void advance() {
+            next = null;
+            while (true) {
+                if (current != null && current.hasNext()) {
+                    VariantContext vc = current.next();
+                    if (region.getContigId() == previousContigId && vc.getStart() <= previousEnd) {
+                        continue;
+                    }
+                    next = vc;
+                    return;
+                }
+                if (current != null) {
+                    current.close();
+                    current = null;
+                }
+                if (contigNames.isEmpty()) {
+                    if (region != null) {
+                        previousContigId = region.getContigId();
+                        previousEnd = region.getEnd();
+                    }
+                    if (!regions.hasNext()) {
+                        return;
+                    }
+                    region = regions.next();
+                    for (String name : geneIntervalIndex.contigNames(region.getContigId())) {
+                        if (vcfContigs.isEmpty() || vcfContigs.contains(name)) {
+                            contigNames.add(name);
+                        }
+                    }
+                } else {
+                    // VCF coordinates are one-based and fully closed
+                    current = vcfReader.query(contigNames.removeFirst(), region.getBegin() + 1, region.getEnd());
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public VariantContext next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            VariantContext vc = next;
+            advance();
+            return vc;
+        }
+    }
+
+    /** An allele of a VCF record that was annotated by Jannovar but not yet looked up in the Exomiser data. */
+    private static class PendingAllele {
+        private final TermId geneId;
+        private final String symbol;
+        private final String ref;
+        private final String alt;
+        /** Null if the genotypes of all samples are homozygous reference or no-call. */
+        private final VariantAnnotation variantAnnotation;
+        private final VariantEffect variantEffect;
+        private final AlleleProto.AlleleKey alleleKey;
+        /** Genotype of each selected sample, null if homozygous reference or no-call. */
+        private final String[] genotypeStrings;
+
+        PendingAllele(TermId geneId, String symbol, String ref, String alt, VariantAnnotation variantAnnotation,
+                      VariantEffect variantEffect, AlleleProto.AlleleKey alleleKey, String[] genotypeStrings) {
+            this.geneId = geneId;
+            this.symbol = symbol;
+            this.ref = ref;
+            this.alt = alt;
+            this.variantAnnotation = variantAnnotation;
+            this.variantEffect = variantEffect;
+            this.alleleKey = alleleKey;
+            this.genotypeStrings = genotypeStrings;
+        }
+    }
+
+    /** The result of annotating one batch of VCF records. */
+    private static class AnnotatedBatch {
+        private final List<AnnotatedAllele> alleles = new ArrayList<>();
+        private final Set<String> symbolsWithoutGeneIds = new HashSet<>();
+        private int n_common_variants = 0;
+    }
+
+    /**
+     * One annotated alternate allele, i.e., the arguments to {@link Gene2Genotype#addVariant}. Alleles with
+     * a homozygous reference or no-call genotype only record the gene.
+     */
+    private static class AnnotatedAllele {
+        private final TermId geneId;
+        private final String symbol;
+        private final int chrom;
+        private final int pos;
+        private final String ref;
+        private final String alt;
+        private final List<TranscriptAnnotation> transcriptAnnotations;
+        /** Genotype of each selected sample, null if the sample does not have the allele. */
+        private final String[] genotypeStrings;
+        private final float pathogenicity;
+        private final float frequency;
+        private final ClinVarData.ClinSig clinSig;
+
+        AnnotatedAllele(TermId geneId, String symbol, int chrom, int pos, String ref, String alt,
+                        List<TranscriptAnnotation> transcriptAnnotations, String[] genotypeStrings,
+                        float pathogenicity, float frequency, ClinVarData.ClinSig clinSig) {
+            this.geneId = geneId;
+            this.symbol = symbol;
+            this.chrom = chrom;
+            this.pos = pos;
+            this.ref = ref;
+            this.alt = alt;
+            this.transcriptAnnotations = transcriptAnnotations;
+            this.genotypeStrings = genotypeStrings;
+            this.pathogenicity = pathogenicity;
+            this.frequency = frequency;
+            this.clinSig = clinSig;
+        }
+
+        static AnnotatedAllele notCalled(TermId geneId, String symbol, String[] genotypeStrings) {
+            return new AnnotatedAllele(geneId, symbol, 0, 0, null, null, null, genotypeStrings,
+                    0f, 0f, ClinVarData.ClinSig.NOT_PROVIDED);
+        }
+    }
+
+    /**
+     * A convenience Builder class for creating {@link Vcf2GenotypeMap} objects.
+     */
+    public static class Builder {
+        private final String vcfPath;
+        private final JannovarData jannovarData;
+        private final MVStore mvStore;
+        private final GenomeAssembly genomeAssembly;
+        private final Map<TermId, String> geneId2SymbolMap;
+        /** Number of annotation threads (default: 1, i.e., annotate on the calling thread). */
+        private int threads = 1;
+        /** Maximum number of batches waiting to be merged. Values below 1 mean twice the number of threads. */
+        private int queueCapacity = 0;
+        /** Shared access to the Exomiser data. If null, a new {@link AlleleLookup} is created for the MVStore. */
+        private AlleleLookup alleleLookup = null;
+        /** If not null, records that do not overlap any of the intervals are skipped. */
+        private GeneIntervalIndex geneIntervalIndex = null;
+        /** If not null, alleles with a higher maximum population frequency (in percent) are skipped. */
+        private Double maxFrequency = null;
+        /** Index of the genes. If null, an index of the genes of geneId2SymbolMap is built. */
+        private GeneIndex geneIndex = null;
+
+        public Builder(String vcf, JannovarData jannovar, MVStore mvs, GenomeAssembly ga, Map<TermId, String> geneId2SymbolMap) {
+            this.vcfPath = vcf;
+            this.jannovarData = jannovar;
+            this.mvStore = mvs;
+            this.genomeAssembly = ga;
+            this.geneId2SymbolMap = geneId2SymbolMap;
+        }
+
+        public Builder threads(int n) {
+            this.threads = n;
+            return this;
+        }
+
+        public Builder queueCapacity(int n) {
+            this.queueCapacity = n;
+            return this;
+        }
+
+        public Builder alleleLookup(AlleleLookup lookup) {
+            this.alleleLookup = lookup;
+            return this;
+        }
+
+        public Builder geneIntervalIndex(GeneIntervalIndex index) {
+            this.geneIntervalIndex = index;
+            return this;
+        }
+
+        public Builder maxFrequency(Double frequency) {
+            this.maxFrequency = frequency;
+            return this;
+        }
+
+        public Builder geneIndex(GeneIndex index) {
+            this.geneIndex = index;
+            return this;
+        }
+
+        public Vcf2GenotypeMap build() {
+            return new Vcf2GenotypeMap(this);
+        }
     }
 
 }
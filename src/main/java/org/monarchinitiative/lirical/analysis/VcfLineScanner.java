@@ -0,0 +1,456 @@
+package org.monarchinitiative.lirical.analysis;
+
+import htsjdk.tribble.readers.LineIteratorImpl;
+import htsjdk.tribble.readers.SynchronousLineReader;
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A first pass over the raw lines of a VCF file that runs ahead of the htsjdk decoding. Each line is inspected as
+ * bytes, and only the CHROM, POS, REF, ALT, FILTER, and INFO (for END) columns and the GT field of the first sample
+ * are looked at. As elsewhere in LIRICAL, the first sample is the first of the sample names in the order of
+ * {@link VCFHeader#getSampleNamesInOrder()}, which is not necessarily the first sample column. Lines that are
+ * <ul>
+ *     <li>removed by a quality filter (FILTER is neither {@code PASS} nor {@code .}), or</li>
+ *     <li>not located in or near one of the genes of a {@link GeneIntervalIndex} (if one is given), or</li>
+ *     <li>reference blocks, i.e., lines whose only alternate alleles are symbolic ({@code <NON_REF>}, {@code <*>}),
+ *     spanning deletions ({@code *}) or missing ({@code .}) and in which the first sample is homozygous reference
+ *     ({@code 0/0}) or not called ({@code ./.}), if only the first sample is analyzed</li>
+ * </ul>
+ * are counted and skipped without creating any objects. Only the remaining lines are decoded by htsjdk into
+ * {@link VariantContext} objects. This saves most of the decoding work for gVCF files, in which the majority of the
+ * lines are reference blocks.
+ * <p>
+ * The rules are the same as those applied by {@link Vcf2GenotypeMap} to the decoded records, so the scanner only
+ * changes how early a record is rejected. Other lines that are homozygous reference or not called in the first
+ * sample are only counted and still decoded, because {@link Vcf2GenotypeMap} records the gene of such a line even
+ * though it does not score the variant.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class VcfLineScanner implements Iterator<VariantContext>, Closeable {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int GZIP_BUFFER_SIZE = 1 << 16;
+    /** Number of BGZF blocks that are read ahead per decompression thread. */
+    private static final int BLOCKS_PER_THREAD = 4;
+    /** Index of the FORMAT column; the sample columns follow. */
+    private static final int FORMAT_COLUMN = 8;
+    /** Index of the FILTER column. */
+    private static final int FILTER_COLUMN = 6;
+    /** Index of the ALT column. */
+    private static final int ALT_COLUMN = 4;
+
+    private final InputStream in;
+    /** If not null, lines that do not overlap any of the intervals are skipped. */
+    private final GeneIntervalIndex geneIntervalIndex;
+    /**
+     * If true, only the first sample is analyzed: lines with a homozygous reference or no-call genotype of the first
+     * sample are counted, and reference blocks are skipped.
+     */
+    private final boolean firstSampleOnly;
+    private final VCFCodec codec = new VCFCodec();
+    private final VCFHeader header;
+
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    /** First byte of the buffer that has not been consumed. */
+    private int bufferStart = 0;
+    /** End of the valid data in the buffer (exclusive). */
+    private int bufferEnd = 0;
+    private boolean endOfInput = false;
+    /** The current line is {@code buffer[lineStart, lineEnd)} (without the line break). */
+    private int lineStart;
+    private int lineEnd;
+    /** Index of the column with the genotype of the first sample. */
+    private int sampleColumn;
+    /** Positions of the tabs that end the columns up to and including the column of the first sample. */
+    private int[] tabs;
+    /** The contig name of the previous line, reused as long as the contig does not change. */
+    private byte[] contigBytes = new byte[0];
+    private String contig = "";
+
+    private int n_records = 0;
+    private int n_filtered_records = 0;
+    private int n_off_target_records = 0;
+    private int n_uncalled_records = 0;
+    private int n_reference_blocks = 0;
+
+    private VariantContext next = null;
+
+    /**
+     * @param in the VCF file (uncompressed), positioned at the first header line
+     * @param geneIntervalIndex if not null, records that do not overlap the genes are skipped
+     * @param firstSampleOnly if true, records with a homozygous reference or no-call genotype of the first sample are
+     *                        counted, and those that are reference blocks are skipped
+     */
+    public VcfLineScanner(InputStream in, GeneIntervalIndex geneIntervalIndex, boolean firstSampleOnly) {
+        this.in = in;
+        this.geneIntervalIndex = geneIntervalIndex;
+        this.firstSampleOnly = firstSampleOnly;
+        this.header = readHeader();
+        advance();
+    }
+
+    /**
+     * Open a VCF file that is either uncompressed or compressed with gzip/bgzip (suffix {@code .gz} or {@code .bgz}).
+     * If more than one thread is requested, the blocks of a bgzipped file are decompressed in parallel by a
+     * {@link ParallelBgzfInputStream}.
+     * @param vcfPath path to the VCF file
+     * @param geneIntervalIndex if not null, records that do not overlap the genes are skipped
+     * @param firstSampleOnly if true, records that are not called in the first sample are counted, and reference
+     *                        blocks are skipped
+     * @param threads number of threads used to decompress a bgzipped file
+     * @return a scanner positioned at the first record that passes all checks
+     */
+    public static VcfLineScanner open(String vcfPath, GeneIntervalIndex geneIntervalIndex, boolean firstSampleOnly,
+                                      int threads) {
+        Path path = Paths.get(vcfPath);
+        try {
+            InputStream in;
+            if (!(vcfPath.endsWith(".gz") || vcfPath.endsWith(".bgz"))) {
+                in = Files.newInputStream(path);
+            } else if (threads > 1 && ParallelBgzfInputStream.isBgzf(path)) {
+                in = new ParallelBgzfInputStream(path, threads, BLOCKS_PER_THREAD * threads);
+            } else {
+                // bgzip files are a series of gzip members, all of which are read by GZIPInputStream
+                in = new GZIPInputStream(Files.newInputStream(path), GZIP_BUFFER_SIZE);
+            }
+            return new VcfLineScanner(in, geneIntervalIndex, firstSampleOnly);
+        } catch (IOException e) {
+            throw new LiricalRuntimeException(String.format("Could not open VCF file %s (%s)", vcfPath, e.getMessage()));
+        }
+    }
+
+    /**
+     * Read the header lines up to and including the {@code #CHROM} line and initialize the htsjdk codec with them.
+     */
+    private VCFHeader readHeader() {
+        List<String> headerLines = new ArrayList<>();
+        while (readLine()) {
+            String line = new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+            headerLines.add(line);
+            if (line.startsWith("#CHROM")) {
+                Reader reader = new StringReader(String.join("\n", headerLines));
+                VCFHeader vcfHeader = (VCFHeader) codec.readActualHeader(new LineIteratorImpl(new SynchronousLineReader(reader)));
+                int offset = 0;
+                if (vcfHeader.hasGenotypingData()) {
+                    offset = vcfHeader.getSampleNameToOffset().get(vcfHeader.getSampleNamesInOrder().get(0));
+                }
+                this.sampleColumn = FORMAT_COLUMN + 1 + offset;
+                this.tabs = new int[sampleColumn + 1];
+                return vcfHeader;
+            }
+        }
+        throw new LiricalRuntimeException("VCF file does not have a #CHROM header line");
+    }
+
+    /**
+     * Find the next line that passes all checks and decode it.
+     */
+    private void advance() {
+        next = null;
+        while (readLine()) {
+            if (lineEnd == lineStart) {
+                continue;
+            }
+            int n_tabs = findTabs();
+            if (n_tabs <= FILTER_COLUMN) {
+                // let htsjdk report the malformed line
+                next = decodeLine();
+                return;
+            }
+            n_records++;
+            if (isFiltered()) {
+                n_filtered_records++;
+                continue;
+            }
+            if (geneIntervalIndex != null && !isOnTarget(n_tabs)) {
+                n_off_target_records++;
+                continue;
+            }
+            if (firstSampleOnly && n_tabs >= sampleColumn && isUncalled(n_tabs)) {
+                n_uncalled_records++;
+                if (hasOnlySymbolicAlts()) {
+                    // no variant and no gene can be recorded for a reference block
+                    n_reference_blocks++;
+                    continue;
+                }
+                // the record is still decoded because the gene is recorded for other uncalled records
+            }
+            next = decodeLine();
+            return;
+        }
+    }
+
+    private VariantContext decodeLine() {
+        return codec.decode(new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Record the positions of the first tabs of the current line.
+     * @return number of tabs found (at most {@code tabs.length})
+     */
+    private int findTabs() {
+        int n = 0;
+        for (int i = lineStart; i < lineEnd && n < tabs.length; i++) {
+            if (buffer[i] == '\t') {
+                tabs[n++] = i;
+            }
+        }
+        return n;
+    }
+
+    /** @return true if the FILTER column is neither {@code PASS} nor {@code .}, which htsjdk treats as filtered. */
+    private boolean isFiltered() {
+        int begin = tabs[FILTER_COLUMN - 1] + 1;
+        int end = tabs[FILTER_COLUMN];
+        return !(equalsAscii(begin, end, ".") || equalsAscii(begin, end, "PASS"));
+    }
+
+    /**
+     * The end position of the record is calculated as htsjdk does, i.e., from the END attribute if it is present,
+     * otherwise from the length of the reference allele.
+     * @return true if the record overlaps one of the genes of the {@link #geneIntervalIndex}
+     */
+    private boolean isOnTarget(int n_tabs) {
+        int start = parseInt(tabs[0] + 1, tabs[1]);
+        int end = start + (tabs[3] - tabs[2] - 1) - 1;
+        int infoEnd = infoEnd(tabs[FILTER_COLUMN] + 1, n_tabs > FILTER_COLUMN + 1 ? tabs[FILTER_COLUMN + 1] : lineEnd);
+        if (infoEnd > 0) {
+            end = infoEnd;
+        }
+        return geneIntervalIndex.overlaps(contig(), start, end);
+    }
+
+    /**
+     * Same rule as in {@link Vcf2GenotypeMap}: genotypes {@code 0/0} and {@code ./.} are not regarded as called.
+     * GT is always the first key of the FORMAT column if it is present.
+     * @return true if the first sample has a homozygous reference or no-call genotype
+     */
+    private boolean isUncalled(int n_tabs) {
+        int formatBegin = tabs[FORMAT_COLUMN - 1] + 1;
+        int formatEnd = tabs[FORMAT_COLUMN];
+        if (formatEnd - formatBegin < 2 || buffer[formatBegin] != 'G' || buffer[formatBegin + 1] != 'T'
+                || (formatEnd - formatBegin > 2 && buffer[formatBegin + 2] != ':')) {
+            return false;
+        }
+        int sampleBegin = tabs[sampleColumn - 1] + 1;
+        int sampleEnd = n_tabs > sampleColumn ? tabs[sampleColumn] : lineEnd;
+        int gtEnd = sampleBegin;
+        while (gtEnd < sampleEnd && buffer[gtEnd] != ':') {
+            gtEnd++;
+        }
+        return equalsAscii(sampleBegin, gtEnd, "0/0") || equalsAscii(sampleBegin, gtEnd, "./.");
+    }
+
+    /**
+     * Same rule as in {@link Vcf2GenotypeMap}: alleles such as {@code <NON_REF>}, {@code <*>}, {@code *} and
+     * {@code .} are not annotated if they are not called.
+     * @return true if all alternate alleles of the current line are symbolic, spanning deletions or missing
+     */
+    private boolean hasOnlySymbolicAlts() {
+        int begin = tabs[ALT_COLUMN - 1] + 1;
+        int end = tabs[ALT_COLUMN];
+        while (begin < end) {
+            int alleleEnd = begin;
+            while (alleleEnd < end && buffer[alleleEnd] != ',') {
+                alleleEnd++;
+            }
+            boolean symbolic = alleleEnd - begin > 1 && buffer[begin] == '<' && buffer[alleleEnd - 1] == '>';
+            if (!(symbolic || equalsAscii(begin, alleleEnd, "*") || equalsAscii(begin, alleleEnd, "."))) {
+                return false;
+            }
+            begin = alleleEnd + 1;
+        }
+        return true;
+    }
+
+    /** @return the CHROM column of the current line; the String is only created if the contig changes. */
+    private String contig() {
+        int length = tabs[0] - lineStart;
+        boolean same = length == contigBytes.length;
+        for (int i = 0; same && i < length; i++) {
+            same = buffer[lineStart + i] == contigBytes[i];
+        }
+        if (!same) {
+            contigBytes = new byte[length];
+            System.arraycopy(buffer, lineStart, contigBytes, 0, length);
+            contig = new String(contigBytes, StandardCharsets.UTF_8);
+        }
+        return contig;
+    }
+
+    /** @return the value of the END attribute in {@code buffer[begin, end)}, or -1 if there is none. */
+    private int infoEnd(int begin, int end) {
+        for (int i = begin; i + 4 <= end; i++) {
+            if ((i == begin || buffer[i - 1] == ';') && equalsAscii(i, i + 4, "END=")) {
+                int valueEnd = i + 4;
+                while (valueEnd < end && buffer[valueEnd] != ';') {
+                    valueEnd++;
+                }
+                return parseInt(i + 4, valueEnd);
+            }
+        }
+        return -1;
+    }
+
+    private int parseInt(int begin, int end) {
+        if (begin == end) {
+            throw new LiricalRuntimeException("Malformed VCF line (empty number): " + currentLine());
+        }
+        int value = 0;
+        for (int i = begin; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw new LiricalRuntimeException("Malformed VCF line (not a number): " + currentLine());
+            }
+            value = 10 * value + digit;
+        }
+        return value;
+    }
+
+    private boolean equalsAscii(int begin, int end, String s) {
+        if (end - begin != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            if (buffer[begin + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String currentLine() {
+        return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Find the next line in the buffer, refilling (and if need be enlarging) the buffer from the input stream.
+     * @return false if the end of the input was reached
+     */
+    private boolean readLine() {
+        int searchFrom = bufferStart;
+        while (true) {
+            for (int i = searchFrom; i < bufferEnd; i++) {
+                if (buffer[i] == '\n') {
+                    setLine(bufferStart, i);
+                    bufferStart = i + 1;
+                    return true;
+                }
+            }
+            if (endOfInput) {
+                if (bufferStart < bufferEnd) {
+                    // last line without a line break
+                    setLine(bufferStart, bufferEnd);
+                    bufferStart = bufferEnd;
+                    return true;
+                }
+                return false;
+            }
+            searchFrom = fill();
+        }
+    }
+
+    private void setLine(int begin, int end) {
+        lineStart = begin;
+        lineEnd = end > begin && buffer[end - 1] == '\r' ? end - 1 : end;
+    }
+
+    /**
+     * Move the unconsumed bytes to the start of the buffer and read more bytes.
+     * @return the position from which to continue the search for a line break
+     */
+    private int fill() {
+        int remaining = bufferEnd - bufferStart;
+        if (remaining == buffer.length) {
+            // a line that is longer than the buffer
+            byte[] larger = new byte[2 * buffer.length];
+            System.arraycopy(buffer, bufferStart, larger, 0, remaining);
+            buffer = larger;
+        } else if (bufferStart > 0) {
+            System.arraycopy(buffer, bufferStart, buffer, 0, remaining);
+        }
+        bufferStart = 0;
+        bufferEnd = remaining;
+        try {
+            int n = in.read(buffer, bufferEnd, buffer.length - bufferEnd);
+            if (n < 0) {
+                endOfInput = true;
+            } else {
+                bufferEnd += n;
+            }
+        } catch (IOException e) {
+            throw new LiricalRuntimeException("Could not read VCF file: " + e.getMessage());
+        }
+        return remaining;
+    }
+
+    /** @return the header of the VCF file as parsed by htsjdk. */
+    public VCFHeader getHeader() {
+        return header;
+    }
+
+    /** @return number of records (data lines) that were read so far. */
+    public int getN_records() {
+        return n_records;
+    }
+
+    /** @return number of records that were skipped because of a quality filter. */
+    public int getN_filtered_records() {
+        return n_filtered_records;
+    }
+
+    /** @return number of non-filtered records that were skipped because they do not overlap any of the genes. */
+    public int getN_off_target_records() {
+        return n_off_target_records;
+    }
+
+    /**
+     * @return number of non-filtered, on-target records in which the first sample is 0/0 or ./. (including the
+     * {@link #getN_reference_blocks() reference blocks})
+     */
+    public int getN_uncalled_records() {
+        return n_uncalled_records;
+    }
+
+    /** @return number of non-filtered, on-target reference blocks that were skipped. */
+    public int getN_reference_blocks() {
+        return n_reference_blocks;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next != null;
+    }
+
+    @Override
+    public VariantContext next() {
+        if (next == null) {
+            throw new NoSuchElementException();
+        }
+        VariantContext vc = next;
+        advance();
+        return vc;
+    }
+
+    @Override
+    public void close() {
+        try {
+            in.close();
+        } catch (IOException e) {
+            throw new LiricalRuntimeException("Could not close VCF file: " + e.getMessage());
+        }
+    }
+}
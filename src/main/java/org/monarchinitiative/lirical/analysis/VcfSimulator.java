@@ -1,11 +1,13 @@
 package org.monarchinitiative.lirical.analysis;
 
+import htsjdk.samtools.util.CloseableIterator;
 import htsjdk.variant.variantcontext.*;
 import htsjdk.variant.variantcontext.writer.Options;
 import htsjdk.variant.variantcontext.writer.VariantContextWriter;
 import htsjdk.variant.variantcontext.writer.VariantContextWriterBuilder;
 import htsjdk.variant.vcf.VCFFileReader;
 import htsjdk.variant.vcf.VCFHeader;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
 import org.phenopackets.schema.v1.Phenopacket;
 import org.phenopackets.schema.v1.core.HtsFile;
 import org.phenopackets.schema.v1.core.OntologyClass;
@@ -18,12 +20,11 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.UnaryOperator;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Simulator that injects variants defined from {@link Phenopacket} among variants present in single VCF file.
@@ -41,12 +42,23 @@ public class VcfSimulator {
     private static final Logger LOGGER = LoggerFactory.getLogger(VcfSimulator.class);
     /** Path to the file into which we will inject a mutation from a Phenopacket. */
     private final Path templateVcfPath;
+    /** If true, the simulated VCF files are written with bgzip compression. */
+    private final boolean bgzip;
 
     /**
      * @param templateVcfPath {@link Path} to possibly un-indexed VCF file
      */
     public VcfSimulator(Path templateVcfPath) {
+        this(templateVcfPath, false);
+    }
+
+    /**
+     * @param templateVcfPath {@link Path} to possibly un-indexed VCF file, sorted in the order of its contig lines
+     * @param bgzip if true, write the simulated VCF files with bgzip compression (suffix {@code .vcf.gz})
+     */
+    public VcfSimulator(Path templateVcfPath, boolean bgzip) {
         this.templateVcfPath = templateVcfPath;
+        this.bgzip = bgzip;
     }
 
 
@@ -147,52 +159,139 @@ public class VcfSimulator {
     }
 
     /**
-     *
+     * Write a copy of the template VCF file with the variants of the phenopacket. The template must be sorted; its
+     * records are streamed to the new file and the (sorted) injected variants are merged in at their positions, so
+     * that only one template record is held in memory at a time.
      * @param subjectId identifier of the proband in the VCF file
      * @param variants List of variants we will add to the VCF file
      * @return HtsFile object
      * @throws IOException if the template VCF file cannot be read
+     * @throws LiricalRuntimeException if the template VCF file is not sorted
      */
     public HtsFile simulateVcf(String subjectId, List<Variant> variants, String genomeAssembly) throws IOException {
-        Objects.requireNonNull(subjectId, "Subject ID must not be null");
-        if (subjectId.isEmpty()) {
-            //throw new LiricalRuntimeException("Subject ID must not be empty");
-            System.err.println("[WARNING] Subject ID not found for ");
-            subjectId = "n/a";
-        }
-
+        subjectId = checkSubjectId(subjectId);
         // we create a temporary VCF file for LIRICAL analysis
-        final File outPath = File.createTempFile("single-vcf-simulator-" + subjectId.replaceAll(" ","_") + "-", ".vcf");
-        outPath.deleteOnExit();
-
-
+        final File outPath = createTempVcf("single-vcf-simulator-", subjectId);
 
         try (VCFFileReader reader = new VCFFileReader(templateVcfPath, false);
-             VariantContextWriter writer = new VariantContextWriterBuilder()
-                     .setOutputFile(outPath)
-                     .setOutputFileType(VariantContextWriterBuilder.OutputType.VCF)
-                     .unsetOption(Options.INDEX_ON_THE_FLY)
-                     .setOption(Options.ALLOW_MISSING_FIELDS_IN_HEADER) // important for
-                     .build()) {
+             VariantContextWriter writer = vcfWriter(outPath)) {
             LOGGER.info("Reading file {}", templateVcfPath);
             VCFHeader fileHeader = reader.getFileHeader();
             fileHeader = updateHeaderWithPhenopacketSample(fileHeader, subjectId);
             writer.writeHeader(fileHeader);
 
             List<VariantContext> injected = phenopacketToVariantContexts(subjectId, variants);
+            VariantContextComparator comparator = new VariantContextComparator(fileHeader.getContigLines());
+            UnaryOperator<VariantContext> changeSampleName = changeSampleNameInGenotypes(subjectId);
 
-            AtomicInteger cnt = new AtomicInteger();
-            Stream.concat(reader.iterator().stream(), injected.stream())
-                    .map(changeSampleNameInGenotypes(subjectId))
-                    .sorted(new VariantContextComparator(fileHeader.getContigLines()))
-                    .peek(vc -> cnt.incrementAndGet())
-                    .forEach(writer::add);
-            LOGGER.info("Created VCF containing {} variants", cnt.get());
+            int cnt;
+            try (CloseableIterator<VariantContext> iter = reader.iterator()) {
+                cnt = mergeSorted(iter, injected, comparator, vc -> writer.add(changeSampleName.apply(vc)));
+            }
+            LOGGER.info("Created VCF containing {} variants", cnt);
         }
 
         // make description
         String description = String.format("Simulated VCF file based on a template VCF at '%s'file.", templateVcfPath);
+        return htsFile(outPath, description, genomeAssembly);
+    }
+
+    /**
+     * Write a VCF file that only contains the variants of the phenopacket, with the header of the template VCF file.
+     * Together with the genotypes of the template, which are extracted only once, the genotypes of this file give the
+     * genotypes of the VCF file written by {@link #simulateVcf(String, List, String)}, but the cost of simulating a
+     * case does not depend on the size of the template.
+     * @param subjectId identifier of the proband in the VCF file
+     * @param variants List of variants we will add to the template
+     * @return HtsFile object
+     * @throws IOException if the header of the template VCF file cannot be read
+     */
+    public HtsFile injectedVariantsVcf(String subjectId, List<Variant> variants, String genomeAssembly) throws IOException {
+        subjectId = checkSubjectId(subjectId);
+        final File outPath = createTempVcf("injected-vcf-simulator-", subjectId);
+
+        try (VCFFileReader reader = new VCFFileReader(templateVcfPath, false);
+             VariantContextWriter writer = vcfWriter(outPath)) {
+            VCFHeader fileHeader = updateHeaderWithPhenopacketSample(reader.getFileHeader(), subjectId);
+            writer.writeHeader(fileHeader);
+            List<VariantContext> injected = phenopacketToVariantContexts(subjectId, variants);
+            injected.sort(new VariantContextComparator(fileHeader.getContigLines()));
+            injected.forEach(writer::add);
+            LOGGER.info("Created VCF containing {} injected variants", injected.size());
+        }
+
+        String description = String.format("Variants injected into the template VCF at '%s'file.", templateVcfPath);
+        return htsFile(outPath, description, genomeAssembly);
+    }
+
+    /**
+     * Merge the injected variants into the records of a sorted VCF file. A record of the injected variants is
+     * emitted before the template records that compare greater, and after those that compare equal (as with a stable
+     * sort of the template followed by the injected variants).
+     * @param template iterator over the sorted records of the template
+     * @param injected the injected variants (sorted by this method)
+     * @param comparator the order of the records
+     * @param consumer receives all records in order
+     * @return number of records
+     * @throws LiricalRuntimeException if the template records are not sorted
+     */
+    static int mergeSorted(Iterator<VariantContext> template,
+                           List<VariantContext> injected,
+                           Comparator<VariantContext> comparator,
+                           Consumer<VariantContext> consumer) {
+        injected.sort(comparator);
+        int cnt = 0;
+        int next = 0;
+        VariantContext previous = null;
+        while (template.hasNext()) {
+            VariantContext vc = template.next();
+            if (previous != null && comparator.compare(previous, vc) > 0) {
+                throw new LiricalRuntimeException(String.format("Template VCF file is not sorted (%s:%d after %s:%d)",
+                        vc.getContig(), vc.getStart(), previous.getContig(), previous.getStart()));
+            }
+            while (next < injected.size() && comparator.compare(injected.get(next), vc) < 0) {
+                consumer.accept(injected.get(next++));
+                cnt++;
+            }
+            consumer.accept(vc);
+            cnt++;
+            previous = vc;
+        }
+        while (next < injected.size()) {
+            consumer.accept(injected.get(next++));
+            cnt++;
+        }
+        return cnt;
+    }
+
+    private static String checkSubjectId(String subjectId) {
+        Objects.requireNonNull(subjectId, "Subject ID must not be null");
+        if (subjectId.isEmpty()) {
+            //throw new LiricalRuntimeException("Subject ID must not be empty");
+            System.err.println("[WARNING] Subject ID not found for ");
+            return "n/a";
+        }
+        return subjectId;
+    }
+
+    private File createTempVcf(String prefix, String subjectId) throws IOException {
+        final File outPath = File.createTempFile(prefix + subjectId.replaceAll(" ","_") + "-", bgzip ? ".vcf.gz" : ".vcf");
+        outPath.deleteOnExit();
+        return outPath;
+    }
+
+    private VariantContextWriter vcfWriter(File outPath) {
+        return new VariantContextWriterBuilder()
+                .setOutputFile(outPath)
+                .setOutputFileType(bgzip ?
+                        VariantContextWriterBuilder.OutputType.BLOCK_COMPRESSED_VCF :
+                        VariantContextWriterBuilder.OutputType.VCF)
+                .unsetOption(Options.INDEX_ON_THE_FLY)
+                .setOption(Options.ALLOW_MISSING_FIELDS_IN_HEADER) // important for
+                .build();
+    }
 
+    private static HtsFile htsFile(File outPath, String description, String genomeAssembly) {
         return HtsFile.newBuilder()
                 .setHtsFormat(HtsFile.HtsFormat.VCF)
                 .setGenomeAssembly(genomeAssembly)
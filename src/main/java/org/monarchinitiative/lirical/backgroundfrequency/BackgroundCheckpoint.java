@@ -0,0 +1,99 @@
+package org.monarchinitiative.lirical.backgroundfrequency;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A checkpoint of a run of {@link GenicIntoleranceCalculator}, stored in an MVStore file. It contains the
+ * {@link BinAccumulator} of each block of the genome that has been processed together with a digest of the alleles
+ * and transcripts of the block, and a description of the input data. The next run with the same checkpoint file only
+ * processes the blocks that are missing or whose digest has changed, e.g., after an interruption or with a new
+ * Exomiser release. A checkpoint that was created with other input data is not used.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+class BackgroundCheckpoint implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(BackgroundCheckpoint.class);
+    private final MVStore store;
+    /** Key: id of a block of the genome; value: its {@link BinAccumulator} (see {@link BinAccumulator#toBytes()}). */
+    private final MVMap<Long, byte[]> blocks;
+    /** Key: id of a block of the genome; value: digest of its alleles and transcripts. */
+    private final MVMap<Long, byte[]> digests;
+
+    private BackgroundCheckpoint(MVStore store) {
+        this.store = store;
+        this.blocks = store.openMap("blocks");
+        this.digests = store.openMap("digests");
+    }
+
+    /**
+     * Open a checkpoint file, or create it if it does not exist.
+     * @param path path of the checkpoint file
+     * @param inputDescription description of the input data (e.g., name and size of the Exomiser database)
+     * @return the checkpoint
+     */
+    static BackgroundCheckpoint open(Path path, Map<String, String> inputDescription) {
+        MVStore store = new MVStore.Builder()
+                .fileName(path.toString())
+                .autoCommitDisabled()
+                .open();
+        MVMap<String, String> input = store.openMap("input");
+        if (!input.isEmpty() && !new HashMap<>(input).equals(inputDescription)) {
+            store.close();
+            throw new LiricalRuntimeException(String.format("Checkpoint %s was created with other data (%s instead of %s). Delete it or use another checkpoint file.",
+                    path, new TreeMap<>(input), new TreeMap<>(inputDescription)));
+        }
+        input.putAll(inputDescription);
+        BackgroundCheckpoint checkpoint = new BackgroundCheckpoint(store);
+        logger.info("Checkpoint {} has {} completed blocks", path, checkpoint.blocks.size());
+        return checkpoint;
+    }
+
+    /** @return the accumulators of the blocks that were completed, by block id. */
+    SortedMap<Long, BinAccumulator> completedBlocks() {
+        SortedMap<Long, BinAccumulator> completed = new TreeMap<>();
+        for (Map.Entry<Long, byte[]> entry : blocks.entrySet()) {
+            completed.put(entry.getKey(), BinAccumulator.fromBytes(entry.getValue()));
+        }
+        return completed;
+    }
+
+    /** @return the digests of the blocks that were completed, by block id. */
+    Map<Long, byte[]> digests() {
+        return new HashMap<>(digests);
+    }
+
+    /** Record a completed block. It is written to the file with the next {@link #commit()}. */
+    void put(long blockId, byte[] digest, BinAccumulator accumulator) {
+        blocks.put(blockId, accumulator.toBytes());
+        digests.put(blockId, digest);
+    }
+
+    /** Remove blocks that no longer contain alleles. */
+    void remove(Collection<Long> blockIds) {
+        for (long blockId : blockIds) {
+            blocks.remove(blockId);
+            digests.remove(blockId);
+        }
+    }
+
+    /** Write the blocks that were completed since the last commit to the file. */
+    void commit() {
+        store.commit();
+    }
+
+    @Override
+    public void close() {
+        store.commit();
+        store.close();
+    }
+}
@@ -36,6 +36,16 @@ class Bin {
         count++;
     }
 
+    /**
+     * Add the data of several variants that were summed up elsewhere (see {@link BinAccumulator}).
+     * @param percentageSum sum of the percentage-reported population frequencies of the variants
+     * @param n number of variants
+     */
+    void add(double percentageSum, int n) {
+        sumOfPerc += percentageSum;
+        count += n;
+    }
+
     /**
      * We return the frequency rather than the percentage. Note that this is the TOTAL frequency (sum of individual frequencies).
      * @return The sum of the frequency of all of the variants associated with this bin of this gene. */
@@ -0,0 +1,165 @@
+package org.monarchinitiative.lirical.backgroundfrequency;
+
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * The per-gene bins of one block of the genome, i.e., the sums and counts of the population frequencies of the
+ * predicted benign and predicted pathogenic variants of each gene for each population. The values are kept in
+ * primitive arrays and are added to the {@link Gene2Bin} objects of the {@link Background}s once all blocks have
+ * been processed (see {@link #addTo(Map, FrequencySource[], Set, Map)}). An accumulator is filled by one thread.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+class BinAccumulator {
+    /** Number of populations. */
+    private final int n_populations;
+    /** Key: gene symbol; value: index of the gene in the arrays. */
+    private final Map<String, Integer> symbol2slot = new HashMap<>();
+    private final List<String> symbols = new ArrayList<>();
+    /** Entrez Gene id of each gene (the last one seen for the symbol, as in {@link GenicIntoleranceCalculator}). */
+    private final List<String> geneIds = new ArrayList<>();
+    /** Sums of the percentages, indexed by {@link #index(int, int, boolean)}. */
+    private double[] sums;
+    /** Number of variants, indexed by {@link #index(int, int, boolean)}. */
+    private int[] counts;
+    /** Slot of the gene of the previous variant (variants of the same gene are usually adjacent). */
+    private int lastSlot = -1;
+    private String lastSymbol = null;
+    /** Number of population frequencies of variants that were added. */
+    private long n_variants = 0;
+
+    BinAccumulator(int n_populations) {
+        this.n_populations = n_populations;
+        this.sums = new double[16 * 2 * n_populations];
+        this.counts = new int[16 * 2 * n_populations];
+    }
+
+    private int index(int slot, int population, boolean pathogenic) {
+        return 2 * (slot * n_populations + population) + (pathogenic ? 1 : 0);
+    }
+
+    /**
+     * Add one variant of one population.
+     * @param symbol symbol of the gene that harbors the variant
+     * @param geneId Entrez Gene id of the gene
+     * @param population index of the population in the array of populations of the calculator
+     * @param percentage population frequency of the variant (as a percentage)
+     * @param pathogenicity predicted pathogenicity of the variant
+     */
+    void add(String symbol, String geneId, int population, double percentage, double pathogenicity) {
+        int slot = slot(symbol, geneId);
+        int i = index(slot, population, Gene2Bin.isPredictedPathogenic(pathogenicity));
+        sums[i] += percentage;
+        counts[i]++;
+        n_variants++;
+    }
+
+    private int slot(String symbol, String geneId) {
+        if (symbol.equals(lastSymbol)) {
+            geneIds.set(lastSlot, geneId);
+            return lastSlot;
+        }
+        Integer slot = symbol2slot.get(symbol);
+        if (slot == null) {
+            slot = symbols.size();
+            symbol2slot.put(symbol, slot);
+            symbols.add(symbol);
+            geneIds.add(geneId);
+            int length = 2 * (slot + 1) * n_populations;
+            if (length > sums.length) {
+                sums = Arrays.copyOf(sums, 2 * sums.length);
+                counts = Arrays.copyOf(counts, 2 * counts.length);
+            }
+        } else {
+            geneIds.set(slot, geneId);
+        }
+        lastSymbol = symbol;
+        lastSlot = slot;
+        return slot;
+    }
+
+    /** @return number of population frequencies of variants that were added. */
+    long getVariantCount() {
+        return n_variants;
+    }
+
+    /**
+     * Add the bins of this accumulator to the backgrounds. If the accumulators of several blocks are added in the
+     * same order, the result does not depend on which thread processed which block.
+     * @param backgroundMap the background of each population
+     * @param populations the populations, in the order of the population indices of this accumulator
+     * @param geneSymbolSet set of all gene symbols, to which the symbols of this block are added
+     * @param symbol2idMap key: gene symbol; value: Entrez Gene id (updated with the ids of this block)
+     */
+    void addTo(Map<FrequencySource, Background> backgroundMap,
+               FrequencySource[] populations,
+               Set<String> geneSymbolSet,
+               Map<String, String> symbol2idMap) {
+        for (int slot = 0; slot < symbols.size(); slot++) {
+            String symbol = symbols.get(slot);
+            geneSymbolSet.add(symbol);
+            symbol2idMap.put(symbol, geneIds.get(slot));
+            for (int p = 0; p < n_populations; p++) {
+                int benign = index(slot, p, false);
+                int pathogenic = index(slot, p, true);
+                if (counts[benign] == 0 && counts[pathogenic] == 0) {
+                    continue; // no variant of this gene has a frequency in this population
+                }
+                Map<String, Gene2Bin> background2binMap = backgroundMap.get(populations[p]).getBackground2binMap();
+                Gene2Bin g2b = background2binMap.computeIfAbsent(symbol, s -> new Gene2Bin(s, geneIds.get(symbol2slot.get(s))));
+                g2b.add(sums[benign], counts[benign], sums[pathogenic], counts[pathogenic]);
+            }
+        }
+    }
+
+    /** @return the accumulator in the binary format that is read by {@link #fromBytes(byte[])}. */
+    byte[] toBytes() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(n_populations);
+            out.writeLong(n_variants);
+            out.writeInt(symbols.size());
+            for (int slot = 0; slot < symbols.size(); slot++) {
+                out.writeUTF(symbols.get(slot));
+                out.writeUTF(geneIds.get(slot));
+            }
+            int n = 2 * symbols.size() * n_populations;
+            for (int i = 0; i < n; i++) {
+                out.writeDouble(sums[i]);
+                out.writeInt(counts[i]);
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new LiricalRuntimeException("Could not serialize bins: " + e.getMessage()); // should never happen
+        }
+    }
+
+    /**
+     * @param data an accumulator written by {@link #toBytes()}
+     * @return the accumulator
+     */
+    static BinAccumulator fromBytes(byte[] data) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            BinAccumulator accumulator = new BinAccumulator(in.readInt());
+            accumulator.n_variants = in.readLong();
+            int n_genes = in.readInt();
+            for (int slot = 0; slot < n_genes; slot++) {
+                accumulator.slot(in.readUTF(), in.readUTF());
+            }
+            int n = 2 * n_genes * accumulator.n_populations;
+            for (int i = 0; i < n; i++) {
+                accumulator.sums[i] = in.readDouble();
+                accumulator.counts[i] = in.readInt();
+            }
+            return accumulator;
+        } catch (IOException e) {
+            throw new LiricalRuntimeException("Could not read bins: " + e.getMessage());
+        }
+    }
+}
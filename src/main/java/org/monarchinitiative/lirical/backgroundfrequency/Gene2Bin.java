@@ -1,5 +1,7 @@
 package org.monarchinitiative.lirical.backgroundfrequency;
 
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+
 /**
  * This class represents the collection of pathogenicity values that are observed for a specific gene. The pathogenicity
  * values are divided up into two bins: 0-80% (benign) and 80-100% (predicted pathogenic).
@@ -29,6 +31,20 @@ class Gene2Bin {
         predictedPathogenicBin = new Bin();
     }
 
+    /**
+     * @param pathogenicity predicted pathogenicity of a variant
+     * @return true if the variant belongs to the predicted pathogenic bin, false if it belongs to the benign bin
+     * @throws LiricalRuntimeException if the score is not between 0 and 1
+     */
+    static boolean isPredictedPathogenic(double pathogenicity) {
+        if (pathogenicity >= 0.0 && pathogenicity < PATHOGENICITY_THRESHOLD) {
+            return false;
+        } else if (pathogenicity >= PATHOGENICITY_THRESHOLD && pathogenicity <= 1.0) {
+            return true;
+        }
+        throw new LiricalRuntimeException("Pathogenicity score is not between 0 and 1: " + pathogenicity);
+    }
+
     /**
      * Add the population freqeuncy (as percentage) and predicted pathogenicity for one variant
      * @param percentage population frequency expressed as percentage
@@ -46,6 +62,18 @@ class Gene2Bin {
         }
     }
 
+    /**
+     * Add the data of several variants that were summed up elsewhere (see {@link BinAccumulator}).
+     * @param benignSum sum of the population frequencies (as percentages) of the predicted benign variants
+     * @param benignCount number of predicted benign variants
+     * @param pathogenicSum sum of the population frequencies (as percentages) of the predicted pathogenic variants
+     * @param pathogenicCount number of predicted pathogenic variants
+     */
+    void add(double benignSum, int benignCount, double pathogenicSum, int pathogenicCount) {
+        predictedBenignBin.add(benignSum, benignCount);
+        predictedPathogenicBin.add(pathogenicSum, pathogenicCount);
+    }
+
     /** @return the gene ID (e.g., EntrezGene number) of the gene. */
     String getGeneid() {
         return geneid;
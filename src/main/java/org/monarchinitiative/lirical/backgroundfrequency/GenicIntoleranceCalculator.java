@@ -2,7 +2,14 @@ package org.monarchinitiative.lirical.backgroundfrequency;
 
 
 import com.google.common.collect.Sets;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import de.charite.compbio.jannovar.annotation.VariantEffect;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import de.charite.compbio.jannovar.reference.TranscriptModel;
+import org.h2.mvstore.Cursor;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 
@@ -16,13 +23,19 @@ import org.monarchinitiative.exomiser.core.model.pathogenicity.ClinVarData;
 import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicityData;
 import org.monarchinitiative.exomiser.core.model.pathogenicity.VariantEffectPathogenicityScore;
 import org.monarchinitiative.exomiser.core.proto.AlleleProto;
+import org.monarchinitiative.lirical.analysis.MvStoreStatistics;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
 import static org.monarchinitiative.exomiser.core.model.frequency.FrequencySource.*;
 
@@ -53,17 +66,42 @@ public class GenicIntoleranceCalculator {
                     ClinVarData.ClinSig.BENIGN_OR_LIKELY_BENIGN);
     /** Ordered list of the populations included in the calculations. */
     private FrequencySource[] orderedSources = {GNOMAD_E_AFR,GNOMAD_E_AMR,GNOMAD_E_ASJ,GNOMAD_E_EAS,GNOMAD_E_FIN,GNOMAD_E_NFE,GNOMAD_E_SAS};
+    /** The gnomAD genome populations that are used if there is no exome frequency, in the order of {@link #orderedSources}. */
+    private static final FrequencySource[] GENOME_SOURCES = {GNOMAD_G_AFR,GNOMAD_G_AMR,GNOMAD_G_ASJ,GNOMAD_G_EAS,GNOMAD_G_FIN,GNOMAD_G_NFE,GNOMAD_G_SAS};
+    /** The alleles are processed in blocks of this many bases of one chromosome. */
+    public static final int BLOCK_SIZE = 1_000_000;
+    /** Name of the file with the histograms of the pathogenicity scores of ClinVar variants. */
+    private static final String CLINVAR_HISTOGRAM_FILE = "clinvarpath-histogram.tsv";
+    /** The checkpoint is written at most this often (milliseconds). */
+    private static final long CHECKPOINT_INTERVAL_MILLIS = 60_000;
+    /**
+     * A transcript is regarded as relevant to the alleles within this many bases of it. This is more than the
+     * distance up- and downstream of a transcript within which Jannovar uses the transcript to annotate a variant.
+     */
+    private static final int TRANSCRIPT_MARGIN = 10_000;
     /** The header of the org.monarchinitiative.lirical.output file that shows the populations included in the calculation. */
     private String[] headerFields = {"AFR","AMR","ASJ","EAS","FIN","NFE","SAS"};
     /** File name for the file that will contain the frequencies of predicted pathogenic variants in the
      * population background, i.e., from gnomAD  from the Exomiser database.*/
     private final String outputFileName;
-    /** An Exomiser class that annotates an arbitrary variant with frequency and pathogenicity information. */
-    private final VariantAnnotator variantAnnotator;
+    /** Creates the Exomiser objects that annotate an arbitrary variant; each thread uses its own. */
+    private final Supplier<VariantAnnotator> variantAnnotatorSupplier;
     /** Exomiser data store. */
+    private final MVStore alleleStore;
+    /** Allele map of {@link #alleleStore}. */
     private final MVMap<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> alleleMap;
     /** If true, calculate the distribution of ClinVar pathogenicity scores. */
     private final boolean doClinvar;
+    /** If true (and {@link #doClinvar} is true), write histograms of the ClinVar pathogenicity scores instead of all scores. */
+    private final boolean clinvarHistograms;
+    /** Number of threads that annotate the blocks of alleles. */
+    private final int threads;
+    /** Checkpoint file (null: no checkpoints). */
+    private final Path checkpointPath;
+    /** Description of the input data that is stored in the checkpoint. */
+    private final Map<String, String> inputDescription;
+    /** The transcripts that are used by the annotators (null: unknown). */
+    private final Collection<TranscriptModel> transcripts;
 
     /**
      * @param variantAnnotator Object to annotate an arbitrary variant
@@ -72,10 +110,20 @@ public class GenicIntoleranceCalculator {
      * @param doClinvar flag that if true will cause the analysis to calculate the distribution of Clinvar pathogenicity scores
      */
     public GenicIntoleranceCalculator(VariantAnnotator variantAnnotator, MVStore alleleStore, String fname, boolean doClinvar) {
-        this.variantAnnotator = variantAnnotator;
+        this(new Builder(() -> variantAnnotator, alleleStore, fname).clinvar(doClinvar));
+    }
+
+    private GenicIntoleranceCalculator(Builder builder) {
+        this.variantAnnotatorSupplier = builder.variantAnnotatorSupplier;
+        this.alleleStore = builder.alleleStore;
         this.alleleMap = MvStoreUtil.openAlleleMVMap(alleleStore);
-        this.outputFileName=fname;
-        this.doClinvar=doClinvar;
+        this.outputFileName = builder.outputFileName;
+        this.doClinvar = builder.doClinvar;
+        this.clinvarHistograms = builder.clinvarHistograms;
+        this.threads = Math.max(1, builder.threads);
+        this.checkpointPath = builder.checkpointPath;
+        this.inputDescription = builder.inputDescription;
+        this.transcripts = builder.transcripts;
     }
     /** Key: a {@link FrequencySource}, representing a population; value: corresponding {@link Background} with background frequency for genes. */
     private final Map<FrequencySource,Background> backgroundMap = new HashMap<>();
@@ -83,6 +131,8 @@ public class GenicIntoleranceCalculator {
     private final Set<String> geneSymbolSet = new HashSet<>();
     /** Key: a gene symbol value: corresponding EntrezGene id */
     private final HashMap<String,String> symbol2idMap = new HashMap<>();
+    /** Page cache and file accesses of the MVStore during the calculation. */
+    private MvStoreStatistics mvStoreStatistics = null;
 
 
 
@@ -93,13 +143,23 @@ public class GenicIntoleranceCalculator {
      */
     public void run() {
         logger.info("Running...");
-        if (doClinvar) {
+        MvStoreStatistics before = MvStoreStatistics.of(alleleStore);
+        if (doClinvar && clinvarHistograms) {
+            writeClinvarHistograms();
+        } else if (doClinvar) {
             getClinvarPathScores();
         } else  { // do everything in GNOMAD
             initBins();
             binPathogenicityData();
             outputBinData();
         }
+        mvStoreStatistics = MvStoreStatistics.of(alleleStore).since(before);
+        logger.info(mvStoreStatistics.toString());
+    }
+
+    /** @return accesses to the Exomiser MVStore during {@link #run()} (null before the calculation). */
+    public MvStoreStatistics getMvStoreStatistics() {
+        return mvStoreStatistics;
     }
 
     /** We initialize bins for the major GNOMAD populations, Gnomad exome AFR, AMR, ASJ,EAS,FIN,NFE, and SAS.
@@ -122,37 +182,14 @@ public class GenicIntoleranceCalculator {
         backgroundMap.put(GNOMAD_E_SAS,sas);
     }
 
-    /**
-     * Add a single variant's frequency/pathogenicity values to the appropriate bin
-     * @param genesymbol The symbol of the gene that harbors the variant
-     * @param geneId The Entrez Gene id of the gene that harbors the variant
-     * @param frequency The frequency of the variant in the cohort represented by g2bmap
-     * @param pathogenicity The pathogenicity of the variant as predicted by Exomiser
-     */
-    private void addToBin(String genesymbol, String geneId, double frequency, double pathogenicity, FrequencySource fsource) {
-        Map<String, Gene2Bin> background2binMap = backgroundMap.get(fsource).getBackground2binMap();
-        geneSymbolSet.add(genesymbol);
-        symbol2idMap.put(genesymbol,geneId);
-        if (!background2binMap.containsKey(genesymbol)) {
-            Gene2Bin g2b = new Gene2Bin(genesymbol, geneId);
-            background2binMap.put(genesymbol, g2b);
-            if (background2binMap.size() % 100 == 0) {
-                logger.info(String.format("Analyzing gene %d.\r", background2binMap.size()));
-            }
-        }
-        Gene2Bin g2b = background2binMap.get(genesymbol);
-        g2b.addVar(frequency, pathogenicity);
-    }
-
-
     /**
      * This function writes all of the pathogenicity scores for any variant classified as pathogenic by ClinVar to
      * a file.
      */
     private void getClinvarPathScores() {
-        try {
-            BufferedWriter cvwriter = new BufferedWriter(new FileWriter("clinvarpath.txt"));
+        try (BufferedWriter cvwriter = new BufferedWriter(new FileWriter("clinvarpath.txt"))) {
             int i=0;
+            VariantAnnotator variantAnnotator = variantAnnotatorSupplier.get();
             System.out.println("Analyzing pathogenic and benign ClinVar variants...");
             for (Map.Entry<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> entry : alleleMap.entrySet()) {
                 AlleleProto.AlleleKey alleleKey = entry.getKey();
@@ -172,8 +209,7 @@ public class GenicIntoleranceCalculator {
                     // there are also three categories that we will regard as "benign".
                     // We org.monarchinitiative.lirical.output the pathogenicity scores and the interpretation with the goal of visualizing
                     // the distributions of benign and pathogenic variant pathogenicity scores.
-                    if (PATHOGENIC_CLINVAR_PRIMARY_INTERPRETATIONS.contains(clinVarData.getPrimaryInterpretation()) ||
-                            BENIGN_CLINVAR_PRIMARY_INTERPRETATIONS.contains(clinVarData.getPrimaryInterpretation())) {
+                    if (isBenignOrPathogenic(clinVarData)) {
                         cvwriter.write(pathogenicity + "\t"+clinVarData.getPrimaryInterpretation()+"\n");
                         i++;
                         if (i%10==0) {
@@ -189,97 +225,353 @@ public class GenicIntoleranceCalculator {
 
     }
 
+    /**
+     * @param clinVarData ClinVar data of a variant
+     * @return true if ClinVar regards the variant as (likely) pathogenic or (likely) benign
+     */
+    private static boolean isBenignOrPathogenic(ClinVarData clinVarData) {
+        return PATHOGENIC_CLINVAR_PRIMARY_INTERPRETATIONS.contains(clinVarData.getPrimaryInterpretation()) ||
+                BENIGN_CLINVAR_PRIMARY_INTERPRETATIONS.contains(clinVarData.getPrimaryInterpretation());
+    }
+
+    /**
+     * This function counts the pathogenicity scores of the variants that are classified as pathogenic or benign
+     * by ClinVar (the same variants as {@link #getClinvarPathScores()}) in histograms per ClinVar interpretation
+     * and per variant effect, and writes the histograms to {@link #CLINVAR_HISTOGRAM_FILE}. The blocks of the genome
+     * are processed in parallel, and the histograms of the blocks are merged.
+     */
+    private void writeClinvarHistograms() {
+        List<Long> blockIds = blockIds();
+        logger.info("Counting the pathogenicity scores of ClinVar variants in {} blocks with {} threads", blockIds.size(), threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        ThreadLocal<VariantAnnotator> annotators = ThreadLocal.withInitial(variantAnnotatorSupplier);
+        List<Future<PathogenicityHistograms>> futures = new ArrayList<>();
+        for (long blockId : blockIds) {
+            futures.add(executor.submit(() -> clinvarHistograms(blockId, annotators.get())));
+        }
+        executor.shutdown();
+        PathogenicityHistograms histograms = new PathogenicityHistograms();
+        try {
+            for (Future<PathogenicityHistograms> future : futures) {
+                histograms.merge(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            throw new LiricalRuntimeException("Interrupted while counting ClinVar pathogenicity scores");
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            throw new LiricalRuntimeException("Could not count ClinVar pathogenicity scores: " + e.getCause().getMessage());
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(CLINVAR_HISTOGRAM_FILE))) {
+            histograms.write(writer);
+        } catch (IOException e) {
+            throw new LiricalRuntimeException(String.format("Could not write %s (%s)", CLINVAR_HISTOGRAM_FILE, e.getMessage()));
+        }
+        logger.info("Wrote histograms of {} ClinVar variants to {}", histograms.getVariantCount(), CLINVAR_HISTOGRAM_FILE);
+    }
+
+    /**
+     * @param blockId id of a block (see {@link #blockId(int, int)})
+     * @param variantAnnotator annotator of the current thread
+     * @return histograms of the pathogenicity scores of the ClinVar variants of the block
+     */
+    private PathogenicityHistograms clinvarHistograms(long blockId, VariantAnnotator variantAnnotator) {
+        PathogenicityHistograms histograms = new PathogenicityHistograms();
+        forEachAllele(blockId, (alleleKey, alleleProperties) -> {
+            PathogenicityData pathogenicityData = AlleleProtoAdaptor.toPathogenicityData(alleleProperties);
+            if (pathogenicityData.isEmpty() || !isBenignOrPathogenic(pathogenicityData.getClinVarData())) {
+                return; // checked first because most alleles are not in ClinVar and need not be annotated
+            }
+            VariantAnnotation variantAnnotation = variantAnnotator.annotate(String.valueOf(alleleKey.getChr()), alleleKey.getPosition(), alleleKey.getRef(), alleleKey.getAlt());
+            VariantEffect variantEffect = variantAnnotation.getVariantEffect();
+            if (variantEffect.isOffExome()) {
+                return;
+            }
+            float pathogenicity = calculatePathogenicity(variantEffect, pathogenicityData);
+            histograms.add(pathogenicityData.getClinVarData().getPrimaryInterpretation(), variantEffect, pathogenicity);
+        });
+        return histograms;
+    }
+
     /**
      * This method goes through all of the Exomiser's variants and records the frequencies of variants in the
      * predicted pathogenic bin (i.e., Exomiser score of 0.8 to 1.0). Note that we disregard off-exome
      * variants. We first try to find the frequency in GNOMAD_E (exome), under the assumption that this data
      * source will be the most accurate for exonic variants. Failing that, we take the corresponding
      * GNOMAD_G (genome) data.
+     * <p>
+     * The alleles are processed in blocks of {@link #BLOCK_SIZE} bases by {@link #threads} threads. Each block is
+     * binned into its own {@link BinAccumulator}, and the accumulators are added to the backgrounds in the order of
+     * the blocks, so that the result does not depend on the number of threads.
+     * <p>
+     * If there is a checkpoint file, the bins of each block are written to it regularly together with a digest of
+     * the alleles of the block and of the transcripts near the block. A block whose digest equals the digest in the
+     * checkpoint is not annotated again, but its bins are taken from the checkpoint. This allows an interrupted run
+     * to resume, and a run with a new Exomiser release to annotate only the blocks with added, removed or changed
+     * alleles or transcripts. Because the bins of all blocks are added in the same order, the result is identical
+     * to the result of a run without the checkpoint.
      */
     private void binPathogenicityData() {
         logger.trace("Binning pathogenicity data...");
-        int c=0;
-        for (Map.Entry<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> entry : alleleMap.entrySet()) {
-            AlleleProto.AlleleKey alleleKey = entry.getKey();
-            AlleleProto.AlleleProperties alleleProperties = entry.getValue();
-            VariantAnnotation variantAnnotation = variantAnnotator.annotate(String.valueOf(alleleKey.getChr()), alleleKey.getPosition(), alleleKey.getRef(), alleleKey.getAlt());
-            VariantEffect variantEffect = variantAnnotation.getVariantEffect();
-            if (!variantEffect.isOffExome()) {
-                // Note that frequency data are expressed as percentages
-                FrequencyData frequencyData = AlleleProtoAdaptor.toFrequencyData(alleleProperties);
-                PathogenicityData pathogenicityData = AlleleProtoAdaptor.toPathogenicityData(alleleProperties);
-                if (variantEffect == VariantEffect.SPLICE_REGION_VARIANT) {
-                    continue; // skip the +3..+6 splice region vars etc
-                }
-                // The following is the population (background) frequency, expressed as a percentage
-                // If we have not information  about the frequency, we will assume the variant is
-                // possibly an artefact and skip it.
-                if (! frequencyData.hasKnownFrequency())
-                    continue; // skip unknown frequency variants
-
-                float pathogenicity = calculatePathogenicity(variantEffect, pathogenicityData);
-                String genesymbol = variantAnnotation.getGeneSymbol();
-                String id = variantAnnotation.getGeneId();
-
-                Frequency afr = frequencyData.getFrequencyForSource(GNOMAD_E_AFR);
-                if (afr==null) {
-                    afr = frequencyData.getFrequencyForSource(GNOMAD_G_AFR);
-                }
-                if (afr!=null) {
-                    float frequencyAsPercentage = afr.getFrequency();
-                    addToBin(genesymbol, id, frequencyAsPercentage, pathogenicity, GNOMAD_E_AFR);
-                }
-                Frequency amr = frequencyData.getFrequencyForSource(GNOMAD_E_AMR);
-                if (amr==null) {
-                    amr=frequencyData.getFrequencyForSource(GNOMAD_G_AMR);
-                }
-                if (amr!=null) {
-                    float frequencyAsPercentage = amr.getFrequency();
-                    addToBin(genesymbol, id, frequencyAsPercentage, pathogenicity, GNOMAD_E_AMR);
-                }
-                Frequency asj = frequencyData.getFrequencyForSource(GNOMAD_E_ASJ);
-                if (asj==null) {
-                    asj=frequencyData.getFrequencyForSource(GNOMAD_G_ASJ);
-                }
-                if (asj!=null) {
-                    float frequencyAsPercentage = asj.getFrequency();
-                    addToBin(genesymbol, id, frequencyAsPercentage, pathogenicity, GNOMAD_E_ASJ);
-                }
-                Frequency eas = frequencyData.getFrequencyForSource(GNOMAD_E_EAS);
-                if (eas==null) {
-                    eas=frequencyData.getFrequencyForSource(GNOMAD_G_EAS);
-                }
-                if (eas!=null) {
-                    float frequencyAsPercentage = eas.getFrequency();
-                    addToBin(genesymbol, id, frequencyAsPercentage, pathogenicity, GNOMAD_E_EAS);
-                }
-                Frequency fin = frequencyData.getFrequencyForSource(GNOMAD_E_FIN);
-                if (fin==null) {
-                    fin= frequencyData.getFrequencyForSource(GNOMAD_G_FIN);
-                }
-                if (fin!=null) {
-                    float frequencyAsPercentage = fin.getFrequency();
-                    addToBin(genesymbol, id, frequencyAsPercentage, pathogenicity, GNOMAD_E_FIN);
-                }
-                Frequency nfe = frequencyData.getFrequencyForSource(GNOMAD_E_NFE);
-                if (nfe==null) {
-                    nfe = frequencyData.getFrequencyForSource(GNOMAD_G_NFE);
-                }
-                if (nfe!=null) {
-                    float frequencyAsPercentage = nfe.getFrequency();
-                    addToBin(genesymbol, id, frequencyAsPercentage, pathogenicity, GNOMAD_E_NFE);
-                }
-                Frequency sas = frequencyData.getFrequencyForSource(GNOMAD_E_SAS);
-                if (sas==null) {
-                    sas= frequencyData.getFrequencyForSource(GNOMAD_G_SAS);
-                }
-                if (sas!=null) {
-                    float frequencyAsPercentage = sas.getFrequency();
-                    addToBin(genesymbol, id, frequencyAsPercentage, pathogenicity, GNOMAD_E_SAS);
-                }
-                if (c++%100_000==0) {
-                    System.out.println("Processed variant "+c);
+        List<Long> blockIds = blockIds();
+        SortedMap<Long, BinAccumulator> accumulators = new TreeMap<>();
+        BackgroundCheckpoint checkpoint = checkpointPath == null ? null : BackgroundCheckpoint.open(checkpointPath, inputDescription);
+        try {
+            Map<Long, BinAccumulator> previousBlocks = new HashMap<>();
+            Map<Long, byte[]> previousDigests = new HashMap<>();
+            Map<Long, HashCode> transcriptDigests = new HashMap<>();
+            if (checkpoint != null) {
+                previousBlocks.putAll(checkpoint.completedBlocks());
+                previousDigests.putAll(checkpoint.digests());
+                Set<Long> removed = new HashSet<>(previousBlocks.keySet());
+                removed.removeAll(blockIds);
+                checkpoint.remove(removed);
+                transcriptDigests.putAll(transcriptDigests());
+            }
+            logger.info("Binning the alleles of {} blocks ({} blocks in checkpoint) with {} threads",
+                    blockIds.size(), previousBlocks.size(), threads);
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            ThreadLocal<VariantAnnotator> annotators = ThreadLocal.withInitial(variantAnnotatorSupplier);
+            CompletionService<BinnedBlock> completionService = new ExecutorCompletionService<>(executor);
+            for (long blockId : blockIds) {
+                completionService.submit(() -> {
+                    if (checkpoint == null) {
+                        return new BinnedBlock(blockId, null, binBlock(blockId, annotators.get()), false);
+                    }
+                    byte[] digest = digest(blockId, transcriptDigests.get(blockId));
+                    BinAccumulator previous = previousBlocks.get(blockId);
+                    if (previous != null && Arrays.equals(digest, previousDigests.get(blockId))) {
+                        return new BinnedBlock(blockId, digest, previous, true);
+                    }
+                    return new BinnedBlock(blockId, digest, binBlock(blockId, annotators.get()), false);
+                });
+            }
+            executor.shutdown();
+            long lastCheckpoint = System.currentTimeMillis();
+            long n_variants = 0;
+            int n_reused = 0;
+            try {
+                for (int i = 0; i < blockIds.size(); i++) {
+                    BinnedBlock result = completionService.take().get();
+                    accumulators.put(result.blockId, result.accumulator);
+                    if (result.reused) {
+                        n_reused++;
+                        continue;
+                    }
+                    n_variants += result.accumulator.getVariantCount();
+                    if (checkpoint != null) {
+                        checkpoint.put(result.blockId, result.digest, result.accumulator);
+                        if (System.currentTimeMillis() - lastCheckpoint > CHECKPOINT_INTERVAL_MILLIS) {
+                            checkpoint.commit();
+                            lastCheckpoint = System.currentTimeMillis();
+                        }
+                    }
+                    if ((i + 1) % 100 == 0) {
+                        logger.info("Binned {} of {} blocks ({} population frequencies)", i + 1, blockIds.size(), n_variants);
+                    }
                 }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+                throw new LiricalRuntimeException("Interrupted while binning pathogenicity data");
+            } catch (ExecutionException e) {
+                executor.shutdownNow();
+                throw new LiricalRuntimeException("Could not bin pathogenicity data: " + e.getCause().getMessage());
+            }
+            logger.info("Annotated {} blocks, took {} unchanged blocks from the checkpoint", blockIds.size() - n_reused, n_reused);
+        } finally {
+            if (checkpoint != null) {
+                checkpoint.close();
+            }
+        }
+        for (BinAccumulator accumulator : accumulators.values()) {
+            accumulator.addTo(backgroundMap, orderedSources, geneSymbolSet, symbol2idMap);
+        }
+    }
+
+    /** The bins of one block of the genome. */
+    private static class BinnedBlock {
+        private final long blockId;
+        /** Digest of the alleles and transcripts of the block (null if there is no checkpoint). */
+        private final byte[] digest;
+        private final BinAccumulator accumulator;
+        /** True if the bins were taken from the checkpoint. */
+        private final boolean reused;
+
+        private BinnedBlock(long blockId, byte[] digest, BinAccumulator accumulator, boolean reused) {
+            this.blockId = blockId;
+            this.digest = digest;
+            this.accumulator = accumulator;
+            this.reused = reused;
+        }
+    }
+
+    /**
+     * @return the ids of all blocks of {@link #BLOCK_SIZE} bases from the first to the last allele of each
+     * chromosome of the Exomiser database, in the order of the alleles
+     */
+    private List<Long> blockIds() {
+        List<Long> blockIds = new ArrayList<>();
+        AlleleProto.AlleleKey first = alleleMap.firstKey();
+        while (first != null) {
+            int chr = first.getChr();
+            AlleleProto.AlleleKey nextChromosome = startKey(chr + 1, 0);
+            AlleleProto.AlleleKey last = alleleMap.lowerKey(nextChromosome);
+            for (int block = first.getPosition() / BLOCK_SIZE; block <= last.getPosition() / BLOCK_SIZE; block++) {
+                blockIds.add(blockId(chr, block));
+            }
+            first = alleleMap.ceilingKey(nextChromosome);
+        }
+        return blockIds;
+    }
+
+    static long blockId(int chr, int block) {
+        return ((long) chr << 32) | block;
+    }
+
+    /** @return a key that sorts before all alleles of the chromosome at or after the position. */
+    private static AlleleProto.AlleleKey startKey(int chr, int position) {
+        return AlleleProto.AlleleKey.newBuilder()
+                .setChr(chr)
+                .setPosition(position)
+                .setRef("")
+                .setAlt("")
+                .build();
+    }
+
+    /**
+     * Bin the alleles of one block.
+     * @param blockId id of a block (see {@link #blockId(int, int)})
+     * @param variantAnnotator annotator of the current thread
+     * @return the bins of the genes of the block
+     */
+    private BinAccumulator binBlock(long blockId, VariantAnnotator variantAnnotator) {
+        BinAccumulator accumulator = new BinAccumulator(orderedSources.length);
+        forEachAllele(blockId, (alleleKey, alleleProperties) -> binAllele(alleleKey, alleleProperties, variantAnnotator, accumulator));
+        return accumulator;
+    }
+
+    /**
+     * Pass each allele of a block (in the order of the Exomiser database) to a consumer.
+     * @param blockId id of a block (see {@link #blockId(int, int)})
+     * @param consumer consumer of the key and properties of the alleles
+     */
+    private void forEachAllele(long blockId, BiConsumer<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> consumer) {
+        int chr = (int) (blockId >>> 32);
+        int block = (int) blockId;
+        int end = (block + 1) * BLOCK_SIZE;
+        Cursor<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> cursor = alleleMap.cursor(startKey(chr, block * BLOCK_SIZE));
+        while (cursor.hasNext()) {
+            AlleleProto.AlleleKey alleleKey = cursor.next();
+            if (alleleKey.getChr() != chr || alleleKey.getPosition() >= end) {
+                break;
+            }
+            consumer.accept(alleleKey, cursor.getValue());
+        }
+    }
+
+    /**
+     * @param blockId id of a block (see {@link #blockId(int, int)})
+     * @param transcriptDigest digest of the transcripts near the block (null if there are none)
+     * @return a digest of the keys and properties of the alleles of the block and of the transcripts near it
+     */
+    private byte[] digest(long blockId, HashCode transcriptDigest) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putLong(blockId);
+        forEachAllele(blockId, (alleleKey, alleleProperties) -> {
+            hasher.putInt(alleleKey.getPosition());
+            hasher.putUnencodedChars(alleleKey.getRef());
+            hasher.putChar('\t');
+            hasher.putUnencodedChars(alleleKey.getAlt());
+            hasher.putChar('\t');
+            hasher.putBytes(alleleProperties.toByteArray());
+        });
+        if (transcriptDigest != null) {
+            hasher.putBytes(transcriptDigest.asBytes());
+        }
+        return hasher.hash().asBytes();
+    }
+
+    /**
+     * @return key: id of a block; value: digest of the {@link #transcripts} within {@link #TRANSCRIPT_MARGIN} bases
+     * of the block (blocks without transcripts are not in the map)
+     */
+    private Map<Long, HashCode> transcriptDigests() {
+        if (transcripts == null) {
+            return Collections.emptyMap();
+        }
+        Map<Long, List<HashCode>> block2hashes = new HashMap<>();
+        for (TranscriptModel tm : transcripts) {
+            // regions of minus-strand transcripts are given in reverse coordinates
+            GenomeInterval region = tm.getTXRegion().withStrand(Strand.FWD);
+            HashCode hash = transcriptHash(tm);
+            int first = Math.max(0, region.getBeginPos() - TRANSCRIPT_MARGIN) / BLOCK_SIZE;
+            int last = (region.getEndPos() + TRANSCRIPT_MARGIN) / BLOCK_SIZE;
+            for (int block = first; block <= last; block++) {
+                block2hashes.computeIfAbsent(blockId(region.getChr(), block), k -> new ArrayList<>()).add(hash);
+            }
+        }
+        Map<Long, HashCode> digests = new HashMap<>();
+        for (Map.Entry<Long, List<HashCode>> entry : block2hashes.entrySet()) {
+            digests.put(entry.getKey(), Hashing.combineUnordered(entry.getValue()));
+        }
+        return digests;
+    }
+
+    private static HashCode transcriptHash(TranscriptModel tm) {
+        Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putUnencodedChars(String.valueOf(tm.getAccession())).putChar('\t');
+        hasher.putUnencodedChars(String.valueOf(tm.getGeneSymbol())).putChar('\t');
+        hasher.putUnencodedChars(String.valueOf(tm.getGeneID())).putChar('\t');
+        putInterval(hasher, tm.getTXRegion());
+        putInterval(hasher, tm.getCDSRegion());
+        for (GenomeInterval exon : tm.getExonRegions()) {
+            putInterval(hasher, exon);
+        }
+        hasher.putUnencodedChars(String.valueOf(tm.getSequence()));
+        return hasher.hash();
+    }
+
+    private static void putInterval(Hasher hasher, GenomeInterval interval) {
+        hasher.putInt(interval.getChr())
+                .putInt(interval.getBeginPos())
+                .putInt(interval.getEndPos())
+                .putBoolean(interval.getStrand() == Strand.FWD);
+    }
+
+    private void binAllele(AlleleProto.AlleleKey alleleKey,
+                           AlleleProto.AlleleProperties alleleProperties,
+                           VariantAnnotator variantAnnotator,
+                           BinAccumulator accumulator) {
+        VariantAnnotation variantAnnotation = variantAnnotator.annotate(String.valueOf(alleleKey.getChr()), alleleKey.getPosition(), alleleKey.getRef(), alleleKey.getAlt());
+        VariantEffect variantEffect = variantAnnotation.getVariantEffect();
+        if (variantEffect.isOffExome()) {
+            return;
+        }
+        if (variantEffect == VariantEffect.SPLICE_REGION_VARIANT) {
+            return; // skip the +3..+6 splice region vars etc
+        }
+        // Note that frequency data are expressed as percentages
+        FrequencyData frequencyData = AlleleProtoAdaptor.toFrequencyData(alleleProperties);
+        // The following is the population (background) frequency, expressed as a percentage
+        // If we have not information  about the frequency, we will assume the variant is
+        // possibly an artefact and skip it.
+        if (! frequencyData.hasKnownFrequency()) {
+            return; // skip unknown frequency variants
+        }
+        PathogenicityData pathogenicityData = AlleleProtoAdaptor.toPathogenicityData(alleleProperties);
+        float pathogenicity = calculatePathogenicity(variantEffect, pathogenicityData);
+        String genesymbol = variantAnnotation.getGeneSymbol();
+        String id = variantAnnotation.getGeneId();
+        for (int p = 0; p < orderedSources.length; p++) {
+            Frequency frequency = frequencyData.getFrequencyForSource(orderedSources[p]);
+            if (frequency == null) {
+                frequency = frequencyData.getFrequencyForSource(GENOME_SOURCES[p]);
+            }
+            if (frequency != null) {
+                float frequencyAsPercentage = frequency.getFrequency();
+                accumulator.add(genesymbol, id, p, frequencyAsPercentage, pathogenicity);
             }
         }
     }
@@ -358,4 +650,71 @@ public class GenicIntoleranceCalculator {
         }
     }
 
+    /**
+     * A convenience Builder class for creating {@link GenicIntoleranceCalculator} objects.
+     */
+    public static class Builder {
+        private final Supplier<VariantAnnotator> variantAnnotatorSupplier;
+        private final MVStore alleleStore;
+        private final String outputFileName;
+        private boolean doClinvar = false;
+        private boolean clinvarHistograms = false;
+        /** Number of threads (default: 1). */
+        private int threads = 1;
+        private Path checkpointPath = null;
+        private Map<String, String> inputDescription = new HashMap<>();
+        private Collection<TranscriptModel> transcripts = null;
+
+        /**
+         * @param variantAnnotatorSupplier creates an object to annotate arbitrary variants (called once per thread)
+         * @param alleleStore Exomiser data resource
+         * @param fname name of the output file (background-hg38.tsv or background-hg19.tsv).
+         */
+        public Builder(Supplier<VariantAnnotator> variantAnnotatorSupplier, MVStore alleleStore, String fname) {
+            this.variantAnnotatorSupplier = variantAnnotatorSupplier;
+            this.alleleStore = alleleStore;
+            this.outputFileName = fname;
+        }
+
+        public Builder clinvar(boolean doClinvar) {
+            this.doClinvar = doClinvar;
+            return this;
+        }
+
+        /** @param histograms if true, the ClinVar mode writes histograms of the pathogenicity scores instead of all scores */
+        public Builder clinvarHistograms(boolean histograms) {
+            this.clinvarHistograms = histograms;
+            return this;
+        }
+
+        public Builder threads(int n) {
+            this.threads = n;
+            return this;
+        }
+
+        /**
+         * @param path checkpoint file (null: no checkpoints)
+         * @param description description of the input data, e.g., the Exomiser release and the transcript database;
+         *                    a checkpoint that was created with a different description is not used
+         */
+        public Builder checkpoint(Path path, Map<String, String> description) {
+            this.checkpointPath = path;
+            this.inputDescription = new HashMap<>(description);
+            return this;
+        }
+
+        /**
+         * @param transcripts the transcripts that are used by the annotators. With a checkpoint, the bins of a block
+         *                    are only reused if the transcripts near the block have not changed. If the transcripts
+         *                    are not given, the input description of the checkpoint should identify them.
+         */
+        public Builder transcripts(Collection<TranscriptModel> transcripts) {
+            this.transcripts = transcripts;
+            return this;
+        }
+
+        public GenicIntoleranceCalculator build() {
+            return new GenicIntoleranceCalculator(this);
+        }
+    }
 }
@@ -0,0 +1,114 @@
+package org.monarchinitiative.lirical.backgroundfrequency;
+
+import de.charite.compbio.jannovar.annotation.VariantEffect;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.ClinVarData;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Histograms of the pathogenicity scores of ClinVar variants, one for each ClinVar primary interpretation and one for
+ * each variant effect. The scores between 0 and 1 are counted in {@link #N_BINS} bins of equal width, so that the
+ * threshold of the predicted pathogenic bin (0.8) is a bin boundary. Histograms that were filled by different threads
+ * are combined with {@link #merge(PathogenicityHistograms)}; since only counts are stored, the result does not depend
+ * on the order in which they are merged.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+class PathogenicityHistograms {
+    /** Number of bins of each histogram. */
+    static final int N_BINS = 20;
+    private final Map<ClinVarData.ClinSig, long[]> clinSig2counts = new EnumMap<>(ClinVarData.ClinSig.class);
+    private final Map<VariantEffect, long[]> effect2counts = new EnumMap<>(VariantEffect.class);
+
+    /**
+     * @param pathogenicity a pathogenicity score between 0 and 1
+     * @return index of the bin of the score
+     */
+    static int bin(double pathogenicity) {
+        int bin = (int) (pathogenicity * N_BINS);
+        return Math.max(0, Math.min(N_BINS - 1, bin)); // a score of 1.0 belongs to the last bin
+    }
+
+    /**
+     * Count the pathogenicity score of one variant.
+     * @param clinSig ClinVar primary interpretation of the variant
+     * @param effect variant effect of the variant
+     * @param pathogenicity pathogenicity score of the variant
+     */
+    void add(ClinVarData.ClinSig clinSig, VariantEffect effect, double pathogenicity) {
+        int bin = bin(pathogenicity);
+        clinSig2counts.computeIfAbsent(clinSig, k -> new long[N_BINS])[bin]++;
+        effect2counts.computeIfAbsent(effect, k -> new long[N_BINS])[bin]++;
+    }
+
+    /** Add the counts of other histograms to these histograms. */
+    void merge(PathogenicityHistograms other) {
+        merge(clinSig2counts, other.clinSig2counts);
+        merge(effect2counts, other.effect2counts);
+    }
+
+    private static <K> void merge(Map<K, long[]> counts, Map<K, long[]> otherCounts) {
+        for (Map.Entry<K, long[]> entry : otherCounts.entrySet()) {
+            long[] c = counts.computeIfAbsent(entry.getKey(), k -> new long[N_BINS]);
+            for (int i = 0; i < N_BINS; i++) {
+                c[i] += entry.getValue()[i];
+            }
+        }
+    }
+
+    /** @return total number of variants that were counted. */
+    long getVariantCount() {
+        long n = 0;
+        for (long[] c : clinSig2counts.values()) {
+            for (long x : c) {
+                n += x;
+            }
+        }
+        return n;
+    }
+
+    /** @return counts of the bins for the ClinVar interpretation (all zero if there was no such variant). */
+    long[] getCounts(ClinVarData.ClinSig clinSig) {
+        return clinSig2counts.getOrDefault(clinSig, new long[N_BINS]).clone();
+    }
+
+    /** @return counts of the bins for the variant effect (all zero if there was no such variant). */
+    long[] getCounts(VariantEffect effect) {
+        return effect2counts.getOrDefault(effect, new long[N_BINS]).clone();
+    }
+
+    /** @return the header of the table written by {@link #write(Writer)}. */
+    static String header() {
+        StringBuilder sb = new StringBuilder("#group\tclass\tcount");
+        for (int i = 0; i < N_BINS; i++) {
+            sb.append(String.format("\t%.2f-%.2f", (double) i / N_BINS, (double) (i + 1) / N_BINS));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the histograms as a table with one line per ClinVar interpretation and per variant effect.
+     * @param writer the writer (not closed by this method)
+     */
+    void write(Writer writer) throws IOException {
+        writer.write(header() + "\n");
+        for (Map.Entry<ClinVarData.ClinSig, long[]> entry : clinSig2counts.entrySet()) {
+            writeLine(writer, "clinsig", entry.getKey().toString(), entry.getValue());
+        }
+        for (Map.Entry<VariantEffect, long[]> entry : effect2counts.entrySet()) {
+            writeLine(writer, "effect", entry.getKey().toString(), entry.getValue());
+        }
+    }
+
+    private static void writeLine(Writer writer, String group, String name, long[] counts) throws IOException {
+        long total = 0;
+        StringBuilder sb = new StringBuilder();
+        for (long c : counts) {
+            sb.append('\t').append(c);
+            total += c;
+        }
+        writer.write(group + "\t" + name + "\t" + total + sb + "\n");
+    }
+}
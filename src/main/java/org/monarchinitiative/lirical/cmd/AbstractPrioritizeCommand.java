@@ -39,6 +39,36 @@ public abstract class AbstractPrioritizeCommand {
     protected String outfilePrefix="lirical";
     @CommandLine.Option(names={"--orpha"},description = "use Orphanet annotation data (default: ${DEFAULT-VALUE})")
     boolean useOrphanet = false;
+    /** Number of threads used to annotate the VCF file. */
+    @CommandLine.Option(names={"--threads"}, description = "number of threads used to annotate the VCF file (default: ${DEFAULT-VALUE})")
+    protected int threads = 1;
+    /** Maximum number of batches of VCF records that are waiting to be merged (0: twice the number of threads). */
+    @CommandLine.Option(names={"--queue-capacity"}, description = "maximum number of VCF batches waiting to be merged (default: 2 x threads)")
+    protected int queueCapacity = 0;
+    /** If set, only VCF records within this many bases of a disease gene are annotated. */
+    @CommandLine.Option(names={"--disease-gene-padding"}, description = "only annotate variants within this many bp of a disease gene (default: annotate all variants)")
+    protected Integer diseaseGenePadding = null;
+    /** File with gene symbols or NCBIGene ids, one per line. If set, only variants in these genes are annotated. */
+    @CommandLine.Option(names={"--gene-panel"}, description = "file with the genes (symbols or NCBIGene ids) whose variants are annotated")
+    protected String genePanel = null;
+    /** If set, alleles with a higher maximum population frequency (in percent) are not annotated. */
+    @CommandLine.Option(names={"--max-frequency"}, description = "skip variants with a higher population frequency (in percent) before annotation (default: no frequency filter)")
+    protected Double maxFrequency = null;
+    /** If set, the Exomiser data are read from this allele table (see the allele-table command) instead of the MVStore. */
+    @CommandLine.Option(names={"--allele-table"}, description = "allele table extracted from the Exomiser database with the allele-table command")
+    protected String alleleTable = null;
+    /** Size of the page cache of the Exomiser MVStore (null: default of the MVStore). */
+    @CommandLine.Option(names={"--mvstore-cache-size"}, description = "page cache of the Exomiser database in MB (default: 16)")
+    protected Integer mvStoreCacheSize = null;
+    @CommandLine.Option(names={"--mvstore-read-only"}, arity = "1", description = "open the Exomiser database read-only (default: ${DEFAULT-VALUE})")
+    protected boolean mvStoreReadOnly = true;
+    @CommandLine.Option(names={"--mvstore-mmap"}, description = "memory-map the Exomiser database file (default: ${DEFAULT-VALUE})")
+    protected boolean mvStoreMemoryMapped = false;
+    /** If set, genotype maps are cached in this directory and reused when the same VCF file is analyzed again. */
+    @CommandLine.Option(names={"--genotype-cache"}, description = "directory for caching annotated VCF files")
+    protected String genotypeCache = null;
+    @CommandLine.Option(names={"--genotype-cache-size"}, description = "maximum size of the genotype cache in MB (default: ${DEFAULT-VALUE})")
+    protected int genotypeCacheSize = 1024;
     /** An object that contains parameters from the YAML file for configuration. */
     protected LiricalFactory factory;
     /** Key: an EntrezGene id; value: corresponding gene symbol. */
@@ -58,6 +88,22 @@ public abstract class AbstractPrioritizeCommand {
                 throw new LiricalRuntimeException("Post-test probability (-t/--threshold) must be between 0.0 and 1.0.");
             }
         }
+        if (threads < 1) {
+            System.err.println("[ERROR] Number of threads (--threads) must be at least 1.");
+            throw new LiricalRuntimeException("Number of threads (--threads) must be at least 1.");
+        }
+        if (maxFrequency != null && (maxFrequency < 0.0 || maxFrequency > 100.0)) {
+            System.err.println("[ERROR] Maximum population frequency (--max-frequency) must be between 0 and 100.");
+            throw new LiricalRuntimeException("Maximum population frequency (--max-frequency) must be between 0 and 100.");
+        }
+        if (mvStoreCacheSize != null && mvStoreCacheSize < 1) {
+            System.err.println("[ERROR] MVStore cache size (--mvstore-cache-size) must be at least 1 MB.");
+            throw new LiricalRuntimeException("MVStore cache size (--mvstore-cache-size) must be at least 1 MB.");
+        }
+        if (diseaseGenePadding != null && diseaseGenePadding < 0) {
+            System.err.println("[ERROR] Disease gene padding (--disease-gene-padding) must not be negative.");
+            throw new LiricalRuntimeException("Disease gene padding (--disease-gene-padding) must not be negative.");
+        }
     }
 
 }
@@ -0,0 +1,74 @@
+package org.monarchinitiative.lirical.cmd;
+
+import org.monarchinitiative.exomiser.core.genome.dao.serialisers.MvStoreUtil;
+import org.monarchinitiative.lirical.analysis.GeneIntervalIndex;
+import org.monarchinitiative.lirical.analysis.SlimAlleleTable;
+import org.monarchinitiative.lirical.configuration.LiricalFactory;
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+
+/**
+ * This command extracts the alleles that LIRICAL can use from the Exomiser database, i.e., the alleles in the exons
+ * and splice regions of the disease genes (or of the genes of a gene panel), into a {@link SlimAlleleTable}. The
+ * table is a small fraction of the size of the Exomiser database and can be used in its place with the option
+ * {@code --allele-table}. The Exomiser directory is still needed for the Jannovar transcript data.
+ * To run the command enter
+ * <pre>
+ *     java -jar LIRICAL.jar allele-table -e <path to Exomiser database> -g <hg19 or hg38> -o alleles-hg38.bin
+ * </pre>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+@CommandLine.Command(name = "allele-table",
+        mixinStandardHelpOptions = true,
+        description = "Extract the alleles of the disease genes from the Exomiser database",
+        hidden = true)
+public class AlleleTableCommand implements Callable<Integer> {
+    private static final Logger logger = LoggerFactory.getLogger(AlleleTableCommand.class);
+    @CommandLine.Option(names={"-e","--exomiser"}, description = "path to Exomiser database directory", required = true)
+    private String exomiser;
+    /** Should be one of hg19 or hg38. */
+    @CommandLine.Option(names={"-g", "--genome"}, description = "string representing the genome assembly (hg19,hg38)")
+    private String genomeAssemblyString="hg38";
+    @CommandLine.Option(names={"--transcriptdb"}, description = "Jannovar transcript database (UCSC, RefSeq)")
+    private String transcriptdatabase="UCSC";
+    /** Directory that contains {@code hp.obo} and {@code phenotype.hpoa}, which are needed to find the disease genes. */
+    @CommandLine.Option(names={"-d","--data"}, description ="directory to download data (default: ${DEFAULT-VALUE})" )
+    private String datadir="data";
+    @CommandLine.Option(names={"-o","--output"}, description = "name of the allele table (default: ${DEFAULT-VALUE})")
+    private String outputPath = "alleles.bin";
+    /** Jannovar annotates variants up to 8 bases into an intron as splice region variants. */
+    @CommandLine.Option(names={"--splice-padding"}, description = "number of bases added on both sides of each exon (default: ${DEFAULT-VALUE})")
+    private int splicePadding = 10;
+    /** File with gene symbols or NCBIGene ids, one per line. If set, only the alleles of these genes are extracted. */
+    @CommandLine.Option(names={"--gene-panel"}, description = "file with the genes (symbols or NCBIGene ids) whose alleles are extracted")
+    private String genePanel = null;
+
+    public AlleleTableCommand() {
+    }
+
+    @Override
+    public Integer call() throws LiricalException {
+        if (splicePadding < 0) {
+            throw new LiricalException("Splice padding (--splice-padding) must not be negative.");
+        }
+        LiricalFactory factory = new LiricalFactory.Builder()
+                .exomiser(exomiser)
+                .datadir(this.datadir)
+                .transcriptdatabase(transcriptdatabase)
+                .genomeAssembly(this.genomeAssemblyString)
+                .genePanel(this.genePanel)
+                .build();
+        factory.qcExomiserFiles();
+        factory.qcGenomeBuild();
+        GeneIntervalIndex regions = factory.alleleTableRegions(splicePadding);
+        logger.info("Extracting alleles from the Exomiser database to {}", outputPath);
+        int n = SlimAlleleTable.write(MvStoreUtil.openAlleleMVMap(factory.mvStore()), regions, Paths.get(outputPath));
+        logger.info("Extracted {} alleles", n);
+        return 0;
+    }
+}
@@ -14,7 +14,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
+import java.nio.file.Paths;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
 
 /**
@@ -51,11 +54,26 @@ public class BackgroundFrequencyCommand implements Callable<Integer> {
     /** If true, calculate the distribution of ClinVar pathogenicity scores. */
     @CommandLine.Option(names="--clinvar", description = "determine distribution of ClinVar pathogenicity scores")
     private boolean doClinvar;
+    /** If true (with {@code --clinvar}), write histograms of the ClinVar pathogenicity scores instead of one line per variant. */
+    @CommandLine.Option(names="--histogram", description = "with --clinvar, write histograms of the scores per ClinVar interpretation and variant effect")
+    private boolean clinvarHistograms;
     /** Directory that contains {@code hp.obo} and {@code phenotype.hpoa} files. In the current implementation this
      * is required to initialize the {@link LiricalFactory} object, but the data in this directory is not actually
      * needed for this analysis.*/
     @CommandLine.Option(names={"-d","--data"}, description ="directory to download data" )
     private String datadir="data";
+    /** Size of the page cache of the Exomiser MVStore (null: default of the MVStore). */
+    @CommandLine.Option(names={"--mvstore-cache-size"}, description = "page cache of the Exomiser database in MB (default: 16)")
+    private Integer mvStoreCacheSize = null;
+    @CommandLine.Option(names={"--mvstore-mmap"}, description = "memory-map the Exomiser database file (default: ${DEFAULT-VALUE})")
+    private boolean mvStoreMemoryMapped = false;
+    /** Number of threads that annotate the Exomiser alleles. */
+    @CommandLine.Option(names={"-t","--threads"}, description = "number of threads (default: ${DEFAULT-VALUE})")
+    private int threads = 1;
+    /** If not null, completed blocks of the genome are saved to this file, and the next run (e.g., after an
+     * interruption or with a new Exomiser release) only recalculates the blocks that are missing or have changed. */
+    @CommandLine.Option(names={"--checkpoint"}, description = "checkpoint file that allows a run to resume or to reuse unchanged data of a previous release")
+    private String checkpoint = null;
 
 
     public BackgroundFrequencyCommand(){
@@ -83,7 +101,9 @@ public class BackgroundFrequencyCommand implements Callable<Integer> {
                 .exomiser(exomiser)
                 .datadir(this.datadir)
                 .transcriptdatabase(transcriptdatabase)
-                .genomeAssembly(this.genomeAssemblyString);
+                .genomeAssembly(this.genomeAssemblyString)
+                .mvStoreCacheSize(this.mvStoreCacheSize)
+                .mvStoreMemoryMapped(this.mvStoreMemoryMapped);
 
         LiricalFactory factory = builder.buildForGt2Git();
         factory.qcExomiserFiles();
@@ -94,9 +114,23 @@ public class BackgroundFrequencyCommand implements Callable<Integer> {
         JannovarData jannovarData = factory.jannovarData();
         List<RegulatoryFeature> emtpylist = ImmutableList.of();
         ChromosomalRegionIndex<RegulatoryFeature> emptyRegionIndex = ChromosomalRegionIndex.of(emtpylist);
-        JannovarVariantAnnotator jannovarVariantAnnotator = new JannovarVariantAnnotator(genomeAssembly, jannovarData, emptyRegionIndex);
         String outputpath=this.outputFileName;
-        GenicIntoleranceCalculator calculator = new GenicIntoleranceCalculator(jannovarVariantAnnotator, alleleStore, outputpath, this.doClinvar);
+        GenicIntoleranceCalculator.Builder calculatorBuilder = new GenicIntoleranceCalculator.Builder(
+                () -> new JannovarVariantAnnotator(genomeAssembly, jannovarData, emptyRegionIndex), alleleStore, outputpath)
+                .clinvar(this.doClinvar)
+                .clinvarHistograms(this.clinvarHistograms)
+                .threads(this.threads)
+                .transcripts(jannovarData.getTmByAccession().values());
+        if (checkpoint != null) {
+            // The alleles and transcripts are compared block by block, so that a checkpoint of an older Exomiser
+            // release can be used to recalculate only the blocks that have changed.
+            Map<String, String> inputDescription = new HashMap<>();
+            inputDescription.put("genomeAssembly", genomeAssembly.toString());
+            inputDescription.put("transcriptdb", factory.transcriptdb());
+            inputDescription.put("blockSize", String.valueOf(GenicIntoleranceCalculator.BLOCK_SIZE));
+            calculatorBuilder.checkpoint(Paths.get(checkpoint), inputDescription);
+        }
+        GenicIntoleranceCalculator calculator = calculatorBuilder.build();
         calculator.run();
         return 0;
     }
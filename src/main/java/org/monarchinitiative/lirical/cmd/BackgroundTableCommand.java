@@ -0,0 +1,73 @@
+package org.monarchinitiative.lirical.cmd;
+
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.lirical.io.BackgroundFrequencyTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.Callable;
+
+/**
+ * This command converts a tab-separated background frequency file (as written by the {@code background} command)
+ * into a binary {@link BackgroundFrequencyTable} that keeps the frequencies of all gnomAD populations and can be
+ * passed to LIRICAL with {@code -b}. If no input file is given, the background file of LIRICAL for the genome
+ * assembly is converted. To run the command enter
+ * <pre>
+ *     java -jar LIRICAL.jar background-table -g hg38 -o background-hg38.bin
+ * </pre>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+@CommandLine.Command(name = "background-table",
+        mixinStandardHelpOptions = true,
+        description = "Convert a background frequency file into a binary table",
+        hidden = true)
+public class BackgroundTableCommand implements Callable<Integer> {
+    private static final Logger logger = LoggerFactory.getLogger(BackgroundTableCommand.class);
+    @CommandLine.Option(names={"-i","--input"}, description = "tab-separated background frequency file (default: the file of LIRICAL for the genome assembly)")
+    private String inputPath = null;
+    /** Should be one of hg19 or hg38. */
+    @CommandLine.Option(names={"-g", "--genome"}, description = "string representing the genome assembly (hg19,hg38)")
+    private String genomeAssemblyString="hg38";
+    @CommandLine.Option(names={"-o","--output"}, description = "name of the binary table (default: background-<genome>.bin)")
+    private String outputPath = null;
+
+    public BackgroundTableCommand() {
+    }
+
+    @Override
+    public Integer call() throws LiricalException {
+        String genome = genomeAssemblyString.toLowerCase();
+        if (!genome.equals("hg19") && !genome.equals("hg38")) {
+            throw new LiricalException("Genome assembly (-g) must be hg19 or hg38.");
+        }
+        if (outputPath == null) {
+            outputPath = String.format("background-%s.bin", genome);
+        }
+        try (BufferedReader reader = openInput(genome)) {
+            int n = BackgroundFrequencyTable.convert(reader, Paths.get(outputPath));
+            logger.info("Wrote background frequencies of {} genes to {}", n, outputPath);
+        } catch (IOException e) {
+            throw new LiricalException(String.format("Could not convert background frequency file (%s)", e.getMessage()));
+        }
+        return 0;
+    }
+
+    private BufferedReader openInput(String genome) throws IOException {
+        if (inputPath != null) {
+            return Files.newBufferedReader(Paths.get(inputPath));
+        }
+        String resource = String.format("background/background-%s.tsv", genome);
+        InputStream is = BackgroundTableCommand.class.getClassLoader().getResourceAsStream(resource);
+        if (is == null) {
+            throw new IOException("Could not find resource " + resource);
+        }
+        return new BufferedReader(new InputStreamReader(is));
+    }
+}
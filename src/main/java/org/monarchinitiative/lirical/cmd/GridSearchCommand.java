@@ -5,6 +5,7 @@ import org.monarchinitiative.lirical.simulation.GridSearch;
 import org.monarchinitiative.lirical.configuration.LiricalFactory;
 import org.monarchinitiative.lirical.exception.LiricalException;
 import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +33,14 @@ public class GridSearchCommand implements Callable<Integer> {
     private int n_cases_to_simulate = 100;
     @CommandLine.Option(names={"-i","--imprecision"}, description="Use imprecision? (default: ${DEFAULT-VALUE})")
     private boolean imprecise_phenotype = false;
+    @CommandLine.Option(names={"--terms"}, split=",", description="comma-separated numbers of HPO terms per case (default: 1 to 10)")
+    private int[] termCounts = {1,2,3,4,5,6,7,8,9,10};
+    @CommandLine.Option(names={"--noise"}, split=",", description="comma-separated numbers of noise terms per case (default: 0 to 4)")
+    private int[] noiseTermCounts = {0,1,2,3,4};
+    @CommandLine.Option(names={"--threads"}, description="number of grid cells simulated at the same time (default: ${DEFAULT-VALUE})")
+    private int threads = 1;
+    @CommandLine.Option(names={"--seed"}, description="seed of the random number generator (default: a different seed for each run)")
+    private Long seed = null;
 
 
     public GridSearchCommand(){
@@ -46,8 +55,16 @@ public class GridSearchCommand implements Callable<Integer> {
         factory.qcHumanPhenotypeOntologyFiles();
         logger.trace("Grid search: Simulating {} cases. imprecision={}",
                 n_cases_to_simulate,imprecise_phenotype?"yes":"no");
-        Map<TermId, HpoDisease> diseaseMap = factory.diseaseMap(factory.hpoOntology());
-        GridSearch gridSearch = new GridSearch(factory.hpoOntology(),diseaseMap, n_cases_to_simulate, imprecise_phenotype);
+        Ontology ontology = factory.hpoOntology();
+        Map<TermId, HpoDisease> diseaseMap = factory.diseaseMap(ontology);
+        GridSearch gridSearch = new GridSearch.Builder(ontology, diseaseMap)
+                .cases(n_cases_to_simulate)
+                .imprecision(imprecise_phenotype)
+                .termCounts(termCounts)
+                .noiseTermCounts(noiseTermCounts)
+                .threads(threads)
+                .seed(seed)
+                .build();
         gridSearch.gridsearch();
         return 0;
     }
@@ -0,0 +1,80 @@
+package org.monarchinitiative.lirical.cmd;
+
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.lirical.simulation.SimulationResultMerger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import picocli.CommandLine;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * This command combines the partial results of a simulation that was split into shards with the
+ * {@code --shard-index} and {@code --shard-count} options of the {@code simulate} and {@code simulate-vcf} commands.
+ * The rank2count files of the shards are added, and the detailed result files are combined into one file with the
+ * cases in the order of a simulation that was not split. To run the command enter
+ * <pre>
+ *     java -jar LIRICAL.jar merge-simulations -r rank2count-shard-*.txt -s ranked_simulation_results-shard-*.tsv
+ * </pre>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+@CommandLine.Command(name = "merge-simulations",
+        mixinStandardHelpOptions = true,
+        description = "Combine the partial results of the shards of a simulation",
+        hidden = true)
+public class MergeSimulationsCommand implements Callable<Integer> {
+    private static final Logger logger = LoggerFactory.getLogger(MergeSimulationsCommand.class);
+    @CommandLine.Option(names={"-r","--rank2count"}, arity = "1..*", description = "rank2count files of the shards")
+    private List<File> rank2countFiles = new ArrayList<>();
+    @CommandLine.Option(names={"-s","--simulation-results"}, arity = "1..*", description = "detailed result files of the shards")
+    private List<File> simulationResultFiles = new ArrayList<>();
+    @CommandLine.Option(names={"--rank2count-out"}, description = "name of the combined rank2count file (default: rank2count-<timestamp>.txt)")
+    private String rank2countOutFile = null;
+    @CommandLine.Option(names={"-o","--outputfile"}, description = "name of the combined result file (default: ranked_simulation_results-<timestamp>.tsv)")
+    private String simulationOutFile = null;
+
+    public MergeSimulationsCommand() {
+    }
+
+    @Override
+    public Integer call() throws LiricalException {
+        if (rank2countFiles.isEmpty() && simulationResultFiles.isEmpty()) {
+            throw new LiricalException("At least one of the options -r/--rank2count and -s/--simulation-results is required.");
+        }
+        String timeStamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new Date());
+        if (!rank2countFiles.isEmpty()) {
+            if (rank2countOutFile == null) {
+                rank2countOutFile = String.format("rank2count-%s.txt", timeStamp);
+            }
+            SortedMap<Integer, Integer> rankCounts = SimulationResultMerger.mergeRankCounts(rank2countFiles);
+            int total = rankCounts.values().stream().mapToInt(i -> i).sum();
+            for (Map.Entry<Integer, Integer> e : rankCounts.entrySet()) {
+                System.out.println(String.format("%s: %d (%.1f%%)", e.getKey(), e.getValue(), (100.0 * e.getValue() / total)));
+            }
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(rank2countOutFile))) {
+                SimulationResultMerger.writeRankCounts(rankCounts, writer);
+            } catch (IOException e) {
+                throw new LiricalException(String.format("Could not write %s (%s)", rank2countOutFile, e.getMessage()));
+            }
+            logger.info("Wrote rank counts of {} cases from {} files to {}", total, rank2countFiles.size(), rank2countOutFile);
+        }
+        if (!simulationResultFiles.isEmpty()) {
+            if (simulationOutFile == null) {
+                simulationOutFile = String.format("ranked_simulation_results-%s.tsv", timeStamp);
+            }
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(simulationOutFile))) {
+                int n = SimulationResultMerger.mergeDetails(simulationResultFiles, writer);
+                logger.info("Wrote results of {} cases from {} files to {}", n, simulationResultFiles.size(), simulationOutFile);
+            } catch (IOException e) {
+                throw new LiricalException(String.format("Could not merge simulation results (%s)", e.getMessage()));
+            }
+        }
+        return 0;
+    }
+}
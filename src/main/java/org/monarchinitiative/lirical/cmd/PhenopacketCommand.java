@@ -4,6 +4,7 @@ import com.google.common.collect.Multimap;
 
 import org.monarchinitiative.lirical.analysis.Gene2Genotype;
 import org.monarchinitiative.lirical.configuration.LiricalFactory;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
 import org.monarchinitiative.lirical.hpo.HpoCase;
 import org.monarchinitiative.lirical.io.PhenopacketImporter;
 import org.monarchinitiative.lirical.likelihoodratio.CaseEvaluator;
@@ -23,6 +24,10 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Run LIRICAL from a Phenopacket -- with or without accompanying VCF file.
@@ -38,12 +43,18 @@ public class PhenopacketCommand extends AbstractPrioritizeCommand implements Cal
     private static final Logger logger = LoggerFactory.getLogger(PhenopacketCommand.class);
     @CommandLine.Option(names = {"-b", "--background"}, description = "path to non-default background frequency file")
     protected String backgroundFrequencyFile;
+    @CommandLine.Option(names = {"--background-population"},
+            description = "gnomAD population of the background frequencies (AFR, AMR, ASJ, EAS, FIN, NFE, SAS, Mean; default: ${DEFAULT-VALUE})")
+    protected String backgroundPopulation = "Mean";
     @CommandLine.Option(names = {"-p", "--phenopacket"}, description = "path to phenopacket file")
     protected String phenopacketPath = null;
     @CommandLine.Option(names = {"-e", "--exomiser"}, description = "path to the Exomiser data directory")
     protected String exomiserDataDirectory = null;
     @CommandLine.Option(names={"--transcriptdb"}, description = "transcript database (UCSC or RefSeq)")
     protected String transcriptDb="refseq";
+    /** If true, all samples of a multi-sample VCF file are analyzed with the phenotype of the phenopacket. */
+    @CommandLine.Option(names={"--all-samples"}, description = "analyze all samples of a multi-sample VCF file (default: ${DEFAULT-VALUE})")
+    protected boolean allSamples = false;
     /** Reference to HPO object. */
     private Ontology hpOntology;
 
@@ -87,11 +98,23 @@ public class PhenopacketCommand extends AbstractPrioritizeCommand implements Cal
                 .exomiser(this.exomiserDataDirectory)
                 .vcf(this.vcfPath)
                 .backgroundFrequency(this.backgroundFrequencyFile)
+                .backgroundPopulation(this.backgroundPopulation)
                 .global(this.globalAnalysisMode)
                 .orphanet(this.useOrphanet)
                 .transcriptdatabase(this.transcriptDb)
                 .lrThreshold(this.LR_THRESHOLD)
                 .minDiff(this.minDifferentialsToShow)
+                .threads(this.threads)
+                .queueCapacity(this.queueCapacity)
+                .diseaseGenePadding(this.diseaseGenePadding)
+                .genePanel(this.genePanel)
+                .maxFrequency(this.maxFrequency)
+                .alleleTable(this.alleleTable)
+                .mvStoreCacheSize(this.mvStoreCacheSize)
+                .mvStoreReadOnly(this.mvStoreReadOnly)
+                .mvStoreMemoryMapped(this.mvStoreMemoryMapped)
+                .genotypeCache(this.genotypeCache)
+                .genotypeCacheSize(this.genotypeCacheSize)
                 .build();
         factory.qcHumanPhenotypeOntologyFiles();
         factory.qcExternalFilesInDataDir();
@@ -99,12 +122,106 @@ public class PhenopacketCommand extends AbstractPrioritizeCommand implements Cal
         factory.qcGenomeBuild();
         factory.qcVcfFile();
 
-        Map<TermId, Gene2Genotype> genotypemap = factory.getGene2GenotypeMap();
-        symbolsWithoutGeneIds = factory.getSymbolsWithoutGeneIds();
         GenotypeLikelihoodRatio genoLr = factory.getGenotypeLR();
         Map<TermId, HpoDisease> diseaseMap = factory.diseaseMap(this.hpOntology);
         PhenotypeLikelihoodRatio phenoLr = new PhenotypeLikelihoodRatio(this.hpOntology, diseaseMap);
         Multimap<TermId, TermId> disease2geneMultimap = factory.disease2geneMultimap();
+        this.geneId2symbol = factory.geneId2symbolMap();
+        if (!factory.transcriptdb().equals("n/a")) {
+            this.metadata.put("transcriptDatabase", factory.transcriptdb());
+        }
+        this.metadata.put("exomiserPath", factory.getExomiserPath());
+        this.metadata.put("hpoVersion", factory.getHpoVersion());
+        if (globalAnalysisMode) {
+            this.metadata.put("global_mode", "true");
+        } else {
+            this.metadata.put("global_mode", "false");
+        }
+        if (allSamples) {
+            Map<String, Map<TermId, Gene2Genotype>> sample2genotypeMap = factory.getSample2GenotypeMaps();
+            symbolsWithoutGeneIds = factory.getSymbolsWithoutGeneIds();
+            evaluateSamples(sample2genotypeMap, diseaseMap, phenoLr, genoLr, disease2geneMultimap);
+        } else {
+            Map<TermId, Gene2Genotype> genotypemap = factory.getGene2GenotypeMap();
+            symbolsWithoutGeneIds = factory.getSymbolsWithoutGeneIds();
+            evaluateSample(factory.getSampleName(), genotypemap, this.outfilePrefix,
+                    diseaseMap, phenoLr, genoLr, disease2geneMultimap);
+        }
+    }
+
+    /**
+     * Analyze each sample of a multi-sample VCF file with the phenotype of the phenopacket. The samples share the
+     * disease model and are scored concurrently with up to {@link #threads} threads. The output files are named
+     * with the prefix and the sample name, e.g., {@code lirical_sample1.html} (see {@link #samplePrefixes}). An error
+     * in one of the samples is logged and does not stop the analysis of the other samples.
+     */
+    private void evaluateSamples(Map<String, Map<TermId, Gene2Genotype>> sample2genotypeMap,
+                                 Map<TermId, HpoDisease> diseaseMap,
+                                 PhenotypeLikelihoodRatio phenoLr,
+                                 GenotypeLikelihoodRatio genoLr,
+                                 Multimap<TermId, TermId> disease2geneMultimap) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, sample2genotypeMap.size()));
+        Map<String, Future<?>> futures = new LinkedHashMap<>();
+        Map<String, String> prefixes = samplePrefixes(this.outfilePrefix, sample2genotypeMap.keySet());
+        for (Map.Entry<String, Map<TermId, Gene2Genotype>> entry : sample2genotypeMap.entrySet()) {
+            String sample = entry.getKey();
+            String prefix = prefixes.get(sample);
+            futures.put(sample, executor.submit(() -> evaluateSample(sample, entry.getValue(), prefix,
+                    diseaseMap, phenoLr, genoLr, disease2geneMultimap)));
+        }
+        executor.shutdown();
+        int n_errors = 0;
+        for (Map.Entry<String, Future<?>> entry : futures.entrySet()) {
+            try {
+                entry.getValue().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                executor.shutdownNow();
+                throw new LiricalRuntimeException("Interrupted while analyzing samples of " + this.vcfPath);
+            } catch (ExecutionException e) {
+                logger.error("Could not analyze sample {}", entry.getKey(), e.getCause());
+                n_errors++;
+            }
+        }
+        logger.info("Analyzed {} samples of {} ({} errors)", futures.size(), this.vcfPath, n_errors);
+    }
+
+    /**
+     * Sample names of VCF files may contain characters such as {@code /} or spaces that are not safe in file names.
+     * Each character other than letters, digits, {@code .}, {@code _} and {@code -} is replaced by {@code _}. If two
+     * samples get the same name this way (ignoring case, for case-insensitive file systems), a number is added to the
+     * later sample, e.g., {@code lirical_a_b_2}, so that the samples do not overwrite each other's output.
+     * @param outfilePrefix prefix of the output files
+     * @param samples the sample names, in the order of the VCF file
+     * @return key: sample name; value: prefix of the output files of the sample
+     */
+    static Map<String, String> samplePrefixes(String outfilePrefix, Collection<String> samples) {
+        Map<String, String> prefixes = new LinkedHashMap<>();
+        Set<String> used = new HashSet<>();
+        for (String sample : samples) {
+            String base = String.format("%s_%s", outfilePrefix, sample.replaceAll("[^A-Za-z0-9._-]", "_"));
+            String prefix = base;
+            for (int i = 2; !used.add(prefix.toLowerCase(Locale.ROOT)); i++) {
+                prefix = base + "_" + i;
+            }
+            if (!prefix.equals(String.format("%s_%s", outfilePrefix, sample))) {
+                logger.warn("Writing the results of sample \"{}\" with the prefix {}", sample, prefix);
+            }
+            prefixes.put(sample, prefix);
+        }
+        return prefixes;
+    }
+
+    /**
+     * Score one sample against the shared disease model and write the output file.
+     */
+    private void evaluateSample(String sample,
+                                Map<TermId, Gene2Genotype> genotypemap,
+                                String prefix,
+                                Map<TermId, HpoDisease> diseaseMap,
+                                PhenotypeLikelihoodRatio phenoLr,
+                                GenotypeLikelihoodRatio genoLr,
+                                Multimap<TermId, TermId> disease2geneMultimap) {
         CaseEvaluator.Builder caseBuilder = new CaseEvaluator.Builder(this.hpoIdList)
                 .ontology(this.hpOntology)
                 .negated(this.negatedHpoIdList)
@@ -112,28 +229,19 @@ public class PhenopacketCommand extends AbstractPrioritizeCommand implements Cal
                 .disease2geneMultimap(disease2geneMultimap)
                 .genotypeMap(genotypemap)
                 .phenotypeLr(phenoLr)
+                .gene2idMap(this.geneId2symbol)
+                .geneIndex(factory.geneIndex())
                 .genotypeLr(genoLr);
 
         CaseEvaluator evaluator = caseBuilder.build();
         HpoCase hcase = evaluator.evaluate();
 
-
-        if (!factory.transcriptdb().equals("n/a")) {
-            this.metadata.put("transcriptDatabase", factory.transcriptdb());
-        }
+        Map<String, String> sampleMetadata = new HashMap<>(this.metadata);
         int n_genes_with_var = genotypemap.size();
-        this.metadata.put("genesWithVar", String.valueOf(n_genes_with_var));
-        this.metadata.put("exomiserPath", factory.getExomiserPath());
-        this.metadata.put("hpoVersion", factory.getHpoVersion());
-        this.metadata.put("sample_name", factory.getSampleName());
-        if (globalAnalysisMode) {
-            this.metadata.put("global_mode", "true");
-        } else {
-            this.metadata.put("global_mode", "false");
-        }
-        this.geneId2symbol = factory.geneId2symbolMap();
+        sampleMetadata.put("genesWithVar", String.valueOf(n_genes_with_var));
+        sampleMetadata.put("sample_name", sample);
         List<String> errors = evaluator.getErrors();
-        LiricalTemplate.Builder builder = new LiricalTemplate.Builder(hcase,this.hpOntology,this.metadata)
+        LiricalTemplate.Builder builder = new LiricalTemplate.Builder(hcase,this.hpOntology,sampleMetadata)
                 .genotypeMap(genotypemap)
                 .geneid2symMap(this.geneId2symbol)
                 .errors(errors)
@@ -141,7 +249,7 @@ public class PhenopacketCommand extends AbstractPrioritizeCommand implements Cal
                 .threshold(factory.getLrThreshold())
                 .symbolsWithOutIds(symbolsWithoutGeneIds)
                 .mindiff(factory.getMinDifferentials())
-                .prefix(this.outfilePrefix);
+                .prefix(prefix);
         LiricalTemplate template = outputTSV ?
                 builder.buildGenoPhenoTsvTemplate() :
                 builder.buildGenoPhenoHtmlTemplate();
@@ -1,8 +1,13 @@
 package org.monarchinitiative.lirical.cmd;
 
 
+import org.monarchinitiative.lirical.simulation.AnnotatedTemplateVcf;
 import org.monarchinitiative.lirical.simulation.PhenoGenoCaseSimulator;
 import org.monarchinitiative.lirical.simulation.PhenoOnlyCaseSimulator;
+import org.monarchinitiative.lirical.simulation.PhenopacketBatchRunner;
+import org.monarchinitiative.lirical.simulation.SimulationModel;
+import org.monarchinitiative.lirical.simulation.SimulationResultMerger;
+import org.monarchinitiative.lirical.simulation.SimulationShard;
 import org.monarchinitiative.lirical.configuration.LiricalFactory;
 import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
 import org.monarchinitiative.lirical.output.LiricalRanking;
@@ -15,6 +20,7 @@ import java.io.*;
 import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static java.util.Map.Entry.comparingByKey;
@@ -31,7 +37,8 @@ import static java.util.Map.Entry.comparingByKey;
  * probability above 1% are displayed).
  * <p></p>
  * In order to perform simulation on an entire directory of phenopackets, replace the -p option with
- * the --phenopacket-dir option.
+ * the --phenopacket-dir option. A large directory can be split into shards that are simulated independently with
+ * the --shard-index and --shard-count options; the partial results are combined with the merge-simulations command.
  * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
  */
 
@@ -45,7 +52,7 @@ public class SimulatePhenopacketWithVcfCommand extends PhenopacketCommand implem
     private static final Logger logger = LoggerFactory.getLogger(SimulatePhenopacketWithVcfCommand.class);
     @CommandLine.Option(names = {"-a","--assembly"})
     private String genomeAssembly = "GRCh37";
-    @CommandLine.Option(names = {"-v", "--template-vcf"}, description = "path to template VCF file", required = true)
+    @CommandLine.Option(names = {"-v", "--template-vcf"}, description = "path to template VCF file (sorted)", required = true)
     private String templateVcfPath;
     @CommandLine.Option(names = {"--phenopacket-dir"}, description = "path to directory with multiple phenopackets")
     private String phenopacketDir;
@@ -59,6 +66,25 @@ public class SimulatePhenopacketWithVcfCommand extends PhenopacketCommand implem
     private boolean outputTSV = false;
     @CommandLine.Option(names={"--random"},description = "randomize the HPO terms from the phenopacket")
     private boolean randomize = false;
+    @CommandLine.Option(names={"--annotate-template-once"},
+            description = "annotate the template VCF once and only annotate the injected variants of each phenopacket")
+    private boolean annotateTemplateOnce = false;
+    @CommandLine.Option(names={"--bgzip-vcf"}, description = "write the simulated VCF files with bgzip compression")
+    private boolean bgzipVcf = false;
+    @CommandLine.Option(names={"--workers"}, description = "number of phenopackets simulated at the same time (default: ${DEFAULT-VALUE})")
+    private int workers = 1;
+    @CommandLine.Option(names={"--worker-queue"}, description = "maximum number of simulated cases waiting to be written (default: number of workers)")
+    private int workerQueue = -1;
+    @CommandLine.Option(names={"--unordered"}, description = "write the results of the cases as they finish rather than in the order of the phenopackets")
+    private boolean unordered = false;
+    @CommandLine.Option(names={"--shard-index"}, description = "index (0-based) of the shard of the phenopackets simulated by this run (default: ${DEFAULT-VALUE})")
+    private int shardIndex = 0;
+    @CommandLine.Option(names={"--shard-count"}, description = "number of shards the phenopackets of the directory are split into (default: ${DEFAULT-VALUE})")
+    private int shardCount = 1;
+    /** The part of the phenopackets of the directory that is simulated by this run. */
+    private SimulationShard shard = SimulationShard.ALL;
+    /** The annotated template VCF file (only used with {@link #annotateTemplateOnce}). */
+    private AnnotatedTemplateVcf annotatedTemplate = null;
     /** If true, output HTML or TSV */
     private boolean outputFiles = false;
 
@@ -72,6 +98,8 @@ public class SimulatePhenopacketWithVcfCommand extends PhenopacketCommand implem
     private Map<Integer,Integer> geneRank2CountMap;
 
     private LiricalFactory factory;
+    /** The disease model and likelihood ratio calculators, prepared once and shared by all simulated cases. */
+    private SimulationModel model;
 
     /**
      * No-op constructor meant to demo the phenotype LIRICAL algorithm by simulating some case based on
@@ -85,8 +113,28 @@ public class SimulatePhenopacketWithVcfCommand extends PhenopacketCommand implem
      * @param phenopacketFile File with the Phenopacket we are currently analyzing
      */
     private void runOneVcfAnalysis(File phenopacketFile) {
-        PhenoGenoCaseSimulator simulator = new PhenoGenoCaseSimulator(phenopacketFile, this.templateVcfPath, this.factory, this.randomize);
+        recordVcfAnalysis(simulateVcfCase(phenopacketFile));
+    }
+
+    /**
+     * Simulate and score the case of one phenopacket. This can be called by several threads at once.
+     * @param phenopacketFile File with the Phenopacket we are currently analyzing
+     * @return the simulator with the results of the case
+     */
+    private PhenoGenoCaseSimulator simulateVcfCase(File phenopacketFile) {
+        PhenoGenoCaseSimulator simulator = new PhenoGenoCaseSimulator.Builder(phenopacketFile, this.factory)
+                .templateVcf(this.templateVcfPath)
+                .annotatedTemplate(this.annotatedTemplate)
+                .randomize(this.randomize)
+                .bgzip(this.bgzipVcf)
+                .model(this.model)
+                .build();
         simulator.run();
+        return simulator;
+    }
+
+    /** Record the ranks of a simulated case and write its output file (called by one thread at a time). */
+    private void recordVcfAnalysis(PhenoGenoCaseSimulator simulator) {
         int diseaseRank = simulator.getRank_of_disease();
         int geneRank    = simulator.getRank_of_gene();
         detailedResultLineList.add(simulator.getDetails());
@@ -105,8 +153,18 @@ public class SimulatePhenopacketWithVcfCommand extends PhenopacketCommand implem
 
 
     private void runOnePhenotypeOnlyAnalysis(File phenopacketFile) {
-        PhenoOnlyCaseSimulator simulator = new PhenoOnlyCaseSimulator(phenopacketFile,this.factory);
+        recordPhenotypeOnlyAnalysis(simulatePhenotypeOnlyCase(phenopacketFile));
+    }
+
+    /** Score the case of one phenopacket. This can be called by several threads at once. */
+    private PhenoOnlyCaseSimulator simulatePhenotypeOnlyCase(File phenopacketFile) {
+        PhenoOnlyCaseSimulator simulator = new PhenoOnlyCaseSimulator(phenopacketFile,this.factory,this.model);
         simulator.run();
+        return simulator;
+    }
+
+    /** Record the rank of a simulated case (called by one thread at a time). */
+    private void recordPhenotypeOnlyAnalysis(PhenoOnlyCaseSimulator simulator) {
         int rank = simulator.getRank_of_disease();
         String diseaseLabel = simulator.getDiagnosisLabel();
         detailedResultLineList.add(simulator.getDetails());
@@ -131,14 +189,30 @@ public class SimulatePhenopacketWithVcfCommand extends PhenopacketCommand implem
                 .exomiser(this.exomiserDataDirectory)
                 .transcriptdatabase(this.transcriptDb)
                 .backgroundFrequency(this.backgroundFrequencyFile)
+                .backgroundPopulation(this.backgroundPopulation)
                 .global(this.globalAnalysisMode)
                 .lrThreshold(this.LR_THRESHOLD)
                 .minDiff(this.minDifferentialsToShow)
+                .threads(this.threads)
+                .queueCapacity(this.queueCapacity)
+                .diseaseGenePadding(this.diseaseGenePadding)
+                .genePanel(this.genePanel)
+                .maxFrequency(this.maxFrequency)
+                .alleleTable(this.alleleTable)
+                .mvStoreCacheSize(this.mvStoreCacheSize)
+                .mvStoreReadOnly(this.mvStoreReadOnly)
+                .mvStoreMemoryMapped(this.mvStoreMemoryMapped)
+                .genotypeCache(this.genotypeCache)
+                .genotypeCacheSize(this.genotypeCacheSize)
                 .build();
         factory.qcHumanPhenotypeOntologyFiles();
         factory.qcExternalFilesInDataDir();
         factory.qcExomiserFiles();
         factory.qcGenomeBuild();
+        this.model = SimulationModel.of(factory);
+        if (annotateTemplateOnce) {
+            annotatedTemplate = AnnotatedTemplateVcf.annotate(templateVcfPath, factory);
+        }
 
 
         if (this.phenopacketPath != null) {
@@ -151,18 +225,18 @@ public class SimulatePhenopacketWithVcfCommand extends PhenopacketCommand implem
             if (! folder.isDirectory()) {
                 throw new PhenolRuntimeException("Could not open Phenopackets directory at "+phenopacketDir);
             }
-            int counter=0;
             File[] files = folder.listFiles();
             if (files == null) {
                 throw new LiricalRuntimeException("Could not files in phenopackets directory");
             }
-            for (final File fileEntry : files) {
-                if (fileEntry.isFile() && fileEntry.getAbsolutePath().endsWith(".json")) {
-                    logger.info("\tPhenopacket: \"{}\"", fileEntry.getAbsolutePath());
-                    System.out.println(++counter + ") "+ fileEntry.getName());
-                    runOneVcfAnalysis(fileEntry);
-                }
-            }
+            AtomicInteger counter = new AtomicInteger();
+            PhenopacketBatchRunner<PhenoGenoCaseSimulator> runner = batchRunner();
+            runner.run(shard.select(phenopacketFiles(files)), this::simulateVcfCase, (fileEntry, simulator) -> {
+                logger.info("\tPhenopacket: \"{}\"", fileEntry.getAbsolutePath());
+                System.out.println(counter.incrementAndGet() + ") "+ fileEntry.getName());
+                recordVcfAnalysis(simulator);
+            });
+            reportFailures(runner);
         } else {
             System.err.println("[ERROR] Either the --phenopacket or the --phenopacket-dir option is required");
             throw new LiricalRuntimeException("[ERROR] Either the --phenopacket or the --phenopacket-dir option is required");
@@ -180,6 +254,7 @@ public class SimulatePhenopacketWithVcfCommand extends PhenopacketCommand implem
                 .build();
         factory.qcHumanPhenotypeOntologyFiles();
         factory.qcExternalFilesInDataDir();
+        this.model = SimulationModel.phenotypeOnly(factory);
 
 
         if (this.phenopacketPath != null) {
@@ -192,19 +267,18 @@ public class SimulatePhenopacketWithVcfCommand extends PhenopacketCommand implem
             if (! folder.isDirectory()) {
                 throw new PhenolRuntimeException("Could not open Phenopackets directory at "+phenopacketDir);
             }
-            int counter=0;
             File [] files = folder.listFiles();
             if (files == null) {
                 throw new PhenolRuntimeException("Could not find phenopacket files in " + phenopacketDir);
             }
-            for (final File fileEntry : files) {
-                if (fileEntry.isFile() && fileEntry.getAbsolutePath().endsWith(".json")) {
-                    logger.info("\tPhenopacket: \"{}\"", fileEntry.getAbsolutePath());
-                    System.out.println(++counter + ") "+ fileEntry.getName());
-                    runOnePhenotypeOnlyAnalysis(fileEntry);
-                }
-               // if (counter>4)break;
-            }
+            AtomicInteger counter = new AtomicInteger();
+            PhenopacketBatchRunner<PhenoOnlyCaseSimulator> runner = batchRunner();
+            runner.run(shard.select(phenopacketFiles(files)), this::simulatePhenotypeOnlyCase, (fileEntry, simulator) -> {
+                logger.info("\tPhenopacket: \"{}\"", fileEntry.getAbsolutePath());
+                System.out.println(counter.incrementAndGet() + ") "+ fileEntry.getName());
+                recordPhenotypeOnlyAnalysis(simulator);
+            });
+            reportFailures(runner);
             System.out.println("[INFO] Processed " + counter + " phenopackets");
         } else {
             System.err.println("[ERROR] Either the --phenopacket or the --phenopacket-dir option is required");
@@ -214,6 +288,35 @@ public class SimulatePhenopacketWithVcfCommand extends PhenopacketCommand implem
 
 
 
+    /**
+     * @return the phenopacket (JSON) files among the files of the phenopacket directory, sorted by name so that the
+     * shards of a simulation split the same list on every node.
+     */
+    private static List<File> phenopacketFiles(File[] files) {
+        List<File> phenopackets = new ArrayList<>();
+        for (final File fileEntry : files) {
+            if (fileEntry.isFile() && fileEntry.getAbsolutePath().endsWith(".json")) {
+                phenopackets.add(fileEntry);
+            }
+        }
+        phenopackets.sort(Comparator.comparing(File::getName));
+        return phenopackets;
+    }
+
+    private <R> PhenopacketBatchRunner<R> batchRunner() {
+        return new PhenopacketBatchRunner.Builder()
+                .workers(workers)
+                .queueCapacity(workerQueue)
+                .ordered(!unordered)
+                .build();
+    }
+
+    private static void reportFailures(PhenopacketBatchRunner<?> runner) {
+        for (Map.Entry<File, Throwable> failure : runner.getFailures().entrySet()) {
+            System.err.println("[ERROR] Could not simulate case for " + failure.getKey().getName() + ": " + failure.getValue().getMessage());
+        }
+    }
+
     private String getSettingsString() {
         List<String> settings= new ArrayList<>();
         settings.add("phenopacket-dir: " + phenopacketDir);
@@ -222,8 +325,9 @@ public class SimulatePhenopacketWithVcfCommand extends PhenopacketCommand implem
         settings.add("random: " + (randomize ?  "true" : "false"));
         settings.add("phenotypeOnly: "+ (phenotypeOnly? "true":"false"));
         settings.add("transcriptDb: " + this.transcriptDb);
+        settings.add("annotateTemplateOnce: " + (annotateTemplateOnce ? "true" : "false"));
 
-        return String.join(";",settings);
+        return SimulationResultMerger.settingsWithShard(String.join(";",settings), shard);
     }
 
     private void outputRankings() {
@@ -258,32 +362,22 @@ public class SimulatePhenopacketWithVcfCommand extends PhenopacketCommand implem
         // 1. rank2count.txt
 
         String timeStamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new Date());
-        String rank2countName = String.format("rank2count-%s.txt",timeStamp);
+        // the partial results of a shard are labeled with the shard
+        String label = shard.isPartial() ? shard.fileLabel() + "-" + timeStamp : timeStamp;
+        String rank2countName = String.format("rank2count-%s.txt",label);
         if (this.simulationOutFile==null) {
-            simulationOutFile = String.format("ranked_simulation_results-%s.tsv",timeStamp);
+            simulationOutFile = String.format("ranked_simulation_results-%s.tsv",label);
         }
 
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(rank2countName))){
-            for (Map.Entry<Integer, Integer> e : sorted.entrySet()) {
-                writer.write(e.getKey() + ": " + e.getValue() +"\n");
-            }
+            SimulationResultMerger.writeRankCounts(sorted, shard, null, writer);
         } catch (IOException e) {
             e.printStackTrace();
         }
         // 2. simulation-results.txt (show one line with the rank of each simulated disease).
-        try {
-            BufferedWriter bw = new BufferedWriter(new FileWriter(this.simulationOutFile));
-            if (phenotypeOnly) {
-                bw.write(PhenoOnlyCaseSimulator.getHeader() + "\n");
-            } else {
-                bw.write(PhenoGenoCaseSimulator.getHeader() + "\n");
-            }
-            bw.write("#" + getSettingsString() + "\n");
-
-            for (String diseaseResult : detailedResultLineList) {
-                bw.write(diseaseResult + "\n");
-            }
-            bw.close();
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter(this.simulationOutFile))) {
+            String header = phenotypeOnly ? PhenoOnlyCaseSimulator.getHeader() : PhenoGenoCaseSimulator.getHeader();
+            SimulationResultMerger.writeDetails(header, getSettingsString(), detailedResultLineList, bw);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -307,6 +401,11 @@ public class SimulatePhenopacketWithVcfCommand extends PhenopacketCommand implem
         rank2countMap=new HashMap<>();
         geneRank2CountMap = new HashMap<>();
         checkThresholds();
+        this.shard = SimulationShard.of(shardIndex, shardCount);
+        if (shard.isPartial() && phenopacketDir == null) {
+            System.err.println("[ERROR] The --shard-index and --shard-count options require the --phenopacket-dir option");
+            throw new LiricalRuntimeException("The --shard-index and --shard-count options require the --phenopacket-dir option");
+        }
         if (phenotypeOnly) {
             runPhenotypeOnly();
         } else {
@@ -3,7 +3,10 @@ package org.monarchinitiative.lirical.cmd;
 
 import org.monarchinitiative.lirical.configuration.LiricalFactory;
 import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
 import org.monarchinitiative.lirical.simulation.PhenotypeOnlyHpoCaseSimulator;
+import org.monarchinitiative.lirical.simulation.SimulationResultMerger;
+import org.monarchinitiative.lirical.simulation.SimulationShard;
 import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
 import org.monarchinitiative.phenol.ontology.data.Ontology;
 import org.monarchinitiative.phenol.ontology.data.TermId;
@@ -11,6 +14,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import picocli.CommandLine;
 
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.Map;
 import java.util.concurrent.Callable;
 
@@ -18,7 +26,9 @@ import java.util.concurrent.Callable;
  * This class coordinates simulation of cases with only phenotype. It draws HPOs at random and then
  * performs analysis and records the rank.
  * This differs from {@link org.monarchinitiative.lirical.simulation.GridSearch} because GridSearch essentially
- * runs this analysis for different numbers of HPO observed/noise terms.
+ * runs this analysis for different numbers of HPO observed/noise terms. With a seed, the cases can be split into shards
+ * (--shard-index, --shard-count) that are simulated independently; each shard writes its rank counts to a rank2count
+ * file, and the files are combined with the merge-simulations command.
  * @author <a href="mailto:peter.robinson@jax.org">Peter N Robinson</a>
  */
 
@@ -40,6 +50,14 @@ public class SimulatePhenotypeOnlyCommand implements Callable<Integer> {
     private int n_noise_terms = 1;
     @CommandLine.Option(names={"-i","--imprecision"}, description="Use imprecision?")
     private boolean imprecise_phenotype = false;
+    @CommandLine.Option(names={"--seed"}, description="seed of the random number generator (default: a different seed for each run)")
+    private Long seed = null;
+    @CommandLine.Option(names={"--threads"}, description="number of threads used to simulate the cases (default: ${DEFAULT-VALUE})")
+    private int threads = 1;
+    @CommandLine.Option(names={"--shard-index"}, description="index (0-based) of the shard of the cases simulated by this run (default: ${DEFAULT-VALUE})")
+    private int shardIndex = 0;
+    @CommandLine.Option(names={"--shard-count"}, description="number of shards the cases are split into; requires --seed (default: ${DEFAULT-VALUE})")
+    private int shardCount = 1;
 
 
     /** No-op constructor meant to demo the phenotype LIRICAL algorithm by simulating some case based on
@@ -51,6 +69,11 @@ public class SimulatePhenotypeOnlyCommand implements Callable<Integer> {
 
     @Override
     public Integer call() {
+        SimulationShard shard = SimulationShard.of(shardIndex, shardCount);
+        if (shard.isPartial() && seed == null) {
+            System.err.println("[ERROR] The --shard-index and --shard-count options require the --seed option.");
+            throw new LiricalRuntimeException("The --shard-index and --shard-count options require the --seed option.");
+        }
         LiricalFactory factory = new LiricalFactory.Builder()
                 .datadir(this.datadir)
                 .build();
@@ -60,19 +83,38 @@ public class SimulatePhenotypeOnlyCommand implements Callable<Integer> {
         Ontology ontology = factory.hpoOntology();
         Map<TermId, HpoDisease> diseaseMap = factory.diseaseMap(ontology);
 
-        PhenotypeOnlyHpoCaseSimulator phenotypeOnlyHpoCaseSimulator = new PhenotypeOnlyHpoCaseSimulator(ontology,
-                diseaseMap,
-                n_cases_to_simulate,
-                n_terms_per_case,
-                n_noise_terms,
-                imprecise_phenotype);
+        PhenotypeOnlyHpoCaseSimulator phenotypeOnlyHpoCaseSimulator = new PhenotypeOnlyHpoCaseSimulator.Builder(ontology, diseaseMap)
+                .cases(n_cases_to_simulate)
+                .termsPerCase(n_terms_per_case)
+                .noiseTerms(n_noise_terms)
+                .imprecise(imprecise_phenotype)
+                .seed(seed)
+                .threads(threads)
+                .shard(shard)
+                .build();
         logger.info("Simulating {} cases with {} terms each, {} noise terms. imprecision={}",
             n_cases_to_simulate,n_terms_per_case,n_noise_terms,imprecise_phenotype);
         try {
             phenotypeOnlyHpoCaseSimulator.simulateCases();
         } catch (LiricalException e) {
             e.printStackTrace(); // should never happen, but nothing we can do about it
+            return 1;
+        }
+        if (shard.isPartial()) {
+            writePartialRankCounts(shard, phenotypeOnlyHpoCaseSimulator.getRankCounts());
         }
         return 0;
     }
+
+    /** Write the rank counts of a shard to a file that can be combined with the other shards. */
+    private void writePartialRankCounts(SimulationShard shard, Map<Integer, Integer> rankCounts) {
+        String timeStamp = new SimpleDateFormat("yyyy.MM.dd.HH.mm.ss").format(new Date());
+        String rank2countName = String.format("rank2count-%s-%s.txt", shard.fileLabel(), timeStamp);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(rank2countName))) {
+            SimulationResultMerger.writeRankCounts(rankCounts, shard, seed, writer);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        logger.info("Wrote rank counts of shard {} to {}", shard, rank2countName);
+    }
 }
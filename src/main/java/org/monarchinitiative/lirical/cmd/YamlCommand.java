@@ -96,6 +96,10 @@ public class YamlCommand implements Callable<Integer> {
         this.symbolsWithoutGeneIds = factory.getSymbolsWithoutGeneIds();
         this.metadata.put("vcf_file", factory.getVcfPath());
         this.metadata.put("n_filtered_variants", String.valueOf(factory.getN_filtered_variants()));
+        if (factory.getMaxFrequency() != null) {
+            this.metadata.put("max_frequency", String.valueOf(factory.getMaxFrequency()));
+            this.metadata.put("n_common_variants", String.valueOf(factory.getN_common_variants()));
+        }
         this.metadata.put("n_good_quality_variants",String.valueOf(factory.getN_good_quality_variants()));
         GenotypeLikelihoodRatio genoLr = factory.getGenotypeLR();
         Multimap<TermId,TermId> disease2geneMultimap = factory.disease2geneMultimap();
@@ -109,6 +113,7 @@ public class YamlCommand implements Callable<Integer> {
                 .phenotypeLr(phenoLr)
                 .global(factory.global())
                 .gene2idMap(geneId2symbol)
+                .geneIndex(factory.geneIndex())
                 .genotypeLr(genoLr);
         this.metadata.put("transcriptDatabase", factory.transcriptdb());
         int n_genes_with_var = genotypeMap.size();
@@ -2,19 +2,28 @@ package org.monarchinitiative.lirical.configuration;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimap;
+import com.google.common.hash.Hashing;
 import de.charite.compbio.jannovar.data.JannovarData;
 import de.charite.compbio.jannovar.data.JannovarDataSerializer;
 import de.charite.compbio.jannovar.data.SerializationException;
 import org.apache.commons.io.FilenameUtils;
 import org.h2.mvstore.MVStore;
 import org.monarchinitiative.exomiser.core.genome.GenomeAssembly;
+import org.monarchinitiative.exomiser.core.genome.dao.serialisers.MvStoreUtil;
 import org.monarchinitiative.exomiser.core.genome.jannovar.InvalidFileFormatException;
 import org.monarchinitiative.exomiser.core.genome.jannovar.JannovarDataProtoSerialiser;
+import org.monarchinitiative.lirical.analysis.AlleleLookup;
 import org.monarchinitiative.lirical.analysis.Gene2Genotype;
+import org.monarchinitiative.lirical.analysis.GeneIndex;
+import org.monarchinitiative.lirical.analysis.GeneIntervalIndex;
+import org.monarchinitiative.lirical.analysis.GenotypeMapCache;
+import org.monarchinitiative.lirical.analysis.MvStoreStatistics;
+import org.monarchinitiative.lirical.analysis.SlimAlleleTable;
 import org.monarchinitiative.lirical.analysis.Vcf2GenotypeMap;
 import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
 import org.monarchinitiative.lirical.exception.LiricalException;
-import org.monarchinitiative.lirical.io.GenotypeDataIngestor;
+import org.monarchinitiative.lirical.io.BackgroundFrequencyTable;
+import org.monarchinitiative.lirical.io.MemoryMappedFileStore;
 import org.monarchinitiative.lirical.io.YamlParser;
 import org.monarchinitiative.lirical.likelihoodratio.GenotypeLikelihoodRatio;
 import org.monarchinitiative.lirical.vcf.SimpleVariant;
@@ -28,7 +37,10 @@ import org.monarchinitiative.phenol.ontology.data.TermId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.DateFormat;
@@ -64,6 +76,10 @@ public class LiricalFactory {
     private int n_good_quality_variants=0;
     /** Number of variants that were removed because of the quality filter. */
     private int n_filtered_variants=0;
+    /** Number of non-filtered variants that were skipped because they are not near a disease gene. */
+    private int n_off_target_variants=0;
+    /** Number of alleles that were skipped because of their population frequency. */
+    private int n_common_variants=0;
 
     /** Prefix for output files. For example, if outfilePrefix is ABC, then the HTML outfile would be ABC.html.*/
     private String outfilePrefix;
@@ -98,6 +114,12 @@ public class LiricalFactory {
 
     /** An object representing the Exomiser database. */
     private MVStore mvstore = null;
+    /** Cached access to the alleles of {@link #mvstore}, shared by all VCF files analyzed with this factory. */
+    private AlleleLookup alleleLookup = null;
+    /** Index of the disease-gene (or gene panel) loci, used to skip VCF records far from these genes. */
+    private GeneIntervalIndex geneIntervalIndex = null;
+    /** Dense index of the genes, their background frequencies and the disease-gene associations. */
+    private GeneIndex geneIndex = null;
     private Multimap<TermId,TermId> gene2diseaseMultiMap=null;
     private Multimap<TermId,TermId> disease2geneIdMultiMap=null;
     private Map<TermId,String> geneId2SymbolMap=null;
@@ -107,9 +129,10 @@ public class LiricalFactory {
      * uc003fts.3, and NCBIGene ids (earlier known as locus link), e.g., 1370).
      */
     private Set<String> symbolsWithoutGeneIds;
-    /** Key: the TermId of a gene. Value. Its background frequency in the current genome build. This variable
-     * is only initialized for runs with a VCF file. */
-    private Map<TermId, Double> gene2backgroundFrequency = null;
+    /** The background frequencies of the genes in the current genome build, copied into the {@link #geneIndex}. */
+    private BackgroundFrequencyTable backgroundFrequencyTable = null;
+    /** The gnomAD population whose background frequencies are used (default: the mean of all populations). */
+    private final BackgroundFrequencyTable.Population backgroundPopulation;
     /** Path of the Jannovar UCSC transcript file (from the Exomiser distribution) */
     private String jannovarUcscPath=null;
     /** Path of the Jannovar RefSeq transcript file (from the Exomiser distribution) */
@@ -121,6 +144,32 @@ public class LiricalFactory {
 
 
     private JannovarData jannovarData=null;
+    /** Number of threads used to annotate the VCF file. */
+    private final int threads;
+    /** Maximum number of batches of VCF records waiting to be merged (0: use default). */
+    private final int queueCapacity;
+    /** Maximum number of alleles whose Exomiser data are cached by {@link #alleleLookup}. */
+    private final int alleleCacheSize;
+    /** If not null, only VCF records within this many bases of a disease gene are annotated. */
+    private final Integer diseaseGenePadding;
+    /** Path to a file with gene symbols or NCBIGene ids, one per line. If not null, only these genes are analyzed. */
+    private final String genePanelPath;
+    /** If not null, alleles with a higher maximum population frequency (in percent) are not annotated. */
+    private final Double maxFrequency;
+    /** Path to a {@link SlimAlleleTable}; if not null, it is used instead of the Exomiser MVStore. */
+    private final String alleleTablePath;
+    /** Size of the page cache of the Exomiser MVStore in megabytes (null: default of the MVStore). */
+    private final Integer mvStoreCacheSizeMb;
+    /** If true (default), the Exomiser MVStore is opened read-only. */
+    private final boolean mvStoreReadOnly;
+    /** If true, the Exomiser MVStore file is memory-mapped instead of being read with file channel reads. */
+    private final boolean mvStoreMemoryMapped;
+    /** Directory of the on-disk cache of genotype maps (null: no cache). */
+    private final String genotypeCacheDirectory;
+    /** Maximum size of the genotype cache in megabytes. */
+    private final int genotypeCacheSizeMb;
+    /** Versions of the data files that influence the genotype maps (see {@link #genotypeDataVersions()}). */
+    private List<String> genotypeDataVersions = null;
 
 
     /** Used as a flag to pick the right constructor in {@link Builder#buildForGt2Git()}. */
@@ -151,6 +200,19 @@ public class LiricalFactory {
             hpoIdList = ImmutableList.of();
             negatedHpoIdList = ImmutableList.of();
             this.outfilePrefix = builder.outfilePrefix;
+            this.threads = builder.threads;
+            this.queueCapacity = builder.queueCapacity;
+            this.alleleCacheSize = builder.alleleCacheSize;
+            this.diseaseGenePadding = builder.diseaseGenePadding;
+            this.genePanelPath = builder.genePanelPath;
+            this.maxFrequency = builder.maxFrequency;
+            this.alleleTablePath = builder.alleleTablePath;
+            this.mvStoreCacheSizeMb = builder.mvStoreCacheSizeMb;
+            this.mvStoreReadOnly = builder.mvStoreReadOnly;
+            this.mvStoreMemoryMapped = builder.mvStoreMemoryMapped;
+            this.genotypeCacheDirectory = builder.genotypeCacheDirectory;
+            this.genotypeCacheSizeMb = builder.genotypeCacheSizeMb;
+            this.backgroundPopulation = builder.backgroundPopulation;
     }
 
     private LiricalFactory(Builder builder) {
@@ -168,21 +230,26 @@ public class LiricalFactory {
             // This will set up UCSCS output URLs for variants
             SimpleVariant.setGenomeBuildForUrl(assembly);
         }
+        this.backgroundPopulation = builder.backgroundPopulation;
         if (builder.backgroundFrequencyPath!=null
                 && !builder.backgroundFrequencyPath.isEmpty()) {
-            this.gene2backgroundFrequency = GenotypeDataIngestor.fromPath(builder.backgroundFrequencyPath);
+            this.backgroundFrequencyTable = BackgroundFrequencyTable.fromPath(Paths.get(builder.backgroundFrequencyPath));
         } else {
             // Note-- background files for hg19 and hg38 are stored in src/main/resources/background
             // and are included in the resources by the maven resource plugin
             if (assembly.equals(GenomeAssembly.HG19)) {
-                this.gene2backgroundFrequency = GenotypeDataIngestor.fromResource("background/background-hg19.tsv");
+                this.backgroundFrequencyTable = BackgroundFrequencyTable.fromResource("background/background-hg19.tsv");
             } else if (assembly.equals(GenomeAssembly.HG38)) {
-                this.gene2backgroundFrequency = GenotypeDataIngestor.fromResource("background/background-hg38.tsv");
+                this.backgroundFrequencyTable = BackgroundFrequencyTable.fromResource("background/background-hg38.tsv");
             } else {
                 logger.error("Did not recognize genome assembly: {}",assembly);
                 throw new LiricalRuntimeException("Did not recognize genome assembly: "+assembly);
             }
         }
+        if (!backgroundFrequencyTable.hasPopulation(backgroundPopulation)) {
+            throw new LiricalRuntimeException("Background frequency file has no column " + backgroundPopulation.getColumnName());
+        }
+        logger.info("Read background frequencies ({}) of {} genes", backgroundPopulation, backgroundFrequencyTable.size());
 
         this.geneInfoPath=builder.geneInfoPath;
         this.mim2genemedgenPath=builder.mim2genemedgenPath;
@@ -205,6 +272,18 @@ public class LiricalFactory {
         this.vcfPath=builder.vcfPath;
         this.datadir=builder.liricalDataDir;
         this.outfilePrefix = builder.outfilePrefix;
+        this.threads = builder.threads;
+        this.queueCapacity = builder.queueCapacity;
+        this.alleleCacheSize = builder.alleleCacheSize;
+        this.diseaseGenePadding = builder.diseaseGenePadding;
+        this.genePanelPath = builder.genePanelPath;
+        this.maxFrequency = builder.maxFrequency;
+        this.alleleTablePath = builder.alleleTablePath;
+        this.mvStoreCacheSizeMb = builder.mvStoreCacheSizeMb;
+        this.mvStoreReadOnly = builder.mvStoreReadOnly;
+        this.mvStoreMemoryMapped = builder.mvStoreMemoryMapped;
+        this.genotypeCacheDirectory = builder.genotypeCacheDirectory;
+        this.genotypeCacheSizeMb = builder.genotypeCacheSizeMb;
 
         ImmutableList.Builder<TermId> listbuilder = new ImmutableList.Builder<>();
         for (String id : builder.observedHpoTerms) {
@@ -319,22 +398,137 @@ public class LiricalFactory {
     }
 
 
-    /** @return MVStore object with Exomiser data on variant pathogenicity and frequency. */
-    public MVStore mvStore() {
+    /**
+     * The store is opened with the configured page cache size, read-only (unless this was switched off) and, if
+     * requested, with a memory-mapped file (only used in read-only mode, see {@link MemoryMappedFileStore}). Use {@link MvStoreStatistics} to see how well the page cache works.
+     * @return MVStore object with Exomiser data on variant pathogenicity and frequency.
+     */
+    public synchronized MVStore mvStore() {
         File f = new File(this.mvStorePath);
         if (!f.exists()) {
             throw new LiricalRuntimeException("[FATAL] Could not find Exomiser database file/variants.mv.db at " + this.mvStorePath);
         }
         if (mvstore==null) {
-            mvstore = new MVStore.Builder()
-                    .fileName(this.mvStorePath)
-                    .readOnly()
-                    .open();
+            MVStore.Builder builder = new MVStore.Builder().fileName(this.mvStorePath);
+            if (mvStoreMemoryMapped) {
+                // MVStore does not open a file store that is passed to it
+                MemoryMappedFileStore fileStore = new MemoryMappedFileStore();
+                fileStore.open(this.mvStorePath, mvStoreReadOnly, null);
+                builder.fileStore(fileStore);
+            }
+            if (mvStoreReadOnly) {
+                builder.readOnly();
+            }
+            if (mvStoreCacheSizeMb != null) {
+                builder.cacheSize(mvStoreCacheSizeMb);
+            }
+            mvstore = builder.open();
+            logger.info("Opened Exomiser database {} (page cache {} MB, read-only={}, memory-mapped={})",
+                    this.mvStorePath, mvstore.getCacheSize(), mvStoreReadOnly, mvStoreMemoryMapped);
         }
         return mvstore;
     }
 
 
+    /**
+     * The allele lookup caches the data of alleles that were already seen, which avoids reading the MVStore again
+     * for common variants if several VCF files are analyzed with this factory. If an allele table was configured,
+     * the alleles are read from the table instead of the MVStore.
+     * @return object that provides cached access to the Exomiser allele data.
+     */
+    public synchronized AlleleLookup alleleLookup() {
+        if (alleleLookup == null) {
+            alleleLookup = alleleTablePath != null ?
+                    new AlleleLookup(SlimAlleleTable.open(Paths.get(alleleTablePath)), alleleCacheSize) :
+                    new AlleleLookup(MvStoreUtil.openAlleleMVMap(mvStore()), alleleCacheSize);
+        }
+        return alleleLookup;
+    }
+
+
+    /**
+     * The index is only created if a disease-gene padding or a gene panel was configured. If there is a gene panel,
+     * the index contains the loci of the genes of the panel, otherwise the loci of all genes associated with a
+     * disease. If the VCF file has a tabix index, only these loci are read from the VCF file.
+     * @return index of the loci of the selected genes (null if VCF records are not restricted).
+     */
+    public synchronized GeneIntervalIndex geneIntervalIndex() {
+        if (diseaseGenePadding == null && genePanelPath == null) {
+            return null;
+        }
+        if (geneIntervalIndex == null) {
+            Collection<TermId> genes = genePanelPath != null ? genePanel() : gene2diseaseMultimap().keySet();
+            geneIntervalIndex = new GeneIntervalIndex(jannovarData(),
+                    genes,
+                    geneId2symbolMap(),
+                    diseaseGenePadding != null ? diseaseGenePadding : 0);
+        }
+        return geneIntervalIndex;
+    }
+
+    /**
+     * The index is built once from the disease-gene associations, the gene symbols and the background frequencies
+     * and is shared by all cases that are evaluated with this factory.
+     * @return index of the genes used in the genotype analysis
+     */
+    public synchronized GeneIndex geneIndex() {
+        if (geneIndex == null) {
+            geneIndex = GeneIndex.of(disease2geneMultimap(),
+                    geneId2symbolMap(),
+                    backgroundFrequencyTable,
+                    backgroundPopulation);
+        }
+        return geneIndex;
+    }
+
+    /**
+     * Regions of the alleles that are extracted to a {@link SlimAlleleTable}, i.e., the exons of the genes of the gene
+     * panel, or of all genes associated with a disease if there is no gene panel.
+     * @param splicePadding number of bases added on both sides of each exon to cover the splice regions
+     * @return index of the exons of the selected genes
+     */
+    public GeneIntervalIndex alleleTableRegions(int splicePadding) {
+        Collection<TermId> genes = genePanelPath != null ? genePanel() : gene2diseaseMultimap().keySet();
+        return GeneIntervalIndex.exons(jannovarData(), genes, geneId2symbolMap(), splicePadding);
+    }
+
+    /**
+     * Parse the gene panel file. Each line contains a gene symbol (e.g., FBN1) or an NCBIGene id (e.g., NCBIGene:2200).
+     * Empty lines and lines starting with # are skipped.
+     * @return the gene ids of the panel
+     */
+    private Set<TermId> genePanel() {
+        Map<String, TermId> symbol2geneId = new HashMap<>();
+        for (Map.Entry<TermId, String> entry : geneId2symbolMap().entrySet()) {
+            symbol2geneId.put(entry.getValue(), entry.getKey());
+        }
+        Set<TermId> genes = new HashSet<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(genePanelPath))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                if (line.startsWith("NCBIGene:")) {
+                    genes.add(TermId.of(line));
+                } else if (symbol2geneId.containsKey(line)) {
+                    genes.add(symbol2geneId.get(line));
+                } else {
+                    logger.warn("Could not find gene id for gene panel entry {}", line);
+                }
+            }
+        } catch (IOException e) {
+            throw new LiricalRuntimeException(String.format("Could not read gene panel file %s (%s)",
+                    genePanelPath, e.getMessage()));
+        }
+        if (genes.isEmpty()) {
+            throw new LiricalRuntimeException("No genes found in gene panel file " + genePanelPath);
+        }
+        logger.info("Read {} genes from gene panel {}", genes.size(), genePanelPath);
+        return genes;
+    }
+
     private void parseHpoAnnotations()  {
         if (this.ontology==null) {
             hpoOntology();
@@ -366,7 +560,7 @@ public class LiricalFactory {
 
 
     /** @return a multimap with key: a gene CURIE such as NCBIGene:123; value: a collection of disease CURIEs such as OMIM:600123. */
-    public Multimap<TermId,TermId> gene2diseaseMultimap()  {
+    public synchronized Multimap<TermId,TermId> gene2diseaseMultimap()  {
         if (this.gene2diseaseMultiMap==null) {
             parseHpoAnnotations();
         }
@@ -374,14 +568,14 @@ public class LiricalFactory {
     }
 
     /** @return multimap with key:disease CURIEs such as OMIM:600123; value: a collection of gene CURIEs such as NCBIGene:123.  */
-    public Multimap<TermId,TermId> disease2geneMultimap()  {
+    public synchronized Multimap<TermId,TermId> disease2geneMultimap()  {
         if (this.disease2geneIdMultiMap==null) {
             parseHpoAnnotations();
         }
         return this.disease2geneIdMultiMap;
     }
     /** @return a map with key:a gene id, e.g., NCBIGene:2020; value: the corresponding gene symbol. */
-    public Map<TermId,String> geneId2symbolMap() {
+    public synchronized Map<TermId,String> geneId2symbolMap() {
         if (this.geneId2SymbolMap==null) {
             parseHpoAnnotations();
         }
@@ -406,20 +600,14 @@ public class LiricalFactory {
      */
     public GenotypeLikelihoodRatio getGenotypeLR() {
         boolean strict = ! globalAnalysisMode;
-        return new GenotypeLikelihoodRatio(this.gene2backgroundFrequency,strict);
+        return new GenotypeLikelihoodRatio(geneIndex(),strict);
     }
 
 
 
 
-    /**
-     * Deserialize the Jannovar transcript data file that comes with Exomiser. Note that Exomiser
-     * uses its own ProtoBuf serializetion and so we need to use its Deserializser. In case the user
-     * provides a standard Jannovar serialzied file, we try the legacy deserializer if the protobuf
-     * deserializer doesn't work.
-     * @return the object created by deserializing a Jannovar file. */
-    public JannovarData jannovarData()  {
-        if (jannovarData != null) return jannovarData;
+    /** @return path to the Jannovar transcript file of the Exomiser data for the selected transcript database. */
+    private String jannovarPath() {
         // Remove the trailing directory slash if any
         this.exomiserPath= getPathWithoutTrailingSeparatorIfPresent(this.exomiserPath);
         String basename=FilenameUtils.getBaseName(this.exomiserPath);
@@ -435,7 +623,18 @@ public class LiricalFactory {
                 fullpath=String.format("%s%s%s", exomiserPath,File.separator,ucscfilename);
                 break;
         }
+        return fullpath;
+    }
 
+    /**
+     * Deserialize the Jannovar transcript data file that comes with Exomiser. Note that Exomiser
+     * uses its own ProtoBuf serializetion and so we need to use its Deserializser. In case the user
+     * provides a standard Jannovar serialzied file, we try the legacy deserializer if the protobuf
+     * deserializer doesn't work.
+     * @return the object created by deserializing a Jannovar file. */
+    public synchronized JannovarData jannovarData()  {
+        if (jannovarData != null) return jannovarData;
+        String fullpath = jannovarPath();
         File f = new File(fullpath);
         if (!f.exists()) {
             throw new LiricalRuntimeException("[FATAL] Could not find Jannovar transcript file at " + fullpath);
@@ -474,18 +673,111 @@ public class LiricalFactory {
         return symbolsWithoutGeneIds;
     }
 
+    /**
+     * Extract the genotypes of the first sample of a VCF file. This method can be called by several threads at once
+     * (e.g., to simulate several cases concurrently); the VCF statistics of the factory (e.g.,
+     * {@link #getN_filtered_variants()}) are then those of one of the VCF files.
+     * @param vcfPath path to the VCF file
+     * @return map with key: gene id; value: {@link Gene2Genotype} object
+     */
     public  Map<TermId, Gene2Genotype> getGene2GenotypeMap(String vcfPath) {
-        Vcf2GenotypeMap vcf2geno = new Vcf2GenotypeMap(vcfPath,
+        if (genotypeCacheDirectory == null) {
+            Vcf2GenotypeMap vcf2geno = vcf2GenotypeMap(vcfPath);
+            Map<TermId, Gene2Genotype> genotypeMap = vcf2geno.vcf2genotypeMap();
+            recordVcfStatistics(vcf2geno);
+            return genotypeMap;
+        }
+        GenotypeMapCache cache = new GenotypeMapCache(genotypeCacheDirectory, genotypeCacheSizeMb * 1024L * 1024L);
+        List<String> settings = new ArrayList<>();
+        settings.add(getAssembly().toString());
+        settings.add(transcriptdb());
+        settings.add(String.valueOf(diseaseGenePadding));
+        settings.add(genePanelPath == null ? "no gene panel" : checksum(genePanelPath));
+        settings.add(String.valueOf(maxFrequency));
+        settings.addAll(genotypeDataVersions());
+        String key = GenotypeMapCache.key(vcfPath, settings.toArray(new String[0]));
+        Optional<GenotypeMapCache.Entry> cached = cache.get(key);
+        if (cached.isPresent()) {
+            GenotypeMapCache.Entry entry = cached.get();
+            synchronized (this) {
+                this.sampleName = entry.getSampleName();
+                this.n_filtered_variants = entry.getN_filtered_variants();
+                this.n_good_quality_variants = entry.getN_good_quality_variants();
+                this.n_off_target_variants = entry.getN_off_target_variants();
+                this.n_common_variants = entry.getN_common_variants();
+                this.symbolsWithoutGeneIds = entry.getSymbolsWithoutGeneIds();
+            }
+            return entry.getGenotypeMap();
+        }
+        Vcf2GenotypeMap vcf2geno = vcf2GenotypeMap(vcfPath);
+        Map<TermId, Gene2Genotype> genotypeMap = vcf2geno.vcf2genotypeMap();
+        recordVcfStatistics(vcf2geno);
+        cache.put(key, new GenotypeMapCache.Entry(vcf2geno.getSamplename(), genotypeMap,
+                vcf2geno.getN_good_quality_variants(), vcf2geno.getN_filtered_variants(),
+                vcf2geno.getN_off_target_variants(), vcf2geno.getN_common_variants(),
+                vcf2geno.getSymbolsWithoutGeneIds()));
+        return genotypeMap;
+    }
+
+    /**
+     * The versions of the data files that influence the genotype maps, for the keys of the genotype cache: the
+     * Jannovar transcripts and the Exomiser MVStore (by size and time of last modification, because they are too
+     * large to be read for each analysis), the allele table and the gene files that are used to assign gene ids (by
+     * checksum). The versions are calculated once per factory.
+     */
+    private synchronized List<String> genotypeDataVersions() {
+        if (genotypeDataVersions == null) {
+            genotypeDataVersions = ImmutableList.of(
+                    GenotypeMapCache.fileVersion(jannovarPath()),
+                    alleleTablePath == null ? GenotypeMapCache.fileVersion(mvStorePath) : "no MVStore",
+                    alleleTablePath == null ? "no allele table" : checksum(alleleTablePath),
+                    geneInfoPath == null ? "no gene info" : checksum(geneInfoPath),
+                    mim2genemedgenPath == null ? "no mim2gene" : checksum(mim2genemedgenPath));
+        }
+        return genotypeDataVersions;
+    }
+
+    private static String checksum(String path) {
+        try {
+            return com.google.common.io.Files.asByteSource(new File(path)).hash(Hashing.sha256()).toString();
+        } catch (IOException e) {
+            throw new LiricalRuntimeException(String.format("Could not read %s (%s)", path, e.getMessage()));
+        }
+    }
+
+    /**
+     * Extract the genotypes of all samples of the VCF file in a single pass.
+     * @return map with key: sample name; value: the genotype map of the sample (in the order of the VCF file)
+     */
+    public Map<String, Map<TermId, Gene2Genotype>> getSample2GenotypeMaps() {
+        Vcf2GenotypeMap vcf2geno = vcf2GenotypeMap(getVcfPath());
+        Map<String, Map<TermId, Gene2Genotype>> sample2genotypeMap = vcf2geno.vcf2genotypeMaps();
+        recordVcfStatistics(vcf2geno);
+        return sample2genotypeMap;
+    }
+
+    private Vcf2GenotypeMap vcf2GenotypeMap(String vcfPath) {
+        return new Vcf2GenotypeMap.Builder(vcfPath,
                 jannovarData(),
-                mvStore(),
+                alleleTablePath == null ? mvStore() : null,
                 getAssembly(),
-                geneId2symbolMap() );
-        Map<TermId, Gene2Genotype> genotypeMap = vcf2geno.vcf2genotypeMap();
+                geneId2symbolMap())
+                .threads(threads)
+                .queueCapacity(queueCapacity)
+                .alleleLookup(alleleLookup())
+                .geneIntervalIndex(geneIntervalIndex())
+                .maxFrequency(maxFrequency)
+                .geneIndex(geneIndex())
+                .build();
+    }
+
+    private synchronized void recordVcfStatistics(Vcf2GenotypeMap vcf2geno) {
         this.sampleName = vcf2geno.getSamplename();
         this.n_filtered_variants = vcf2geno.getN_filtered_variants();
         this.n_good_quality_variants = vcf2geno.getN_good_quality_variants();
+        this.n_off_target_variants = vcf2geno.getN_off_target_variants();
+        this.n_common_variants = vcf2geno.getN_common_variants();
         this.symbolsWithoutGeneIds = vcf2geno.getSymbolsWithoutGeneIds();
-        return genotypeMap;
     }
 
     /** @return a string with today's date in the format yyyy/MM/dd. */
@@ -502,6 +794,19 @@ public class LiricalFactory {
     public int getN_filtered_variants() {
         return n_filtered_variants;
     }
+
+    public int getN_off_target_variants() {
+        return n_off_target_variants;
+    }
+
+    public int getN_common_variants() {
+        return n_common_variants;
+    }
+
+    /** @return the maximum population frequency (in percent) of annotated alleles, or null if there is none. */
+    public Double getMaxFrequency() {
+        return maxFrequency;
+    }
     /** If true, then LIRICAL will not discard candidate diseases with no known disease gene or
      * candidatesfor which no predicted pathogenic variant was found in the VCF.*/
     public boolean global() { return globalAnalysisMode; }
@@ -565,6 +870,14 @@ public class LiricalFactory {
         } else {
             logger.trace("Exomiser data: {}", exomiserPath);
         }
+        if (alleleTablePath != null) {
+            if (!new File(alleleTablePath).isFile()) {
+                logger.error("Could not find allele table at {}", alleleTablePath);
+                throw new LiricalRuntimeException(String.format("Could not find allele table at %s", alleleTablePath));
+            }
+            // the Exomiser database is not needed
+            return;
+        }
         File mvStoreFile=new File(this.mvStorePath);
         if (!mvStoreFile.exists()) {
             logger.error("Could not find Exomiser database file at {}",this.mvStorePath);
@@ -577,11 +890,11 @@ public class LiricalFactory {
      */
     private void qcBackgroundFrequency() {
 
-        if (! this.gene2backgroundFrequency.isEmpty()) {
+        if (this.backgroundFrequencyTable.size() != 0) {
             logger.error("background frequency was not initialized ");
             throw new LiricalRuntimeException("background frequency was not initialized ");
         } else {
-            logger.trace("Background frequency initialized for {} genes", this.gene2backgroundFrequency.size());
+            logger.trace("Background frequency initialized for {} genes", this.backgroundFrequencyTable.size());
         }
     }
 
@@ -634,6 +947,7 @@ public class LiricalFactory {
         private String geneInfoPath = null;
         private String mim2genemedgenPath = null;
         private String backgroundFrequencyPath = null;
+        private BackgroundFrequencyTable.Population backgroundPopulation = BackgroundFrequencyTable.Population.MEAN;
         private String vcfPath = null;
         private String genomeAssembly = null;
         private boolean global = false;
@@ -645,6 +959,27 @@ public class LiricalFactory {
         private String outfilePrefix = DEFAULT_OUTFILE_PREFIX;
         private Double lrThreshold = null;
         private Integer minDifferentials = null;
+        /** Number of threads used to annotate the VCF file. */
+        private int threads = 1;
+        /** Maximum number of batches of VCF records waiting to be merged (0: twice the number of threads). */
+        private int queueCapacity = 0;
+        /** Maximum number of alleles whose Exomiser data are cached. */
+        private int alleleCacheSize = AlleleLookup.DEFAULT_CACHE_SIZE;
+        /** Padding around disease genes; null means that all VCF records are annotated. */
+        private Integer diseaseGenePadding = null;
+        /** File with the genes of a gene panel; null means that all disease genes are analyzed. */
+        private String genePanelPath = null;
+        /** Maximum population frequency in percent; null means that alleles are not filtered by frequency. */
+        private Double maxFrequency = null;
+        /** Allele table extracted from the Exomiser database; null means that the MVStore is used. */
+        private String alleleTablePath = null;
+        /** Page cache of the Exomiser MVStore in MB; null means the default of the MVStore (16 MB). */
+        private Integer mvStoreCacheSizeMb = null;
+        private boolean mvStoreReadOnly = true;
+        private boolean mvStoreMemoryMapped = false;
+        /** Directory of the genotype cache; null means that the VCF file is always annotated. */
+        private String genotypeCacheDirectory = null;
+        private int genotypeCacheSizeMb = (int) (GenotypeMapCache.DEFAULT_MAX_BYTES / (1024L * 1024L));
 
         /** If this constructor is used, the the build method will attempt to load the HPO
          * based on its file location in datadir. If it is not possible, we will die gracefully.
@@ -704,7 +1039,20 @@ public class LiricalFactory {
             }
             Optional<String> backgroundOpt = yp.getBackgroundPath();
             backgroundOpt.ifPresent(s -> this.backgroundFrequencyPath = s);
+            yp.backgroundPopulation().ifPresent(this::backgroundPopulation);
             this.global = yp.global();
+            yp.threads().ifPresent(n -> this.threads = n);
+            yp.queueCapacity().ifPresent(n -> this.queueCapacity = n);
+            yp.alleleCacheSize().ifPresent(n -> this.alleleCacheSize = n);
+            yp.diseaseGenePadding().ifPresent(n -> this.diseaseGenePadding = n);
+            yp.genePanel().ifPresent(path -> this.genePanelPath = path);
+            yp.maxFrequency().ifPresent(f -> this.maxFrequency = f);
+            yp.alleleTable().ifPresent(path -> this.alleleTablePath = path);
+            yp.mvStoreCacheSize().ifPresent(n -> this.mvStoreCacheSizeMb = n);
+            yp.mvStoreReadOnly().ifPresent(b -> this.mvStoreReadOnly = b);
+            yp.mvStoreMemoryMapped().ifPresent(b -> this.mvStoreMemoryMapped = b);
+            yp.genotypeCache().ifPresent(dir -> this.genotypeCacheDirectory = dir);
+            yp.genotypeCacheSize().ifPresent(n -> this.genotypeCacheSizeMb = n);
 
 
             return this;
@@ -765,6 +1113,14 @@ public class LiricalFactory {
             return this;
         }
 
+        /** @param population a gnomAD population such as NFE, or Mean (the default); null keeps the current value */
+        public Builder backgroundPopulation(String population) {
+            if (population != null) {
+                this.backgroundPopulation = BackgroundFrequencyTable.Population.fromString(population);
+            }
+            return this;
+        }
+
         public Builder lrThreshold(Double d) {
             this.lrThreshold = d;
             return this;
@@ -775,6 +1131,66 @@ public class LiricalFactory {
             return this;
         }
 
+        public Builder threads(int n) {
+            this.threads = n;
+            return this;
+        }
+
+        public Builder queueCapacity(int n) {
+            this.queueCapacity = n;
+            return this;
+        }
+
+        public Builder alleleCacheSize(int n) {
+            this.alleleCacheSize = n;
+            return this;
+        }
+
+        public Builder diseaseGenePadding(Integer n) {
+            this.diseaseGenePadding = n;
+            return this;
+        }
+
+        public Builder genePanel(String path) {
+            this.genePanelPath = path;
+            return this;
+        }
+
+        public Builder maxFrequency(Double frequency) {
+            this.maxFrequency = frequency;
+            return this;
+        }
+
+        public Builder alleleTable(String path) {
+            this.alleleTablePath = path;
+            return this;
+        }
+
+        public Builder mvStoreCacheSize(Integer megabytes) {
+            this.mvStoreCacheSizeMb = megabytes;
+            return this;
+        }
+
+        public Builder mvStoreReadOnly(boolean b) {
+            this.mvStoreReadOnly = b;
+            return this;
+        }
+
+        public Builder mvStoreMemoryMapped(boolean b) {
+            this.mvStoreMemoryMapped = b;
+            return this;
+        }
+
+        public Builder genotypeCache(String directory) {
+            this.genotypeCacheDirectory = directory;
+            return this;
+        }
+
+        public Builder genotypeCacheSize(int megabytes) {
+            this.genotypeCacheSizeMb = megabytes;
+            return this;
+        }
+
 
 
         public Builder vcf(String vcf) {
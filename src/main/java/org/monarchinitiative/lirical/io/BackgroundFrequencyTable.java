@@ -0,0 +1,290 @@
+package org.monarchinitiative.lirical.io;
+
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * A binary version of the background frequency file ({@code background-hg19.tsv} or {@code background-hg38.tsv})
+ * that keeps the background frequencies of all gnomAD populations that are computed by
+ * {@link org.monarchinitiative.lirical.backgroundfrequency.GenicIntoleranceCalculator} and their mean, so that the
+ * population can be chosen at runtime. The file is memory-mapped and not parsed. The layout is
+ * <pre>
+ *     int magic, int version, int number of genes n, int number of populations p
+ *     int[n]      NCBI Gene ids in ascending order
+ *     double[n]   background frequencies of the genes for each of the p populations, in the order of {@link Population}
+ * </pre>
+ * Files in this format are created from the tab-separated files with {@link #convert(BufferedReader, Path)}. A
+ * tab-separated file, such as the files that are bundled with LIRICAL, can also be read into a table in memory with
+ * {@link #fromTsv(BufferedReader)}. In both cases the frequencies are kept in primitive arrays and looked up by the
+ * numeric NCBI Gene id, so that no {@code TermId} or {@code Double} objects are created for the genes.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class BackgroundFrequencyTable {
+    private static final int MAGIC = 0x4C494246; // LIBF
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 16;
+    /** Index of the column with the mean background frequency, used if the file has no header with this column. */
+    private static final int MEAN_COLUMN = 9;
+
+    /**
+     * The populations of the background frequency file, with the names of the corresponding columns. The order
+     * of the constants is the order of the populations in the binary file.
+     */
+    public enum Population {
+        AFR("AFR"), AMR("AMR"), ASJ("ASJ"), EAS("EAS"), FIN("FIN"), NFE("NFE"), SAS("SAS"),
+        /** The mean of the other populations, which LIRICAL uses by default. */
+        MEAN("Mean");
+
+        private final String columnName;
+
+        Population(String columnName) {
+            this.columnName = columnName;
+        }
+
+        public String getColumnName() {
+            return columnName;
+        }
+
+        /**
+         * @param name a population such as NFE or nfe
+         * @return the corresponding population
+         */
+        public static Population fromString(String name) {
+            for (Population population : values()) {
+                if (population.columnName.equalsIgnoreCase(name)) {
+                    return population;
+                }
+            }
+            throw new LiricalRuntimeException(String.format("Did not recognize background population \"%s\" (should be one of %s)",
+                    name, Arrays.toString(values())));
+        }
+    }
+
+    /** NCBI Gene ids, e.g., 2200 for FBN1, in ascending order. */
+    private final IntBuffer geneIds;
+    /** Background frequencies, one block of {@link #size()} values per population. */
+    private final DoubleBuffer frequencies;
+    private final int n_genes;
+    /** The populations with background frequencies (older tab-separated files only have the mean). */
+    private final Set<Population> populations;
+
+    private BackgroundFrequencyTable(IntBuffer geneIds, DoubleBuffer frequencies, int n_genes, Set<Population> populations) {
+        this.geneIds = geneIds;
+        this.frequencies = frequencies;
+        this.n_genes = n_genes;
+        this.populations = populations;
+    }
+
+    /**
+     * @param path path of a file
+     * @return true if the file starts like a background frequency table (and is not a tab-separated file)
+     */
+    public static boolean isBackgroundFrequencyTable(Path path) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Memory-map a background frequency table.
+     * @param path path of a file that was created by {@link #convert(BufferedReader, Path)}
+     * @return the table
+     */
+    public static BackgroundFrequencyTable open(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+                throw new LiricalRuntimeException(path + " is not a background frequency table");
+            }
+            if (buffer.getInt(4) != VERSION) {
+                throw new LiricalRuntimeException(String.format("%s has version %d of the background frequency table format (expected %d)",
+                        path, buffer.getInt(4), VERSION));
+            }
+            int n = buffer.getInt(8);
+            int p = buffer.getInt(12);
+            long expected = HEADER_LENGTH + 4L * n + 8L * n * p;
+            if (p != Population.values().length || buffer.capacity() != expected) {
+                throw new LiricalRuntimeException(String.format("Background frequency table %s is truncated or corrupt", path));
+            }
+            buffer.position(HEADER_LENGTH);
+            IntBuffer geneIds = buffer.slice().asIntBuffer();
+            geneIds.limit(n);
+            buffer.position(HEADER_LENGTH + 4 * n);
+            DoubleBuffer frequencies = buffer.slice().asDoubleBuffer();
+            return new BackgroundFrequencyTable(geneIds, frequencies, n, EnumSet.allOf(Population.class));
+        } catch (IOException e) {
+            throw new LiricalRuntimeException(String.format("Could not open background frequency table %s (%s)", path, e.getMessage()));
+        }
+    }
+
+    /**
+     * Open a binary table, or read a tab-separated background frequency file into memory.
+     * @param path path of a binary table or of a tab-separated file
+     * @return the table
+     */
+    public static BackgroundFrequencyTable fromPath(Path path) {
+        if (isBackgroundFrequencyTable(path)) {
+            return open(path);
+        }
+        try (BufferedReader reader = Files.newBufferedReader(path)) {
+            return fromTsv(reader);
+        } catch (IOException e) {
+            throw new LiricalRuntimeException(String.format("Could not read background frequency file %s (%s)", path, e.getMessage()));
+        }
+    }
+
+    /**
+     * Read one of the tab-separated background frequency files that are bundled with LIRICAL.
+     * @param resource name of the resource, e.g., {@code background/background-hg38.tsv}
+     * @return the table
+     */
+    public static BackgroundFrequencyTable fromResource(String resource) {
+        InputStream is = BackgroundFrequencyTable.class.getClassLoader().getResourceAsStream(resource);
+        if (is == null) {
+            throw new LiricalRuntimeException("Could not find background frequency resource " + resource);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
+            return fromTsv(reader);
+        } catch (IOException e) {
+            throw new LiricalRuntimeException(String.format("Could not read background frequency resource %s (%s)", resource, e.getMessage()));
+        }
+    }
+
+    /**
+     * Read a tab-separated background frequency file with the header {@code Gene EntrezId AFR AMR ASJ EAS FIN NFE SAS
+     * Mean} into a table in memory. Older files without this header only have the mean frequency, in the tenth
+     * column. Genes without an NCBI Gene id are skipped; if an id occurs more than once, the last line is used.
+     * @param reader the tab-separated file
+     * @return the table
+     */
+    public static BackgroundFrequencyTable fromTsv(BufferedReader reader) throws IOException {
+        String header = reader.readLine();
+        if (header == null) {
+            throw new LiricalRuntimeException("Background frequency file is empty");
+        }
+        List<String> columns = Arrays.asList(header.split("\t"));
+        Population[] populations = Population.values();
+        int[] populationColumns = new int[populations.length];
+        Set<Population> present = EnumSet.noneOf(Population.class);
+        for (Population population : populations) {
+            populationColumns[population.ordinal()] = columns.indexOf(population.getColumnName());
+            if (populationColumns[population.ordinal()] >= 0) {
+                present.add(population);
+            }
+        }
+        if (!present.contains(Population.MEAN)) {
+            populationColumns[Population.MEAN.ordinal()] = MEAN_COLUMN; // older files without the population columns
+            present.add(Population.MEAN);
+        }
+        int lastColumn = Arrays.stream(populationColumns).max().orElse(MEAN_COLUMN);
+        SortedMap<Integer, double[]> gene2frequencies = new TreeMap<>();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] fields = line.split("\t");
+            if (fields.length <= lastColumn || fields[1].isEmpty()) {
+                continue; // no EntrezId available -- this happens with many genes
+            }
+            double[] values = new double[populations.length];
+            for (int p = 0; p < populations.length; p++) {
+                values[p] = populationColumns[p] < 0 ? Double.NaN : Double.parseDouble(fields[populationColumns[p]]);
+            }
+            gene2frequencies.put(Integer.parseInt(fields[1]), values);
+        }
+        int n = gene2frequencies.size();
+        int[] geneIds = new int[n];
+        double[] frequencies = new double[n * populations.length];
+        int i = 0;
+        for (Map.Entry<Integer, double[]> entry : gene2frequencies.entrySet()) {
+            geneIds[i] = entry.getKey();
+            for (int p = 0; p < populations.length; p++) {
+                frequencies[p * n + i] = entry.getValue()[p];
+            }
+            i++;
+        }
+        return new BackgroundFrequencyTable(IntBuffer.wrap(geneIds), DoubleBuffer.wrap(frequencies), n, present);
+    }
+
+    /** @return number of genes in the table. */
+    public int size() {
+        return n_genes;
+    }
+
+    /**
+     * @param i index of a gene, between 0 and {@link #size()}-1
+     * @return the NCBI Gene id of the gene; the ids are in ascending order
+     */
+    public int entrezId(int i) {
+        return geneIds.get(i);
+    }
+
+    /** @return true if the table has the background frequencies of the population. */
+    public boolean hasPopulation(Population population) {
+        return populations.contains(population);
+    }
+
+    /**
+     * @param entrezId an NCBI Gene id, e.g., 2200
+     * @param population the population
+     * @return the background frequency of the gene in the population, or NaN if the gene is not in the table
+     */
+    public double frequency(int entrezId, Population population) {
+        int low = 0;
+        int high = n_genes - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int id = geneIds.get(mid);
+            if (id < entrezId) {
+                low = mid + 1;
+            } else if (id > entrezId) {
+                high = mid - 1;
+            } else {
+                return frequencies.get(population.ordinal() * n_genes + mid);
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Convert a tab-separated background frequency file with the header
+     * {@code Gene EntrezId AFR AMR ASJ EAS FIN NFE SAS Mean} into a binary table. Genes without an NCBI Gene id are
+     * skipped; if an id occurs more than once, the last line is used (as by {@link GenotypeDataIngestor}).
+     * @param reader the tab-separated file
+     * @param path the path of the binary table
+     * @return number of genes written to the table
+     */
+    public static int convert(BufferedReader reader, Path path) throws IOException {
+        BackgroundFrequencyTable table = fromTsv(reader);
+        Population[] populations = Population.values();
+        for (Population population : populations) {
+            if (!table.hasPopulation(population)) {
+                throw new LiricalRuntimeException("Background frequency file has no column " + population.getColumnName());
+            }
+        }
+        int n = table.size();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(populations.length);
+            for (int i = 0; i < n; i++) {
+                out.writeInt(table.geneIds.get(i));
+            }
+            for (int i = 0; i < n * populations.length; i++) {
+                out.writeDouble(table.frequencies.get(i));
+            }
+        }
+        return n;
+    }
+}
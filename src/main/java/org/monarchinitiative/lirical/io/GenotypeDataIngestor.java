@@ -1,10 +1,13 @@
 package org.monarchinitiative.lirical.io;
 
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -12,7 +15,10 @@ import java.util.Map;
  * This class coordinates the input of the background frequency file. Note that this file is added as a resource to the
  * JAR file, i.e., {@code LIRICAL.jar!/background/background-hg19.tsv} (or -hg38.tsv), and so it cannot be opened using
  * a path. The user is allowed to provide their own background file, in which case a path is used. There are two
- * factory methods, one for the path and one for the name of a resource (both are strings).
+ * factory methods, one for the path and one for the name of a resource (both are strings). The background frequency
+ * of one of the gnomAD populations of the file can be chosen instead of the mean. LIRICAL itself reads the background
+ * frequencies into a {@link BackgroundFrequencyTable}, which does not create a map entry for each gene; binary tables
+ * can only be read with {@link BackgroundFrequencyTable}.
  * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
  */
 public class GenotypeDataIngestor {
@@ -22,8 +28,13 @@ public class GenotypeDataIngestor {
     private Map<TermId, Double> gene2freq;
 
     private final static String ENTREZ_GENE_PREFIX="NCBIGene";
+    /** Index of the column with the mean background frequency, used if the file has no header with this column. */
+    private final static int MEAN_COLUMN = 9;
+    /** The population whose background frequencies are read. */
+    private final BackgroundFrequencyTable.Population population;
 
-    private GenotypeDataIngestor() {
+    private GenotypeDataIngestor(BackgroundFrequencyTable.Population population) {
+        this.population = population;
     }
 
     private Map<TermId, Double> getGene2backgroundFrequency(){
@@ -31,7 +42,19 @@ public class GenotypeDataIngestor {
     }
 
     public static Map<TermId, Double> fromPath(String backgroundFrequencyPath) {
-        GenotypeDataIngestor gdi = new GenotypeDataIngestor();
+        return fromPath(backgroundFrequencyPath, BackgroundFrequencyTable.Population.MEAN);
+    }
+
+    /**
+     * @param backgroundFrequencyPath path of a tab-separated background frequency file
+     * @param population the population whose background frequencies are used
+     * @return map with key: the TermId of a gene; value: its background frequency
+     */
+    public static Map<TermId, Double> fromPath(String backgroundFrequencyPath, BackgroundFrequencyTable.Population population) {
+        if (BackgroundFrequencyTable.isBackgroundFrequencyTable(Paths.get(backgroundFrequencyPath))) {
+            throw new LiricalRuntimeException(backgroundFrequencyPath + " is a binary background frequency table (use BackgroundFrequencyTable)");
+        }
+        GenotypeDataIngestor gdi = new GenotypeDataIngestor(population);
         try {
             BufferedReader br = new BufferedReader(new FileReader(backgroundFrequencyPath));
             gdi.parse(br);
@@ -42,24 +65,35 @@ public class GenotypeDataIngestor {
         return gdi.getGene2backgroundFrequency();
     }
     public static Map<TermId, Double> fromResource(String resourceString) {
+        return fromResource(resourceString, BackgroundFrequencyTable.Population.MEAN);
+    }
+
+    public static Map<TermId, Double> fromResource(String resourceString, BackgroundFrequencyTable.Population population) {
         ClassLoader classLoader = GenotypeDataIngestor.class.getClassLoader();
         InputStream is = classLoader.getResourceAsStream(resourceString);
         InputStreamReader isr = new InputStreamReader(is);
         BufferedReader br = new BufferedReader(isr);
-        GenotypeDataIngestor gdi = new GenotypeDataIngestor();
+        GenotypeDataIngestor gdi = new GenotypeDataIngestor(population);
         gdi.parse(br);
         return gdi.getGene2backgroundFrequency();
     }
 
     /**
-     * symbol	geneID	freqsum-benign	count-benign	freqsum-path	count-path
+     * Gene	EntrezId	AFR	AMR	ASJ	EAS	FIN	NFE	SAS	Mean
      */
     private void parse(BufferedReader reader)  {
         //ImmutableMap.Builder<TermId,Double> builder = new ImmutableMap.Builder<>();
         this.gene2freq=new HashMap<>();
         try {
 
-            String line = reader.readLine(); // this is the header -- discardR
+            String line = reader.readLine(); // this is the header
+            int column = line == null ? -1 : Arrays.asList(line.split("\t")).indexOf(population.getColumnName());
+            if (column < 0) {
+                if (population != BackgroundFrequencyTable.Population.MEAN) {
+                    throw new LiricalRuntimeException("Background frequency file has no column " + population.getColumnName());
+                }
+                column = MEAN_COLUMN; // older files without the population columns
+            }
             while ((line=reader.readLine())!=null) {
                 String[] a = line.split("\t");
                 if (a.length <10) {
@@ -72,7 +106,7 @@ public class GenotypeDataIngestor {
                     continue; // no EntrezId available -- this happens with many genes
                 }
                 TermId entrezId=TermId.of(ENTREZ_GENE_PREFIX,entrezNumber);
-                String fsumpath=a[9];
+                String fsumpath=a[column];
                 try {
                     Double pathSum = Double.parseDouble(fsumpath);
                     gene2freq.put(entrezId,pathSum);
@@ -0,0 +1,84 @@
+package org.monarchinitiative.lirical.io;
+
+import org.h2.mvstore.FileStore;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link FileStore} for read-only MVStores that reads pages from a memory-mapped file instead of calling
+ * {@link FileChannel#read(ByteBuffer, long)} for every page. The operating system then keeps the pages of the
+ * Exomiser database that were read in its page cache without a system call per access, which helps if the MVStore
+ * page cache is small compared to the part of the database that is used. The stand-alone MVStore jar does not
+ * contain the memory-mapped file system of H2 ({@code nioMapped:}), hence this class.
+ * <p>
+ * The file is mapped in segments of at most 1 GB. Files that are opened for writing are read as usual.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class MemoryMappedFileStore extends FileStore {
+    private static final int SEGMENT_BITS = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+    /** The segments of the file (null if the file is not mapped). */
+    private MappedByteBuffer[] segments = null;
+
+    @Override
+    public void open(String fileName, boolean readOnly, char[] encryptionKey) {
+        super.open(fileName, readOnly, encryptionKey);
+        if (!readOnly || encryptionKey != null) {
+            return;
+        }
+        // the channel of the FileStore is a wrapper of H2 that cannot be mapped; the mapping outlives this channel
+        try (FileChannel channel = FileChannel.open(Paths.get(fileName), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int n = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+            MappedByteBuffer[] mapped = new MappedByteBuffer[n];
+            for (int i = 0; i < n; i++) {
+                long start = i * SEGMENT_SIZE;
+                mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size - start));
+            }
+            segments = mapped;
+        } catch (IOException e) {
+            throw new LiricalRuntimeException(String.format("Could not memory-map %s (%s)", fileName, e.getMessage()));
+        }
+    }
+
+    @Override
+    public ByteBuffer readFully(long pos, int len) {
+        if (segments == null) {
+            return super.readFully(pos, len);
+        }
+        // MVStore expects a buffer of its own, so the data are copied out of the mapping
+        ByteBuffer buffer = ByteBuffer.allocate(len);
+        long position = pos;
+        while (buffer.hasRemaining()) {
+            int segment = (int) (position >>> SEGMENT_BITS);
+            int offset = (int) (position & (SEGMENT_SIZE - 1));
+            if (segment >= segments.length || offset >= segments[segment].capacity()) {
+                throw new LiricalRuntimeException(String.format("Read beyond the end of %s (position %d)", getFileName(), position));
+            }
+            ByteBuffer source = segments[segment].duplicate();
+            source.position(offset);
+            int n = Math.min(buffer.remaining(), source.remaining());
+            source.limit(source.position() + n);
+            buffer.put(source);
+            position += n;
+        }
+        buffer.flip();
+        readCount.incrementAndGet();
+        readBytes.addAndGet(len);
+        return buffer;
+    }
+
+    @Override
+    public void close() {
+        // the mappings are released by the garbage collector
+        segments = null;
+        super.close();
+    }
+}
@@ -105,6 +105,15 @@ public class YamlParser {
         }
     }
 
+    /** @return the gnomAD population whose background frequencies are used, e.g., NFE (default: Mean). */
+    public Optional<String> backgroundPopulation() {
+        if (yconfig.getAnalysis().containsKey("backgroundPopulation")) {
+            return Optional.of(yconfig.getAnalysis().get("backgroundPopulation"));
+        } else {
+            return Optional.empty();
+        }
+    }
+
 
 
 
@@ -242,6 +251,42 @@ public class YamlParser {
         }
     }
 
+    /** @return directory of the on-disk cache of genotype maps (may be empty). */
+    public Optional<String> genotypeCache() {
+        if (yconfig.getAnalysis().containsKey("genotypeCache")) {
+            return Optional.of(yconfig.getAnalysis().get("genotypeCache"));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * If the analysis section of the YAML file has a valid genotypeCacheSize entry, return it. This is the
+     * maximum size of the genotype cache in megabytes.
+     * @return size of the genotype cache (may be empty)
+     */
+    public Optional<Integer> genotypeCacheSize() {
+        return positiveInteger("genotypeCacheSize");
+    }
+
+    /** @return path to a file with the genes of a gene panel, one per line (may be empty). */
+    public Optional<String> genePanel() {
+        if (yconfig.getAnalysis().containsKey("genePanel")) {
+            return Optional.of(yconfig.getAnalysis().get("genePanel"));
+        } else {
+            return Optional.empty();
+        }
+    }
+
+    /** @return path to an allele table that is used instead of the Exomiser database (may be empty). */
+    public Optional<String> alleleTable() {
+        if (yconfig.getAnalysis().containsKey("alleleTable")) {
+            return Optional.of(yconfig.getAnalysis().get("alleleTable"));
+        } else {
+            return Optional.empty();
+        }
+    }
+
 
     public String getPrefix() {
         return yconfig.getPrefix();
@@ -300,6 +345,113 @@ public class YamlParser {
         return Optional.empty();
     }
 
+    /**
+     * If the analysis section of the YAML file has a valid threads entry, return it. This is the number of threads
+     * used to annotate the VCF file.
+     * @return number of threads (may be empty)
+     */
+    public Optional<Integer> threads() {
+        return positiveInteger("threads");
+    }
+
+    /**
+     * If the analysis section of the YAML file has a valid queueCapacity entry, return it. This is the maximum
+     * number of batches of VCF records that are waiting to be merged during multithreaded annotation.
+     * @return queue capacity (may be empty)
+     */
+    public Optional<Integer> queueCapacity() {
+        return positiveInteger("queueCapacity");
+    }
+
+    /**
+     * If the analysis section of the YAML file has a valid alleleCacheSize entry, return it. This is the maximum
+     * number of alleles whose Exomiser frequency and pathogenicity data are cached during VCF annotation.
+     * @return allele cache size (may be empty)
+     */
+    public Optional<Integer> alleleCacheSize() {
+        return positiveInteger("alleleCacheSize");
+    }
+
+    /**
+     * If the analysis section of the YAML file has a valid diseaseGenePadding entry, return it. If present, only
+     * VCF records within this many bases of a disease gene are annotated.
+     * @return padding around disease genes (may be empty)
+     */
+    public Optional<Integer> diseaseGenePadding() {
+        return integerAtLeast("diseaseGenePadding", 0);
+    }
+
+    /**
+     * If the analysis section of the YAML file has a valid mvStoreCacheSize entry, return it. This is the size of the
+     * page cache of the Exomiser MVStore in megabytes.
+     * @return MVStore page cache size (may be empty)
+     */
+    public Optional<Integer> mvStoreCacheSize() {
+        return positiveInteger("mvStoreCacheSize");
+    }
+
+    /** @return whether the Exomiser MVStore is opened read-only (may be empty, the default is true). */
+    public Optional<Boolean> mvStoreReadOnly() {
+        return bool("mvStoreReadOnly");
+    }
+
+    /** @return whether the Exomiser MVStore file is memory-mapped (may be empty, the default is false). */
+    public Optional<Boolean> mvStoreMemoryMapped() {
+        return bool("mvStoreMemoryMapped");
+    }
+
+    private Optional<Boolean> bool(String key) {
+        if (yconfig.hasAnalysis() && yconfig.getAnalysis().containsKey(key)) {
+            String value = yconfig.getAnalysis().get(key);
+            if (value.equalsIgnoreCase("true") || value.equalsIgnoreCase("false")) {
+                return Optional.of(Boolean.parseBoolean(value));
+            }
+            System.err.println("[ERROR] " + key + " entry in YAML file must be true or false. Using default");
+        }
+        return Optional.empty();
+    }
+
+    private Optional<Integer> positiveInteger(String key) {
+        return integerAtLeast(key, 1);
+    }
+
+    private Optional<Integer> integerAtLeast(String key, int min) {
+        if (yconfig.hasAnalysis() && yconfig.getAnalysis().containsKey(key)) {
+            String value =  yconfig.getAnalysis().get(key);
+            try {
+                int n = Integer.parseInt(value);
+                if (n >= min) {
+                    return Optional.of(n);
+                }
+                System.err.println("[ERROR] " + key + " entry in YAML file must be an integer >= " + min + ". Using default");
+            } catch( NumberFormatException nfe) {
+                System.err.println("[ERROR] Could not parse " + key + " entry in YAML file. Using default");
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * If the analysis section of the YAML file has a valid maxFrequency entry, return it. This is the maximum
+     * population frequency (in percent, between 0 and 100) of alleles that are annotated.
+     * @return maximum population frequency (may be empty)
+     */
+    public Optional<Double> maxFrequency() {
+        if (yconfig.hasAnalysis() && yconfig.getAnalysis().containsKey("maxFrequency")) {
+            String value = yconfig.getAnalysis().get("maxFrequency");
+            try {
+                double frequency = Double.parseDouble(value);
+                if (frequency >= 0.0 && frequency <= 100.0) {
+                    return Optional.of(frequency);
+                }
+                System.err.println("[ERROR] maxFrequency entry in YAML file must be between 0 and 100. Using default");
+            } catch (NumberFormatException nfe) {
+                System.err.println("[ERROR] Could not parse maxFrequency entry in YAML file. Using default");
+            }
+        }
+        return Optional.empty();
+    }
+
     /**
      * If the analysis section of the YAML file has a valid threshold entry, return it
      * @return threshold (may be empty)
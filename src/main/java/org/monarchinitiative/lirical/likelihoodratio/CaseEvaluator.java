@@ -5,6 +5,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Multimap;
 import org.monarchinitiative.lirical.analysis.Gene2Genotype;
+import org.monarchinitiative.lirical.analysis.GeneIndex;
 import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
 import org.monarchinitiative.lirical.hpo.HpoCase;
 import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
@@ -54,6 +55,10 @@ public class CaseEvaluator {
      * Key: an EntrezGene id; value: corresponding gene symbol.
      */
     private Map<TermId, String> geneId2symbol;
+    /** Dense index of the genes and of the disease-gene associations of {@link #disease2geneMultimap}. */
+    private final GeneIndex geneIndex;
+    /** The entries of {@link #genotypeMap} by index of the gene in {@link #geneIndex} (null if no variant was found). */
+    private final Gene2Genotype[] genotypes;
     //private List<LrWithExplanation> currentPhenotypeExplanation;
     private List<LrWithExplanation> currentObservedPhenotypeExplanation;
     private List<LrWithExplanation> currentExcludedPhenotypeExplanation;
@@ -80,6 +85,8 @@ public class CaseEvaluator {
         this.genotypeMap = ImmutableMap.of();
         this.disease2geneMultimap = ImmutableMultimap.of();
         this.genotypeLrEvalutator = null;
+        this.geneIndex = null;
+        this.genotypes = null;
         // For now, assume equal pretest probabilities
         this.pretestProbabilityMap = new HashMap<>();
         int n = diseaseMap.size();
@@ -105,6 +112,8 @@ public class CaseEvaluator {
      * @param genotypeLrEvalutator reference to object that evaluates the genotype LR
      * @param genotypeMap          Map of gene symbol to genotype evaluations
      * @param global                 if true, do not discard candidates if they do not have a candidate variant
+     * @param geneId2symbol        map from gene id to the corresponding gene symbol
+     * @param geneIndex            dense index of the genes and of the associations of disease2geneMultimap
      */
     private CaseEvaluator(List<TermId> hpoTerms,
                           List<TermId> negatedHpoTerms,
@@ -115,7 +124,8 @@ public class CaseEvaluator {
                           GenotypeLikelihoodRatio genotypeLrEvalutator,
                           Map<TermId, Gene2Genotype> genotypeMap,
                           boolean global,
-                          Map<TermId, String> geneId2symbol) {
+                          Map<TermId, String> geneId2symbol,
+                          GeneIndex geneIndex) {
         this.phenotypicAbnormalities = hpoTerms;
         this.negatedPhenotypicAbnormalities = negatedHpoTerms;
         this.diseaseMap = diseaseMap;
@@ -133,6 +143,14 @@ public class CaseEvaluator {
             pretestProbabilityMap.put(tid, prob);
         }
         this.genotypeMap = genotypeMap;
+        this.geneIndex = geneIndex;
+        this.genotypes = new Gene2Genotype[geneIndex.size()];
+        for (Map.Entry<TermId, Gene2Genotype> entry : genotypeMap.entrySet()) {
+            int g = geneIndex.geneIndex(entry.getKey());
+            if (g != GeneIndex.NOT_FOUND) {
+                genotypes[g] = entry.getValue();
+            }
+        }
         this.useGenotypeAnalysis = true;
         this.errors = new ArrayList<>();
     }
@@ -228,8 +246,9 @@ public class CaseEvaluator {
         List<Double> observedLR = observedPhenotypesLikelihoodRatios(diseaseId);
         List<Double> excludedLR = excludedPhenotypesLikelihoodRatios(diseaseId);
         TestResult result;
-        Collection<TermId> associatedGenes = disease2geneMultimap.get(diseaseId);
-        if (associatedGenes.isEmpty()) {
+        int d = geneIndex.diseaseIndex(diseaseId);
+        int geneCount = d == GeneIndex.NOT_FOUND ? 0 : geneIndex.geneCountOfDisease(d);
+        if (geneCount == 0) {
             // this is a disease with no known disease gene
             result =  createResultFromPheno(observedLR, excludedLR, disease, pretest);
             return Optional.of(result);
@@ -242,13 +261,13 @@ public class CaseEvaluator {
         Double genotypeLR = null;
         TermId geneId = null;
         String currentGenotypeExplanation = null;
-        // if we get here, then associatedGenes is not empty
-        for (TermId entrezGeneId : associatedGenes) {
-            // if there is no Gene2Genotype object in the map, then no variant in the gene was found in the VCF
-            Gene2Genotype g2g = this.genotypeMap.getOrDefault(entrezGeneId, Gene2Genotype.NO_IDENTIFIED_VARIANT);
+        // if we get here, then the disease has at least one associated gene
+        for (int k = 0; k < geneCount; k++) {
+            int gene = geneIndex.geneOfDisease(d, k);
+            Gene2Genotype g2g = genotype(gene);
             // The following two special cases are if no variant was found or if a ClinVar-pathogenic variant was found.
             if (g2g.equals(Gene2Genotype.NO_IDENTIFIED_VARIANT)) {
-                String symbol = this.geneId2symbol.get(entrezGeneId);
+                String symbol = geneIndex.symbol(gene);
                 genesWithNoIdentifiedVariant.add(symbol);
             } else {
                 if (g2g.hasPathogenicClinvarVar() || g2g.hasPredictedPathogenicVar()) {
@@ -257,15 +276,16 @@ public class CaseEvaluator {
             }
             GenotypeLrWithExplanation glrwe = this.genotypeLrEvalutator.evaluateGenotype(g2g,
                     inheritancemodes,
-                    entrezGeneId);
+                    geneIndex,
+                    gene);
             double score = glrwe.getLR();
             if (genotypeLR == null) { // this is the first iteration
                 genotypeLR = score;
-                geneId = entrezGeneId;
+                geneId = geneIndex.geneId(gene);
                 currentGenotypeExplanation = glrwe.getExplanation();
             } else if (genotypeLR < score) { // if the new genotype LR is better, replace!
                 genotypeLR = score;
-                geneId = entrezGeneId;
+                geneId = geneIndex.geneId(gene);
                 currentGenotypeExplanation = glrwe.getExplanation();
             }
         }
@@ -277,6 +297,16 @@ public class CaseEvaluator {
         return Optional.of(result);
     }
 
+    /**
+     * @param gene index of a gene in {@link #geneIndex}
+     * @return the genotype of the gene, or {@link Gene2Genotype#NO_IDENTIFIED_VARIANT} if no variant in the gene
+     * was found in the VCF file
+     */
+    private Gene2Genotype genotype(int gene) {
+        Gene2Genotype g2g = genotypes[gene];
+        return g2g == null ? Gene2Genotype.NO_IDENTIFIED_VARIANT : g2g;
+    }
+
     /**
      * * This is a convenience method that constructs a {@link TestResult} object from pheno/geno data
      * @param observedLR List of LRs for observed HPOs
@@ -364,8 +394,9 @@ public class CaseEvaluator {
                     phenoExpObserved.size(), observedLR.size());
         }
         TestResult result;
-        Collection<TermId> associatedGenes = disease2geneMultimap.get(diseaseId);
-        if (associatedGenes.isEmpty()) {
+        int d = geneIndex.diseaseIndex(diseaseId);
+        int geneCount = d == GeneIndex.NOT_FOUND ? 0 : geneIndex.geneCountOfDisease(d);
+        if (geneCount == 0) {
             // this is a disease with no known disease gene
             if (globalAnalysisMode) {
                 // if keepIfNoCandidateVariant is true then the user wants to
@@ -386,9 +417,9 @@ public class CaseEvaluator {
         Double genotypeLR = null;
         TermId geneId = null;
         String currentGenotypeExplanation = null;
-        for (TermId entrezGeneId : associatedGenes) {
-            // if there is no Gene2Genotype object in the map, then no variant in the gene was found in the VCF
-            Gene2Genotype g2g = this.genotypeMap.getOrDefault(entrezGeneId, Gene2Genotype.NO_IDENTIFIED_VARIANT);
+        for (int k = 0; k < geneCount; k++) {
+            int gene = geneIndex.geneOfDisease(d, k);
+            Gene2Genotype g2g = genotype(gene);
             // Set foundPredictedVariant to true if we found a variant in this gene and it was either a
             // known ClinVar-pathogenic variant or we predicted it to be pathogenic.
             if (!g2g.equals(Gene2Genotype.NO_IDENTIFIED_VARIANT) &&
@@ -397,15 +428,16 @@ public class CaseEvaluator {
             }
             GenotypeLrWithExplanation glrwe = this.genotypeLrEvalutator.evaluateGenotype(g2g,
                     inheritancemodes,
-                    entrezGeneId);
+                    geneIndex,
+                    gene);
             double score = glrwe.getLR();
             if (genotypeLR == null) { // this is the first iteration
                 genotypeLR = score;
-                geneId = entrezGeneId;
+                geneId = geneIndex.geneId(gene);
                 currentGenotypeExplanation = glrwe.getExplanation();
             } else if (genotypeLR < score) { // if the new genotype LR is better, replace!
                 genotypeLR = score;
-                geneId = entrezGeneId;
+                geneId = geneIndex.geneId(gene);
                 currentGenotypeExplanation = glrwe.getExplanation();
             }
         }
@@ -530,6 +562,11 @@ public class CaseEvaluator {
          * Key: an EntrezGene id; value: corresponding gene symbol.
          */
         private Map<TermId, String> geneId2symbol;
+        /**
+         * Dense index of the genes. It is built from the other arguments if it is not set, so that it should be set
+         * if many cases are evaluated with the same annotations.
+         */
+        private GeneIndex geneIndex = null;
 
         public Builder(List<TermId> hpoTerms) {
             this.hpoTerms = hpoTerms;
@@ -580,6 +617,11 @@ public class CaseEvaluator {
             return this;
         }
 
+        public Builder geneIndex(GeneIndex index) {
+            this.geneIndex = index;
+            return this;
+        }
+
 
         public CaseEvaluator build() {
             if (hpoTerms == null) {
@@ -592,6 +634,12 @@ public class CaseEvaluator {
             if (negatedHpoTerms == null) {
                 negatedHpoTerms = ImmutableList.of();
             }
+            if (geneIndex == null) {
+                geneIndex = genotypeLR.getGeneIndex() != null ? genotypeLR.getGeneIndex() :
+                        GeneIndex.of(disease2geneMultimap,
+                                geneId2symbol == null ? ImmutableMap.of() : geneId2symbol,
+                                genotypeLR.getGene2backgroundFrequency());
+            }
             return new CaseEvaluator(hpoTerms,
                     negatedHpoTerms,
                     ontology,
@@ -601,7 +649,8 @@ public class CaseEvaluator {
                     genotypeLR,
                     genotypeMap,
                     globalAnalysisMode,
-                    this.geneId2symbol);
+                    this.geneId2symbol,
+                    geneIndex);
         }
 
 
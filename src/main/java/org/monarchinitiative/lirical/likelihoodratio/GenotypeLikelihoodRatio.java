@@ -3,6 +3,7 @@ package org.monarchinitiative.lirical.likelihoodratio;
 import com.google.common.collect.ImmutableList;
 
 import org.monarchinitiative.lirical.analysis.Gene2Genotype;
+import org.monarchinitiative.lirical.analysis.GeneIndex;
 import org.monarchinitiative.lirical.poisson.PoissonDistribution;
 import org.monarchinitiative.phenol.ontology.data.TermId;
 import org.slf4j.Logger;
@@ -38,9 +39,12 @@ public class GenotypeLikelihoodRatio {
 
     /**
      * Entrez gene Curie, e.g., NCBIGene:2200; value--corresponding background frequency (ie.,
-     * lambda-background), the sum of pathogenic bin variants in the population (gnomAD).
+     * lambda-background), the sum of pathogenic bin variants in the population (gnomAD). This is null if the
+     * background frequencies are taken from {@link #geneIndex}.
      */
     private final Map<TermId, Double> gene2backgroundFrequency;
+    /** Index of the genes with their background frequencies (null if {@link #gene2backgroundFrequency} is used). */
+    private final GeneIndex geneIndex;
     /**
      * This is a Poisson distribution object that is used to help calculate the genotype likelihood ratio for cases
      * with autosomal recessive inheritance. We can construct this object once and reuse it. This is
@@ -59,6 +63,7 @@ public class GenotypeLikelihoodRatio {
      */
     public GenotypeLikelihoodRatio(Map<TermId, Double> g2background) {
         this.gene2backgroundFrequency = g2background;
+        this.geneIndex = null;
         this.recessivePoissonDistribution = new PoissonDistribution(2.0);
         this.dominantPoissonDistribution = new PoissonDistribution((1.0));
         this.strict=false;
@@ -70,6 +75,19 @@ public class GenotypeLikelihoodRatio {
      */
     public GenotypeLikelihoodRatio(Map<TermId, Double> g2background, boolean str) {
         this.gene2backgroundFrequency = g2background;
+        this.geneIndex = null;
+        this.recessivePoissonDistribution = new PoissonDistribution(2.0);
+        this.dominantPoissonDistribution = new PoissonDistribution((1.0));
+        this.strict=str;
+    }
+
+    /**
+     * @param geneIndex index of the genes with the background frequencies of called pathogenic variants.
+     * @param str strictness of genotype likelihood ratio (see {@link #strict}).
+     */
+    public GenotypeLikelihoodRatio(GeneIndex geneIndex, boolean str) {
+        this.gene2backgroundFrequency = null;
+        this.geneIndex = geneIndex;
         this.recessivePoissonDistribution = new PoissonDistribution(2.0);
         this.dominantPoissonDistribution = new PoissonDistribution((1.0));
         this.strict=str;
@@ -122,6 +140,43 @@ public class GenotypeLikelihoodRatio {
      * @return likelihood ratio of the genotype given the disease/geniId combination
      */
     GenotypeLrWithExplanation evaluateGenotype(Gene2Genotype g2g, List<TermId> inheritancemodes, TermId geneId) {
+        if (geneIndex != null) {
+            int gene = geneIndex.geneIndex(geneId);
+            return evaluateGenotype(g2g, inheritancemodes, geneId,
+                    gene != GeneIndex.NOT_FOUND && geneIndex.hasBackgroundLambda(gene) ? geneIndex.backgroundLambda(gene) : DEFAULT_LAMBDA_BACKGROUND);
+        }
+        return evaluateGenotype(g2g, inheritancemodes, geneId,
+                this.gene2backgroundFrequency.getOrDefault(geneId, DEFAULT_LAMBDA_BACKGROUND));
+    }
+
+    /**
+     * Calculate the genotype likelihood ratio as {@link #evaluateGenotype(Gene2Genotype, List, TermId)}, but take
+     * the background frequency of the gene from a {@link GeneIndex} instead of the map of this object. The index
+     * must have been built from the same background frequencies.
+     *
+     * @param g2g              {@link Gene2Genotype} object with list of variants in current gene.
+     * @param inheritancemodes list of modes of inheritance associated with disease being investigated (usually with just one entry).
+     * @param geneIndex        index of the genes
+     * @param gene             index of the gene we are investigating in {@code geneIndex}
+     * @return likelihood ratio of the genotype given the disease/geniId combination
+     */
+    GenotypeLrWithExplanation evaluateGenotype(Gene2Genotype g2g, List<TermId> inheritancemodes, GeneIndex geneIndex, int gene) {
+        return evaluateGenotype(g2g, inheritancemodes, geneIndex.geneId(gene),
+                geneIndex.hasBackgroundLambda(gene) ? geneIndex.backgroundLambda(gene) : DEFAULT_LAMBDA_BACKGROUND);
+    }
+
+    /** @return the index with the background frequencies of the genes, or null if a map is used. */
+    GeneIndex getGeneIndex() {
+        return geneIndex;
+    }
+
+    /** @return the background frequencies of called pathogenic variants in genes (null if a {@link GeneIndex} is used). */
+    Map<TermId, Double> getGene2backgroundFrequency() {
+        return gene2backgroundFrequency;
+    }
+
+    private GenotypeLrWithExplanation evaluateGenotype(Gene2Genotype g2g, List<TermId> inheritancemodes, TermId geneId,
+                                                       double lambdaBackground) {
         // special case 1: No variant found in this gene
         if (g2g.equals(Gene2Genotype.NO_IDENTIFIED_VARIANT)) {
             return getLRifNoVariantAtAllWasIdentified(inheritancemodes, g2g);
@@ -154,7 +209,7 @@ public class GenotypeLikelihoodRatio {
         // 3. There was no pathogenic variant listed in ClinVar.
         // Therefore, we apply the main algorithm for calculating the LR genotype score.
 
-        double lambda_background = this.gene2backgroundFrequency.getOrDefault(geneId, DEFAULT_LAMBDA_BACKGROUND);
+        double lambda_background = lambdaBackground;
         if (inheritancemodes == null || inheritancemodes.isEmpty()) {
             // This is probably because the HPO annotation file is incomplete
             logger.warn("No inheritance mode annotation found for geneId {}, reverting to default", geneId.getValue());
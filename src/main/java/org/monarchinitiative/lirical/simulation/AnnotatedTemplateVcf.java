@@ -0,0 +1,76 @@
+package org.monarchinitiative.lirical.simulation;
+
+import com.google.common.collect.ImmutableMap;
+import org.monarchinitiative.lirical.analysis.Gene2Genotype;
+import org.monarchinitiative.lirical.analysis.OverlayGenotypeMap;
+import org.monarchinitiative.lirical.analysis.VcfSimulator;
+import org.monarchinitiative.lirical.configuration.LiricalFactory;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.phenopackets.schema.v1.core.HtsFile;
+import org.phenopackets.schema.v1.core.Variant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A template VCF file that was annotated once, for simulations that inject the variants of many phenopackets into
+ * the same template. The genotype map of a simulated case is the genotype map of the template, which is shared by all
+ * cases, overlaid with the genotype map of a small VCF file that only contains the injected variants (see
+ * {@link OverlayGenotypeMap}). Only the injected variants are annotated for each case.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class AnnotatedTemplateVcf {
+    private static final Logger logger = LoggerFactory.getLogger(AnnotatedTemplateVcf.class);
+    /** Path to the template VCF file. */
+    private final String templateVcfPath;
+    /** Key: gene id; value: the variants of the template in the gene. */
+    private final Map<TermId, Gene2Genotype> baseline;
+    private final LiricalFactory factory;
+
+    private AnnotatedTemplateVcf(String templateVcfPath, Map<TermId, Gene2Genotype> baseline, LiricalFactory factory) {
+        this.templateVcfPath = templateVcfPath;
+        this.baseline = baseline;
+        this.factory = factory;
+    }
+
+    /**
+     * Annotate the template VCF file.
+     * @param templateVcfPath Path to a template VCF file we will add mutations to
+     * @param factory {@link LiricalFactory} object used to annotate the template and the injected variants
+     * @return the annotated template
+     */
+    public static AnnotatedTemplateVcf annotate(String templateVcfPath, LiricalFactory factory) {
+        logger.info("Annotating template VCF file {}", templateVcfPath);
+        Map<TermId, Gene2Genotype> baseline = ImmutableMap.copyOf(factory.getGene2GenotypeMap(templateVcfPath));
+        logger.info("Template VCF file has variants in {} genes", baseline.size());
+        return new AnnotatedTemplateVcf(templateVcfPath, baseline, factory);
+    }
+
+    public String getTemplateVcfPath() {
+        return templateVcfPath;
+    }
+
+    /**
+     * Annotate the variants of a phenopacket and add them to the genotypes of the template.
+     * @param subjectId identifier of the proband
+     * @param variants variants of the phenopacket
+     * @param genomeAssembly genome assembly of the template
+     * @return the genotype map of the simulated case
+     */
+    public Map<TermId, Gene2Genotype> genotypeMapWith(String subjectId, List<Variant> variants, String genomeAssembly) {
+        VcfSimulator vcfSimulator = new VcfSimulator(Paths.get(templateVcfPath));
+        HtsFile injectedVcf;
+        try {
+            injectedVcf = vcfSimulator.injectedVariantsVcf(subjectId, variants, genomeAssembly);
+        } catch (IOException e) {
+            throw new LiricalRuntimeException("Could not simulate VCF for phenopacket");
+        }
+        Map<TermId, Gene2Genotype> injected = factory.getGene2GenotypeMap(injectedVcf.getUri());
+        return OverlayGenotypeMap.of(baseline, injected);
+    }
+}
@@ -2,6 +2,8 @@ package org.monarchinitiative.lirical.simulation;
 
 
 import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.lirical.likelihoodratio.PhenotypeLikelihoodRatio;
 import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
 import org.monarchinitiative.phenol.ontology.data.Ontology;
 import org.monarchinitiative.phenol.ontology.data.TermId;
@@ -9,11 +11,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 /**
@@ -31,6 +33,16 @@ public class GridSearch  {
     private final int n_cases_to_simulate_per_run;
     /** SHould we exchange the terms with their parents to simulate "imprecise" data entry? */
     private final boolean useImprecision;
+    /** Numbers of HPO terms per case (rows of the grid). */
+    private final int[] termnumber;
+    /** Numbers of noise terms per case (columns of the grid). */
+    private final int[] randomtermnumber;
+    /** Number of grid cells that are simulated at the same time. */
+    private final int threads;
+    /** Seed of the random number generator (null: a different seed for each run). */
+    private final Long seed;
+    /** Directory of the output files (null: the working directory). */
+    private final String outdir;
 
 
     /**
@@ -43,42 +55,91 @@ public class GridSearch  {
      * @param imprecision if true, use "imprecision" to change HPO terms to a parent term
      */
     public GridSearch(Ontology ontology, Map<TermId, HpoDisease> diseaseMap, int n_cases, boolean imprecision) {
-        this.ontology=ontology;
-        this.diseaseMap=diseaseMap;
-        this.n_cases_to_simulate_per_run=n_cases;
-        this.useImprecision=imprecision;
+        this(new Builder(ontology, diseaseMap).cases(n_cases).imprecision(imprecision));
+    }
+
+    private GridSearch(Builder builder) {
+        this.ontology=builder.ontology;
+        this.diseaseMap=builder.diseaseMap;
+        this.n_cases_to_simulate_per_run=builder.n_cases;
+        this.useImprecision=builder.imprecision;
+        this.termnumber=builder.termnumber;
+        this.randomtermnumber=builder.randomtermnumber;
+        this.threads=Math.max(1, builder.threads);
+        this.seed=builder.seed;
+        this.outdir=builder.outdir;
     }
 
 
     /**
      * Perform a grid search over varying numbers of terms and random terms
      * both with and without moving the terms to parent terms (imprecision).
+     * All cells of the grid share one {@link PhenotypeLikelihoodRatio} and are simulated by {@link #threads}
+     * threads. The result of each cell is appended to a tab-separated file as soon as the cell is finished, so that
+     * an interrupted run is still useful; the R script is written once all cells are finished.
      * @throws LiricalException upon I/O problems with the annotations
      */
     public void gridsearch() throws LiricalException {
-
-        int[] termnumber = {1,2,3,4,5,6,7,8,9,10};
-        int[] randomtermnumber = {0,1,2,3,4};
-        String outfilename=String.format("grid_%d_cases_%s.R",
+        File outfile=new File(outdir, String.format("grid_%d_cases_%s.R",
+                n_cases_to_simulate_per_run,
+                useImprecision?"imprecise":"precise"
+                ));
+        File cellfile=new File(outdir, String.format("grid_%d_cases_%s.tsv",
                 n_cases_to_simulate_per_run,
                 useImprecision?"imprecise":"precise"
-                );
-        double[][] Z;
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outfilename))) {
-            Z = new double[termnumber.length][randomtermnumber.length];
-            PhenotypeOnlyHpoCaseSimulator simulator;
-            for (int i = 0; i < termnumber.length; i++) {
-                for (int j = 0; j < randomtermnumber.length; j++) {
-                    simulator = new PhenotypeOnlyHpoCaseSimulator( ontology,diseaseMap,n_cases_to_simulate_per_run, termnumber[i], randomtermnumber[j], useImprecision);
-                    simulator.setVerbosity(false); // reduce output!
+        ));
+        PhenotypeOnlyHpoCaseSimulator model = new PhenotypeOnlyHpoCaseSimulator.Builder(ontology, diseaseMap)
+                .cases(n_cases_to_simulate_per_run)
+                .imprecise(useImprecision)
+                .phenotypeLr(new PhenotypeLikelihoodRatio(ontology, diseaseMap))
+                .build();
+        model.setVerbosity(false); // reduce output!
+        double[][] Z = new double[termnumber.length][randomtermnumber.length];
+        // the seeds of the cells are drawn in the order of the grid so that they do not depend on the order of execution
+        SplittableRandom master = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CompletionService<int[]> completionService = new ExecutorCompletionService<>(executor);
+        for (int i = 0; i < termnumber.length; i++) {
+            for (int j = 0; j < randomtermnumber.length; j++) {
+                PhenotypeOnlyHpoCaseSimulator simulator = model.withTermCounts(termnumber[i], randomtermnumber[j], master.nextLong());
+                int[] cell = {i, j};
+                completionService.submit(() -> {
                     simulator.simulateCases();
-                    Z[i][j] = simulator.getProportionAtRank1();
-                    System.out.println(String.format("terms: %d; noise terms: %d; percentage at rank 1: %.2f\n",
-                            termnumber[i],
-                            randomtermnumber[j],
-                            100.00 * Z[i][j]));
-                }
+                    Z[cell[0]][cell[1]] = simulator.getProportionAtRank1();
+                    return cell;
+                });
             }
+        }
+        executor.shutdown();
+        try (BufferedWriter cellwriter = new BufferedWriter(new FileWriter(cellfile))) {
+            cellwriter.write("terms\tnoise.terms\tcases\tproportion.rank1\n");
+            cellwriter.flush();
+            int n_cells = termnumber.length * randomtermnumber.length;
+            for (int k = 0; k < n_cells; k++) {
+                int[] cell = completionService.take().get();
+                int i = cell[0];
+                int j = cell[1];
+                cellwriter.write(String.format("%d\t%d\t%d\t%f\n", termnumber[i], randomtermnumber[j], n_cases_to_simulate_per_run, Z[i][j]));
+                cellwriter.flush();
+                logger.info(String.format("terms: %d; noise terms: %d; percentage at rank 1: %.2f (%d of %d cells)",
+                        termnumber[i],
+                        randomtermnumber[j],
+                        100.00 * Z[i][j],
+                        k + 1,
+                        n_cells));
+            }
+        } catch (IOException e) {
+            executor.shutdownNow();
+            throw new LiricalException("I/O error: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            throw new LiricalException("Grid search was interrupted");
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            throw new LiricalException("Could not simulate grid cell: " + e.getCause().getMessage());
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(outfile))) {
             // output a file that we will input as an R data frame.
             // see the read-the-docs documentation for how to create a graphic in R with this
             writer.write("library(plot3D)\n");
@@ -92,15 +153,85 @@ public class GridSearch  {
             }
             String valuestring=values.stream().map(String::valueOf).collect(Collectors.joining(","));
             writer.write("c(" + valuestring +"),\n");
-            writer.write("nrow=5,\nncol=10,\nbyrow=TRUE)\n");
+            writer.write(String.format("nrow=%d,\nncol=%d,\nbyrow=TRUE)\n", randomtermnumber.length, termnumber.length));
             //writer.write("hist3D(z = mat, scale = FALSE, expand = 0.5, bty = \"g\", phi = 20,\n" +
             //        "      col = \"#0072B2\", border = \"black\", shade = 0.2, ltheta = 99,\n" +
             //       "      space = 0.3, ticktype = \"detailed\", d = 2)");
-            writer.write("hist3D(x=seq(0,4),y=seq(1,10),z = mat, scale = FALSE, expand = 3, bty = \"g\", phi = 15, border = \"black\", shade = 0.2,\n"+
+            writer.write(String.format("hist3D(x=c(%s),y=c(%s),z = mat, scale = FALSE, expand = 3, bty = \"g\", phi = 15, border = \"black\", shade = 0.2,\n",
+                    join(randomtermnumber), join(termnumber)) +
                     "ltheta = 50, theta = 40, space = 0.3, ticktype = \"detailed\", d = 50)");
         } catch (IOException e) {
             throw new LiricalException("I/O error: " + e.getMessage());
         }
 
     }
+
+    private static String join(int[] values) {
+        return Arrays.stream(values).mapToObj(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    /**
+     * A convenience Builder class for creating {@link GridSearch} objects.
+     */
+    public static class Builder {
+        private final Ontology ontology;
+        private final Map<TermId, HpoDisease> diseaseMap;
+        private int n_cases = 100;
+        private boolean imprecision = false;
+        private int[] termnumber = {1,2,3,4,5,6,7,8,9,10};
+        private int[] randomtermnumber = {0,1,2,3,4};
+        private int threads = 1;
+        private Long seed = null;
+        private String outdir = null;
+
+        public Builder(Ontology ontology, Map<TermId, HpoDisease> diseaseMap) {
+            this.ontology = ontology;
+            this.diseaseMap = diseaseMap;
+        }
+
+        public Builder cases(int n) {
+            this.n_cases = n;
+            return this;
+        }
+
+        public Builder imprecision(boolean imprecision) {
+            this.imprecision = imprecision;
+            return this;
+        }
+
+        /** @param terms numbers of HPO terms per case (default: 1 to 10) */
+        public Builder termCounts(int[] terms) {
+            this.termnumber = terms.clone();
+            return this;
+        }
+
+        /** @param noiseTerms numbers of noise terms per case (default: 0 to 4) */
+        public Builder noiseTermCounts(int[] noiseTerms) {
+            this.randomtermnumber = noiseTerms.clone();
+            return this;
+        }
+
+        public Builder threads(int n) {
+            this.threads = n;
+            return this;
+        }
+
+        public Builder seed(Long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /** @param outdir directory of the output files (default: the working directory) */
+        public Builder outdir(String outdir) {
+            this.outdir = outdir;
+            return this;
+        }
+
+        public GridSearch build() {
+            if (termnumber.length == 0 || randomtermnumber.length == 0) {
+                throw new LiricalRuntimeException("The grid needs at least one number of terms and one number of noise terms");
+            }
+            return new GridSearch(this);
+        }
+    }
 }
@@ -32,8 +32,6 @@ import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
-import static org.monarchinitiative.phenol.annotations.formats.hpo.HpoSubOntologyRootTermIds.PHENOTYPIC_ABNORMALITY;
-import static org.monarchinitiative.phenol.ontology.algo.OntologyAlgorithm.getDescendents;
 
 public class PhenoGenoCaseSimulator {
     private static final Logger logger = LoggerFactory.getLogger(PhenoGenoCaseSimulator.class);
@@ -80,8 +78,8 @@ public class PhenoGenoCaseSimulator {
     private double posttest_probability;
     /** If true, replace the HPO terms with random terms (both the observed and the included). */
     private final boolean randomize;
-    /** A list of all HPO term ids in the Phenotypic abnormality subontology. */
-    private final ImmutableList<TermId> phenotypeterms;
+    /** The disease model and likelihood ratio calculators (shared by all simulated cases). */
+    private final SimulationModel model;
 
 
     /**
@@ -92,6 +90,19 @@ public class PhenoGenoCaseSimulator {
      * @param rand if true, randomize the HPO terms in the phenopacket
      */
     public PhenoGenoCaseSimulator(File phenopacket, String vcfpath, LiricalFactory factory, boolean rand) {
+        this(new Builder(phenopacket, factory)
+                .templateVcf(vcfpath)
+                .randomize(rand));
+    }
+
+    private PhenoGenoCaseSimulator(Builder builder) {
+        File phenopacket = builder.phenopacket;
+        LiricalFactory factory = builder.factory;
+        AnnotatedTemplateVcf template = builder.annotatedTemplate;
+        String vcfpath = template != null ? template.getTemplateVcfPath() : builder.templateVcfPath;
+        boolean rand = builder.randomize;
+        boolean bgzip = builder.bgzip;
+        this.model = builder.model != null ? builder.model : SimulationModel.of(factory);
         phenopacketFile = phenopacket;
         templateVcfPath = vcfpath;
         this.metadata = new HashMap<>();
@@ -106,43 +117,43 @@ public class PhenoGenoCaseSimulator {
 
         this.randomize = rand;
         if (randomize) {
-            Set<TermId> descendents=getDescendents(factory.hpoOntology(), PHENOTYPIC_ABNORMALITY);
+            SplittableRandom random = new SplittableRandom();
             ImmutableList.Builder<TermId> termbuilder = new ImmutableList.Builder<>();
-            for (TermId t: descendents) {
-                termbuilder.add(t);
-            }
-            this.phenotypeterms=termbuilder.build();
-            ImmutableList.Builder<TermId> builder = new ImmutableList.Builder<>();
             for (int i=0;i<importer.getHpoTerms().size();i++) {
-                builder.add(getRandomPhenotypeTerm());
+                termbuilder.add(model.randomPhenotypeTerm(random));
             }
-            this.hpoIdList = builder.build();
-            builder = new ImmutableList.Builder<>();
+            this.hpoIdList = termbuilder.build();
+            termbuilder = new ImmutableList.Builder<>();
             for (int i=0;i<importer.getNegatedHpoTerms().size();i++) {
-                builder.add(getRandomPhenotypeTerm());
+                termbuilder.add(model.randomPhenotypeTerm(random));
             }
-            negatedHpoIdList = builder.build();
+            negatedHpoIdList = termbuilder.build();
         } else {
-            this.phenotypeterms = ImmutableList.of(); // not needed
             hpoIdList = importer.getHpoTerms();
             negatedHpoIdList = importer.getNegatedHpoTerms();
         }
 
-        VcfSimulator vcfSimulator = new VcfSimulator(Paths.get(this.templateVcfPath));
-        HtsFile simulatedVcf;
-        try {
-            simulatedVcf = vcfSimulator.simulateVcf(importer.getSamplename(), importer.getVariantList(), genomeAssembly.toString());
-            //pp = pp.toBuilder().clearHtsFiles().addHtsFiles(htsFile).build();
-        } catch (IOException e) {
-            throw new LiricalRuntimeException("Could not simulate VCF for phenopacket");
+        String vcfPath;
+        if (template != null) {
+            vcfPath = this.templateVcfPath;
+            this.genotypemap = template.genotypeMapWith(importer.getSamplename(), importer.getVariantList(), genomeAssembly.toString());
+        } else {
+            VcfSimulator vcfSimulator = new VcfSimulator(Paths.get(this.templateVcfPath), bgzip);
+            HtsFile simulatedVcf;
+            try {
+                simulatedVcf = vcfSimulator.simulateVcf(importer.getSamplename(), importer.getVariantList(), genomeAssembly.toString());
+                //pp = pp.toBuilder().clearHtsFiles().addHtsFiles(htsFile).build();
+            } catch (IOException e) {
+                throw new LiricalRuntimeException("Could not simulate VCF for phenopacket");
+            }
+            vcfPath = simulatedVcf.getUri();//File().getPath();
+            this.genotypemap = factory.getGene2GenotypeMap(vcfPath);
         }
-        String vcfPath = simulatedVcf.getUri();//File().getPath();
         this.metadata.put("vcf_file", vcfPath);
-        this.genotypemap = factory.getGene2GenotypeMap(vcfPath);
-        this.ontology = factory.hpoOntology();
-        this.diseaseMap = factory.diseaseMap(ontology);
-        this.disease2geneMultimap = factory.disease2geneMultimap();
-        this.gene2diseaseMultimap = factory.gene2diseaseMultimap();
+        this.ontology = model.getOntology();
+        this.diseaseMap = model.getDiseaseMap();
+        this.disease2geneMultimap = model.getDisease2geneMultimap();
+        this.gene2diseaseMultimap = model.getGene2diseaseMultimap();
 
         DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd");
         Date date = new Date();
@@ -163,37 +174,25 @@ public class PhenoGenoCaseSimulator {
        this.metadata.put("phenopacket.diagnosisLabel", simulatedDiagnosis.getTerm().getLabel());
     }
 
-    /**
-     * This is a term that was observed in the simulated patient (note that it should not be a HpoTermId, which
-     * contains metadata about the term in a disease entity, such as overall frequency. Instead, we are simulating an
-     * individual patient and this is a definite observation.
-     * @return a random term from the phenotype subontology.
-     */
-    private TermId getRandomPhenotypeTerm() {
-        int n=phenotypeterms.size();
-        int r = (int)Math.floor(n*Math.random());
-        return phenotypeterms.get(r);
-    }
-
-
     /**
      * This method coordinates
      */
     public void run()  {
 
 
-        GenotypeLikelihoodRatio genoLr = factory.getGenotypeLR();
-        PhenotypeLikelihoodRatio phenoLr =  new PhenotypeLikelihoodRatio(ontology, diseaseMap);
+        GenotypeLikelihoodRatio genoLr = model.getGenotypeLr();
+        PhenotypeLikelihoodRatio phenoLr = model.getPhenotypeLr();
 
 
         CaseEvaluator.Builder caseBuilder = new CaseEvaluator.Builder(hpoIdList)
-                .ontology(factory.hpoOntology())
+                .ontology(ontology)
                 .negated(negatedHpoIdList)
                 .diseaseMap(diseaseMap)
                 .disease2geneMultimap(disease2geneMultimap)
                 .genotypeMap(genotypemap)
                 .phenotypeLr(phenoLr)
                 .gene2idMap(factory.geneId2symbolMap())
+                .geneIndex(factory.geneIndex())
                 .global(factory.global())
                 .genotypeLr(genoLr);
 
@@ -294,6 +293,65 @@ public class PhenoGenoCaseSimulator {
                 posttest_probability);
     }
 
+    /**
+     * A convenience Builder class for creating {@link PhenoGenoCaseSimulator} objects.
+     */
+    public static class Builder {
+        private final File phenopacket;
+        private final LiricalFactory factory;
+        private String templateVcfPath = null;
+        private AnnotatedTemplateVcf annotatedTemplate = null;
+        private boolean randomize = false;
+        private boolean bgzip = false;
+        private SimulationModel model = null;
+
+        /**
+         * @param phenopacket A GA4GH Phenopacket with information about a case
+         * @param factory {@link LiricalFactory} object
+         */
+        public Builder(File phenopacket, LiricalFactory factory) {
+            this.phenopacket = phenopacket;
+            this.factory = factory;
+        }
 
+        /** @param path Path to a (sorted) template VCF file we will add a mutation to */
+        public Builder templateVcf(String path) {
+            this.templateVcfPath = path;
+            return this;
+        }
+
+        /**
+         * Use a template VCF file that was annotated before. Only the variants of the phenopacket are annotated, and
+         * they are added to the genotypes of the template without writing the complete simulated VCF file.
+         */
+        public Builder annotatedTemplate(AnnotatedTemplateVcf template) {
+            this.annotatedTemplate = template;
+            return this;
+        }
+
+        /** @param rand if true, randomize the HPO terms in the phenopacket */
+        public Builder randomize(boolean rand) {
+            this.randomize = rand;
+            return this;
+        }
+
+        /** @param b if true, the simulated VCF file is written with bgzip compression */
+        public Builder bgzip(boolean b) {
+            this.bgzip = b;
+            return this;
+        }
+
+        /** @param m the model shared by all simulated cases (by default, a new model is prepared for this case) */
+        public Builder model(SimulationModel m) {
+            this.model = m;
+            return this;
+        }
 
+        public PhenoGenoCaseSimulator build() {
+            if (templateVcfPath == null && annotatedTemplate == null) {
+                throw new LiricalRuntimeException("A template VCF file is required to simulate a case");
+            }
+            return new PhenoGenoCaseSimulator(this);
+        }
+    }
 }
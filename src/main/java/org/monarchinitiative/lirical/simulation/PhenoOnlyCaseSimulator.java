@@ -34,6 +34,8 @@ public class PhenoOnlyCaseSimulator {
     private final Ontology ontology;
 
     private final Map<TermId, HpoDisease> diseaseMap;
+    /** The disease model and likelihood ratio calculator (shared by all simulated cases). */
+    private final SimulationModel model;
 
     private final List<TermId> hpoIdList;
     // List of excluded HPO terms in the subject.
@@ -49,7 +51,17 @@ public class PhenoOnlyCaseSimulator {
 
 
     public PhenoOnlyCaseSimulator(File phenopacket, LiricalFactory factory) {
+        this(phenopacket, factory, SimulationModel.phenotypeOnly(factory));
+    }
+
+    /**
+     * @param phenopacket A GA4GH Phenopacket with information about a case
+     * @param factory {@link LiricalFactory} object
+     * @param model the model shared by all simulated cases
+     */
+    public PhenoOnlyCaseSimulator(File phenopacket, LiricalFactory factory, SimulationModel model) {
         phenopacketFile = phenopacket;
+        this.model = model;
         this.metadata = new HashMap<>();
         this.factory = factory;
         String phenopacketAbsolutePath = phenopacketFile.getAbsolutePath();
@@ -60,8 +72,8 @@ public class PhenoOnlyCaseSimulator {
         this.simulatedDiseaseId = TermId.of(disId);
         hpoIdList = importer.getHpoTerms();
         negatedHpoIdList = importer.getNegatedHpoTerms();
-        this.ontology = factory.hpoOntology();
-        this.diseaseMap = factory.diseaseMap(ontology);
+        this.ontology = model.getOntology();
+        this.diseaseMap = model.getDiseaseMap();
         DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd");
         Date date = new Date();
         this.metadata.put("analysis_date", dateFormat.format(date));
@@ -75,7 +87,7 @@ public class PhenoOnlyCaseSimulator {
 
 
     public void run(){
-        PhenotypeLikelihoodRatio phenoLr =  new PhenotypeLikelihoodRatio(ontology, diseaseMap);
+        PhenotypeLikelihoodRatio phenoLr = model.getPhenotypeLr();
         CaseEvaluator.Builder caseBuilder = new CaseEvaluator.Builder(hpoIdList)
                 .ontology(ontology)
                 .negated(negatedHpoIdList)
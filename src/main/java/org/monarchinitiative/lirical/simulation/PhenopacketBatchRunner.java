@@ -0,0 +1,183 @@
+package org.monarchinitiative.lirical.simulation;
+
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Runs a task (e.g., the simulation of a case) for each phenopacket of a batch with a pool of worker threads. At most
+ * {@code workers + queueCapacity} phenopackets are in progress or waiting to be emitted at any time, which bounds the
+ * memory used for the genotype data of the cases. The results are passed to a consumer on the calling thread, either
+ * in the order of the phenopackets or as soon as they are available, so the consumer (e.g., the rank histograms and
+ * the output files) does not need to be thread-safe. An exception thrown by the task of one phenopacket is logged and
+ * counted, and does not stop the other phenopackets.
+ * @param <R> type of the result of a task
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public class PhenopacketBatchRunner<R> {
+    private static final Logger logger = LoggerFactory.getLogger(PhenopacketBatchRunner.class);
+    /** Number of worker threads. If this is 1, the tasks are run on the calling thread. */
+    private final int workers;
+    /** Maximum number of results that have been computed but not yet emitted (in addition to the running tasks). */
+    private final int queueCapacity;
+    /** If true, the results are emitted in the order of the phenopackets, otherwise in the order of completion. */
+    private final boolean ordered;
+    /** The phenopackets whose task failed, with the cause. */
+    private final Map<File, Throwable> failures = new LinkedHashMap<>();
+
+    private PhenopacketBatchRunner(Builder builder) {
+        this.workers = Math.max(1, builder.workers);
+        this.queueCapacity = builder.queueCapacity >= 0 ? builder.queueCapacity : this.workers;
+        this.ordered = builder.ordered;
+    }
+
+    /**
+     * Run the task for each phenopacket.
+     * @param phenopackets the phenopacket files
+     * @param task computes the result of one phenopacket (called on the worker threads)
+     * @param consumer receives the phenopacket and its result (called on the calling thread)
+     * @return number of phenopackets whose task failed
+     */
+    public int run(List<File> phenopackets, Function<File, R> task, BiConsumer<File, R> consumer) {
+        failures.clear();
+        if (workers == 1) {
+            for (File phenopacket : phenopackets) {
+                try {
+                    consumer.accept(phenopacket, task.apply(phenopacket));
+                } catch (RuntimeException e) {
+                    fail(phenopacket, e);
+                }
+            }
+        } else if (ordered) {
+            runOrdered(phenopackets, task, consumer);
+        } else {
+            runUnordered(phenopackets, task, consumer);
+        }
+        logger.info("Processed {} phenopackets with {} workers ({} errors)", phenopackets.size(), workers, failures.size());
+        return failures.size();
+    }
+
+    /** @return the phenopackets whose task failed in the last run, with the cause, in the order of failure. */
+    public Map<File, Throwable> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    private void runOrdered(List<File> phenopackets, Function<File, R> task, BiConsumer<File, R> consumer) {
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        Deque<Map.Entry<File, Future<R>>> pending = new ArrayDeque<>();
+        try {
+            for (File phenopacket : phenopackets) {
+                pending.addLast(new AbstractMap.SimpleImmutableEntry<>(phenopacket, executor.submit(() -> task.apply(phenopacket))));
+                if (pending.size() >= workers + queueCapacity) {
+                    emit(pending.removeFirst(), consumer);
+                }
+            }
+            while (!pending.isEmpty()) {
+                emit(pending.removeFirst(), consumer);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void runUnordered(List<File> phenopackets, Function<File, R> task, BiConsumer<File, R> consumer) {
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        CompletionService<Map.Entry<File, Future<R>>> completionService = new ExecutorCompletionService<>(executor);
+        int inProgress = 0;
+        try {
+            for (File phenopacket : phenopackets) {
+                completionService.submit(() -> {
+                    // the task is wrapped so that the phenopacket of a failed task is known
+                    CompletableFuture<R> result = new CompletableFuture<>();
+                    try {
+                        result.complete(task.apply(phenopacket));
+                    } catch (RuntimeException e) {
+                        result.completeExceptionally(e);
+                    }
+                    return new AbstractMap.SimpleImmutableEntry<>(phenopacket, result);
+                });
+                if (++inProgress >= workers + queueCapacity) {
+                    emit(take(completionService), consumer);
+                    inProgress--;
+                }
+            }
+            while (inProgress-- > 0) {
+                emit(take(completionService), consumer);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T take(CompletionService<T> completionService) {
+        try {
+            return completionService.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LiricalRuntimeException("Interrupted while processing phenopackets");
+        } catch (ExecutionException e) {
+            throw new LiricalRuntimeException("Could not process phenopacket: " + e.getCause()); // should never happen
+        }
+    }
+
+    private void emit(Map.Entry<File, Future<R>> entry, BiConsumer<File, R> consumer) {
+        File phenopacket = entry.getKey();
+        R result;
+        try {
+            result = entry.getValue().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LiricalRuntimeException("Interrupted while processing phenopacket " + phenopacket);
+        } catch (ExecutionException e) {
+            fail(phenopacket, e.getCause());
+            return;
+        }
+        try {
+            consumer.accept(phenopacket, result);
+        } catch (RuntimeException e) {
+            fail(phenopacket, e);
+        }
+    }
+
+    private void fail(File phenopacket, Throwable cause) {
+        logger.error("Could not process phenopacket {}", phenopacket.getAbsolutePath(), cause);
+        failures.put(phenopacket, cause);
+    }
+
+    /**
+     * A convenience Builder class for creating {@link PhenopacketBatchRunner} objects.
+     */
+    public static class Builder {
+        private int workers = 1;
+        private int queueCapacity = -1;
+        private boolean ordered = true;
+
+        /** @param n number of worker threads (default: 1, i.e., the phenopackets are processed sequentially) */
+        public Builder workers(int n) {
+            this.workers = n;
+            return this;
+        }
+
+        /** @param n maximum number of results waiting to be emitted (default: number of workers) */
+        public Builder queueCapacity(int n) {
+            this.queueCapacity = n;
+            return this;
+        }
+
+        /** @param b if true (default), emit the results in the order of the phenopackets */
+        public Builder ordered(boolean b) {
+            this.ordered = b;
+            return this;
+        }
+
+        public <R> PhenopacketBatchRunner<R> build() {
+            return new PhenopacketBatchRunner<>(this);
+        }
+    }
+}
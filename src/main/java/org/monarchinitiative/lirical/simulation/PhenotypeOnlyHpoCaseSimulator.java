@@ -15,13 +15,17 @@ import org.slf4j.LoggerFactory;
 
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.monarchinitiative.phenol.ontology.algo.OntologyAlgorithm.getDescendents;
-import static org.monarchinitiative.phenol.ontology.algo.OntologyAlgorithm.getParentTerms;
 
 /**
  * A simulator that simulates cases from the {@link HpoDisease} objects by choosing a subset of terms
- * and adding noise terms.
+ * and adding noise terms. The cases can be simulated by several threads that share one
+ * {@link PhenotypeLikelihoodRatio}. Each case draws its random numbers from its own generator, which is split off
+ * a master generator in the order of the cases; if a seed is given, the results are therefore the same for any
+ * number of threads. For the same reason, a simulation with a seed can be split into shards (see
+ * {@link SimulationShard}) that draw the same generators but only simulate their own cases.
  * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
  */
 public class PhenotypeOnlyHpoCaseSimulator {
@@ -30,8 +34,8 @@ public class PhenotypeOnlyHpoCaseSimulator {
     private Ontology ontology;
     /** An object that calculates the foreground frequency of an HPO term in a disease as well as the background frequency */
     private final PhenotypeLikelihoodRatio phenotypeLrEvaluator;
-    /** A list of all HPO term ids in the Phenotypic abnormality subontology. */
-    private final ImmutableList<TermId> phenotypeterms;
+    /** The HPO terms in the Phenotypic abnormality subontology, with their parents (only the parents are kept). */
+    private final TermNeighbourhood neighbourhood;
     /** Key: diseaseID, e.g., OMIM:600321; value: Corresponding HPO disease object. */
     private final Map<TermId, HpoDisease> diseaseMap;
     /** Number of HPO terms to use for each simulated case. */
@@ -40,11 +44,19 @@ public class PhenotypeOnlyHpoCaseSimulator {
     private final int n_noise_terms;
     /** Number of cases to simulate. */
     private final int n_cases_to_simulate;
+    /** Seed of the master random number generator (null: a different seed for each run). */
+    private final Long seed;
+    /** Number of threads that simulate and evaluate the cases. */
+    private final int threads;
+    /** The cases simulated by this simulator (all cases unless the simulation is split). */
+    private final SimulationShard shard;
     /** If true, we exchange each of the non-noise terms with a direct parent except if that would mean going to
      * the root of the phenotype ontology.*/
     private boolean addTermImprecision = false;
     /** The proportion of cases at rank 1 in the current simulation */
     private double proportionAtRank1=0.0;
+    /** Key: a rank; value: number of simulated cases in which the disease had this rank (current simulation). */
+    private SortedMap<Integer,Integer> rankCounts = new TreeMap<>();
     /** This array will hold the TermIds from the disease map in order -- this will allow us to
      * get random indices for the simulations. */
     private TermId[] termIndices;
@@ -54,7 +66,7 @@ public class PhenotypeOnlyHpoCaseSimulator {
     private final static TermId PHENOTYPIC_ABNORMALITY = TermId.of("HP:0000118");
 
     /**
-     * The constructor initializes {@link #ontology} and {@link #diseaseMap} and {@link #phenotypeterms}. This
+     * The constructor initializes {@link #ontology} and {@link #diseaseMap} and {@link #neighbourhood}. This
      * constructor sets "imprecision" to false.
      * @param ontology reference to HPO Ontology object
      * @param diseaseMap Map containing (usuallu) all diseases in the corpus
@@ -67,19 +79,54 @@ public class PhenotypeOnlyHpoCaseSimulator {
                                          int cases_to_simulate,
                                          int terms_per_case,
                                          int noise_terms ) {
-        this.n_cases_to_simulate=cases_to_simulate;
+        this(new Builder(ontology, diseaseMap)
+                .cases(cases_to_simulate)
+                .termsPerCase(terms_per_case)
+                .noiseTerms(noise_terms));
+    }
+
+    private PhenotypeOnlyHpoCaseSimulator(Builder builder) {
+        this.n_cases_to_simulate=builder.n_cases;
+        this.n_terms_per_case=builder.n_terms_per_case;
+        this.n_noise_terms=builder.n_noise_terms;
+        this.addTermImprecision=builder.imprecise;
+        this.seed=builder.seed;
+        this.threads=Math.max(1, builder.threads);
+        this.shard=builder.shard;
+        this.ontology=builder.ontology;
+        this.diseaseMap=builder.diseaseMap;
+        this.phenotypeLrEvaluator = builder.phenotypeLr != null ? builder.phenotypeLr : new PhenotypeLikelihoodRatio(ontology,diseaseMap);
+        this.neighbourhood = TermNeighbourhood.of(ontology, PHENOTYPIC_ABNORMALITY);
+        this.termIndices=diseaseMap.keySet().toArray(new TermId[0]);
+    }
+
+    /** Copy the prepared data of another simulator, but simulate cases with other numbers of terms. */
+    private PhenotypeOnlyHpoCaseSimulator(PhenotypeOnlyHpoCaseSimulator other, int terms_per_case, int noise_terms, Long seed) {
+        this.n_cases_to_simulate=other.n_cases_to_simulate;
         this.n_terms_per_case=terms_per_case;
         this.n_noise_terms=noise_terms;
-        this.ontology=ontology;
-        this.diseaseMap=diseaseMap;
-        this.phenotypeLrEvaluator = new PhenotypeLikelihoodRatio(ontology,diseaseMap);
-        Set<TermId> descendents=getDescendents(ontology,PHENOTYPIC_ABNORMALITY);
-        ImmutableList.Builder<TermId> builder = new ImmutableList.Builder<>();
-        for (TermId t: descendents) {
-            builder.add(t);
-        }
-        this.phenotypeterms=builder.build();
-        this.termIndices=diseaseMap.keySet().toArray(new TermId[0]);
+        this.addTermImprecision=other.addTermImprecision;
+        this.seed=seed;
+        this.threads=other.threads;
+        this.shard=other.shard;
+        this.ontology=other.ontology;
+        this.diseaseMap=other.diseaseMap;
+        this.phenotypeLrEvaluator=other.phenotypeLrEvaluator;
+        this.neighbourhood=other.neighbourhood;
+        this.termIndices=other.termIndices;
+        this.verbose=other.verbose;
+    }
+
+    /**
+     * Create a simulator that shares the likelihood ratio model and the other prepared data with this simulator,
+     * but simulates cases with other numbers of terms. This is much faster than building a new simulator.
+     * @param terms_per_case Number of HPO terms per case
+     * @param noise_terms Number of "noise" (random, unrelated) terms to add per case
+     * @param seed seed of the random number generator of the new simulator (null: a different seed for each run)
+     * @return the new simulator
+     */
+    public PhenotypeOnlyHpoCaseSimulator withTermCounts(int terms_per_case, int noise_terms, Long seed) {
+        return new PhenotypeOnlyHpoCaseSimulator(this, terms_per_case, noise_terms, seed);
     }
 
     /**
@@ -96,19 +143,27 @@ public class PhenotypeOnlyHpoCaseSimulator {
                                          int terms_per_case,
                                          int noise_terms,
                                          boolean imprecise ) {
-        this(ontology,diseaseMap,cases_to_simulate,terms_per_case,noise_terms);
-        this.addTermImprecision=imprecise;
+        this(new Builder(ontology, diseaseMap)
+                .cases(cases_to_simulate)
+                .termsPerCase(terms_per_case)
+                .noiseTerms(noise_terms)
+                .imprecise(imprecise));
     }
 
 
     public void setVerbosity(boolean v) { this.verbose=v;}
 
+    /** @return key: a rank; value: number of simulated cases at this rank (cases that could not be ranked are not counted). */
+    public SortedMap<Integer, Integer> getRankCounts() {
+        return Collections.unmodifiableSortedMap(rankCounts);
+    }
+
     /** @return the proportion of all simulated cases at rank 1.*/
     public double getProportionAtRank1() {
         return proportionAtRank1;
     }
 
-    private TermId getNextRandomDisease(Random r) {
+    private TermId getNextRandomDisease(SplittableRandom r) {
         int i = r.nextInt(diseaseMap.size());
         TermId tid = termIndices[i];
         HpoDisease disease = diseaseMap.get(tid);
@@ -123,60 +178,85 @@ public class PhenotypeOnlyHpoCaseSimulator {
 
 
     /** This will run simulations according to the parameters {@link #n_cases_to_simulate},
-     * {@link #n_terms_per_case} and {@link #n_noise_terms}.
-     * @throws LiricalException if there is an issue running the simulation
+     * {@link #n_terms_per_case} and {@link #n_noise_terms} with {@link #threads} threads. Only the cases of
+     * {@link #shard} are simulated.
+     * @throws LiricalException if there is an issue running the simulation, or if the simulation is split into shards
+     * without a seed
      */
     public void simulateCases() throws LiricalException {
-        int c=0;
-        Map<Integer,Integer> ranks=new HashMap<>();
-        List<TermId> notRanked = new ArrayList<>();
+        if (shard.isPartial() && seed == null) {
+            // the shards would draw different cases
+            throw new LiricalException("A seed is required to split the simulation into shards");
+        }
+        ConcurrentMap<Integer,Integer> ranks=new ConcurrentHashMap<>();
+        AtomicInteger notRanked = new AtomicInteger();
         logger.trace(String.format("Simulating n=%d HPO cases with %d random terms and %d noise terms per case.",n_cases_to_simulate,n_terms_per_case,n_noise_terms));
-        int size = diseaseMap.size();
-
-        //int[] randomIndices=IntStream.generate(() -> new Random().nextInt(diseaseMap.size())).limit(n_cases_to_simulate).toArray();
-
-        Random r = new Random();
-
+        SplittableRandom master = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
         for (int i=0;i<n_cases_to_simulate;++i) {
-            TermId diseaseToSimulate = getNextRandomDisease(r);//termIndices[randomIndices[i]];
-            HpoDisease disease = diseaseMap.get(diseaseToSimulate);
-            //logger.trace("Simulating disease "+diseasename);
-            if (disease.getNumberOfPhenotypeAnnotations() <this.n_terms_per_case) {
-                logger.trace(String.format("Skipping disease %s [%s] because it has no phenotypic annotations",
-                        disease.getName(),
-                        disease.getDiseaseDatabaseId()));
+            // split in the order of the cases so that each case gets the same generator for any number of threads
+            // and in any shard
+            SplittableRandom random = master.split();
+            if (!shard.contains(i)) {
                 continue;
             }
-            Optional<Integer> optionalRank = simulateCase(disease);
-            if (optionalRank.isPresent()) {
-                int rank = optionalRank.get();
-                if (verbose) {
-                    System.err.println(String.format("%s: rank=%d", disease.getName(), rank));
+            futures.add(executor.submit(() -> {
+                Optional<Integer> optionalRank = simulateRandomCase(random);
+                if (optionalRank.isPresent()) {
+                    ranks.merge(optionalRank.get(), 1, Integer::sum);
+                } else {
+                    notRanked.incrementAndGet();
                 }
-                ranks.putIfAbsent(rank,0);
-                ranks.put(rank, ranks.get(rank) + 1);
-            } else {
-                notRanked.add(diseaseToSimulate);
+                return null;
+            }));
+        }
+        executor.shutdown();
+        try {
+            for (Future<?> future : futures) {
+                future.get();
             }
-
-
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            throw new LiricalException("Interrupted while simulating cases");
+        } catch (ExecutionException e) {
+            executor.shutdownNow();
+            if (e.getCause() instanceof LiricalException) {
+                throw (LiricalException) e.getCause();
+            }
+            throw new LiricalException("Could not simulate case: " + e.getCause().getMessage());
         }
+        rankCounts = new TreeMap<>(ranks);
+        int n_simulated = futures.size();
         if (ranks.containsKey(1)) {
-            proportionAtRank1 = ranks.get(1) / (double) n_cases_to_simulate;
+            proportionAtRank1 = ranks.get(1) / (double) n_simulated;
         } else {
             proportionAtRank1 = 0.0;
         }
         if (verbose) {
-            dump2shell(ranks);
-            System.out.println("Could not rank " + notRanked.size() + " diseases");
+            dump2shell(rankCounts, n_simulated);
+            System.out.println("Could not rank " + notRanked.get() + " diseases");
         }
+    }
 
-
+    /**
+     * Choose a random disease, simulate a case and evaluate it.
+     * @param random the random number generator of this case
+     * @return the rank of the disease, or empty if the disease could not be ranked
+     */
+    private Optional<Integer> simulateRandomCase(SplittableRandom random) throws LiricalException {
+        TermId diseaseToSimulate = getNextRandomDisease(random);
+        HpoDisease disease = diseaseMap.get(diseaseToSimulate);
+        Optional<Integer> optionalRank = simulateCase(disease, random);
+        if (verbose && optionalRank.isPresent()) {
+            System.err.println(String.format("%s: rank=%d", disease.getName(), optionalRank.get()));
+        }
+        return optionalRank;
     }
 
 
-    private void dump2shell(Map<Integer,Integer> ranks) {
-        int N=n_cases_to_simulate;
+    private void dump2shell(Map<Integer,Integer> ranks, int N) {
         int rank11_20=0;
         int rank21_30=0;
         int rank31_100=0;
@@ -184,7 +264,7 @@ public class PhenotypeOnlyHpoCaseSimulator {
         System.out.println();
         System.out.println();
         System.out.println(String.format("Simulation of %d cases with %d HPO terms, %d noise terms. Imprecision: %s",
-                n_cases_to_simulate,n_terms_per_case,n_noise_terms,addTermImprecision));
+                N,n_terms_per_case,n_noise_terms,addTermImprecision));
         for (int r:ranks.keySet()) {
             if (r==1) {
                 proportionAtRank1=ranks.get(r) / (double)N;
@@ -216,30 +296,20 @@ public class PhenotypeOnlyHpoCaseSimulator {
      * individual patient and this is a definite observation.
      * @return a random term from the phenotype subontology.
      */
-    private TermId getRandomPhenotypeTerm() {
-        int n=phenotypeterms.size();
-        int r = (int)Math.floor(n*Math.random());
-        return phenotypeterms.get(r);
+    private TermId getRandomPhenotypeTerm(SplittableRandom random) {
+        return neighbourhood.randomTerm(random);
     }
 
-    /** @return a random parent of term tid. */
-    private TermId getRandomParentTerm(TermId tid) {
-        Set<TermId> parents = getParentTerms(ontology,tid,false);
-        int r = (int)Math.floor(parents.size()*Math.random());
-        int i=0;
-        return (TermId)parents.toArray()[r];
+    /** @return a non-root random parent of term tid. It could be empty. */
+    private Optional<TermId> getNonRootRandomParentTerm(TermId tid, SplittableRandom random) {
+        return neighbourhood.randomParent(tid, random);
     }
 
-
-    /** @return a non-root random parent of term tid. It could be empty. */
-    private Optional<TermId> getNonRootRandomParentTerm(TermId tid) {
-        Set<TermId> parents = new HashSet<>(getParentTerms(ontology.subOntology(PHENOTYPIC_ABNORMALITY),tid,false));
-        parents.remove(PHENOTYPIC_ABNORMALITY);
-        if (parents.isEmpty()) { //no parents could be found
-            return Optional.empty();
+    /** Randomly permute the list (Fisher-Yates shuffle, as {@link Collections#shuffle(List, Random)}). */
+    private static <T> void shuffle(List<T> list, SplittableRandom random) {
+        for (int i = list.size() - 1; i > 0; i--) {
+            Collections.swap(list, i, random.nextInt(i + 1));
         }
-        int r = (int)Math.floor(parents.size()*Math.random());
-        return Optional.of((TermId) parents.toArray()[r]);
     }
 
 
@@ -252,7 +322,7 @@ public class PhenotypeOnlyHpoCaseSimulator {
      * @param disease Disease for which we will simulate the case
      * @return HpoCase object with a randomized selection of phenotypes from the disease
      */
-    private List<TermId> getRandomTermsFromDisease(HpoDisease disease) {
+    private List<TermId> getRandomTermsFromDisease(HpoDisease disease, SplittableRandom random) {
         //We already checked to make sure disease have at least n_terms_per_case, so the following line is unnecessary and confusing to read--Aaron
         //int n_terms = Math.min(disease.getNumberOfPhenotypeAnnotations(), n_terms_per_case);
         //int n_random=Math.min(n_terms, n_noise_terms);
@@ -260,11 +330,11 @@ public class PhenotypeOnlyHpoCaseSimulator {
         // the creation of a new ArrayList is needed because disease returns an immutable list.
         List<HpoAnnotation> abnormalities = new ArrayList<>(disease.getPhenotypicAbnormalities());
         ImmutableList.Builder<TermId> termIdBuilder = new ImmutableList.Builder<>();
-        Collections.shuffle(abnormalities); // randomize order of phenotypes
+        shuffle(abnormalities, random); // randomize order of phenotypes
         // take the first n_random terms of the randomized list
         if (addTermImprecision) {
             abnormalities.stream().limit(n_terms_per_case).forEach( a -> {
-                Optional<TermId> randomParent = getNonRootRandomParentTerm(a.getTermId());
+                Optional<TermId> randomParent = getNonRootRandomParentTerm(a.getTermId(), random);
                 if (randomParent.isPresent()) {
                     termIdBuilder.add(randomParent.get());
                 } else { //cannot find non-root parent
@@ -276,7 +346,7 @@ public class PhenotypeOnlyHpoCaseSimulator {
         }
         // now add n_random "noise" terms to the list of abnormalities of our case.
         for(int i=0;i<n_noise_terms;i++){
-            TermId t = getRandomPhenotypeTerm();
+            TermId t = getRandomPhenotypeTerm(random);
             termIdBuilder.add(t);
         }
         return termIdBuilder.build();
@@ -284,12 +354,12 @@ public class PhenotypeOnlyHpoCaseSimulator {
 
 
 
-    private Optional<Integer> simulateCase(HpoDisease disease) throws LiricalException {
+    private Optional<Integer> simulateCase(HpoDisease disease, SplittableRandom random) throws LiricalException {
         if (disease == null) {
             // should never happen!
             throw new LiricalException("Attempt to create case from Null-value for disease");
         }
-        List<TermId> randomizedTerms = getRandomTermsFromDisease(disease);
+        List<TermId> randomizedTerms = getRandomTermsFromDisease(disease, random);
 
         CaseEvaluator.Builder caseBuilder = new CaseEvaluator.Builder(randomizedTerms)
                 .ontology(this.ontology)
@@ -305,4 +375,75 @@ public class PhenotypeOnlyHpoCaseSimulator {
     }
 
 
+    /**
+     * A convenience Builder class for creating {@link PhenotypeOnlyHpoCaseSimulator} objects.
+     */
+    public static class Builder {
+        private final Ontology ontology;
+        private final Map<TermId, HpoDisease> diseaseMap;
+        private int n_cases = 25;
+        private int n_terms_per_case = 5;
+        private int n_noise_terms = 1;
+        private boolean imprecise = false;
+        private Long seed = null;
+        private int threads = 1;
+        private SimulationShard shard = SimulationShard.ALL;
+        private PhenotypeLikelihoodRatio phenotypeLr = null;
+
+        /**
+         * @param ontology reference to HPO Ontology object
+         * @param diseaseMap Map containing (usually) all diseases in the corpus
+         */
+        public Builder(Ontology ontology, Map<TermId, HpoDisease> diseaseMap) {
+            this.ontology = ontology;
+            this.diseaseMap = diseaseMap;
+        }
+
+        public Builder cases(int n) {
+            this.n_cases = n;
+            return this;
+        }
+
+        public Builder termsPerCase(int n) {
+            this.n_terms_per_case = n;
+            return this;
+        }
+
+        public Builder noiseTerms(int n) {
+            this.n_noise_terms = n;
+            return this;
+        }
+
+        public Builder imprecise(boolean imprecise) {
+            this.imprecise = imprecise;
+            return this;
+        }
+
+        /** @param seed seed of the random number generator (null: a different seed for each run) */
+        public Builder seed(Long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder threads(int n) {
+            this.threads = n;
+            return this;
+        }
+
+        /** @param shard the cases to simulate (default: all cases); requires a {@link #seed(Long)} if the simulation is split */
+        public Builder shard(SimulationShard shard) {
+            this.shard = shard;
+            return this;
+        }
+
+        /** @param lr a likelihood ratio object for {@link #ontology} and {@link #diseaseMap} (null: create a new one) */
+        public Builder phenotypeLr(PhenotypeLikelihoodRatio lr) {
+            this.phenotypeLr = lr;
+            return this;
+        }
+
+        public PhenotypeOnlyHpoCaseSimulator build() {
+            return new PhenotypeOnlyHpoCaseSimulator(this);
+        }
+    }
 }
@@ -0,0 +1,119 @@
+package org.monarchinitiative.lirical.simulation;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.Multimap;
+import org.monarchinitiative.lirical.configuration.LiricalFactory;
+import org.monarchinitiative.lirical.likelihoodratio.GenotypeLikelihoodRatio;
+import org.monarchinitiative.lirical.likelihoodratio.PhenotypeLikelihoodRatio;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import static org.monarchinitiative.phenol.annotations.formats.hpo.HpoSubOntologyRootTermIds.PHENOTYPIC_ABNORMALITY;
+
+/**
+ * The data that do not depend on the simulated case, i.e., the disease model and the likelihood ratio calculators.
+ * The model is prepared once from a {@link LiricalFactory} and shared by the simulations of all phenopackets of a
+ * directory, so that each simulation only needs to score its case. The model is not changed after it was created
+ * and can be shared between threads.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public final class SimulationModel {
+    private static final Logger logger = LoggerFactory.getLogger(SimulationModel.class);
+    /** An object representing the Human Phenotype Ontology */
+    private final Ontology ontology;
+    /** Key: diseaseID, e.g., OMIM:600321; value: Corresponding HPO disease object. */
+    private final Map<TermId, HpoDisease> diseaseMap;
+    /** Key: a disease id; value: the genes associated with the disease (empty for phenotype-only simulations). */
+    private final Multimap<TermId, TermId> disease2geneMultimap;
+    /** Key: a gene id; value: the diseases associated with the gene (empty for phenotype-only simulations). */
+    private final Multimap<TermId, TermId> gene2diseaseMultimap;
+    private final PhenotypeLikelihoodRatio phenotypeLr;
+    /** Calculator of the genotype likelihood ratios (null for phenotype-only simulations). */
+    private final GenotypeLikelihoodRatio genotypeLr;
+    /** The terms of the Phenotypic abnormality subontology, used to randomize the terms of a phenopacket. */
+    private final TermNeighbourhood phenotypeTerms;
+
+    private SimulationModel(Ontology ontology,
+                            Map<TermId, HpoDisease> diseaseMap,
+                            Multimap<TermId, TermId> disease2geneMultimap,
+                            Multimap<TermId, TermId> gene2diseaseMultimap,
+                            GenotypeLikelihoodRatio genotypeLr) {
+        this.ontology = ontology;
+        this.diseaseMap = ImmutableMap.copyOf(diseaseMap);
+        this.disease2geneMultimap = ImmutableMultimap.copyOf(disease2geneMultimap);
+        this.gene2diseaseMultimap = ImmutableMultimap.copyOf(gene2diseaseMultimap);
+        this.phenotypeLr = new PhenotypeLikelihoodRatio(ontology, this.diseaseMap);
+        this.genotypeLr = genotypeLr;
+        this.phenotypeTerms = TermNeighbourhood.of(ontology, PHENOTYPIC_ABNORMALITY);
+    }
+
+    /**
+     * Prepare the model for simulations with phenotypes and genotypes.
+     * @param factory the factory with the HPO, the disease annotations and the background frequencies
+     * @return the model
+     */
+    public static SimulationModel of(LiricalFactory factory) {
+        long start = System.currentTimeMillis();
+        Ontology ontology = factory.hpoOntology();
+        SimulationModel model = new SimulationModel(ontology,
+                factory.diseaseMap(ontology),
+                factory.disease2geneMultimap(),
+                factory.gene2diseaseMultimap(),
+                factory.getGenotypeLR());
+        factory.geneIndex(); // built once and shared by all simulations
+        logger.info("Prepared simulation model with {} diseases in {} ms", model.diseaseMap.size(),
+                System.currentTimeMillis() - start);
+        return model;
+    }
+
+    /**
+     * Prepare the model for simulations with phenotypes only.
+     * @param factory the factory with the HPO and the disease annotations
+     * @return the model
+     */
+    public static SimulationModel phenotypeOnly(LiricalFactory factory) {
+        Ontology ontology = factory.hpoOntology();
+        return new SimulationModel(ontology,
+                factory.diseaseMap(ontology),
+                ImmutableMultimap.of(),
+                ImmutableMultimap.of(),
+                null);
+    }
+
+    public Ontology getOntology() {
+        return ontology;
+    }
+
+    public Map<TermId, HpoDisease> getDiseaseMap() {
+        return diseaseMap;
+    }
+
+    public Multimap<TermId, TermId> getDisease2geneMultimap() {
+        return disease2geneMultimap;
+    }
+
+    public Multimap<TermId, TermId> getGene2diseaseMultimap() {
+        return gene2diseaseMultimap;
+    }
+
+    public PhenotypeLikelihoodRatio getPhenotypeLr() {
+        return phenotypeLr;
+    }
+
+    /** @return calculator of the genotype likelihood ratios (null for phenotype-only simulations). */
+    public GenotypeLikelihoodRatio getGenotypeLr() {
+        return genotypeLr;
+    }
+
+    /** @return a random term from the phenotype subontology. */
+    TermId randomPhenotypeTerm(SplittableRandom random) {
+        return phenotypeTerms.randomTerm(random);
+    }
+}
@@ -0,0 +1,243 @@
+package org.monarchinitiative.lirical.simulation;
+
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Reads and writes the result files of the simulations, and combines the partial results of the shards of a
+ * simulation (see {@link SimulationShard}) into the results of the whole simulation. There are two kinds of files.
+ * <ol>
+ *     <li>rank2count files, with one line {@code rank: count} for each rank, sorted by rank. The file of a shard
+ *     starts with a line {@code #shard: index/count} (followed by {@code ;seed: seed} if the cases were drawn with a
+ *     seed). The counts of the shards are added.</li>
+ *     <li>detailed result files, with a header line, a settings line that starts with {@code #} and one line for each
+ *     simulated case that starts with the name of the phenopacket. The settings of all shards must be the same
+ *     except for the shard, and the cases of the shards are sorted by the name of the phenopacket, which is the
+ *     order of the cases in a simulation that is not split.</li>
+ * </ol>
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public final class SimulationResultMerger {
+    /** Key of the shard in the settings line of the detailed result files and the header of the rank2count files. */
+    private static final String SHARD_SETTING = "shard: ";
+    /** Key of the seed in the header line of the rank2count files of the shards. */
+    private static final String SEED_SETTING = "seed: ";
+
+    private SimulationResultMerger() {
+    }
+
+    /**
+     * @param file a rank2count file
+     * @return key: a rank; value: number of cases at this rank
+     */
+    public static SortedMap<Integer, Integer> readRankCounts(File file) {
+        return RankCountFile.read(file).rankCounts;
+    }
+
+    /**
+     * @param files the rank2count files of the shards
+     * @return key: a rank; value: number of cases at this rank in all shards
+     * @throws LiricalRuntimeException if the files do not belong to the same simulation, or if a shard is missing or
+     * occurs more than once
+     */
+    public static SortedMap<Integer, Integer> mergeRankCounts(List<File> files) {
+        SortedMap<Integer, Integer> rankCounts = new TreeMap<>();
+        Map<Integer, File> shardFiles = new HashMap<>();
+        RankCountFile first = null;
+        for (File file : files) {
+            RankCountFile rankCountFile = RankCountFile.read(file);
+            if (first == null) {
+                first = rankCountFile;
+            } else if (first.shard.getCount() != rankCountFile.shard.getCount()
+                    || !Objects.equals(first.seed, rankCountFile.seed)) {
+                throw new LiricalRuntimeException("Shard or seed of " + file + " does not match " + files.get(0));
+            }
+            addShard(shardFiles, rankCountFile.shard, file);
+            rankCountFile.rankCounts.forEach((rank, count) -> rankCounts.merge(rank, count, Integer::sum));
+        }
+        if (first == null) {
+            throw new LiricalRuntimeException("No rank2count files to merge");
+        }
+        checkAllShards(shardFiles, first.shard.getCount());
+        return rankCounts;
+    }
+
+    /**
+     * Write a rank2count file.
+     * @param rankCounts key: a rank; value: number of cases at this rank
+     * @param writer the output (not closed)
+     */
+    public static void writeRankCounts(Map<Integer, Integer> rankCounts, Writer writer) throws IOException {
+        writeRankCounts(rankCounts, SimulationShard.ALL, null, writer);
+    }
+
+    /**
+     * Write the rank2count file of a shard, with a header line that identifies the shard if the simulation is split.
+     * @param rankCounts key: a rank; value: number of cases of the shard at this rank
+     * @param shard the shard
+     * @param seed seed of the random number generator of the simulation (null: the cases are not random)
+     * @param writer the output (not closed)
+     */
+    public static void writeRankCounts(Map<Integer, Integer> rankCounts, SimulationShard shard, Long seed, Writer writer) throws IOException {
+        if (shard.isPartial()) {
+            writer.write("#" + SHARD_SETTING + shard + (seed != null ? ";" + SEED_SETTING + seed : "") + "\n");
+        }
+        for (Map.Entry<Integer, Integer> e : new TreeMap<>(rankCounts).entrySet()) {
+            writer.write(e.getKey() + ": " + e.getValue() + "\n");
+        }
+    }
+
+    /**
+     * @param settings the settings of a simulation (the entries are separated by semicolons)
+     * @param shard the shard of the simulation
+     * @return the settings with the shard, if the simulation is split
+     */
+    public static String settingsWithShard(String settings, SimulationShard shard) {
+        return shard.isPartial() ? settings + ";" + SHARD_SETTING + shard : settings;
+    }
+
+    /**
+     * Write a detailed result file.
+     * @param header the header line
+     * @param settings the settings line (without the leading {@code #})
+     * @param details one line for each simulated case
+     * @param writer the output (not closed)
+     */
+    public static void writeDetails(String header, String settings, List<String> details, Writer writer) throws IOException {
+        writer.write(header + "\n");
+        writer.write("#" + settings + "\n");
+        for (String line : details) {
+            writer.write(line + "\n");
+        }
+    }
+
+    /**
+     * Combine the detailed result files of the shards of a simulation.
+     * @param files the detailed result files of the shards
+     * @param writer the output (not closed)
+     * @return the number of simulated cases
+     * @throws LiricalRuntimeException if the files do not belong to the same simulation, or if a shard is missing
+     */
+    public static int mergeDetails(List<File> files, Writer writer) throws IOException {
+        String header = null;
+        String settings = null;
+        Map<Integer, File> shardFiles = new HashMap<>();
+        int shardCount = 0;
+        List<String> details = new ArrayList<>();
+        for (File file : files) {
+            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+                String h = br.readLine();
+                String s = br.readLine();
+                if (h == null || s == null || !s.startsWith("#")) {
+                    throw new LiricalRuntimeException("Not a simulation result file: " + file);
+                }
+                if (header == null) {
+                    header = h;
+                } else if (!header.equals(h)) {
+                    throw new LiricalRuntimeException("Header of " + file + " differs from the header of " + files.get(0));
+                }
+                List<String> entries = new ArrayList<>();
+                SimulationShard shard = SimulationShard.ALL;
+                for (String entry : s.substring(1).split(";")) {
+                    if (entry.startsWith(SHARD_SETTING)) {
+                        shard = SimulationShard.parse(entry.substring(SHARD_SETTING.length()));
+                    } else {
+                        entries.add(entry);
+                    }
+                }
+                String common = String.join(";", entries);
+                if (settings == null) {
+                    settings = common;
+                    shardCount = shard.getCount();
+                } else if (!settings.equals(common) || shardCount != shard.getCount()) {
+                    throw new LiricalRuntimeException("Settings of " + file + " differ from the settings of " + files.get(0));
+                }
+                addShard(shardFiles, shard, file);
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        details.add(line);
+                    }
+                }
+            }
+        }
+        if (header == null) {
+            throw new LiricalRuntimeException("No simulation result files to merge");
+        }
+        checkAllShards(shardFiles, shardCount);
+        details.sort(Comparator.comparing(SimulationResultMerger::phenopacketName));
+        writeDetails(header, settings, details, writer);
+        return details.size();
+    }
+
+    private static void addShard(Map<Integer, File> shardFiles, SimulationShard shard, File file) {
+        File previous = shardFiles.put(shard.getIndex(), file);
+        if (previous != null) {
+            throw new LiricalRuntimeException(String.format("%s and %s are both shard %s", previous, file, shard));
+        }
+    }
+
+    private static void checkAllShards(Map<Integer, File> shardFiles, int shardCount) {
+        if (shardFiles.size() != shardCount) {
+            throw new LiricalRuntimeException(String.format("Got %d of %d shards", shardFiles.size(), shardCount));
+        }
+    }
+
+    private static String phenopacketName(String detailLine) {
+        int i = detailLine.indexOf('\t');
+        return i < 0 ? detailLine : detailLine.substring(0, i);
+    }
+
+    /** The contents of a rank2count file. */
+    private static final class RankCountFile {
+        private final SimulationShard shard;
+        private final Long seed;
+        private final SortedMap<Integer, Integer> rankCounts;
+
+        private RankCountFile(SimulationShard shard, Long seed, SortedMap<Integer, Integer> rankCounts) {
+            this.shard = shard;
+            this.seed = seed;
+            this.rankCounts = rankCounts;
+        }
+
+        private static RankCountFile read(File file) {
+            SimulationShard shard = SimulationShard.ALL;
+            Long seed = null;
+            SortedMap<Integer, Integer> rankCounts = new TreeMap<>();
+            try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+                String line;
+                while ((line = br.readLine()) != null) {
+                    if (line.trim().isEmpty()) {
+                        continue;
+                    }
+                    try {
+                        if (line.startsWith("#")) {
+                            for (String entry : line.substring(1).split(";")) {
+                                if (entry.startsWith(SHARD_SETTING)) {
+                                    shard = SimulationShard.parse(entry.substring(SHARD_SETTING.length()));
+                                } else if (entry.startsWith(SEED_SETTING)) {
+                                    seed = Long.parseLong(entry.substring(SEED_SETTING.length()).trim());
+                                }
+                            }
+                            continue;
+                        }
+                        int i = line.indexOf(':');
+                        if (i < 0) {
+                            throw new LiricalRuntimeException("Malformed line in " + file + ": " + line);
+                        }
+                        int rank = Integer.parseInt(line.substring(0, i).trim());
+                        int count = Integer.parseInt(line.substring(i + 1).trim());
+                        rankCounts.merge(rank, count, Integer::sum);
+                    } catch (NumberFormatException e) {
+                        throw new LiricalRuntimeException("Malformed line in " + file + ": " + line);
+                    }
+                }
+            } catch (IOException e) {
+                throw new LiricalRuntimeException("Could not read rank counts from " + file + ": " + e.getMessage());
+            }
+            return new RankCountFile(shard, seed, rankCounts);
+        }
+    }
+}
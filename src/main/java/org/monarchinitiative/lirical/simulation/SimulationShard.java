@@ -0,0 +1,122 @@
+package org.monarchinitiative.lirical.simulation;
+
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One of {@code count} parts of a simulation campaign, so that a large campaign can be run by independent processes
+ * (e.g., on the nodes of a cluster). The cases are assigned round-robin by their position: case {@code i} belongs
+ * to the shard with index {@code i % count}. The positions must therefore be the same in all shards, i.e., the
+ * phenopackets must be listed in the same order and the random cases must be drawn from a master generator with the
+ * same seed. The partial results of the shards are combined with {@link SimulationResultMerger}.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+public final class SimulationShard {
+    /** The shard of a simulation that is not split, which contains all cases. */
+    public static final SimulationShard ALL = new SimulationShard(0, 1);
+
+    /** Index of this shard (0-based). */
+    private final int index;
+    /** Total number of shards of the simulation. */
+    private final int count;
+
+    private SimulationShard(int index, int count) {
+        this.index = index;
+        this.count = count;
+    }
+
+    /**
+     * @param index index of the shard (0-based)
+     * @param count total number of shards
+     * @return the shard
+     * @throws LiricalRuntimeException if the count is less than 1 or the index is not between 0 and count-1
+     */
+    public static SimulationShard of(int index, int count) {
+        if (count < 1) {
+            throw new LiricalRuntimeException("Number of shards must be at least 1 but was " + count);
+        }
+        if (index < 0 || index >= count) {
+            throw new LiricalRuntimeException(String.format("Shard index must be between 0 and %d but was %d", count - 1, index));
+        }
+        return count == 1 ? ALL : new SimulationShard(index, count);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /** @return true if the simulation is split into more than one shard. */
+    public boolean isPartial() {
+        return count > 1;
+    }
+
+    /**
+     * @param position position (0-based) of a case in the simulation
+     * @return true if the case belongs to this shard
+     */
+    public boolean contains(int position) {
+        return position % count == index;
+    }
+
+    /**
+     * @param cases all cases of the simulation, in the same order in all shards
+     * @return the cases that belong to this shard, in the same order
+     */
+    public <T> List<T> select(List<T> cases) {
+        if (!isPartial()) {
+            return cases;
+        }
+        List<T> selected = new ArrayList<>(cases.size() / count + 1);
+        for (int i = index; i < cases.size(); i += count) {
+            selected.add(cases.get(i));
+        }
+        return selected;
+    }
+
+    /** @return a label for the names of the output files of this shard, e.g., {@code shard-2-of-8}. */
+    public String fileLabel() {
+        return String.format("shard-%d-of-%d", index, count);
+    }
+
+    /** @return the shard in the form {@code index/count}, as written to the settings of the output files. */
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+
+    /**
+     * @param s a shard in the form {@code index/count}
+     * @return the shard
+     * @throws LiricalRuntimeException if the shard is malformed
+     */
+    public static SimulationShard parse(String s) {
+        String[] fields = s.trim().split("/");
+        if (fields.length != 2) {
+            throw new LiricalRuntimeException("Malformed shard \"" + s + "\"");
+        }
+        try {
+            return of(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]));
+        } catch (NumberFormatException e) {
+            throw new LiricalRuntimeException("Malformed shard \"" + s + "\"");
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SimulationShard)) return false;
+        SimulationShard that = (SimulationShard) o;
+        return index == that.index && count == that.count;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * index + count;
+    }
+}
@@ -0,0 +1,123 @@
+package org.monarchinitiative.lirical.simulation;
+
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.*;
+
+import static org.monarchinitiative.phenol.ontology.algo.OntologyAlgorithm.getDescendents;
+import static org.monarchinitiative.phenol.ontology.algo.OntologyAlgorithm.getParentTerms;
+
+/**
+ * The terms of a subontology (e.g., Phenotypic abnormality) together with the direct parents of each term, which the
+ * simulators use to pick random terms and to replace terms by less precise ones. Each term gets an index between 0
+ * and {@link #size()}-1, and the parents are stored as term indices in compressed sparse row (CSR) format, i.e., the
+ * parents of term {@code t} are {@code parent(t, 0) ... parent(t, parentCount(t) - 1)}. The root of the subontology
+ * is not counted as a parent. The table is computed once and can be shared between threads, so that a random term
+ * or a random parent is found in constant time.
+ * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
+ */
+final class TermNeighbourhood {
+    /** Returned by {@link #index(TermId)} if a term is not in the subontology. */
+    static final int NOT_FOUND = -1;
+    /** The terms, by term index. */
+    private final TermId[] terms;
+    /** Key: a term; value: its term index. */
+    private final Map<TermId, Integer> termToIndex;
+    /** The parents of term t are {@code parents[parentOffsets[t]] ... parents[parentOffsets[t+1]-1]}. */
+    private final int[] parentOffsets;
+    private final int[] parents;
+
+    private TermNeighbourhood(TermId[] terms, Map<TermId, Integer> termToIndex, int[] parentOffsets, int[] parents) {
+        this.terms = terms;
+        this.termToIndex = termToIndex;
+        this.parentOffsets = parentOffsets;
+        this.parents = parents;
+    }
+
+    /**
+     * Build the table for the subontology below a root term.
+     * @param ontology reference to HPO Ontology object
+     * @param root root of the subontology, e.g., Phenotypic abnormality (HP:0000118)
+     * @return the table (the root is one of the terms, in the order of {@code getDescendents})
+     */
+    static TermNeighbourhood of(Ontology ontology, TermId root) {
+        TermId[] terms = getDescendents(ontology, root).toArray(new TermId[0]);
+        Map<TermId, Integer> termToIndex = new HashMap<>();
+        for (int t = 0; t < terms.length; t++) {
+            termToIndex.put(terms[t], t);
+        }
+        List<int[]> parentList = new ArrayList<>();
+        for (TermId term : terms) {
+            Set<TermId> p = new HashSet<>(getParentTerms(ontology, term, false));
+            p.remove(root);
+            parentList.add(indices(p, termToIndex));
+        }
+        int[] parentOffsets = new int[terms.length + 1];
+        return new TermNeighbourhood(terms, termToIndex, parentOffsets, flatten(parentList, parentOffsets));
+    }
+
+    /** @return the sorted indices of the terms (terms outside of the subontology are skipped). */
+    private static int[] indices(Collection<TermId> termIds, Map<TermId, Integer> termToIndex) {
+        return termIds.stream()
+                .map(termToIndex::get)
+                .filter(Objects::nonNull)
+                .mapToInt(Integer::intValue)
+                .sorted()
+                .toArray();
+    }
+
+    /** Concatenate the arrays and fill in the offsets (CSR format). */
+    private static int[] flatten(List<int[]> lists, int[] offsets) {
+        int n = 0;
+        for (int i = 0; i < lists.size(); i++) {
+            offsets[i] = n;
+            n += lists.get(i).length;
+        }
+        offsets[lists.size()] = n;
+        int[] values = new int[n];
+        for (int i = 0; i < lists.size(); i++) {
+            System.arraycopy(lists.get(i), 0, values, offsets[i], lists.get(i).length);
+        }
+        return values;
+    }
+
+    /** @return number of terms. */
+    int size() {
+        return terms.length;
+    }
+
+    /** @return the term with index t. */
+    TermId term(int t) {
+        return terms[t];
+    }
+
+    /** @return index of the term, or {@link #NOT_FOUND}. */
+    int index(TermId termId) {
+        Integer t = termToIndex.get(termId);
+        return t == null ? NOT_FOUND : t;
+    }
+
+    int parentCount(int t) {
+        return parentOffsets[t + 1] - parentOffsets[t];
+    }
+
+    /** @return index of the k-th parent of term t (other than the root). */
+    int parent(int t, int k) {
+        return parents[parentOffsets[t] + k];
+    }
+
+    /** @return a random term of the subontology. */
+    TermId randomTerm(SplittableRandom random) {
+        return terms[random.nextInt(terms.length)];
+    }
+
+    /** @return a random parent of the term other than the root, or empty if it has none or is not in the table. */
+    Optional<TermId> randomParent(TermId termId, SplittableRandom random) {
+        int t = index(termId);
+        if (t == NOT_FOUND || parentCount(t) == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(terms[parent(t, random.nextInt(parentCount(t)))]);
+    }
+}
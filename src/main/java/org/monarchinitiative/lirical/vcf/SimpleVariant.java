@@ -1,6 +1,8 @@
 package org.monarchinitiative.lirical.vcf;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Sets;
 import org.monarchinitiative.exomiser.core.genome.GenomeAssembly;
 import org.monarchinitiative.exomiser.core.model.TranscriptAnnotation;
@@ -13,7 +15,11 @@ import static org.monarchinitiative.exomiser.core.model.pathogenicity.ClinVarDat
 
 /**
  * This class encapsulates data about a variant and its classification as ClinVar pathogenic or likely
- * pathogenic.
+ * pathogenic. Since the genotype maps of whole genomes contain many of these objects, the data are kept in a
+ * compact form: the chromosome and the genotype are stored as small numbers, the ref and alt sequences are
+ * interned (most of them are single bases), and the full list of transcript annotations is only retained for
+ * variants in the pathogenic bin or with a pathogenic ClinVar interpretation. For all other variants, only the
+ * first (most deleterious) transcript annotation is kept.
  * @author <a href="mailto:peter.robinson@jax.org">Peter Robinson</a>
  */
 public class SimpleVariant implements Comparable<SimpleVariant> {
@@ -26,8 +32,12 @@ public class SimpleVariant implements Comparable<SimpleVariant> {
     private static final float PATHOGENICITY_THRESHOLD=0.80f;
     /** Must be either hg19 or hg38 -- we are using this for the UCSC URL. */
     private static String genomeBuild=null;
+    /** Used to share the String objects of identical ref and alt sequences between variants. */
+    private static final Interner<String> ALLELE_INTERNER = Interners.newWeakInterner();
+    private static final SimpleGenotype[] GENOTYPES = SimpleGenotype.values();
 
-    private final String chromosome;
+    /** The chromosome as an integer (1-22; 23: X, 24: Y, 25: M). */
+    private final short chromosome;
     private final int position;
     private final String ref;
     private final String alt;
@@ -37,7 +47,8 @@ public class SimpleVariant implements Comparable<SimpleVariant> {
     /** This is the exomiser-style pathogenicity score: the predicted pathogenicity multiplied by a frequency factor.*/
     private final float pathogenicityScore;
     private final ClinVarData.ClinSig clinvar;
-    private final SimpleGenotype gtype;
+    /** Ordinal of the {@link SimpleGenotype} of this variant. */
+    private final byte gtype;
 
 
     public SimpleVariant(int chrom, int pos, String ref, String alt, List<TranscriptAnnotation> annotlist,
@@ -47,45 +58,61 @@ public class SimpleVariant implements Comparable<SimpleVariant> {
 
     public SimpleVariant(int chrom, int pos, String ref, String alt, List<TranscriptAnnotation> annotlist,
                          float path, float freq, String genotypeString,ClinVarData.ClinSig clinv){
-        this.position=pos;
-        this.ref=ref;
-        this.alt=alt;
-        this.annotationList=ImmutableList.copyOf(annotlist);
+        this(chrom,pos,ref,alt,annotlist,pathogenicityScore(path,freq,clinv),freq,parseGenotype(genotypeString),clinv);
+    }
 
+    private SimpleVariant(int chrom, int pos, String ref, String alt, List<TranscriptAnnotation> annotlist,
+                          float pathogenicityScore, float freq, SimpleGenotype genotype, ClinVarData.ClinSig clinv){
+        this.position=pos;
+        this.ref=ALLELE_INTERNER.intern(ref);
+        this.alt=ALLELE_INTERNER.intern(alt);
         this.frequency=freq;
+        this.pathogenicityScore=pathogenicityScore;
+        this.clinvar=clinv;
+        this.gtype=(byte) genotype.ordinal();
+        this.chromosome=(short) chrom;
+        if (isInPathogenicBin() || isClinVarPathogenic() || annotlist.size() < 2) {
+            this.annotationList=ImmutableList.copyOf(annotlist);
+        } else {
+            this.annotationList=ImmutableList.of(annotlist.get(0));
+        }
+    }
+
+    /**
+     * Recreate a variant whose pathogenicity score was calculated previously, e.g., a variant read from the
+     * genotype cache.
+     */
+    public static SimpleVariant withPathogenicityScore(int chrom, int pos, String ref, String alt,
+                                                       List<TranscriptAnnotation> annotlist,
+                                                       float pathogenicityScore, float freq,
+                                                       SimpleGenotype genotype, ClinVarData.ClinSig clinv) {
+        return new SimpleVariant(chrom,pos,ref,alt,annotlist,pathogenicityScore,freq,genotype,clinv);
+    }
+
+    private static float pathogenicityScore(float path, float freq, ClinVarData.ClinSig clinv) {
         // heuristic -- count ClinVar pathogenic or likjely pathogenic as 1.0 (maximum pathogenicity score)
         // irregardless of the Exomiser pathogenicity score
         if (clinv.equals(ClinVarData.ClinSig.PATHOGENIC_OR_LIKELY_PATHOGENIC)) {
-            this.pathogenicityScore = 1.0f;
+            return 1.0f;
         } else {
-            this.pathogenicityScore = (float) (path * frequencyScore());
+            return (float) (path * frequencyScore(freq));
         }
-        this.clinvar=clinv;
+    }
+
+    private static SimpleGenotype parseGenotype(String genotypeString) {
         switch (genotypeString) {
             case "0/1":
             case "0|1":
-                this.gtype=SimpleGenotype.HETEROZYGOUS;
-                break;
+                return SimpleGenotype.HETEROZYGOUS;
             case "1/1":
             case "1|1":
-                this.gtype=SimpleGenotype.HOMOZYGOUS_ALT;
-                break;
+                return SimpleGenotype.HOMOZYGOUS_ALT;
             case "0/0":
             case "0|0":
-                this.gtype=SimpleGenotype.HOMOZYGOUS_REF;
-                break;
+                return SimpleGenotype.HOMOZYGOUS_REF;
             default:
-                this.gtype=SimpleGenotype.NOT_OBSERVED;
+                return SimpleGenotype.NOT_OBSERVED;
         }
-
-
-        switch (chrom) {
-            case 25: this.chromosome ="chrM";break;
-            case 24: this.chromosome ="chrY";break;
-            case 23: this.chromosome ="chrX";break;
-            default: this.chromosome =String.format("chr%d",chrom);
-        }
-
     }
 
     /** This can be set so that we will correctly build the URL to view the location of mutation in UCSC. */
@@ -116,7 +143,7 @@ public class SimpleVariant implements Comparable<SimpleVariant> {
      */
     public int pathogenicAlleleCount() {
         if (this.pathogenicityScore<PATHOGENICITY_THRESHOLD) return 0;
-        return this.gtype.equals(SimpleGenotype.HOMOZYGOUS_ALT) ? 2: 1;
+        return getGtype().equals(SimpleGenotype.HOMOZYGOUS_ALT) ? 2: 1;
     }
 
     public boolean isClinVarPathogenic() {
@@ -130,14 +157,24 @@ public class SimpleVariant implements Comparable<SimpleVariant> {
      */
     public int pathogenicClinVarAlleleCount() {
         if (! isClinVarPathogenic()) return 0;
-        else return this.gtype.equals(SimpleGenotype.HOMOZYGOUS_ALT) ? 2: 1;
+        else return getGtype().equals(SimpleGenotype.HOMOZYGOUS_ALT) ? 2: 1;
     }
 
 
 
+    /** @return chromosome on which this variant is located as an integer (1-22; 23: X, 24: Y, 25: M). */
+    public int getChromosomeNumber() {
+        return chromosome;
+    }
+
     /**@return chromosome on which this variant is located. Returns a String such as chr1 or chrY */
     public String getChromosome() {
-        return chromosome;
+        switch (chromosome) {
+            case 25: return "chrM";
+            case 24: return "chrY";
+            case 23: return "chrX";
+            default: return String.format("chr%d",chromosome);
+        }
     }
 
     public int getPosition() {
@@ -171,7 +208,7 @@ public class SimpleVariant implements Comparable<SimpleVariant> {
 
     @Override
     public String toString() {
-        return String.format("%s:%d%s>%s %s pathogenicity:%.1f [%s]", chromosome,position,ref,alt,annotation2string(annotationList.get(0)),pathogenicityScore,gtype);
+        return String.format("%s:%d%s>%s %s pathogenicity:%.1f [%s]", getChromosome(),position,ref,alt,annotation2string(annotationList.get(0)),pathogenicityScore,getGtype());
     }
 
     public float getPathogenicityScore() {
@@ -187,7 +224,7 @@ public class SimpleVariant implements Comparable<SimpleVariant> {
      * population frequency, with anything above 2% getting a factor of zero.
      * @return The Exomiser-style frequency factor
      */
-    private double frequencyScore() {
+    private static double frequencyScore(float frequency) {
         if (frequency <= 0) {
             return 1f;
         } else if (frequency > 2) {
@@ -206,8 +243,12 @@ public class SimpleVariant implements Comparable<SimpleVariant> {
         else return clinvar.toString();
     }
 
+    public ClinVarData.ClinSig getClinSig() {
+        return clinvar;
+    }
+
     public SimpleGenotype getGtype() {
-        return gtype;
+        return GENOTYPES[gtype];
     }
 
     /**
@@ -216,6 +257,7 @@ public class SimpleVariant implements Comparable<SimpleVariant> {
      */
     public String getUcsc() {
         int delta=10;
+        String chromosome=getChromosome();
         String display= String.format("%s:%d%s&gt;%s",chromosome,position,ref,alt );
         if (genomeBuild==null) {
             return display;
@@ -607,6 +607,9 @@ a.svg:hover, a.svg:active {
             <#if n_filtered_variants?has_content>
               <li>Variants removed due to quality filter: ${n_filtered_variants}</li>
             </#if>
+            <#if n_common_variants?has_content>
+              <li>Variants removed due to population frequency above ${max_frequency}%: ${n_common_variants}</li>
+            </#if>
             <#if genesWithVar?has_content>
                 <li>Genes found to have at least one variant: ${genesWithVar}</li>
             </#if>
@@ -0,0 +1,75 @@
+package org.monarchinitiative.lirical.analysis;
+
+import com.google.common.collect.ImmutableList;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.exomiser.core.genome.dao.serialisers.MvStoreUtil;
+import org.monarchinitiative.exomiser.core.proto.AlleleProto;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AlleleLookupTest {
+
+    private final static double EPSILON=0.000001;
+
+    private static final AlleleProto.AlleleKey KNOWN = key(1, 114713908, "A", "G");
+    private static final AlleleProto.AlleleKey UNKNOWN = key(1, 114713909, "T", "C");
+
+    private AlleleLookup lookup;
+
+    private static AlleleProto.AlleleKey key(int chr, int pos, String ref, String alt) {
+        return AlleleProto.AlleleKey.newBuilder()
+                .setChr(chr)
+                .setPosition(pos)
+                .setRef(ref)
+                .setAlt(alt)
+                .build();
+    }
+
+    @BeforeEach
+    void init() {
+        MVStore mvStore = new MVStore.Builder().open();
+        MVMap<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> alleleMap = MvStoreUtil.openAlleleMVMap(mvStore);
+        AlleleProto.AlleleProperties properties = AlleleProto.AlleleProperties.newBuilder()
+                .setRsId("rs123")
+                .putProperties("GNOMAD_E_NFE", 1.5f)
+                .build();
+        alleleMap.put(KNOWN, properties);
+        lookup = new AlleleLookup(alleleMap);
+    }
+
+    @Test
+    void testKnownAllele() {
+        AlleleLookup.AlleleData data = lookup.get(KNOWN);
+        assertTrue(data.isFound());
+        assertEquals(1.5f, data.getFrequencyData().getMaxFreq(), EPSILON);
+    }
+
+    @Test
+    void testUnknownAllele() {
+        AlleleLookup.AlleleData data = lookup.get(UNKNOWN);
+        assertFalse(data.isFound());
+    }
+
+    /**
+     * Each allele is read once from the MVStore, all further lookups are answered by the cache.
+     */
+    @Test
+    void testCacheHits() {
+        Map<AlleleProto.AlleleKey, AlleleLookup.AlleleData> result = lookup.getAll(ImmutableList.of(UNKNOWN, KNOWN, KNOWN));
+        assertEquals(2, result.size());
+        assertTrue(result.get(KNOWN).isFound());
+        assertFalse(result.get(UNKNOWN).isFound());
+        assertEquals(2, lookup.getStoreReads());
+        lookup.get(KNOWN);
+        lookup.get(UNKNOWN);
+        assertEquals(2, lookup.getStoreReads());
+        assertTrue(lookup.getHitRate() > 0.0);
+    }
+}
@@ -0,0 +1,113 @@
+package org.monarchinitiative.lirical.analysis;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.lirical.io.BackgroundFrequencyTable;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeneIndexTest {
+
+    private static final TermId FBN1 = TermId.of("NCBIGene:2200");
+    private static final TermId TGFBR2 = TermId.of("NCBIGene:7048");
+    private static final TermId TGFBR1 = TermId.of("NCBIGene:7046");
+    private static final TermId MARFAN = TermId.of("OMIM:154700");
+    private static final TermId LOEYS_DIETZ_1 = TermId.of("OMIM:609192");
+    private static final TermId LOEYS_DIETZ_2 = TermId.of("OMIM:610168");
+
+    private static GeneIndex index;
+
+    @BeforeAll
+    static void init() {
+        Multimap<TermId, TermId> disease2gene = LinkedHashMultimap.create();
+        disease2gene.put(MARFAN, FBN1);
+        // the order of the genes of a disease is kept
+        disease2gene.put(LOEYS_DIETZ_1, TGFBR2);
+        disease2gene.put(LOEYS_DIETZ_1, TGFBR1);
+        disease2gene.put(LOEYS_DIETZ_2, TGFBR2);
+        Map<TermId, String> geneId2symbol = new LinkedHashMap<>();
+        geneId2symbol.put(FBN1, "FBN1");
+        geneId2symbol.put(TGFBR1, "TGFBR1");
+        geneId2symbol.put(TGFBR2, "TGFBR2");
+        geneId2symbol.put(TermId.of("NCBIGene:1"), "A1BG");
+        Map<TermId, Double> background = ImmutableMap.of(FBN1, 0.25, TermId.of("HGNC:3603"), 0.5);
+        index = GeneIndex.of(disease2gene, geneId2symbol, background);
+    }
+
+    @Test
+    void testGenes() {
+        // A1BG, FBN1, TGFBR1, TGFBR2; the HGNC id is skipped
+        assertEquals(4, index.size());
+        int g = index.geneIndex(FBN1);
+        assertEquals(1, g);
+        assertEquals(g, index.geneIndex(2200));
+        assertEquals(g, index.geneIndex("2200"));
+        assertEquals(g, index.geneIndexOfSymbol("FBN1"));
+        assertEquals(FBN1, index.geneId(g));
+        assertEquals("FBN1", index.symbol(g));
+    }
+
+    @Test
+    void testUnknownGenes() {
+        assertEquals(GeneIndex.NOT_FOUND, index.geneIndex(TermId.of("NCBIGene:999")));
+        assertEquals(GeneIndex.NOT_FOUND, index.geneIndex(TermId.of("HGNC:3603")));
+        assertEquals(GeneIndex.NOT_FOUND, index.geneIndex(""));
+        assertEquals(GeneIndex.NOT_FOUND, index.geneIndex("LOC2200"));
+        assertEquals(GeneIndex.NOT_FOUND, index.geneIndexOfSymbol("DQ582201"));
+    }
+
+    @Test
+    void testBackgroundLambda() {
+        int fbn1 = index.geneIndex(FBN1);
+        assertTrue(index.hasBackgroundLambda(fbn1));
+        assertEquals(0.25, index.backgroundLambda(fbn1), 1e-9);
+        assertFalse(index.hasBackgroundLambda(index.geneIndex(TGFBR1)));
+    }
+
+    @Test
+    void testDiseaseGenes() {
+        assertEquals(3, index.diseaseCount());
+        int d = index.diseaseIndex(LOEYS_DIETZ_1);
+        assertEquals(LOEYS_DIETZ_1, index.diseaseId(d));
+        assertEquals(2, index.geneCountOfDisease(d));
+        assertEquals(TGFBR2, index.geneId(index.geneOfDisease(d, 0)));
+        assertEquals(TGFBR1, index.geneId(index.geneOfDisease(d, 1)));
+        assertEquals(GeneIndex.NOT_FOUND, index.diseaseIndex(TermId.of("OMIM:100100")));
+    }
+
+    @Test
+    void testGeneDiseases() {
+        int tgfbr2 = index.geneIndex(TGFBR2);
+        assertEquals(2, index.diseaseCountOfGene(tgfbr2));
+        assertEquals(LOEYS_DIETZ_1, index.diseaseId(index.diseaseOfGene(tgfbr2, 0)));
+        assertEquals(LOEYS_DIETZ_2, index.diseaseId(index.diseaseOfGene(tgfbr2, 1)));
+        assertEquals(0, index.diseaseCountOfGene(index.geneIndex(TermId.of("NCBIGene:1"))));
+    }
+
+    /** The background frequencies are copied from a table; genes that are only in the table are indexed too. */
+    @Test
+    void testBackgroundLambdaFromTable() throws IOException {
+        String tsv = "Gene\tEntrezId\tAFR\tAMR\tASJ\tEAS\tFIN\tNFE\tSAS\tMean\n" +
+                "FBN1\t2200\t0.1\t0.2\t0.3\t0.4\t0.5\t0.6\t0.7\t0.25\n" +
+                "ZNF\t9999\t0.1\t0.1\t0.1\t0.1\t0.1\t0.1\t0.1\t0.1\n";
+        BackgroundFrequencyTable table = BackgroundFrequencyTable.fromTsv(new BufferedReader(new StringReader(tsv)));
+        GeneIndex nfe = GeneIndex.of(ImmutableMultimap.of(MARFAN, FBN1), ImmutableMap.of(FBN1, "FBN1"),
+                table, BackgroundFrequencyTable.Population.NFE);
+        assertEquals(2, nfe.size());
+        assertEquals(0.6, nfe.backgroundLambda(nfe.geneIndex(FBN1)), 1e-9);
+        int znf = nfe.geneIndex(9999);
+        assertEquals(TermId.of("NCBIGene:9999"), nfe.geneId(znf));
+        assertEquals(0.1, nfe.backgroundLambda(znf), 1e-9);
+    }
+}
@@ -0,0 +1,79 @@
+package org.monarchinitiative.lirical.analysis;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import de.charite.compbio.jannovar.data.JannovarData;
+import de.charite.compbio.jannovar.data.ReferenceDictionary;
+import de.charite.compbio.jannovar.reference.GenomeInterval;
+import de.charite.compbio.jannovar.reference.Strand;
+import de.charite.compbio.jannovar.reference.TranscriptModel;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class GeneIntervalIndexTest {
+
+    private static GeneIntervalIndex index;
+
+    private static TranscriptModel transcript(String accession, String geneId, String symbol, int begin, int end) {
+        GenomeInterval region = mock(GenomeInterval.class);
+        when(region.withStrand(Strand.FWD)).thenReturn(region);
+        when(region.getChr()).thenReturn(1);
+        when(region.getBeginPos()).thenReturn(begin);
+        when(region.getEndPos()).thenReturn(end);
+        TranscriptModel tm = mock(TranscriptModel.class);
+        when(tm.getAccession()).thenReturn(accession);
+        when(tm.getGeneID()).thenReturn(geneId);
+        when(tm.getGeneSymbol()).thenReturn(symbol);
+        when(tm.getTXRegion()).thenReturn(region);
+        return tm;
+    }
+
+    /**
+     * Two overlapping transcripts of NRAS (one of which is only matched by symbol) and one transcript of a gene
+     * that is not a disease gene. The padding is 100 bp.
+     */
+    @BeforeAll
+    static void init() {
+        ReferenceDictionary refDict = mock(ReferenceDictionary.class);
+        when(refDict.getContigNameToID()).thenReturn(ImmutableMap.of("1", 1, "chr1", 1, "2", 2));
+        JannovarData jannovarData = mock(JannovarData.class);
+        when(jannovarData.getRefDict()).thenReturn(refDict);
+        ImmutableMap.Builder<String, TranscriptModel> builder = ImmutableMap.builder();
+        builder.put("uc001", transcript("uc001", "4893", "NRAS", 1000, 2000));
+        builder.put("uc002", transcript("uc002", null, "NRAS", 1500, 3000));
+        builder.put("uc003", transcript("uc003", "1234", "OTHER", 10000, 20000));
+        when(jannovarData.getTmByAccession()).thenReturn(builder.build());
+        TermId nras = TermId.of("NCBIGene:4893");
+        index = new GeneIntervalIndex(jannovarData, ImmutableList.of(nras), ImmutableMap.of(nras, "NRAS"), 100);
+    }
+
+    @Test
+    void testPadding() {
+        assertEquals(100, index.getPadding());
+        // zero-based begin 900 is the one-based position 901
+        assertTrue(index.overlaps("1", 901, 901));
+        assertFalse(index.overlaps("1", 900, 900));
+        // end 3100 (exclusive) is the one-based position 3100
+        assertTrue(index.overlaps("chr1", 3100, 3100));
+        assertFalse(index.overlaps("chr1", 3101, 3101));
+    }
+
+    @Test
+    void testDeletionSpanningPaddedLocus() {
+        assertTrue(index.overlaps("1", 800, 950));
+    }
+
+    @Test
+    void testOtherGeneAndContig() {
+        assertFalse(index.overlaps("1", 15000, 15000));
+        assertFalse(index.overlaps("2", 1500, 1500));
+        assertFalse(index.overlaps("chrUn", 1500, 1500));
+    }
+}
@@ -0,0 +1,129 @@
+package org.monarchinitiative.lirical.analysis;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import de.charite.compbio.jannovar.annotation.VariantEffect;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.exomiser.core.model.TranscriptAnnotation;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.ClinVarData;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.lirical.vcf.SimpleVariant;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GenotypeMapCacheTest {
+
+    private final static double EPSILON=0.000001;
+
+    @TempDir
+    Path tempDir;
+
+    private Map<TermId, Gene2Genotype> genotypeMap() {
+        TermId geneId = TermId.of("NCBIGene:4893");
+        Gene2Genotype nras = new Gene2Genotype(geneId, "NRAS");
+        TranscriptAnnotation annot = TranscriptAnnotation.builder()
+                .variantEffect(VariantEffect.MISSENSE_VARIANT)
+                .accession("uc001lfg.4")
+                .geneSymbol("NRAS")
+                .hgvsCdna("c.518A>C")
+                .hgvsProtein("p.(E173A)")
+                .build();
+        List<TranscriptAnnotation> annotList = ImmutableList.of(annot);
+        nras.addVariant(1,114713908, "A","G",annotList,"0/1",0.95f,0.001f, ClinVarData.ClinSig.LIKELY_PATHOGENIC);
+        nras.addVariant(1,114713909, "C","T",annotList,"1/1",0.2f,0.1f, ClinVarData.ClinSig.NOT_PROVIDED);
+        Map<TermId, Gene2Genotype> map = new HashMap<>();
+        map.put(geneId, nras);
+        return map;
+    }
+
+    private String vcf(String content) throws IOException {
+        File vcf = tempDir.resolve("sample.vcf").toFile();
+        Files.write(vcf.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return vcf.getAbsolutePath();
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        GenotypeMapCache cache = new GenotypeMapCache(tempDir.resolve("cache").toString(), GenotypeMapCache.DEFAULT_MAX_BYTES);
+        String key = GenotypeMapCache.key(vcf("##fileformat=VCFv4.2\n"), "HG19", "UCSC");
+        assertFalse(cache.get(key).isPresent());
+        cache.put(key, new GenotypeMapCache.Entry("sample1", genotypeMap(), 100, 10, 5, 3, ImmutableSet.of("DQ582201")));
+        Optional<GenotypeMapCache.Entry> opt = cache.get(key);
+        assertTrue(opt.isPresent());
+        GenotypeMapCache.Entry entry = opt.get();
+        assertEquals("sample1", entry.getSampleName());
+        assertEquals(100, entry.getN_good_quality_variants());
+        assertEquals(10, entry.getN_filtered_variants());
+        assertEquals(5, entry.getN_off_target_variants());
+        assertEquals(3, entry.getN_common_variants());
+        assertEquals(ImmutableSet.of("DQ582201"), entry.getSymbolsWithoutGeneIds());
+        Gene2Genotype expected = genotypeMap().get(TermId.of("NCBIGene:4893"));
+        Gene2Genotype actual = entry.getGenotypeMap().get(TermId.of("NCBIGene:4893"));
+        assertEquals("NRAS", actual.getSymbol());
+        assertEquals(expected.getSumOfPathBinScores(), actual.getSumOfPathBinScores(), EPSILON);
+        assertEquals(expected.getVarList().size(), actual.getVarList().size());
+        for (int i = 0; i < expected.getVarList().size(); i++) {
+            SimpleVariant e = expected.getVarList().get(i);
+            SimpleVariant a = actual.getVarList().get(i);
+            assertEquals(e.getChromosome(), a.getChromosome());
+            assertEquals(e.getPosition(), a.getPosition());
+            assertEquals(e.getPathogenicityScore(), a.getPathogenicityScore(), EPSILON);
+            assertEquals(e.getGtype(), a.getGtype());
+            assertEquals(e.getClinSig(), a.getClinSig());
+            assertEquals("c.518A>C", a.getAnnotationList().get(0).getHgvsCdna());
+        }
+    }
+
+    @Test
+    void testKeyDependsOnContentAndSettings() throws IOException {
+        String vcfPath = vcf("##fileformat=VCFv4.2\n");
+        String key = GenotypeMapCache.key(vcfPath, "HG19", "UCSC");
+        assertEquals(key, GenotypeMapCache.key(vcfPath, "HG19", "UCSC"));
+        assertNotEquals(key, GenotypeMapCache.key(vcfPath, "HG38", "UCSC"));
+        vcfPath = vcf("##fileformat=VCFv4.1\n");
+        assertNotEquals(key, GenotypeMapCache.key(vcfPath, "HG19", "UCSC"));
+    }
+
+    /** A data file that is updated in place or replaced by a file of the same name gives a different key. */
+    @Test
+    void testFileVersionChangesWithData() throws IOException {
+        String vcfPath = vcf("##fileformat=VCFv4.2\n");
+        Path data = tempDir.resolve("2109_hg19_variants.mv.db");
+        Files.write(data, new byte[]{1, 2, 3});
+        String version = GenotypeMapCache.fileVersion(data.toString());
+        assertEquals(version, GenotypeMapCache.fileVersion(data.toString()));
+        String key = GenotypeMapCache.key(vcfPath, "HG19", version);
+        Files.write(data, new byte[]{1, 2, 3, 4});
+        assertNotEquals(key, GenotypeMapCache.key(vcfPath, "HG19", GenotypeMapCache.fileVersion(data.toString())));
+        Files.write(data, new byte[]{1, 2, 3});
+        assertTrue(data.toFile().setLastModified(data.toFile().lastModified() + 60_000L));
+        assertNotEquals(key, GenotypeMapCache.key(vcfPath, "HG19", GenotypeMapCache.fileVersion(data.toString())));
+        assertThrows(LiricalRuntimeException.class,
+                () -> GenotypeMapCache.fileVersion(tempDir.resolve("missing.mv.db").toString()));
+    }
+
+    @Test
+    void testEviction() throws IOException {
+        // a limit of one byte means that only the most recent entry can be kept
+        GenotypeMapCache cache = new GenotypeMapCache(tempDir.resolve("cache").toString(), 1L);
+        String vcfPath = vcf("##fileformat=VCFv4.2\n");
+        String key1 = GenotypeMapCache.key(vcfPath, "HG19");
+        String key2 = GenotypeMapCache.key(vcfPath, "HG38");
+        cache.put(key1, new GenotypeMapCache.Entry("sample1", genotypeMap(), 1, 1, 0, 0, ImmutableSet.of()));
+        cache.put(key2, new GenotypeMapCache.Entry("sample1", genotypeMap(), 1, 1, 0, 0, ImmutableSet.of()));
+        assertFalse(cache.get(key1).isPresent());
+        assertTrue(cache.get(key2).isPresent());
+    }
+}
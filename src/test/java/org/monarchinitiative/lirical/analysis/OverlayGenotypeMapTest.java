@@ -0,0 +1,65 @@
+package org.monarchinitiative.lirical.analysis;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.ClinVarData;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OverlayGenotypeMapTest {
+
+    private final static double EPSILON=0.000001;
+    private static final TermId NRAS = TermId.of("NCBIGene:4893");
+    private static final TermId FBN1 = TermId.of("NCBIGene:2200");
+    private static final TermId KRAS = TermId.of("NCBIGene:3845");
+
+    private static Gene2Genotype gene(TermId geneId, String symbol, int pos, float path) {
+        Gene2Genotype g2g = new Gene2Genotype(geneId, symbol);
+        g2g.addVariant(1, pos, "A", "G", ImmutableList.of(), "0/1", path, 0f, ClinVarData.ClinSig.NOT_PROVIDED);
+        return g2g;
+    }
+
+    @Test
+    void testOverlay() {
+        Gene2Genotype nras = gene(NRAS, "NRAS", 114713908, 0.9f);
+        Gene2Genotype fbn1 = gene(FBN1, "FBN1", 48700000, 0.1f);
+        Map<TermId, Gene2Genotype> baseline = ImmutableMap.of(NRAS, nras, FBN1, fbn1);
+        Map<TermId, Gene2Genotype> injected = ImmutableMap.of(
+                NRAS, gene(NRAS, "NRAS", 114713800, 0.8f),
+                KRAS, gene(KRAS, "KRAS", 25245350, 1.0f));
+        OverlayGenotypeMap overlay = OverlayGenotypeMap.of(baseline, injected);
+
+        assertEquals(3, overlay.size());
+        assertTrue(overlay.containsKey(KRAS));
+        assertFalse(overlay.containsKey(TermId.of("NCBIGene:1")));
+        // genes without injected variants are shared with the baseline
+        assertSame(fbn1, overlay.get(FBN1));
+        assertSame(injected.get(KRAS), overlay.get(KRAS));
+        // genes with variants in both maps get a new object with the variants sorted by pathogenicity
+        Gene2Genotype merged = overlay.get(NRAS);
+        assertNotSame(nras, merged);
+        assertEquals(2, merged.getVarList().size());
+        assertEquals(114713908, merged.getVarList().get(0).getPosition());
+        assertEquals(0.9 + 0.8, merged.getSumOfPathBinScores(), EPSILON);
+        // the baseline is not changed
+        assertEquals(1, nras.getVarList().size());
+        assertEquals(2, baseline.size());
+
+        Map<TermId, Gene2Genotype> copy = new HashMap<>(overlay);
+        assertEquals(overlay.keySet(), copy.keySet());
+        assertSame(merged, copy.get(NRAS));
+        assertEquals(overlay, copy);
+    }
+
+    @Test
+    void testOverlayIsReadOnly() {
+        OverlayGenotypeMap overlay = OverlayGenotypeMap.of(ImmutableMap.of(), ImmutableMap.of());
+        assertTrue(overlay.isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> overlay.put(NRAS, gene(NRAS, "NRAS", 1, 0f)));
+    }
+}
@@ -0,0 +1,126 @@
+package org.monarchinitiative.lirical.analysis;
+
+import htsjdk.samtools.util.BlockCompressedOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelBgzfInputStreamTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Write a synthetic single-sample VCF file with random SNVs, compressed with BGZF.
+     * @param path the output file
+     * @param n_records number of records
+     */
+    private static void writeSyntheticVcf(Path path, int n_records) throws IOException {
+        Random random = new Random(42);
+        String bases = "ACGT";
+        try (Writer writer = new OutputStreamWriter(new BlockCompressedOutputStream(path.toFile()), StandardCharsets.UTF_8)) {
+            writer.write("##fileformat=VCFv4.2\n");
+            writer.write("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n");
+            writer.write("##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Depth\">\n");
+            writer.write("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tsample\n");
+            int pos = 0;
+            for (int i = 0; i < n_records; i++) {
+                pos += 1 + random.nextInt(1000);
+                char ref = bases.charAt(random.nextInt(4));
+                char alt = bases.charAt((bases.indexOf(ref) + 1 + random.nextInt(3)) % 4);
+                String gt = random.nextInt(10) < 7 ? "0/0" : (random.nextBoolean() ? "0/1" : "1/1");
+                writer.write(String.format("1\t%d\t.\t%c\t%c\t%d\tPASS\t.\tGT:DP\t%s:%d\n",
+                        pos, ref, alt, random.nextInt(100), gt, random.nextInt(60)));
+            }
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void testSameContentAsGzipInputStream() throws IOException {
+        Path vcf = tempDir.resolve("synthetic.vcf.gz");
+        writeSyntheticVcf(vcf, 20_000);
+        assertTrue(ParallelBgzfInputStream.isBgzf(vcf));
+        byte[] expected;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(vcf))) {
+            expected = readAll(in);
+        }
+        for (int threads : new int[]{1, 4}) {
+            try (InputStream in = new ParallelBgzfInputStream(vcf, threads, 2 * threads)) {
+                assertArrayEquals(expected, readAll(in));
+            }
+        }
+    }
+
+    @Test
+    void testPlainGzipIsNotBgzf() throws IOException {
+        Path gz = tempDir.resolve("plain.vcf.gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gz))) {
+            out.write("##fileformat=VCFv4.2\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertFalse(ParallelBgzfInputStream.isBgzf(gz));
+    }
+
+    @Test
+    void testScannerReadsBgzfInParallel() throws IOException {
+        Path vcf = tempDir.resolve("synthetic.vcf.gz");
+        writeSyntheticVcf(vcf, 5_000);
+        VcfLineScanner sequential = VcfLineScanner.open(vcf.toString(), null, true, 1);
+        VcfLineScanner parallel = VcfLineScanner.open(vcf.toString(), null, true, 4);
+        while (sequential.hasNext()) {
+            assertTrue(parallel.hasNext());
+            assertEquals(sequential.next().getStart(), parallel.next().getStart());
+        }
+        assertFalse(parallel.hasNext());
+        assertEquals(sequential.getN_uncalled_records(), parallel.getN_uncalled_records());
+        sequential.close();
+        parallel.close();
+    }
+
+    /**
+     * Throughput of reading a synthetic whole-genome-sized VCF file with different numbers of threads. This is not
+     * run by default; use {@code mvn test -Dtest=ParallelBgzfInputStreamTest -Dlirical.benchmark=true}.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "lirical.benchmark", matches = "true")
+    void benchmark() throws IOException {
+        Path vcf = tempDir.resolve("benchmark.vcf.gz");
+        writeSyntheticVcf(vcf, 5_000_000);
+        long compressed = Files.size(vcf);
+        int cores = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= cores; threads *= 2) {
+            long start = System.nanoTime();
+            long uncompressed = 0;
+            try (InputStream in = threads == 1 ? new GZIPInputStream(Files.newInputStream(vcf), 1 << 16) :
+                    new ParallelBgzfInputStream(vcf, threads, 4 * threads)) {
+                byte[] buffer = new byte[1 << 16];
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    uncompressed += n;
+                }
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("threads=%d: %.1f MB compressed, %.1f MB uncompressed in %.2f s (%.1f MB/s)%n",
+                    threads, compressed / 1e6, uncompressed / 1e6, seconds, uncompressed / 1e6 / seconds);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.monarchinitiative.lirical.analysis;
+
+import com.google.common.collect.ImmutableList;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.exomiser.core.genome.dao.serialisers.MvStoreUtil;
+import org.monarchinitiative.exomiser.core.proto.AlleleProto;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SlimAlleleTableTest {
+
+    private static final AlleleProto.AlleleKey EXONIC = key(1, 1_000, "A", "G");
+    private static final AlleleProto.AlleleKey EXONIC_OTHER_ALT = key(1, 1_000, "A", "T");
+    /** A deletion that starts before the exon and ends in it. */
+    private static final AlleleProto.AlleleKey DELETION = key(1, 995, "CTTTTTT", "C");
+    private static final AlleleProto.AlleleKey INTRONIC = key(1, 5_000, "C", "T");
+    private static final AlleleProto.AlleleKey OTHER_CHROMOSOME = key(2, 1_000, "G", "A");
+
+    @TempDir
+    Path tempDir;
+
+    private MVMap<AlleleProto.AlleleKey, AlleleProto.AlleleProperties> alleleMap;
+
+    private static AlleleProto.AlleleKey key(int chr, int pos, String ref, String alt) {
+        return AlleleProto.AlleleKey.newBuilder()
+                .setChr(chr)
+                .setPosition(pos)
+                .setRef(ref)
+                .setAlt(alt)
+                .build();
+    }
+
+    private static AlleleProto.AlleleProperties properties(float frequency) {
+        return AlleleProto.AlleleProperties.newBuilder()
+                .setRsId("rs123")
+                .putProperties("GNOMAD_E_NFE", frequency)
+                .build();
+    }
+
+    @BeforeEach
+    void init() {
+        MVStore mvStore = new MVStore.Builder().open();
+        alleleMap = MvStoreUtil.openAlleleMVMap(mvStore);
+        alleleMap.put(EXONIC, properties(1.5f));
+        alleleMap.put(EXONIC_OTHER_ALT, properties(0.5f));
+        alleleMap.put(DELETION, properties(0.1f));
+        alleleMap.put(INTRONIC, properties(2.5f));
+        alleleMap.put(OTHER_CHROMOSOME, properties(3.5f));
+    }
+
+    /** @return an index with a single exon 1:1000-1100 (one-based). */
+    private static GeneIntervalIndex exonIndex() {
+        GeneIntervalIndex index = mock(GeneIntervalIndex.class);
+        when(index.queryRegions(anyInt())).thenReturn(ImmutableList.of(new GeneIntervalIndex.Region(1, 999, 1_100)));
+        when(index.overlaps(anyInt(), anyInt(), anyInt())).thenAnswer(invocation -> {
+            int chr = invocation.getArgument(0);
+            int start = invocation.getArgument(1);
+            int end = invocation.getArgument(2);
+            return chr == 1 && start <= 1_100 && end >= 1_000;
+        });
+        return index;
+    }
+
+    @Test
+    void testRoundTrip() {
+        Path path = tempDir.resolve("alleles.bin");
+        assertEquals(3, SlimAlleleTable.write(alleleMap, exonIndex(), path));
+        SlimAlleleTable table = SlimAlleleTable.open(path);
+        assertEquals(3, table.size());
+        assertEquals(1.5f, table.get(EXONIC).getPropertiesMap().get("GNOMAD_E_NFE"));
+        assertEquals(0.5f, table.get(EXONIC_OTHER_ALT).getPropertiesMap().get("GNOMAD_E_NFE"));
+        assertEquals(0.1f, table.get(DELETION).getPropertiesMap().get("GNOMAD_E_NFE"));
+        // the rsID is not needed by LIRICAL
+        assertEquals("", table.get(EXONIC).getRsId());
+    }
+
+    /** The length of an allele is not limited to a short, and the alleles after a long allele are still found. */
+    @Test
+    void testOverlongAllele() {
+        StringBuilder insertion = new StringBuilder("A");
+        for (int i = 0; i < 40_000; i++) {
+            insertion.append("ACGT".charAt(i % 4));
+        }
+        AlleleProto.AlleleKey overlong = key(1, 1_050, "A", insertion.toString());
+        AlleleProto.AlleleKey after = key(1, 1_060, "G", "C");
+        alleleMap.put(overlong, properties(0.2f));
+        alleleMap.put(after, properties(0.3f));
+        Path path = tempDir.resolve("alleles.bin");
+        assertEquals(5, SlimAlleleTable.write(alleleMap, exonIndex(), path));
+        SlimAlleleTable table = SlimAlleleTable.open(path);
+        assertEquals(0.2f, table.get(overlong).getPropertiesMap().get("GNOMAD_E_NFE"));
+        assertEquals(0.3f, table.get(after).getPropertiesMap().get("GNOMAD_E_NFE"));
+        assertNull(table.get(key(1, 1_050, "A", insertion.substring(0, 40_000))));
+    }
+
+    @Test
+    void testAllelesOutsideOfExonsAreNotWritten() {
+        Path path = tempDir.resolve("alleles.bin");
+        SlimAlleleTable.write(alleleMap, exonIndex(), path);
+        SlimAlleleTable table = SlimAlleleTable.open(path);
+        assertNull(table.get(INTRONIC));
+        assertNull(table.get(OTHER_CHROMOSOME));
+        assertNull(table.get(key(1, 1_000, "A", "C")));
+    }
+
+    @Test
+    void testAlleleLookupWithTable() {
+        Path path = tempDir.resolve("alleles.bin");
+        SlimAlleleTable.write(alleleMap, exonIndex(), path);
+        AlleleLookup lookup = new AlleleLookup(SlimAlleleTable.open(path), AlleleLookup.DEFAULT_CACHE_SIZE);
+        assertTrue(lookup.get(EXONIC).isFound());
+        assertFalse(lookup.get(INTRONIC).isFound());
+    }
+}
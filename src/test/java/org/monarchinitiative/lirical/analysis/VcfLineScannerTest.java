@@ -0,0 +1,149 @@
+package org.monarchinitiative.lirical.analysis;
+
+import htsjdk.tribble.TribbleException;
+import htsjdk.variant.variantcontext.VariantContext;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class VcfLineScannerTest {
+
+    private static final String VCF = "##fileformat=VCFv4.2\n" +
+            "##FILTER=<ID=LowQual,Description=\"Low quality\">\n" +
+            "##INFO=<ID=END,Number=1,Type=Integer,Description=\"End position\">\n" +
+            "##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n" +
+            "##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Depth\">\n" +
+            "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tproband\tmother\n" +
+            "1\t100\t.\tA\tG\t50\tPASS\t.\tGT:DP\t0/1:20\t0/0:20\n" +
+            "1\t200\t.\tA\tG\t50\tLowQual\t.\tGT:DP\t0/1:20\t0/1:20\n" +
+            "1\t300\t.\tA\t<NON_REF>\t.\t.\tEND=400\tGT:DP\t0/0:30\t0/0:30\n" +
+            "1\t500\t.\tC\tT\t50\t.\t.\tGT\t./.\t0/1\n" +
+            "1\t600\t.\tCAT\tC\t50\tPASS\t.\tGT:DP\t1/1:12\t0/1:20\n" +
+            "2\t100\t.\tG\tA\t50\tPASS\t.\tGT:DP\t0|1:8\t0/0:20\r\n";
+
+    private static List<VariantContext> readAll(VcfLineScanner scanner) {
+        List<VariantContext> records = new ArrayList<>();
+        scanner.forEachRemaining(records::add);
+        return records;
+    }
+
+    private static VcfLineScanner scanner(GeneIntervalIndex index, boolean countUncalled) {
+        return new VcfLineScanner(new ByteArrayInputStream(VCF.getBytes(StandardCharsets.UTF_8)), index, countUncalled);
+    }
+
+    @Test
+    void testHeader() {
+        VcfLineScanner scanner = scanner(null, false);
+        assertEquals(2, scanner.getHeader().getNGenotypeSamples());
+        // htsjdk sorts the sample names, the first sample is the mother
+        assertEquals("mother", scanner.getHeader().getSampleNamesInOrder().get(0));
+    }
+
+    @Test
+    void testFilteredRecordsAreSkipped() {
+        VcfLineScanner scanner = scanner(null, false);
+        List<VariantContext> records = readAll(scanner);
+        assertEquals(5, records.size());
+        assertEquals(6, scanner.getN_records());
+        assertEquals(1, scanner.getN_filtered_records());
+        assertEquals(0, scanner.getN_uncalled_records());
+        // the carriage return of the last line is not part of the genotype
+        assertEquals("2", records.get(4).getContig());
+        assertEquals(8, records.get(4).getGenotype("proband").getDP());
+    }
+
+    /**
+     * Uncalled records are counted but not skipped, because {@link Vcf2GenotypeMap} records the gene of an uncalled
+     * record; the genotype maps must be the same as if the records were read with all samples. Only the reference
+     * block, for which no gene is recorded, is skipped.
+     */
+    @Test
+    void testUncalledRecordsOfFirstSampleAreCountedButNotSkipped() {
+        VcfLineScanner scanner = scanner(null, true);
+        List<VariantContext> records = readAll(scanner);
+        assertEquals(4, records.size());
+        assertEquals(100, records.get(0).getStart());
+        assertEquals(500, records.get(1).getStart());
+        // the two 0/0 genotypes of the mother and the reference block
+        assertEquals(3, scanner.getN_uncalled_records());
+        assertEquals(1, scanner.getN_reference_blocks());
+        List<Integer> starts = new ArrayList<>();
+        readAll(scanner(null, false)).forEach(vc -> starts.add(vc.getStart()));
+        starts.remove(Integer.valueOf(300));
+        List<Integer> countedStarts = new ArrayList<>();
+        records.forEach(vc -> countedStarts.add(vc.getStart()));
+        assertEquals(starts, countedStarts);
+    }
+
+    /**
+     * The reference blocks of a gVCF file are skipped before they are decoded. The block at position 2000 has an END
+     * attribute that htsjdk cannot decode, so reading the file would fail if it reached the decoder.
+     */
+    @Test
+    void testReferenceBlocksOfGvcfAreNotDecoded() {
+        String gvcf = "##fileformat=VCFv4.2\n" +
+                "##INFO=<ID=END,Number=1,Type=Integer,Description=\"End position\">\n" +
+                "##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">\n" +
+                "##FORMAT=<ID=DP,Number=1,Type=Integer,Description=\"Depth\">\n" +
+                "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tproband\n" +
+                "1\t1000\t.\tA\t<NON_REF>\t.\t.\tEND=1999\tGT:DP\t0/0:30\n" +
+                "1\t2000\t.\tC\t<*>\t.\t.\tEND=oops\tGT:DP\t0/0:30\n" +
+                "1\t2001\t.\tG\tT,<NON_REF>\t50\tPASS\t.\tGT:DP\t0/1:25\n" +
+                "1\t2002\t.\tT\t*,<NON_REF>\t.\t.\tEND=2010\tGT:DP\t./.:0\n" +
+                "1\t2011\t.\tA\tG,<NON_REF>\t.\t.\t.\tGT:DP\t0/0:30\n";
+        VcfLineScanner scanner = new VcfLineScanner(new ByteArrayInputStream(gvcf.getBytes(StandardCharsets.UTF_8)),
+                null, true);
+        List<VariantContext> records = readAll(scanner);
+        // the called variant and the uncalled record with a sequence allele, whose gene is recorded
+        assertEquals(2, records.size());
+        assertEquals(2001, records.get(0).getStart());
+        assertEquals(2011, records.get(1).getStart());
+        assertEquals(5, scanner.getN_records());
+        assertEquals(4, scanner.getN_uncalled_records());
+        assertEquals(3, scanner.getN_reference_blocks());
+        // all samples are analyzed: the reference blocks are decoded
+        VcfLineScanner allSamples = new VcfLineScanner(new ByteArrayInputStream(gvcf.getBytes(StandardCharsets.UTF_8)),
+                null, false);
+        assertThrows(TribbleException.class, () -> readAll(allSamples));
+    }
+
+    @Test
+    void testOffTargetRecordsAreSkipped() {
+        GeneIntervalIndex index = mock(GeneIntervalIndex.class);
+        when(index.overlaps(anyString(), anyInt(), anyInt())).thenReturn(false);
+        // the reference block ends at END=400, the deletion at 602
+        when(index.overlaps("1", 300, 400)).thenReturn(true);
+        when(index.overlaps("1", 600, 602)).thenReturn(true);
+        VcfLineScanner scanner = scanner(index, false);
+        List<VariantContext> records = readAll(scanner);
+        assertEquals(2, records.size());
+        assertEquals(300, records.get(0).getStart());
+        assertEquals(600, records.get(1).getStart());
+        assertEquals(3, scanner.getN_off_target_records());
+    }
+
+    @Test
+    void testGzippedInput() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(VCF.getBytes(StandardCharsets.UTF_8));
+        }
+        VcfLineScanner scanner = new VcfLineScanner(new GZIPInputStream(new ByteArrayInputStream(bytes.toByteArray())),
+                null, false);
+        assertEquals(5, readAll(scanner).size());
+    }
+}
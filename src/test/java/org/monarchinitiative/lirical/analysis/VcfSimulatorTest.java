@@ -0,0 +1,84 @@
+package org.monarchinitiative.lirical.analysis;
+
+import com.google.common.collect.ImmutableList;
+import htsjdk.variant.vcf.VCFFileReader;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.phenopackets.schema.v1.core.HtsFile;
+import org.phenopackets.schema.v1.core.OntologyClass;
+import org.phenopackets.schema.v1.core.Variant;
+import org.phenopackets.schema.v1.core.VcfAllele;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VcfSimulatorTest {
+
+    private static final OntologyClass HET = OntologyClass.newBuilder().setId("GENO:0000135").setLabel("heterozygous").build();
+
+    @TempDir
+    Path tempDir;
+
+    private Path template(String... records) throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add("##fileformat=VCFv4.2");
+        lines.add("##contig=<ID=chr1,length=249250621>");
+        lines.add("##contig=<ID=chr2,length=243199373>");
+        lines.add("##FORMAT=<ID=GT,Number=1,Type=String,Description=\"Genotype\">");
+        lines.add("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\ttemplate");
+        for (String record : records) {
+            lines.add(record.replace(' ', '\t'));
+        }
+        Path path = tempDir.resolve("template.vcf");
+        Files.write(path, lines, StandardCharsets.UTF_8);
+        return path;
+    }
+
+    private static Variant variant(String chr, int pos) {
+        return Variant.newBuilder()
+                .setVcfAllele(VcfAllele.newBuilder().setChr(chr).setPos(pos).setRef("A").setAlt("G").setInfo(""))
+                .setZygosity(HET)
+                .build();
+    }
+
+    private static List<String> positions(HtsFile htsFile) {
+        try (VCFFileReader reader = new VCFFileReader(new File(htsFile.getUri()), false)) {
+            assertEquals(ImmutableList.of("proband"), reader.getFileHeader().getSampleNamesInOrder());
+            return reader.iterator().stream()
+                    .map(vc -> vc.getContig() + ":" + vc.getStart())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void testInjectedVariantsAreMergedInOrder() throws IOException {
+        Path template = template("chr1 100 . A G . PASS . GT 0/1",
+                "chr1 200 . C T . PASS . GT 1/1",
+                "chr2 50 . G A . PASS . GT 0/1");
+        List<Variant> variants = ImmutableList.of(variant("2", 10), variant("1", 150), variant("2", 900));
+        for (boolean bgzip : new boolean[]{false, true}) {
+            HtsFile htsFile = new VcfSimulator(template, bgzip).simulateVcf("proband", variants, "GRCh37");
+            assertEquals(bgzip, htsFile.getUri().endsWith(".vcf.gz"));
+            assertEquals(ImmutableList.of("chr1:100", "chr1:150", "chr1:200", "chr2:10", "chr2:50", "chr2:900"),
+                    positions(htsFile));
+        }
+    }
+
+    @Test
+    void testUnsortedTemplateIsRejected() throws IOException {
+        Path template = template("chr2 50 . G A . PASS . GT 0/1",
+                "chr1 100 . A G . PASS . GT 0/1");
+        VcfSimulator simulator = new VcfSimulator(template);
+        assertThrows(LiricalRuntimeException.class,
+                () -> simulator.simulateVcf("proband", ImmutableList.of(variant("1", 150)), "GRCh37"));
+    }
+}
@@ -0,0 +1,92 @@
+package org.monarchinitiative.lirical.backgroundfrequency;
+
+import com.google.common.collect.ImmutableMap;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinAccumulatorTest {
+    private final static double EPSILON=0.0001;
+    private static final FrequencySource[] POPULATIONS = {FrequencySource.GNOMAD_E_AFR, FrequencySource.GNOMAD_E_NFE};
+
+    @TempDir
+    Path tempDir;
+
+    private static BinAccumulator accumulator() {
+        BinAccumulator accumulator = new BinAccumulator(POPULATIONS.length);
+        accumulator.add("FBN1", "2200", 0, 0.01, 0.05); // benign
+        accumulator.add("FBN1", "2200", 0, 0.02, 0.95); // pathogenic
+        accumulator.add("A1BG", "1", 1, 0.04, 0.80); // pathogenic
+        accumulator.add("FBN1", "2200", 1, 0.03, 0.99); // pathogenic
+        return accumulator;
+    }
+
+    private static Map<FrequencySource, Background> backgrounds() {
+        Map<FrequencySource, Background> backgroundMap = new HashMap<>();
+        for (FrequencySource population : POPULATIONS) {
+            backgroundMap.put(population, new Background(population));
+        }
+        return backgroundMap;
+    }
+
+    @Test
+    void testAddToBackgrounds() {
+        Map<FrequencySource, Background> backgroundMap = backgrounds();
+        Set<String> symbols = new HashSet<>();
+        Map<String, String> symbol2id = new HashMap<>();
+        BinAccumulator accumulator = accumulator();
+        assertEquals(4, accumulator.getVariantCount());
+        accumulator.addTo(backgroundMap, POPULATIONS, symbols, symbol2id);
+        assertEquals(ImmutableMap.of("FBN1", "2200", "A1BG", "1"), symbol2id);
+        Map<String, Gene2Bin> afr = backgroundMap.get(FrequencySource.GNOMAD_E_AFR).getBackground2binMap();
+        assertEquals(0.02/100, afr.get("FBN1").getPathogenicBinFrequency(), EPSILON);
+        assertFalse(afr.containsKey("A1BG"));
+        Map<String, Gene2Bin> nfe = backgroundMap.get(FrequencySource.GNOMAD_E_NFE).getBackground2binMap();
+        assertEquals(0.04/100, nfe.get("A1BG").getPathogenicBinFrequency(), EPSILON);
+        assertEquals("1", nfe.get("A1BG").getGeneid());
+    }
+
+    @Test
+    void testRoundTrip() {
+        Map<FrequencySource, Background> expected = backgrounds();
+        accumulator().addTo(expected, POPULATIONS, new HashSet<>(), new HashMap<>());
+        Map<FrequencySource, Background> actual = backgrounds();
+        BinAccumulator copy = BinAccumulator.fromBytes(accumulator().toBytes());
+        assertEquals(4, copy.getVariantCount());
+        copy.addTo(actual, POPULATIONS, new HashSet<>(), new HashMap<>());
+        for (FrequencySource population : POPULATIONS) {
+            Map<String, Gene2Bin> e = expected.get(population).getBackground2binMap();
+            Map<String, Gene2Bin> a = actual.get(population).getBackground2binMap();
+            assertEquals(e.keySet(), a.keySet());
+            for (String symbol : e.keySet()) {
+                assertEquals(e.get(symbol).toString(), a.get(symbol).toString());
+            }
+        }
+    }
+
+    @Test
+    void testCheckpointKeepsCompletedBlocks() {
+        Path path = tempDir.resolve("checkpoint.mv.db");
+        Map<String, String> input = ImmutableMap.of("exomiser", "1909_hg38_variants.mv.db");
+        try (BackgroundCheckpoint checkpoint = BackgroundCheckpoint.open(path, input)) {
+            checkpoint.put(GenicIntoleranceCalculator.blockId(1, 7), new byte[]{1, 2, 3}, accumulator());
+            checkpoint.put(GenicIntoleranceCalculator.blockId(2, 0), new byte[]{4}, accumulator());
+            checkpoint.remove(Collections.singleton(GenicIntoleranceCalculator.blockId(2, 0)));
+        }
+        try (BackgroundCheckpoint checkpoint = BackgroundCheckpoint.open(path, input)) {
+            SortedMap<Long, BinAccumulator> blocks = checkpoint.completedBlocks();
+            assertEquals(Collections.singleton(GenicIntoleranceCalculator.blockId(1, 7)), blocks.keySet());
+            assertEquals(4, blocks.get(GenicIntoleranceCalculator.blockId(1, 7)).getVariantCount());
+            assertArrayEquals(new byte[]{1, 2, 3}, checkpoint.digests().get(GenicIntoleranceCalculator.blockId(1, 7)));
+            assertEquals(1, checkpoint.digests().size());
+        }
+        Map<String, String> other = ImmutableMap.of("exomiser", "2003_hg38_variants.mv.db");
+        assertThrows(LiricalRuntimeException.class, () -> BackgroundCheckpoint.open(path, other));
+    }
+}
@@ -0,0 +1,48 @@
+package org.monarchinitiative.lirical.backgroundfrequency;
+
+import de.charite.compbio.jannovar.annotation.VariantEffect;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.ClinVarData;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathogenicityHistogramsTest {
+
+    @Test
+    void testBins() {
+        assertEquals(0, PathogenicityHistograms.bin(0.0));
+        assertEquals(16, PathogenicityHistograms.bin(0.8)); // the pathogenic threshold starts a bin
+        assertEquals(15, PathogenicityHistograms.bin(0.79));
+        assertEquals(PathogenicityHistograms.N_BINS - 1, PathogenicityHistograms.bin(1.0));
+    }
+
+    @Test
+    void testMerge() {
+        PathogenicityHistograms a = new PathogenicityHistograms();
+        a.add(ClinVarData.ClinSig.PATHOGENIC, VariantEffect.STOP_GAINED, 1.0);
+        a.add(ClinVarData.ClinSig.BENIGN, VariantEffect.MISSENSE_VARIANT, 0.1);
+        PathogenicityHistograms b = new PathogenicityHistograms();
+        b.add(ClinVarData.ClinSig.PATHOGENIC, VariantEffect.MISSENSE_VARIANT, 0.99);
+        a.merge(b);
+        assertEquals(3, a.getVariantCount());
+        assertEquals(2, a.getCounts(ClinVarData.ClinSig.PATHOGENIC)[PathogenicityHistograms.N_BINS - 1]);
+        assertEquals(1, a.getCounts(VariantEffect.MISSENSE_VARIANT)[2]);
+        assertEquals(0, a.getCounts(ClinVarData.ClinSig.LIKELY_BENIGN)[0]);
+    }
+
+    @Test
+    void testWrite() throws IOException {
+        PathogenicityHistograms histograms = new PathogenicityHistograms();
+        histograms.add(ClinVarData.ClinSig.PATHOGENIC, VariantEffect.STOP_GAINED, 1.0);
+        StringWriter writer = new StringWriter();
+        histograms.write(writer);
+        String[] lines = writer.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("#group\tclass\tcount\t0.00-0.05"));
+        assertTrue(lines[1].startsWith("clinsig\tPATHOGENIC\t1\t0"));
+        assertTrue(lines[2].endsWith("\t1"));
+    }
+}
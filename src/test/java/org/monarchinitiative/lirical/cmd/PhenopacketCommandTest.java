@@ -0,0 +1,36 @@
+package org.monarchinitiative.lirical.cmd;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PhenopacketCommandTest {
+
+    @Test
+    void testSampleNamesAreSafeInFileNames() {
+        Map<String, String> prefixes = PhenopacketCommand.samplePrefixes("lirical",
+                ImmutableList.of("NA12878", "fam1/proband", "proband mother", "../x", "s-1.b_2"));
+        assertEquals("lirical_NA12878", prefixes.get("NA12878"));
+        assertEquals("lirical_fam1_proband", prefixes.get("fam1/proband"));
+        assertEquals("lirical_proband_mother", prefixes.get("proband mother"));
+        assertEquals("lirical_.._x", prefixes.get("../x"));
+        assertEquals("lirical_s-1.b_2", prefixes.get("s-1.b_2"));
+    }
+
+    /** Samples whose names are the same after the replacement do not overwrite each other's output. */
+    @Test
+    void testSamplesWithSameSafeNameGetDifferentPrefixes() {
+        ImmutableList<String> samples = ImmutableList.of("a/b", "a b", "a_b", "A_B", "a_b_2");
+        Map<String, String> prefixes = PhenopacketCommand.samplePrefixes("lirical", samples);
+        assertEquals(samples.size(), new HashSet<>(prefixes.values()).size());
+        assertEquals("lirical_a_b", prefixes.get("a/b"));
+        assertEquals("lirical_a_b_2", prefixes.get("a b"));
+        assertEquals("lirical_a_b_3", prefixes.get("a_b"));
+        assertEquals("lirical_A_B_4", prefixes.get("A_B"));
+        assertEquals("lirical_a_b_2_2", prefixes.get("a_b_2"));
+    }
+}
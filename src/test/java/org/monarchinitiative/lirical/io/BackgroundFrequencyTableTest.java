@@ -0,0 +1,75 @@
+package org.monarchinitiative.lirical.io;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackgroundFrequencyTableTest {
+
+    private static final String TSV = "Gene\tEntrezId\tAFR\tAMR\tASJ\tEAS\tFIN\tNFE\tSAS\tMean\n" +
+            "FBN1\t2200\t0.1\t0.2\t0.3\t0.4\t0.5\t0.6\t0.7\t0.4\n" +
+            "NOID\t\t1.0\t1.0\t1.0\t1.0\t1.0\t1.0\t1.0\t1.0\n" +
+            "A1BG\t1\t0.01\t0.02\t0.03\t0.04\t0.05\t0.06\t0.07\t0.04\n";
+
+    @TempDir
+    Path tempDir;
+
+    private Path convert() throws IOException {
+        Path path = tempDir.resolve("background.bin");
+        assertEquals(2, BackgroundFrequencyTable.convert(new BufferedReader(new StringReader(TSV)), path));
+        return path;
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        BackgroundFrequencyTable table = BackgroundFrequencyTable.open(convert());
+        assertEquals(2, table.size());
+        assertEquals(0.6, table.frequency(2200, BackgroundFrequencyTable.Population.NFE), 1e-9);
+        assertEquals(0.4, table.frequency(2200, BackgroundFrequencyTable.Population.MEAN), 1e-9);
+        assertEquals(0.01, table.frequency(1, BackgroundFrequencyTable.Population.AFR), 1e-9);
+        assertTrue(Double.isNaN(table.frequency(42, BackgroundFrequencyTable.Population.AFR)));
+    }
+
+    /** A binary table is memory-mapped, a tab-separated file is read into memory; both give the same frequencies. */
+    @Test
+    void testFromPathReadsBinaryAndTabSeparatedFiles() throws IOException {
+        Path tsv = tempDir.resolve("background.tsv");
+        Files.write(tsv, TSV.getBytes(StandardCharsets.UTF_8));
+        for (Path path : new Path[]{convert(), tsv}) {
+            BackgroundFrequencyTable table = BackgroundFrequencyTable.fromPath(path);
+            assertEquals(2, table.size());
+            assertEquals(1, table.entrezId(0));
+            assertEquals(2200, table.entrezId(1));
+            assertEquals(0.06, table.frequency(1, BackgroundFrequencyTable.Population.NFE), 1e-9);
+            assertEquals(0.4, table.frequency(2200, BackgroundFrequencyTable.Population.MEAN), 1e-9);
+        }
+        assertThrows(LiricalRuntimeException.class, () -> GenotypeDataIngestor.fromPath(convert().toString()));
+    }
+
+    /** Older files without the population columns only have the mean frequency. */
+    @Test
+    void testTabSeparatedFileWithoutPopulations() throws IOException {
+        String tsv = "Gene\tEntrezId\tc2\tc3\tc4\tc5\tc6\tc7\tc8\tc9\n" +
+                "FBN1\t2200\t0\t0\t0\t0\t0\t0\t0\t0.4\n";
+        BackgroundFrequencyTable table = BackgroundFrequencyTable.fromTsv(new BufferedReader(new StringReader(tsv)));
+        assertTrue(table.hasPopulation(BackgroundFrequencyTable.Population.MEAN));
+        assertFalse(table.hasPopulation(BackgroundFrequencyTable.Population.NFE));
+        assertEquals(0.4, table.frequency(2200, BackgroundFrequencyTable.Population.MEAN), 1e-9);
+    }
+
+    @Test
+    void testPopulationFromString() {
+        assertEquals(BackgroundFrequencyTable.Population.MEAN, BackgroundFrequencyTable.Population.fromString("mean"));
+        assertEquals(BackgroundFrequencyTable.Population.SAS, BackgroundFrequencyTable.Population.fromString("SAS"));
+        assertThrows(LiricalRuntimeException.class, () -> BackgroundFrequencyTable.Population.fromString("XYZ"));
+    }
+}
@@ -0,0 +1,43 @@
+package org.monarchinitiative.lirical.io;
+
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.lirical.analysis.MvStoreStatistics;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MemoryMappedFileStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testReadMemoryMappedStore() {
+        String fileName = tempDir.resolve("test.mv.db").toString();
+        MVStore writer = new MVStore.Builder().fileName(fileName).open();
+        MVMap<Integer, String> map = writer.openMap("test");
+        for (int i = 0; i < 100_000; i++) {
+            map.put(i, "value" + i);
+        }
+        writer.close();
+
+        MemoryMappedFileStore fileStore = new MemoryMappedFileStore();
+        fileStore.open(fileName, true, null);
+        MVStore reader = new MVStore.Builder().fileName(fileName).fileStore(fileStore).cacheSize(1).open();
+        MvStoreStatistics before = MvStoreStatistics.of(reader);
+        MVMap<Integer, String> readMap = reader.openMap("test");
+        for (int i = 0; i < 100_000; i += 97) {
+            assertEquals("value" + i, readMap.get(i));
+        }
+        MvStoreStatistics statistics = MvStoreStatistics.of(reader).since(before);
+        assertTrue(statistics.getCacheMisses() > 0);
+        assertEquals(statistics.getCacheMisses(), statistics.getFileReads());
+        assertTrue(statistics.getBytesRead() > 0);
+        assertEquals(1, statistics.getCacheSizeMb());
+        reader.close();
+    }
+}
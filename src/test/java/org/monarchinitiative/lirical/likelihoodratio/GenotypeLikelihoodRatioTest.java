@@ -2,9 +2,11 @@ package org.monarchinitiative.lirical.likelihoodratio;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
 
 import org.junit.jupiter.api.Test;
 import org.monarchinitiative.lirical.analysis.Gene2Genotype;
+import org.monarchinitiative.lirical.analysis.GeneIndex;
 
 import org.monarchinitiative.phenol.ontology.data.TermId;
 
@@ -103,4 +105,27 @@ class GenotypeLikelihoodRatioTest {
         double expected = 0.05*0.05; // heuristic score for AR
         assertEquals(expected,score,EPSILON);
     }
+
+    /**
+     * The genotype likelihood ratio must not depend on whether the background frequency is taken from the map or
+     * from the {@link GeneIndex}; genes without a background frequency get the default.
+     */
+    @Test
+    void testGeneIndexGivesSameResultAsMap() {
+        TermId gene = TermId.of("NCBIGene:2200");
+        TermId geneWithoutBackground = TermId.of("NCBIGene:7048");
+        Map<TermId, Double> g2background = ImmutableMap.of(gene, 0.3);
+        GenotypeLikelihoodRatio glr = new GenotypeLikelihoodRatio(g2background);
+        GeneIndex geneIndex = GeneIndex.of(ImmutableMultimap.of(), ImmutableMap.of(gene, "FBN1", geneWithoutBackground, "TGFBR2"), g2background);
+        Gene2Genotype g2g = mock(Gene2Genotype.class);
+        when(g2g.hasPredictedPathogenicVar()).thenReturn(true);
+        when(g2g.getSumOfPathBinScores()).thenReturn(1.0);
+        when(g2g.pathogenicAlleleCount()).thenReturn(1);
+        List<TermId> inheritanceModes = ImmutableList.of(AUTOSOMAL_DOMINANT);
+        for (TermId geneId : ImmutableList.of(gene, geneWithoutBackground)) {
+            double expected = glr.evaluateGenotype(g2g, inheritanceModes, geneId).getLR();
+            double score = glr.evaluateGenotype(g2g, inheritanceModes, geneIndex, geneIndex.geneIndex(geneId)).getLR();
+            assertEquals(expected, score, EPSILON);
+        }
+    }
 }
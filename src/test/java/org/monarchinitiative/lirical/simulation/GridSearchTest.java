@@ -0,0 +1,102 @@
+package org.monarchinitiative.lirical.simulation;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.annotations.obo.hpo.HpoDiseaseAnnotationParser;
+import org.monarchinitiative.phenol.io.OntologyLoader;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GridSearchTest {
+
+    private static final int N_CASES = 10;
+    private static final String CELL_HEADER = "terms\tnoise.terms\tcases\tproportion.rank1";
+
+    private static Ontology ontology;
+    private static Map<TermId, HpoDisease> diseaseMap;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    static void setup() {
+        ClassLoader classLoader = GridSearchTest.class.getClassLoader();
+        String hpoPath = Objects.requireNonNull(classLoader.getResource("hp.small.obo")).getFile();
+        String annotationPath = Objects.requireNonNull(classLoader.getResource("small.hpoa")).getFile();
+        ontology = OntologyLoader.loadOntology(new File(hpoPath));
+        diseaseMap = HpoDiseaseAnnotationParser.loadDiseaseMap(annotationPath, ontology);
+    }
+
+    /**
+     * Run a grid search with a seed and return the lines of the cell file.
+     */
+    private List<String> gridsearch(String dir, int[] terms, int[] noise, int threads) throws LiricalException, IOException {
+        Path outdir = Files.createDirectories(tempDir.resolve(dir));
+        new GridSearch.Builder(ontology, diseaseMap)
+                .cases(N_CASES)
+                .imprecision(true)
+                .termCounts(terms)
+                .noiseTermCounts(noise)
+                .threads(threads)
+                .seed(42L)
+                .outdir(outdir.toString())
+                .build()
+                .gridsearch();
+        assertTrue(Files.exists(outdir.resolve("grid_10_cases_imprecise.R")));
+        return Files.readAllLines(outdir.resolve("grid_10_cases_imprecise.tsv"));
+    }
+
+    /**
+     * The cell file has a header and one row for each cell of the grid that was given to the builder. Note that the
+     * diseases of small.hpoa have at most two phenotypic abnormalities, which limits the number of terms per case.
+     */
+    @Test
+    void testCellFileHasOneRowPerCellOfCustomGrid() throws LiricalException, IOException {
+        List<String> lines = gridsearch("custom", new int[]{1, 2}, new int[]{0, 2, 4}, 2);
+        assertEquals(CELL_HEADER, lines.get(0));
+        assertEquals(1 + 2 * 3, lines.size());
+        Set<String> cells = new HashSet<>();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t");
+            assertEquals(4, fields.length);
+            assertEquals(String.valueOf(N_CASES), fields[2]);
+            double proportion = Double.parseDouble(fields[3]);
+            assertTrue(proportion >= 0.0 && proportion <= 1.0);
+            cells.add(fields[0] + "/" + fields[1]);
+        }
+        Set<String> expected = new HashSet<>(Arrays.asList("1/0", "1/2", "1/4", "2/0", "2/2", "2/4"));
+        assertEquals(expected, cells);
+    }
+
+    /** With the same seed, each cell has the same result no matter how many threads simulate the grid. */
+    @Test
+    void testSeedGivesSameCellsForAnyNumberOfThreads() throws LiricalException, IOException {
+        int[] terms = {1, 2};
+        int[] noise = {0, 1};
+        // the cells are written in the order in which they are finished
+        List<String> oneThread = new ArrayList<>(gridsearch("one", terms, noise, 1));
+        List<String> threeThreads = new ArrayList<>(gridsearch("three", terms, noise, 3));
+        Collections.sort(oneThread);
+        Collections.sort(threeThreads);
+        assertEquals(5, oneThread.size());
+        assertEquals(oneThread, threeThreads);
+    }
+
+    @Test
+    void testEmptyGridIsRejected() {
+        GridSearch.Builder builder = new GridSearch.Builder(ontology, diseaseMap).termCounts(new int[0]);
+        assertThrows(LiricalRuntimeException.class, builder::build);
+    }
+}
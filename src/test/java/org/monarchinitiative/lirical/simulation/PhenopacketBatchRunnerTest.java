@@ -0,0 +1,103 @@
+package org.monarchinitiative.lirical.simulation;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PhenopacketBatchRunnerTest {
+
+    private static List<File> phenopackets(int n) {
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            files.add(new File("case" + i + ".json"));
+        }
+        return files;
+    }
+
+    /** Fails for case 3, and takes longer for the first cases so that they finish last. */
+    private static Integer task(File file) {
+        int i = Integer.parseInt(file.getName().replaceAll("\\D", ""));
+        if (i == 3) {
+            throw new IllegalStateException("bad phenopacket");
+        }
+        try {
+            Thread.sleep(Math.max(0, 20 - 2 * i));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return i;
+    }
+
+    @Test
+    void testOrderedEmission() {
+        for (int workers : new int[]{1, 4}) {
+            PhenopacketBatchRunner<Integer> runner = new PhenopacketBatchRunner.Builder()
+                    .workers(workers)
+                    .build();
+            List<Integer> results = new ArrayList<>();
+            int n_errors = runner.run(phenopackets(10), PhenopacketBatchRunnerTest::task, (file, i) -> results.add(i));
+            assertEquals(1, n_errors);
+            assertEquals(Collections.singleton(new File("case3.json")), runner.getFailures().keySet());
+            assertEquals(Arrays.asList(0, 1, 2, 4, 5, 6, 7, 8, 9), results);
+        }
+    }
+
+    @Test
+    void testUnorderedEmission() {
+        PhenopacketBatchRunner<Integer> runner = new PhenopacketBatchRunner.Builder()
+                .workers(4)
+                .ordered(false)
+                .build();
+        List<Integer> results = new ArrayList<>();
+        int n_errors = runner.run(phenopackets(10), PhenopacketBatchRunnerTest::task, (file, i) -> results.add(i));
+        assertEquals(1, n_errors);
+        Collections.sort(results);
+        assertEquals(Arrays.asList(0, 1, 2, 4, 5, 6, 7, 8, 9), results);
+    }
+
+    /** No more than workers + queueCapacity cases may be started but not emitted. */
+    @Test
+    void testBackPressure() {
+        for (boolean ordered : new boolean[]{true, false}) {
+            AtomicInteger started = new AtomicInteger();
+            AtomicInteger maxInProgress = new AtomicInteger();
+            List<Integer> emitted = new ArrayList<>();
+            Function<File, Integer> task = file -> {
+                started.incrementAndGet();
+                return 1;
+            };
+            PhenopacketBatchRunner<Integer> runner = new PhenopacketBatchRunner.Builder()
+                    .workers(2)
+                    .queueCapacity(1)
+                    .ordered(ordered)
+                    .build();
+            runner.run(phenopackets(50), task, (file, i) -> {
+                emitted.add(i);
+                maxInProgress.accumulateAndGet(started.get() - emitted.size() + 1, Math::max);
+            });
+            assertEquals(50, emitted.size());
+            assertTrue(maxInProgress.get() <= 3, "at most 3 cases in progress, but found " + maxInProgress.get());
+        }
+    }
+
+    @Test
+    void testConsumerErrorIsIsolated() {
+        PhenopacketBatchRunner<Integer> runner = new PhenopacketBatchRunner.Builder()
+                .workers(2)
+                .build();
+        List<Integer> results = new ArrayList<>();
+        int n_errors = runner.run(phenopackets(5), file -> 1, (file, i) -> {
+            if (file.getName().equals("case1.json")) {
+                throw new IllegalStateException("could not write output");
+            }
+            results.add(i);
+        });
+        assertEquals(1, n_errors);
+        assertEquals(4, results.size());
+    }
+}
@@ -0,0 +1,75 @@
+package org.monarchinitiative.lirical.simulation;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.lirical.exception.LiricalException;
+import org.monarchinitiative.lirical.likelihoodratio.PhenotypeLikelihoodRatio;
+import org.monarchinitiative.phenol.annotations.formats.hpo.HpoDisease;
+import org.monarchinitiative.phenol.annotations.obo.hpo.HpoDiseaseAnnotationParser;
+import org.monarchinitiative.phenol.io.OntologyLoader;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PhenotypeOnlyHpoCaseSimulatorTest {
+
+    private static Ontology ontology;
+    private static Map<TermId, HpoDisease> diseaseMap;
+    private static PhenotypeLikelihoodRatio phenotypeLr;
+
+    @BeforeAll
+    static void setup() {
+        ClassLoader classLoader = PhenotypeOnlyHpoCaseSimulatorTest.class.getClassLoader();
+        String hpoPath = Objects.requireNonNull(classLoader.getResource("hp.small.obo")).getFile();
+        String annotationPath = Objects.requireNonNull(classLoader.getResource("small.hpoa")).getFile();
+        ontology = OntologyLoader.loadOntology(new File(hpoPath));
+        diseaseMap = HpoDiseaseAnnotationParser.loadDiseaseMap(annotationPath, ontology);
+        phenotypeLr = new PhenotypeLikelihoodRatio(ontology, diseaseMap);
+    }
+
+    private static SortedMap<Integer, Integer> simulate(long seed, int threads) throws LiricalException {
+        return simulate(seed, threads, SimulationShard.ALL);
+    }
+
+    private static SortedMap<Integer, Integer> simulate(long seed, int threads, SimulationShard shard) throws LiricalException {
+        PhenotypeOnlyHpoCaseSimulator simulator = new PhenotypeOnlyHpoCaseSimulator.Builder(ontology, diseaseMap)
+                .cases(40)
+                .termsPerCase(1)
+                .noiseTerms(1)
+                .imprecise(true)
+                .seed(seed)
+                .threads(threads)
+                .shard(shard)
+                .phenotypeLr(phenotypeLr)
+                .build();
+        simulator.setVerbosity(false);
+        simulator.simulateCases();
+        return simulator.getRankCounts();
+    }
+
+    /** The same seed must give the same ranks, no matter how many threads simulate the cases. */
+    @Test
+    void testSeedGivesSameResultForAnyNumberOfThreads() throws LiricalException {
+        SortedMap<Integer, Integer> oneThread = simulate(42L, 1);
+        assertEquals(40, oneThread.values().stream().mapToInt(Integer::intValue).sum());
+        assertEquals(oneThread, simulate(42L, 1));
+        assertEquals(oneThread, simulate(42L, 4));
+    }
+
+    /** The shards of a simulation together simulate the same cases as the simulation that is not split. */
+    @Test
+    void testShardsGiveSameResultAsOneRun() throws LiricalException {
+        SortedMap<Integer, Integer> merged = new TreeMap<>();
+        for (int i = 0; i < 3; i++) {
+            simulate(42L, 2, SimulationShard.of(i, 3)).forEach((rank, count) -> merged.merge(rank, count, Integer::sum));
+        }
+        assertEquals(simulate(42L, 1), merged);
+    }
+}
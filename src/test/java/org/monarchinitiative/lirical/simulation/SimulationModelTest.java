@@ -0,0 +1,47 @@
+package org.monarchinitiative.lirical.simulation;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.lirical.configuration.LiricalFactory;
+import org.monarchinitiative.phenol.io.OntologyLoader;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulationModelTest {
+
+    @TempDir
+    Path datadir;
+
+    @Test
+    void testPhenotypeOnlyModel() throws IOException {
+        ClassLoader classLoader = SimulationModelTest.class.getClassLoader();
+        String hpoPath = Objects.requireNonNull(classLoader.getResource("hp.small.obo")).getFile();
+        String annotationPath = Objects.requireNonNull(classLoader.getResource("small.hpoa")).getFile();
+        Files.copy(Paths.get(annotationPath), datadir.resolve("phenotype.hpoa"));
+        Ontology ontology = OntologyLoader.loadOntology(new File(hpoPath));
+        LiricalFactory factory = new LiricalFactory.Builder(ontology)
+                .datadir(datadir.toString())
+                .global(false)
+                .build();
+
+        SimulationModel model = SimulationModel.phenotypeOnly(factory);
+        assertSame(ontology, model.getOntology());
+        assertFalse(model.getDiseaseMap().isEmpty());
+        assertNotNull(model.getPhenotypeLr());
+        assertNull(model.getGenotypeLr());
+        assertTrue(model.getGene2diseaseMultimap().isEmpty());
+        assertThrows(UnsupportedOperationException.class, () -> model.getDiseaseMap().clear());
+        TermId term = model.randomPhenotypeTerm(new SplittableRandom(42L));
+        assertTrue(ontology.getTermMap().containsKey(term));
+    }
+}
@@ -0,0 +1,140 @@
+package org.monarchinitiative.lirical.simulation;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.monarchinitiative.lirical.exception.LiricalRuntimeException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimulationResultMergerTest {
+
+    private static final String HEADER = PhenoOnlyCaseSimulator.getHeader();
+    private static final String SETTINGS = "phenopacket-dir: pp;random: false";
+    private static final List<String> CASES = ImmutableList.of(
+            "a.json\tDisease A\tOMIM:1\t1",
+            "b.json\tDisease B\tOMIM:2\t3",
+            "c.json\tDisease C\tOMIM:3\t1",
+            "d.json\tDisease D\tOMIM:4\t2",
+            "e.json\tDisease E\tOMIM:5\t1");
+
+    @TempDir
+    Path tempDir;
+
+    private File write(String name, SimulationShard shard, Long seed, Map<Integer, Integer> rankCounts) throws IOException {
+        File file = tempDir.resolve(name).toFile();
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            SimulationResultMerger.writeRankCounts(rankCounts, shard, seed, writer);
+        }
+        return file;
+    }
+
+    private File write(String name, SimulationShard shard, List<String> details) throws IOException {
+        File file = tempDir.resolve(name).toFile();
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            SimulationResultMerger.writeDetails(HEADER, SimulationResultMerger.settingsWithShard(SETTINGS, shard), details, writer);
+        }
+        return file;
+    }
+
+    @Test
+    void testShardsPartitionCases() {
+        List<String> all = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            SimulationShard shard = SimulationShard.of(i, 3);
+            for (String line : shard.select(CASES)) {
+                assertTrue(shard.contains(CASES.indexOf(line)));
+                all.add(line);
+            }
+        }
+        assertEquals(CASES.size(), all.size());
+        assertEquals(new HashSet<>(CASES), new HashSet<>(all));
+        assertSame(CASES, SimulationShard.of(0, 1).select(CASES));
+        assertEquals(SimulationShard.of(2, 3), SimulationShard.parse("2/3"));
+        assertThrows(LiricalRuntimeException.class, () -> SimulationShard.of(3, 3));
+    }
+
+    @Test
+    void testMergeRankCounts() throws IOException {
+        SortedMap<Integer, Integer> shard0 = new TreeMap<>();
+        shard0.put(1, 2);
+        shard0.put(3, 1);
+        SortedMap<Integer, Integer> shard1 = new TreeMap<>();
+        shard1.put(1, 1);
+        shard1.put(2, 1);
+        List<File> files = ImmutableList.of(
+                write("r0.txt", SimulationShard.of(0, 2), 42L, shard0),
+                write("r1.txt", SimulationShard.of(1, 2), 42L, shard1));
+        SortedMap<Integer, Integer> expected = new TreeMap<>();
+        expected.put(1, 3);
+        expected.put(2, 1);
+        expected.put(3, 1);
+        assertEquals(expected, SimulationResultMerger.mergeRankCounts(files));
+        assertEquals(shard0, SimulationResultMerger.readRankCounts(files.get(0)));
+    }
+
+    @Test
+    void testMergeRankCountsRejectsDuplicateShard() throws IOException {
+        SortedMap<Integer, Integer> counts = new TreeMap<>();
+        counts.put(1, 2);
+        List<File> files = ImmutableList.of(
+                write("r0.txt", SimulationShard.of(0, 2), 42L, counts),
+                write("r0-again.txt", SimulationShard.of(0, 2), 42L, counts));
+        assertThrows(LiricalRuntimeException.class, () -> SimulationResultMerger.mergeRankCounts(files));
+    }
+
+    @Test
+    void testMergeRankCountsRequiresAllShards() throws IOException {
+        SortedMap<Integer, Integer> counts = new TreeMap<>();
+        counts.put(1, 2);
+        List<File> files = ImmutableList.of(
+                write("r0.txt", SimulationShard.of(0, 3), 42L, counts),
+                write("r2.txt", SimulationShard.of(2, 3), 42L, counts));
+        assertThrows(LiricalRuntimeException.class, () -> SimulationResultMerger.mergeRankCounts(files));
+    }
+
+    /** The shards of different simulations (here: different seeds) cannot be combined. */
+    @Test
+    void testMergeRankCountsRejectsShardsOfDifferentSeeds() throws IOException {
+        SortedMap<Integer, Integer> counts = new TreeMap<>();
+        counts.put(1, 2);
+        List<File> files = ImmutableList.of(
+                write("r0.txt", SimulationShard.of(0, 2), 42L, counts),
+                write("r1.txt", SimulationShard.of(1, 2), 43L, counts));
+        assertThrows(LiricalRuntimeException.class, () -> SimulationResultMerger.mergeRankCounts(files));
+    }
+
+    /** The merged result of the shards is the same as the result of a simulation that was not split. */
+    @Test
+    void testMergeDetailsGivesResultOfUnsplitSimulation() throws IOException {
+        StringWriter expected = new StringWriter();
+        SimulationResultMerger.writeDetails(HEADER, SETTINGS, CASES, expected);
+        List<File> files = new ArrayList<>();
+        for (int i = 2; i >= 0; i--) { // the order of the files does not matter
+            SimulationShard shard = SimulationShard.of(i, 3);
+            files.add(write("s" + i + ".tsv", shard, shard.select(CASES)));
+        }
+        StringWriter merged = new StringWriter();
+        assertEquals(CASES.size(), SimulationResultMerger.mergeDetails(files, merged));
+        assertEquals(expected.toString(), merged.toString());
+    }
+
+    @Test
+    void testMergeDetailsRequiresAllShards() throws IOException {
+        SimulationShard shard0 = SimulationShard.of(0, 3);
+        SimulationShard shard1 = SimulationShard.of(1, 3);
+        List<File> files = ImmutableList.of(
+                write("s0.tsv", shard0, shard0.select(CASES)),
+                write("s1.tsv", shard1, shard1.select(CASES)));
+        assertThrows(LiricalRuntimeException.class, () -> SimulationResultMerger.mergeDetails(files, new StringWriter()));
+    }
+}
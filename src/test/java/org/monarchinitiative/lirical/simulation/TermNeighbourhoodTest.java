@@ -0,0 +1,70 @@
+package org.monarchinitiative.lirical.simulation;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.monarchinitiative.phenol.io.OntologyLoader;
+import org.monarchinitiative.phenol.ontology.data.Ontology;
+import org.monarchinitiative.phenol.ontology.data.TermId;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TermNeighbourhoodTest {
+
+    private static final TermId PHENOTYPIC_ABNORMALITY = TermId.of("HP:0000118");
+    private static TermNeighbourhood neighbourhood;
+
+    @BeforeAll
+    static void setup() {
+        ClassLoader classLoader = TermNeighbourhoodTest.class.getClassLoader();
+        String hpoPath = Objects.requireNonNull(classLoader.getResource("hp.small.obo")).getFile();
+        Ontology ontology = OntologyLoader.loadOntology(new File(hpoPath));
+        neighbourhood = TermNeighbourhood.of(ontology, PHENOTYPIC_ABNORMALITY);
+    }
+
+    private static Set<TermId> parents(String id) {
+        int t = neighbourhood.index(TermId.of(id));
+        Set<TermId> parents = new HashSet<>();
+        for (int k = 0; k < neighbourhood.parentCount(t); k++) {
+            parents.add(neighbourhood.term(neighbourhood.parent(t, k)));
+        }
+        return parents;
+    }
+
+    @Test
+    void testTermsOfSubontology() {
+        assertNotEquals(TermNeighbourhood.NOT_FOUND, neighbourhood.index(PHENOTYPIC_ABNORMALITY));
+        // Mode of inheritance is not a phenotypic abnormality
+        assertEquals(TermNeighbourhood.NOT_FOUND, neighbourhood.index(TermId.of("HP:0000005")));
+        for (int t = 0; t < neighbourhood.size(); t++) {
+            assertEquals(t, neighbourhood.index(neighbourhood.term(t)));
+        }
+    }
+
+    @Test
+    void testParents() {
+        assertEquals(ImmutableSet.of(TermId.of("HP:0002926"), TermId.of("HP:0003117")), parents("HP:0031508"));
+        // the root is not counted as a parent
+        assertEquals(ImmutableSet.of(), parents("HP:0000478"));
+        assertEquals(ImmutableSet.of(), parents("HP:0000118"));
+    }
+
+    @Test
+    void testRandomParent() {
+        SplittableRandom random = new SplittableRandom(42L);
+        for (int i = 0; i < 20; i++) {
+            Optional<TermId> parent = neighbourhood.randomParent(TermId.of("HP:0031508"), random);
+            assertTrue(parent.isPresent());
+            assertTrue(parents("HP:0031508").contains(parent.get()));
+        }
+        assertFalse(neighbourhood.randomParent(TermId.of("HP:0000478"), random).isPresent());
+        assertFalse(neighbourhood.randomParent(TermId.of("HP:0000005"), random).isPresent());
+    }
+}
@@ -242,4 +242,23 @@ class SimpleVariantTest {
 
 
 
+
+    /**
+     * All transcript annotations are kept for variants in the pathogenic bin, only the first one for other variants.
+     */
+    @Test
+    void testTranscriptAnnotationsOnlyRetainedForPathogenicBin() {
+        TranscriptAnnotation annot1 = Mockito.mock(TranscriptAnnotation.class);
+        TranscriptAnnotation annot2 = Mockito.mock(TranscriptAnnotation.class);
+        List<TranscriptAnnotation> annotlist = ImmutableList.of(annot1, annot2);
+        String genotypeString="0/1";
+        SimpleVariant pathogenic = new SimpleVariant(2, 23333, "A", "T", annotlist, 0.9f, 0.01f, genotypeString);
+        assertTrue(pathogenic.isInPathogenicBin());
+        assertEquals(2, pathogenic.getAnnotationList().size());
+        SimpleVariant benign = new SimpleVariant(2, 23333, "A", "T", annotlist, 0.1f, 0.01f, genotypeString);
+        assertFalse(benign.isInPathogenicBin());
+        assertEquals(1, benign.getAnnotationList().size());
+        assertEquals(annot1, benign.getAnnotationList().get(0));
+    }
+
 }